@@ -2,12 +2,14 @@ package io.choerodon.devops.api.controller.v1;
 
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
+import io.choerodon.devops.api.vo.DevopsCiContentVO;
 import io.choerodon.devops.app.service.DevopsCiContentService;
 import io.choerodon.swagger.annotation.Permission;
 
@@ -33,7 +35,34 @@ public class DevopsCiContentController {
     public ResponseEntity<String> queryLatestContent(
             @PathVariable(value = "project_id") Long projectId,
             @ApiParam(value = "流水线的token")
-            @PathVariable(value = "pipeline_token") String token) {
-        return ResponseEntity.ok(devopsCiContentService.queryLatestContent(token));
+            @PathVariable(value = "pipeline_token") String token,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        DevopsCiContentVO content = devopsCiContentService.queryLatestContentWithETag(token);
+        if (content.getETag() == null) {
+            return ResponseEntity.ok(content.getCiContentFile());
+        }
+        if (matchesETag(ifNoneMatch, content.getETag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(content.getETag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(content.getETag())
+                .cacheControl(CacheControl.noCache())
+                .body(content.getCiContentFile());
+    }
+
+    /**
+     * 判断 If-None-Match 中是否有当前内容的ETag, 按照规范使用弱比较
+     */
+    private boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = StringUtils.removeStart(candidate.trim(), "W/");
+            if ("*".equals(trimmed) || eTag.equals(trimmed)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
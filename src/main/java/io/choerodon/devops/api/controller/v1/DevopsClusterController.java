@@ -1,6 +1,7 @@
 package io.choerodon.devops.api.controller.v1;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import javax.validation.Valid;
 
@@ -20,6 +21,7 @@ import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.devops.api.vo.*;
 import io.choerodon.devops.app.service.ClusterNodeInfoService;
 import io.choerodon.devops.app.service.DevopsClusterService;
+import io.choerodon.devops.app.service.ResourceMetricsService;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 import io.choerodon.swagger.annotation.CustomPageRequest;
 import io.choerodon.swagger.annotation.Permission;
@@ -35,6 +37,8 @@ public class DevopsClusterController {
     private DevopsClusterService devopsClusterService;
     @Autowired
     private ClusterNodeInfoService clusterNodeInfoService;
+    @Autowired
+    private ResourceMetricsService resourceMetricsService;
 
     /**
      * 项目下创建集群
@@ -478,6 +482,37 @@ public class DevopsClusterController {
         return new ResponseEntity<>(clusterNodeInfoService.queryNodeInfo(projectId, clusterId, nodeName), HttpStatus.OK);
     }
 
+    /**
+     * 查询节点资源分配的历史数据
+     *
+     * @param projectId  项目id
+     * @param clusterId  集群id
+     * @param nodeName   节点名称
+     * @param resolution 精度
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @return 指标名称 -> 按时间排序的点
+     */
+    @Permission(level = ResourceLevel.ORGANIZATION, roles = {InitRoleCode.PROJECT_OWNER})
+    @ApiOperation(value = "查询节点资源分配的历史数据")
+    @GetMapping(value = "/nodes/metrics")
+    public ResponseEntity<Map<String, List<MetricsPointVO>>> queryNodeMetrics(
+            @ApiParam(value = "项目ID", required = true)
+            @PathVariable(value = "project_id") Long projectId,
+            @Encrypt
+            @ApiParam(value = "集群id", required = true)
+            @RequestParam(value = "cluster_id") Long clusterId,
+            @ApiParam(value = "节点名称", required = true)
+            @RequestParam(value = "node_name") String nodeName,
+            @ApiParam(value = "精度: raw/1m/5m/1h, 不传时根据时间范围选择")
+            @RequestParam(value = "resolution", required = false) String resolution,
+            @ApiParam(value = "开始时间的毫秒数, 默认为结束时间的一小时前")
+            @RequestParam(value = "start_time", required = false) Long startTime,
+            @ApiParam(value = "结束时间的毫秒数, 默认为当前时间")
+            @RequestParam(value = "end_time", required = false) Long endTime) {
+        return new ResponseEntity<>(resourceMetricsService.queryNodeMetrics(projectId, clusterId, nodeName, resolution, startTime, endTime), HttpStatus.OK);
+    }
+
     @Permission(level = ResourceLevel.ORGANIZATION, roles = {InitRoleCode.PROJECT_OWNER})
     @ApiOperation(value = "检查是否还能创建集群")
     @GetMapping("/check_enable_create")
@@ -5,7 +5,9 @@ import io.choerodon.core.exception.CommonException;
 import io.choerodon.core.iam.InitRoleCode;
 import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.devops.api.vo.DevopsEnvPodVO;
+import io.choerodon.devops.api.vo.MetricsPointVO;
 import io.choerodon.devops.app.service.DevopsEnvPodService;
+import io.choerodon.devops.app.service.ResourceMetricsService;
 import io.choerodon.devops.infra.dto.AppServiceDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvPodDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
@@ -22,6 +24,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import springfox.documentation.annotations.ApiIgnore;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -33,6 +37,8 @@ public class DevopsEnvPodController {
 
     @Autowired
     private DevopsEnvPodService devopsEnvPodService;
+    @Autowired
+    private ResourceMetricsService resourceMetricsService;
 
     /**
      * 分页查询环境下pod
@@ -116,4 +122,37 @@ public class DevopsEnvPodController {
         devopsEnvPodService.deleteEnvPodById(projectId, envId, podId);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * 查询pod的cpu和内存使用量的历史数据
+     *
+     * @param projectId  项目id
+     * @param podId      pod id
+     * @param envId      环境id
+     * @param resolution 精度
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @return 指标名称 -> 按时间排序的点
+     */
+    @Permission(level = ResourceLevel.ORGANIZATION,
+            roles = {InitRoleCode.PROJECT_OWNER, InitRoleCode.PROJECT_MEMBER})
+    @ApiOperation(value = "查询pod的cpu和内存使用量的历史数据")
+    @GetMapping("/{pod_id}/metrics")
+    public ResponseEntity<Map<String, List<MetricsPointVO>>> queryPodMetrics(
+            @ApiParam(value = "项目id")
+            @PathVariable(value = "project_id") Long projectId,
+            @Encrypt
+            @ApiParam(value = "podId")
+            @PathVariable(value = "pod_id") Long podId,
+            @Encrypt
+            @ApiParam(value = "环境id", required = true)
+            @RequestParam(value = "env_id") Long envId,
+            @ApiParam(value = "精度: raw/1m/5m/1h, 不传时根据时间范围选择")
+            @RequestParam(value = "resolution", required = false) String resolution,
+            @ApiParam(value = "开始时间的毫秒数, 默认为结束时间的一小时前")
+            @RequestParam(value = "start_time", required = false) Long startTime,
+            @ApiParam(value = "结束时间的毫秒数, 默认为当前时间")
+            @RequestParam(value = "end_time", required = false) Long endTime) {
+        return new ResponseEntity<>(resourceMetricsService.queryPodMetrics(projectId, envId, podId, resolution, startTime, endTime), HttpStatus.OK);
+    }
 }
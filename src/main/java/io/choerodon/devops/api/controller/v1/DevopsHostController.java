@@ -9,8 +9,10 @@ import io.swagger.annotations.ApiParam;
 import org.hzero.core.util.Results;
 import org.hzero.starter.keyencrypt.core.Encrypt;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import springfox.documentation.annotations.ApiIgnore;
 
 import io.choerodon.core.domain.Page;
@@ -202,6 +204,15 @@ public class DevopsHostController {
         return ResponseEntity.ok(devopsHostService.getCheckingProgress(projectId, correctKey));
     }
 
+    @ApiOperation("推送批量校准主机状态的进度")
+    @Permission(level = ResourceLevel.ORGANIZATION)
+    @GetMapping(value = "/checking_progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCheckingProgress(@ApiParam(value = "项目id", required = true)
+                                             @PathVariable("project_id") Long projectId,
+                                             @RequestParam("correctKey") String correctKey) {
+        return devopsHostService.streamCheckingProgress(projectId, correctKey);
+    }
+
     @ApiOperation("获取批量校准主机状态")
     @Permission(level = ResourceLevel.ORGANIZATION)
     @GetMapping("/paging_with_checking_status")
@@ -31,7 +31,8 @@ public class GitlabWebHookController {
     @ApiOperation(value = "webhook转发")
     @PostMapping
     public ResponseEntity<Void> forwardGitlabWebHook(HttpServletRequest httpServletRequest, @RequestBody String body) {
-        gitlabWebHookService.forwardingEventToPortal(body, httpServletRequest.getHeader("X-Gitlab-Token"));
+        gitlabWebHookService.forwardingEventToPortal(body, httpServletRequest.getHeader("X-Gitlab-Token"),
+                httpServletRequest.getHeader("X-Gitlab-Event-UUID"));
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
@@ -39,7 +40,8 @@ public class GitlabWebHookController {
     @ApiOperation(value = "gitops webhook转发")
     @PostMapping(value = "/git_ops")
     public ResponseEntity<Void> gitOpsWebHook(HttpServletRequest httpServletRequest, @RequestBody String body) {
-        gitlabWebHookService.gitOpsWebHook(body, httpServletRequest.getHeader("X-Gitlab-Token"));
+        gitlabWebHookService.gitOpsWebHook(body, httpServletRequest.getHeader("X-Gitlab-Token"),
+                httpServletRequest.getHeader("X-Gitlab-Event-UUID"));
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
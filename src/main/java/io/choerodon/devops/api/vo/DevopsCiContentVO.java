@@ -0,0 +1,51 @@
+package io.choerodon.devops.api.vo;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * 流水线最新的gitlab-ci配置文件以及对应的ETag
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+public class DevopsCiContentVO {
+    @ApiModelProperty("流水线id")
+    private Long ciPipelineId;
+    @ApiModelProperty("gitlab-ci配置文件内容")
+    private String ciContentFile;
+    @ApiModelProperty("根据配置文件内容计算的强ETag, 内容为空时为null")
+    private String eTag;
+
+    public DevopsCiContentVO() {
+    }
+
+    public DevopsCiContentVO(Long ciPipelineId, String ciContentFile, String eTag) {
+        this.ciPipelineId = ciPipelineId;
+        this.ciContentFile = ciContentFile;
+        this.eTag = eTag;
+    }
+
+    public Long getCiPipelineId() {
+        return ciPipelineId;
+    }
+
+    public void setCiPipelineId(Long ciPipelineId) {
+        this.ciPipelineId = ciPipelineId;
+    }
+
+    public String getCiContentFile() {
+        return ciContentFile;
+    }
+
+    public void setCiContentFile(String ciContentFile) {
+        this.ciContentFile = ciContentFile;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+}
@@ -0,0 +1,41 @@
+package io.choerodon.devops.api.vo;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * 时间序列中的一个点
+ *
+ * @author zmf
+ * @since 2020/11/12
+ */
+public class MetricsPointVO {
+    @ApiModelProperty("时间戳, 单位: 毫秒")
+    private Long timestamp;
+
+    @ApiModelProperty("值, 聚合的数据为时间段内的平均值")
+    private Double value;
+
+    public MetricsPointVO() {
+    }
+
+    public MetricsPointVO(Long timestamp, Double value) {
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public void setValue(Double value) {
+        this.value = value;
+    }
+}
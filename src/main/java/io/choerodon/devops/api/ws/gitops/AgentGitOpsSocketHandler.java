@@ -6,6 +6,7 @@ import static org.hzero.websocket.constant.WebSocketConstant.Attributes.GROUP;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.hzero.websocket.redis.BrokerSessionRedis;
 import org.hzero.websocket.registry.GroupSessionRegistry;
@@ -32,6 +33,7 @@ import io.choerodon.devops.infra.enums.CommandStatus;
 import io.choerodon.devops.infra.enums.HelmType;
 import io.choerodon.devops.infra.enums.InstanceStatus;
 import io.choerodon.devops.infra.handler.ClusterConnectionHandler;
+import io.choerodon.devops.infra.handler.ClusterSessionCache;
 import io.choerodon.devops.infra.util.JsonHelper;
 import io.choerodon.devops.infra.util.KeyParseUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -64,6 +66,12 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
     @Autowired
     private AgentMsgHandlerService agentMsgHandlerService;
 
+    @Autowired
+    private AgentMessageCoalescer agentMessageCoalescer;
+
+    @Autowired
+    private ClusterSessionCache clusterSessionCache;
+
     @Override
     public String processor() {
         return DevOpsWebSocketConstants.AGENT;
@@ -82,9 +90,11 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
         clusterSession.setVersion(WebSocketTool.getVersion(session));
         clusterSession.setRegisterKey(group);
         redisTemplate.opsForHash().put(CLUSTER_SESSION, clusterSession.getRegisterKey(), clusterSession);
+        // 通知各个实例刷新本地缓存的集群连接状态
+        clusterSessionCache.publishChange(clusterId);
 
         // 连接成功之后,如果agent版本不匹配则提示升级agent,匹配则返回集群下关联环境的ssh信息
-        List<Long> unnecessaryToUpgrade = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> unnecessaryToUpgrade = clusterConnectionHandler.getUpdatedClusterList();
         if (!unnecessaryToUpgrade.contains(clusterId)) {
             DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(clusterId);
             LOGGER.info("New Upgrade agent: upgrade agent with cluster id {} from version {}", clusterId, clusterSession.getVersion());
@@ -112,27 +122,29 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
-            doHandle(session, message);
+            AgentMsgVO msg = JsonHelper.unmarshalByJackson(message.getPayload(), AgentMsgVO.class);
+            HelmType helmType = HelmType.forValue(String.valueOf(msg.getType()));
+
+            if (helmType == null) {
+                LOGGER.info("找不到指令啊 {}", msg.getType());
+                return;
+            }
+
+            LOGGER.debug("AgentGitOps: helm type: {}, message: {}", helmType.value, message.getPayload());
+
+            //设置集群id
+            Long clusterId = getClusterIdFromRegisterKey(TypeUtil.objToString(session.getAttributes().get(GROUP)));
+            msg.setClusterId(TypeUtil.objToString(clusterId));
+
+            // 合并同一个资源短时间内的状态消息之后交给集群的消息队列处理, 不占用WebSocket的线程, 相同key的消息按顺序处理
+            agentMessageCoalescer.accept(clusterId, helmType, msg, latest -> doHandle(helmType, latest));
             // 将异常捕获，否则未捕获的异常会导致外层的WebSocket框架关闭这个和Agent的连接
         } catch (Exception ex) {
             LOGGER.warn("Handle Agent Message: an unexpected exception occurred", ex);
         }
     }
 
-    private void doHandle(WebSocketSession session, TextMessage message) {
-        String payload = message.getPayload();
-        AgentMsgVO msg = JsonHelper.unmarshalByJackson(payload, AgentMsgVO.class);
-        HelmType helmType = HelmType.forValue(String.valueOf(msg.getType()));
-
-        if (helmType == null) {
-            LOGGER.info("找不到指令啊 {}", msg.getType());
-            return;
-        }
-
-        LOGGER.debug("AgentGitOps: helm type: {}, message: {}", helmType.value, message.getPayload());
-
-        //设置集群id
-        msg.setClusterId(TypeUtil.objToString(getClusterIdFromRegisterKey(TypeUtil.objToString(session.getAttributes().get(GROUP)))));
+    private void doHandle(HelmType helmType, AgentMsgVO msg) {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug(msg.toString());
         }
@@ -324,6 +336,7 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
                 if (Objects.equals(sessionId, clusterSessionVO.getWebSocketSessionId())) {
                     //移除关联关系
                     redisTemplate.opsForHash().delete(CLUSTER_SESSION, registerKey);
+                    clusterSessionCache.publishChange(TypeUtil.objToLong(clusterId));
                 } else {
                     LOGGER.info("This is an elder session whose registerKey value was updated by a new session. the session cluster id is {}", clusterId);
                 }
@@ -331,6 +344,7 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
                 // 这个逻辑不应该进的
                 LOGGER.warn("Value of register key is not of Class 'io.choerodon.devops.api.vo.ClusterSessionVO', and its real class is {}", registerKeyValue.getClass());
                 redisTemplate.opsForHash().delete(CLUSTER_SESSION, registerKey);
+                clusterSessionCache.publishChange(TypeUtil.objToLong(clusterId));
             }
         }
     }
@@ -0,0 +1,256 @@
+package io.choerodon.devops.api.ws.gitops;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.api.vo.AgentMsgVO;
+import io.choerodon.devops.infra.enums.HelmType;
+import io.choerodon.devops.infra.util.TypeUtil;
+
+/**
+ * 合并Agent短时间内发送的同一个资源的状态消息
+ * <p>
+ * Agent在滚动更新等场景下会在几毫秒内发送同一个pod/deployment的多条状态消息,
+ * 这里按照 集群id + 消息类型 + 资源key 缓冲一个很短的时间窗口, 窗口内只保留resourceVersion最新的一条消息交给
+ * {@link AgentMessageDispatcher} 处理, 被替代的消息直接丢弃并计数
+ * <p>
+ * 同一个key的非合并类型的消息(比如资源删除)到达时, 会先把这个key缓冲中的消息分发出去, 保证处理的先后顺序.
+ * 从缓冲中取出消息和交给key所在的队列在同一个key的锁(ConcurrentHashMap的compute)中完成,
+ * 定时分发和非合并类型的消息不会交错, 旧的状态消息不会排在删除消息之后.
+ * 定时分发时集群的队列已满不会等待, 消息留在缓冲中(继续合并新的消息)稍后再分发, 不影响其它key的分发
+ *
+ * @author zmf
+ * @since 2020/11/4
+ */
+@Component
+public class AgentMessageCoalescer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentMessageCoalescer.class);
+
+    /**
+     * 可以合并的消息类型, 只有资源状态的快照可以合并.
+     * helm_pod_event 每条都是不同的k8s事件, 会分别保存为实例的事件记录, 不能合并
+     */
+    private static final Set<HelmType> COALESCIBLE_TYPES = EnumSet.of(HelmType.RESOURCE_UPDATE);
+
+    /**
+     * 需要和集群的其它消息串行处理的消息类型.
+     * resource_sync 按照集群中现有的全部资源清理数据, 不能和其它资源的消息并行处理
+     */
+    private static final Set<HelmType> BARRIER_TYPES = EnumSet.of(HelmType.RESOURCE_SYNC);
+
+    private static final String METADATA = "metadata";
+    private static final String RESOURCE_VERSION = "resourceVersion";
+    private static final String SEPARATOR = "|";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Map<String, PendingMessage> pendingMessages = new ConcurrentHashMap<>();
+    /**
+     * 每种可以合并的消息类型被替代的消息数
+     */
+    private final Map<HelmType, Counter> supersededCounters = new EnumMap<>(HelmType.class);
+
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("agent-msg-coalescer-"));
+
+    @Autowired
+    private AgentMessageDispatcher agentMessageDispatcher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 合并的时间窗口, 单位毫秒, 小于等于0表示不合并
+     */
+    @Value("${devops.agent.message.coalesce.windowMillis:200}")
+    private Long windowMillis;
+
+    @PostConstruct
+    public void init() {
+        COALESCIBLE_TYPES.forEach(helmType -> supersededCounters.put(helmType, Counter.builder("devops.agent.message.superseded")
+                .tag("type", helmType.value)
+                .description("Agent messages dropped because a newer message of the same resource arrived")
+                .register(meterRegistry)));
+    }
+
+    /**
+     * 接收消息
+     *
+     * @param clusterId 集群id
+     * @param helmType  消息类型
+     * @param msg       消息
+     * @param handler   处理消息的逻辑
+     */
+    public void accept(Long clusterId, HelmType helmType, AgentMsgVO msg, Consumer<AgentMsgVO> handler) {
+        if (BARRIER_TYPES.contains(helmType)) {
+            // 之前收到的消息都先交给队列, 在屏障之前处理
+            String prefix = clusterId + SEPARATOR;
+            pendingMessages.keySet().stream()
+                    .filter(pendingKey -> pendingKey.startsWith(prefix))
+                    .forEach(this::handOff);
+            agentMessageDispatcher.dispatchBarrier(clusterId, () -> handler.accept(msg));
+            return;
+        }
+
+        String key = msg.getKey();
+        if (key == null) {
+            agentMessageDispatcher.dispatch(clusterId, msg.getType(), () -> handler.accept(msg));
+            return;
+        }
+
+        if (windowMillis > 0 && COALESCIBLE_TYPES.contains(helmType)) {
+            buffer(clusterId, helmType, msg, handler);
+            return;
+        }
+
+        // 先把同一个key缓冲中的消息交给队列, 避免旧的状态消息在删除之类的消息之后被处理
+        for (HelmType type : COALESCIBLE_TYPES) {
+            handOff(buildPendingKey(clusterId, type, key));
+        }
+        agentMessageDispatcher.dispatch(clusterId, key, () -> handler.accept(msg));
+    }
+
+    private void buffer(Long clusterId, HelmType helmType, AgentMsgVO msg, Consumer<AgentMsgVO> handler) {
+        String pendingKey = buildPendingKey(clusterId, helmType, msg.getKey());
+        Long resourceVersion = parseResourceVersion(msg.getPayload());
+        boolean[] created = new boolean[1];
+        pendingMessages.compute(pendingKey, (k, pending) -> {
+            if (pending == null) {
+                created[0] = true;
+                return new PendingMessage(clusterId, helmType, msg, resourceVersion, handler);
+            }
+            supersededCounters.get(helmType).increment();
+            // resourceVersion 无法解析时按照到达的先后顺序处理
+            if (resourceVersion == null || pending.resourceVersion == null || resourceVersion >= pending.resourceVersion) {
+                pending.msg = msg;
+                pending.resourceVersion = resourceVersion;
+            }
+            return pending;
+        });
+        if (created[0]) {
+            flushScheduler.schedule(() -> flush(pendingKey), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(String pendingKey) {
+        boolean[] full = new boolean[1];
+        pendingMessages.computeIfPresent(pendingKey, (k, pending) -> {
+            try {
+                if (agentMessageDispatcher.offer(pending.clusterId, pending.msg.getKey(), pending.task())) {
+                    return null;
+                }
+                full[0] = true;
+                return pending;
+            } catch (Exception ex) {
+                LOGGER.warn("Handle Agent Message: failed to dispatch coalesced message with type {} and key {}", pending.helmType.value, pending.msg.getKey(), ex);
+                return null;
+            }
+        });
+        if (full[0]) {
+            // 集群的队列已满, 不阻塞分发线程, 消息留在缓冲中稍后再分发
+            flushScheduler.schedule(() -> flush(pendingKey), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 把缓冲中的消息直接交给key所在的队列, 每个key最多缓冲一条消息, 不会使待处理的消息无限增长
+     */
+    private void handOff(String pendingKey) {
+        pendingMessages.computeIfPresent(pendingKey, (k, pending) -> {
+            agentMessageDispatcher.handOff(pending.clusterId, pending.msg.getKey(), pending.task());
+            return null;
+        });
+    }
+
+    private static String buildPendingKey(Long clusterId, HelmType helmType, String key) {
+        return clusterId + SEPARATOR + helmType.value + SEPARATOR + key;
+    }
+
+    /**
+     * 只读取顶层的 metadata.resourceVersion 字段, 不反序列化整个对象
+     *
+     * @param payload k8s对象的json
+     * @return resourceVersion, 解析不到时为null
+     */
+    private static Long parseResourceVersion(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (METADATA.equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String metadataField = parser.getCurrentName();
+                        parser.nextToken();
+                        if (RESOURCE_VERSION.equals(metadataField)) {
+                            return TypeUtil.objToLong(parser.getValueAsString());
+                        }
+                        parser.skipChildren();
+                    }
+                    return null;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("Failed to parse resource version of agent message", e);
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flushScheduler.shutdown();
+        // 停止前把缓冲中的消息都交给线程池处理
+        pendingMessages.keySet().forEach(this::handOff);
+    }
+
+    private static final class PendingMessage {
+        private final Long clusterId;
+        private final HelmType helmType;
+        private final Consumer<AgentMsgVO> handler;
+        private volatile AgentMsgVO msg;
+        private volatile Long resourceVersion;
+
+        private PendingMessage(Long clusterId, HelmType helmType, AgentMsgVO msg, Long resourceVersion, Consumer<AgentMsgVO> handler) {
+            this.clusterId = clusterId;
+            this.helmType = helmType;
+            this.msg = msg;
+            this.resourceVersion = resourceVersion;
+            this.handler = handler;
+        }
+
+        /**
+         * 在key的锁中调用, 取当前最新的消息
+         */
+        private Runnable task() {
+            AgentMsgVO latest = msg;
+            return () -> handler.accept(latest);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package io.choerodon.devops.api.ws.gitops;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 将Agent发送的消息从WebSocket的线程中分发到有界的线程池中处理
+ * <p>
+ * 每个集群有固定数量的串行队列(lane), 消息按照资源的key散列到某个队列:
+ * 1. 同一个key的消息总是落在同一个队列中, 按照接收顺序处理
+ * 2. 不同key的消息可以并行处理, 但是一个集群最多同时占用 lanesPerCluster 个线程, 避免繁忙的集群占满线程池
+ * 3. 一个集群待处理的消息数超过 maxPendingPerCluster 时, WebSocket线程会一直等待到有空闲, 不再读取这个Agent的消息,
+ * 以此对Agent形成背压, 待处理的消息数不会超过限制
+ * 4. 屏障消息(如资源同步)会等集群所有队列中之前的消息处理完成之后单独处理, 处理完成之后各个队列再继续处理后面的消息
+ *
+ * @author zmf
+ * @since 2020/11/2
+ */
+@Component
+public class AgentMessageDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentMessageDispatcher.class);
+
+    private static final String METRIC_PREFIX = "devops.agent.message";
+    private static final String CLUSTER_TAG = "clusterId";
+
+    /**
+     * 一个队列每次占用线程时最多处理的消息数, 处理完之后让出线程给其他队列
+     */
+    private static final int MAX_TASKS_PER_TURN = 32;
+
+    private final Map<Long, ClusterDispatchQueue> clusterQueues = new ConcurrentHashMap<>();
+
+    @Autowired
+    @Qualifier(GitOpsConstants.AGENT_MESSAGE_EXECUTOR)
+    private ThreadPoolTaskExecutor agentMessageExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${devops.agent.message.lanesPerCluster:4}")
+    private Integer lanesPerCluster;
+
+    @Value("${devops.agent.message.maxPendingPerCluster:2000}")
+    private Integer maxPendingPerCluster;
+
+    @Value("${devops.agent.message.backpressureTimeoutMillis:5000}")
+    private Long backpressureTimeoutMillis;
+
+    /**
+     * 分发消息
+     *
+     * @param clusterId 集群id
+     * @param key       消息的key, 相同key的消息按顺序处理
+     * @param task      处理消息的逻辑
+     */
+    public void dispatch(Long clusterId, String key, Runnable task) {
+        getClusterQueue(clusterId).submit(key, task);
+    }
+
+    /**
+     * 集群待处理的消息数没有超过限制时分发消息, 不等待
+     *
+     * @param clusterId 集群id
+     * @param key       消息的key, 相同key的消息按顺序处理
+     * @param task      处理消息的逻辑
+     * @return 超过限制没有分发时返回false
+     */
+    public boolean offer(Long clusterId, String key, Runnable task) {
+        return getClusterQueue(clusterId).offer(key, task);
+    }
+
+    /**
+     * 不检查待处理的消息数, 立即分发已经由调用者缓冲在内存中的消息, 调用者需要保证这类消息的数量有上限
+     *
+     * @param clusterId 集群id
+     * @param key       消息的key, 相同key的消息按顺序处理
+     * @param task      处理消息的逻辑
+     */
+    public void handOff(Long clusterId, String key, Runnable task) {
+        getClusterQueue(clusterId).enqueue(key, task, false);
+    }
+
+    /**
+     * 分发屏障消息, 集群之前的消息都处理完成之后才处理, 处理时集群的其它消息等待
+     *
+     * @param clusterId 集群id
+     * @param task      处理消息的逻辑
+     */
+    public void dispatchBarrier(Long clusterId, Runnable task) {
+        getClusterQueue(clusterId).submitBarrier(task);
+    }
+
+    private ClusterDispatchQueue getClusterQueue(Long clusterId) {
+        return clusterQueues.computeIfAbsent(clusterId, this::createClusterQueue);
+    }
+
+    private ClusterDispatchQueue createClusterQueue(Long clusterId) {
+        ClusterDispatchQueue queue = new ClusterDispatchQueue(clusterId, lanesPerCluster, maxPendingPerCluster);
+        String clusterTag = String.valueOf(clusterId);
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", queue, ClusterDispatchQueue::getPending)
+                .tag(CLUSTER_TAG, clusterTag)
+                .description("Pending agent messages of the cluster")
+                .register(meterRegistry);
+        queue.processed = Counter.builder(METRIC_PREFIX + ".processed")
+                .tag(CLUSTER_TAG, clusterTag)
+                .register(meterRegistry);
+        queue.throttled = Counter.builder(METRIC_PREFIX + ".throttled")
+                .tag(CLUSTER_TAG, clusterTag)
+                .description("Times the websocket thread was blocked by backpressure")
+                .register(meterRegistry);
+        queue.dropped = Counter.builder(METRIC_PREFIX + ".dropped")
+                .tag(CLUSTER_TAG, clusterTag)
+                .description("Agent messages dropped because the websocket thread was interrupted while blocked by backpressure")
+                .register(meterRegistry);
+        return queue;
+    }
+
+    /**
+     * 单个集群的消息队列
+     */
+    private final class ClusterDispatchQueue {
+        private final Long clusterId;
+        private final SerialLane[] lanes;
+        private final Semaphore permits;
+        private final AtomicInteger pending = new AtomicInteger();
+        private Counter processed;
+        private Counter throttled;
+        private Counter dropped;
+
+        private ClusterDispatchQueue(Long clusterId, int laneCount, int maxPending) {
+            this.clusterId = clusterId;
+            this.lanes = new SerialLane[laneCount];
+            for (int i = 0; i < laneCount; i++) {
+                lanes[i] = new SerialLane();
+            }
+            this.permits = new Semaphore(maxPending);
+        }
+
+        private void submit(String key, Runnable task) {
+            if (acquirePermit(key)) {
+                enqueue(key, task, true);
+            }
+        }
+
+        private void submitBarrier(Runnable task) {
+            if (!acquirePermit(null)) {
+                return;
+            }
+            pending.incrementAndGet();
+            Barrier barrier = new Barrier(lanes, () -> {
+                try {
+                    task.run();
+                } finally {
+                    complete(true);
+                }
+            });
+            // 加锁使得多个屏障在各个队列中的先后顺序一致, 避免互相等待
+            synchronized (this) {
+                for (SerialLane lane : lanes) {
+                    lane.submit(barrier);
+                }
+            }
+        }
+
+        /**
+         * 等待待处理的消息数低于限制, 阻塞WebSocket线程, 不再读取Agent的消息
+         *
+         * @return 等待时线程被中断返回false, 消息被丢弃
+         */
+        private boolean acquirePermit(String key) {
+            if (permits.tryAcquire()) {
+                return true;
+            }
+            throttled.increment();
+            try {
+                while (!permits.tryAcquire(backpressureTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("Agent message queue of cluster {} is full, pending: {}", clusterId, pending.get());
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+                LOGGER.warn("Interrupted while waiting for the agent message queue of cluster {}, the message with key {} is dropped", clusterId, key);
+                return false;
+            }
+        }
+
+        private boolean offer(String key, Runnable task) {
+            if (!permits.tryAcquire()) {
+                throttled.increment();
+                return false;
+            }
+            enqueue(key, task, true);
+            return true;
+        }
+
+        private void enqueue(String key, Runnable task, boolean holdPermit) {
+            pending.incrementAndGet();
+            String laneKey = key == null ? "" : key;
+            lanes[Math.floorMod(laneKey.hashCode(), lanes.length)].submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    complete(holdPermit);
+                }
+            });
+        }
+
+        private void complete(boolean holdPermit) {
+            pending.decrementAndGet();
+            if (holdPermit) {
+                permits.release();
+            }
+            processed.increment();
+        }
+
+        private int getPending() {
+            return pending.get();
+        }
+    }
+
+    /**
+     * 集群所有队列共同的屏障, 每个队列处理到屏障时暂停, 最后一个到达的队列处理屏障的消息, 之后恢复所有队列.
+     * 暂停的队列不占用线程
+     */
+    private static final class Barrier implements Runnable {
+        private final SerialLane[] lanes;
+        private final Runnable task;
+        private final AtomicInteger remaining;
+
+        private Barrier(SerialLane[] lanes, Runnable task) {
+            this.lanes = lanes;
+            this.task = task;
+            this.remaining = new AtomicInteger(lanes.length);
+        }
+
+        private void arrive() {
+            if (remaining.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception ex) {
+                LOGGER.warn("Handle Agent Message: an unexpected exception occurred", ex);
+            } finally {
+                for (SerialLane lane : lanes) {
+                    lane.resume();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            // 由队列通过 arrive 处理
+        }
+    }
+
+    /**
+     * 串行处理的队列, 同一时刻最多只有一个线程在处理这个队列的消息
+     */
+    private final class SerialLane implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        /**
+         * 处理到屏障之后暂停, 等待屏障的消息处理完成
+         */
+        private volatile boolean parked;
+
+        private void submit(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        private void resume() {
+            parked = false;
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                // 线程池队列满时由调用者线程执行, 不会抛出拒绝异常
+                agentMessageExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                int count = 0;
+                while (!parked && count++ < MAX_TASKS_PER_TURN && (task = tasks.poll()) != null) {
+                    if (task instanceof Barrier) {
+                        // 先暂停再到达屏障, 最后到达时会在当前线程恢复所有队列
+                        parked = true;
+                        ((Barrier) task).arrive();
+                        break;
+                    }
+                    try {
+                        task.run();
+                    } catch (Exception ex) {
+                        LOGGER.warn("Handle Agent Message: an unexpected exception occurred", ex);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!parked && !tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
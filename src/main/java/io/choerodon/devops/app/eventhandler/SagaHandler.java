@@ -15,6 +15,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import io.choerodon.asgard.saga.annotation.SagaTask;
+import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.core.oauth.DetailsHelper;
 import io.choerodon.devops.api.vo.*;
 import io.choerodon.devops.api.vo.iam.AssignAdminVO;
@@ -30,6 +31,7 @@ import io.choerodon.devops.infra.dto.DevopsCdJobRecordDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.enums.HostDeployType;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+import io.choerodon.devops.infra.handler.IamEntityCache;
 import io.choerodon.devops.infra.mapper.DevopsCdJobRecordMapper;
 import io.choerodon.devops.infra.util.ArrayUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -64,6 +66,26 @@ public class SagaHandler {
     private DevopsCdPipelineRecordService devopsCdPipelineRecordService;
     @Autowired
     private ChartService chartService;
+    @Autowired
+    private IamEntityCache iamEntityCache;
+
+
+    /**
+     * 成员角色变化后, 项目下按照邮箱查询的用户缓存失效
+     *
+     * @param gitlabGroupMemberVOList 成员角色变化
+     */
+    private void evictMemberCache(List<GitlabGroupMemberVO> gitlabGroupMemberVOList) {
+        if (CollectionUtils.isEmpty(gitlabGroupMemberVOList)) {
+            return;
+        }
+        gitlabGroupMemberVOList.forEach(gitlabGroupMemberVO -> {
+            iamEntityCache.evictUserEmails(gitlabGroupMemberVO.getUserId());
+            if (ResourceLevel.PROJECT.value().equals(gitlabGroupMemberVO.getResourceType())) {
+                iamEntityCache.evict(IamEntityCache.USER_EMAIL, gitlabGroupMemberVO.getResourceId());
+            }
+        });
+    }
 
     private void loggerInfo(Object o) {
         if (LOGGER.isInfoEnabled()) {
@@ -104,6 +126,7 @@ public class SagaHandler {
             seq = 1)
     public String handleUpdateGitOpsGroupEvent(String msg) {
         ProjectPayload projectPayload = gson.fromJson(msg, ProjectPayload.class);
+        iamEntityCache.evict(IamEntityCache.PROJECT, projectPayload.getProjectId());
         GitlabGroupPayload gitlabGroupPayload = new GitlabGroupPayload();
         BeanUtils.copyProperties(projectPayload, gitlabGroupPayload);
         loggerInfo(msg);
@@ -124,6 +147,7 @@ public class SagaHandler {
                 }.getType());
         LOGGER.info("update user role start");
         loggerInfo(gitlabGroupMemberVOList);
+        evictMemberCache(gitlabGroupMemberVOList);
         gitlabGroupMemberService.createGitlabGroupMemberRole(gitlabGroupMemberVOList, false);
         LOGGER.info("update user role end");
         return gitlabGroupMemberVOList;
@@ -142,6 +166,7 @@ public class SagaHandler {
                 }.getType());
         LOGGER.info("delete gitlab role start");
         loggerInfo(gitlabGroupMemberVOList);
+        evictMemberCache(gitlabGroupMemberVOList);
         gitlabGroupMemberService.deleteGitlabGroupMemberRole(gitlabGroupMemberVOList);
         LOGGER.info("delete gitlab role end");
         return gitlabGroupMemberVOList;
@@ -188,6 +213,8 @@ public class SagaHandler {
             maxRetryCount = 3, seq = 1)
     public String handleUpdateUserEvent(String payload) {
         GitlabUserVO gitlabUserVO = gson.fromJson(payload, GitlabUserVO.class);
+        iamEntityCache.evict(IamEntityCache.USER, TypeUtil.objToLong(gitlabUserVO.getId()));
+        iamEntityCache.evictUserEmails(TypeUtil.objToLong(gitlabUserVO.getId()));
         loggerInfo(gitlabUserVO);
 
         GitlabUserRequestVO gitlabUserReqDTO = new GitlabUserRequestVO();
@@ -213,6 +240,8 @@ public class SagaHandler {
             maxRetryCount = 3, seq = 1)
     public String handleIsEnabledUserEvent(String payload) {
         GitlabUserVO gitlabUserVO = gson.fromJson(payload, GitlabUserVO.class);
+        iamEntityCache.evict(IamEntityCache.USER, TypeUtil.objToLong(gitlabUserVO.getId()));
+        iamEntityCache.evictUserEmails(TypeUtil.objToLong(gitlabUserVO.getId()));
         loggerInfo(gitlabUserVO);
 
         gitlabUserService.isEnabledGitlabUser(TypeUtil.objToLong(gitlabUserVO.getId()));
@@ -228,6 +257,8 @@ public class SagaHandler {
             maxRetryCount = 3, seq = 1)
     public String handleDisEnabledUserEvent(String payload) {
         GitlabUserVO gitlabUserVO = gson.fromJson(payload, GitlabUserVO.class);
+        iamEntityCache.evict(IamEntityCache.USER, TypeUtil.objToLong(gitlabUserVO.getId()));
+        iamEntityCache.evictUserEmails(TypeUtil.objToLong(gitlabUserVO.getId()));
         loggerInfo(gitlabUserVO);
 
         gitlabUserService.disEnabledGitlabUser(TypeUtil.objToLong(gitlabUserVO.getId()));
@@ -241,7 +272,11 @@ public class SagaHandler {
             seq = 1)
     public String handleAssignAdminEvent(String payload) {
         AssignAdminVO assignAdminVO = JSONObject.parseObject(payload, AssignAdminVO.class);
-        gitlabUserService.assignAdmins(assignAdminVO == null ? Collections.emptyList() : assignAdminVO.getAdminUserIds());
+        List<Long> adminUserIds = assignAdminVO == null || assignAdminVO.getAdminUserIds() == null
+                ? Collections.emptyList() : assignAdminVO.getAdminUserIds();
+        // 缓存的用户信息中包含是否是管理员
+        adminUserIds.forEach(userId -> iamEntityCache.evict(IamEntityCache.USER, userId));
+        gitlabUserService.assignAdmins(adminUserIds);
         return payload;
     }
 
@@ -252,7 +287,9 @@ public class SagaHandler {
             seq = 1)
     public String handleDeleteAdminEvent(String payload) {
         DeleteAdminVO deleteAdminVO = JSONObject.parseObject(payload, DeleteAdminVO.class);
-        gitlabUserService.deleteAdmin(deleteAdminVO == null ? null : deleteAdminVO.getAdminUserId());
+        Long adminUserId = deleteAdminVO == null ? null : deleteAdminVO.getAdminUserId();
+        iamEntityCache.evict(IamEntityCache.USER, adminUserId);
+        gitlabUserService.deleteAdmin(adminUserId);
         return payload;
     }
 
@@ -273,6 +310,7 @@ public class SagaHandler {
         CreateAndUpdateUserEventPayload createAndUpdateUserEventPayload = gson.fromJson(payload, CreateAndUpdateUserEventPayload.class);
         handleCreateUserEvent(gson.toJson(ArrayUtil.singleAsList(createAndUpdateUserEventPayload.getUserEventPayload())));
 
+        evictMemberCache(createAndUpdateUserEventPayload.getUserMemberEventPayloads());
         LOGGER.info("Org create user: update user role start");
         gitlabGroupMemberService.createGitlabGroupMemberRole(createAndUpdateUserEventPayload.getUserMemberEventPayloads(), true);
         LOGGER.info("Org create user: update user role end");
@@ -1,5 +1,6 @@
 package io.choerodon.devops.app.service;
 
+import io.choerodon.devops.api.vo.DevopsCiContentVO;
 import io.choerodon.devops.infra.dto.DevopsCiContentDTO;
 
 /**
@@ -18,6 +19,14 @@ public interface DevopsCiContentService {
      */
     String queryLatestContent(String token);
 
+    /**
+     * 查询流水线的最新配置以及对应的ETag, 结果按照token缓存
+     *
+     * @param token 流水线token
+     * @return ci内容
+     */
+    DevopsCiContentVO queryLatestContentWithETag(String token);
+
     /**
      * 保存流水线配置
      *
@@ -31,4 +40,11 @@ public interface DevopsCiContentService {
      * @param ciPipelineId
      */
     void deleteByPipelineId(Long ciPipelineId);
+
+    /**
+     * 流水线启用或停用之后删除缓存的ci内容
+     *
+     * @param ciPipelineId 流水线id
+     */
+    void evictCache(Long ciPipelineId);
 }
@@ -1,6 +1,8 @@
 package io.choerodon.devops.app.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import io.choerodon.devops.api.vo.JobWebHookVO;
 import io.choerodon.devops.infra.dto.DevopsCiJobRecordDTO;
@@ -19,6 +21,14 @@ public interface DevopsCiJobRecordService {
      */
     DevopsCiJobRecordDTO queryByGitlabJobId(Long gitlabJobId);
 
+    /**
+     * 根据gitlab-Job id批量查询job执行记录
+     *
+     * @param gitlabJobIds gitlab job id
+     * @return gitlab job id -> job执行记录
+     */
+    Map<Long, DevopsCiJobRecordDTO> listByGitlabJobIds(Collection<Long> gitlabJobIds);
+
     void update(JobWebHookVO jobWebHookVO);
 
     void deleteByPipelineId(Long ciPipelineId);
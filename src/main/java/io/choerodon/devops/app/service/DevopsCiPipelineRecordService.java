@@ -5,7 +5,10 @@ import java.util.List;
 import io.choerodon.core.domain.Page;
 import io.choerodon.devops.api.vo.DevopsCiPipelineRecordVO;
 import io.choerodon.devops.api.vo.PipelineWebHookVO;
+import io.choerodon.devops.infra.dto.AppServiceDTO;
 import io.choerodon.devops.infra.dto.DevopsCiPipelineRecordDTO;
+import io.choerodon.devops.infra.dto.gitlab.GitlabPipelineDTO;
+import io.choerodon.devops.infra.dto.gitlab.JobDTO;
 import io.choerodon.devops.infra.dto.gitlab.ci.Pipeline;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 
@@ -34,6 +37,17 @@ public interface DevopsCiPipelineRecordService {
      */
     void asyncPipelineUpdate(Long pipelineRecordId, Integer gitlabPipelineId);
 
+    /**
+     * 使用已经从gitlab查询到的流水线和job信息更新流水线纪录, 在调用者的线程中执行
+     *
+     * @param appServiceDTO     流水线所属的应用服务
+     * @param pipelineRecordId  猪齿鱼流水线纪录id
+     * @param gitlabPipelineId  gitlab流水线id
+     * @param gitlabPipelineDTO gitlab中的流水线
+     * @param jobs              gitlab中流水线的job
+     */
+    void syncPipelineRecord(AppServiceDTO appServiceDTO, Long pipelineRecordId, Long gitlabPipelineId, GitlabPipelineDTO gitlabPipelineDTO, List<JobDTO> jobs);
+
     DevopsCiPipelineRecordVO queryPipelineRecordDetails(Long projectId, Long ciPipelineRecordId);
 
     /**
@@ -72,5 +86,10 @@ public interface DevopsCiPipelineRecordService {
 
     List<DevopsCiPipelineRecordDTO> queryNotSynchronizedRecord(Long statusUpdatePeriodMilliSeconds);
 
+    /**
+     * 查询流水线纪录所属的应用服务, 只包含id和gitlab_project_id
+     */
+    AppServiceDTO queryAppServiceByRecordId(Long pipelineRecordId);
+
     DevopsCiPipelineRecordVO queryByCiPipelineRecordId(Long ciPipelineRecordId);
 }
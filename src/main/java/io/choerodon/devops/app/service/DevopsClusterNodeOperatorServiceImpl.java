@@ -65,7 +65,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
 
     @Override
     public void addNode(Long projectId, Long clusterId, String operatingId, DevopsClusterNodeVO nodeVO) {
-        SSHClient sshClient = new SSHClient();
+        SSHClient sshClient = null;
         String operatingFlagKey = String.format(ADD_NODE_OPERATING_FAILED_FLAG, operatingId);
         try {
             // 如果是重试，则需要获取锁
@@ -101,7 +101,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
             HostConnectionVO hostConnectionVO = ConvertUtils.convertObject(linkNode, HostConnectionVO.class);
             hostConnectionVO.setHostSource(HostSourceEnum.CUSTOMHOST.getValue());
             LOGGER.info(">>>>>>>>> [add node]  cluster {} ssh connect. <<<<<<<<<<<<<<<", clusterId);
-            sshUtil.sshConnect(hostConnectionVO, sshClient);
+            sshClient = sshUtil.sshConnect(hostConnectionVO);
 
             // 上传配置文件
             devopsClusterNodeService.generateAndUploadNodeConfiguration(sshClient, String.valueOf(clusterId), inventoryVO);
@@ -135,7 +135,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
             throw new CommonException(ERROR_ADD_NODE_FAILED, e);
         } finally {
             devopsClusterService.updateStatusByIdInNewTrans(clusterId, ClusterStatusEnum.DISCONNECT);
-            sshUtil.sshDisconnect(sshClient);
+            sshUtil.sshRelease(sshClient);
         }
     }
 
@@ -143,7 +143,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
     @Async
     @Transactional
     public void deleteNode(Long projectId, DevopsClusterNodeDTO devopsClusterNodeDTO, Long operationRecordId) {
-        SSHClient sshClient = new SSHClient();
+        SSHClient sshClient = null;
         String errorMsg = "";
         try {
             // 删除集群中的node
@@ -172,7 +172,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
             HostConnectionVO hostConnectionVO = ConvertUtils.convertObject(linkNode, HostConnectionVO.class);
             hostConnectionVO.setHostSource(HostSourceEnum.CUSTOMHOST.getValue());
 
-            sshUtil.sshConnect(hostConnectionVO, sshClient);
+            sshClient = sshUtil.sshConnect(hostConnectionVO);
             // 上传配置文件
             devopsClusterNodeService.generateAndUploadNodeConfiguration(sshClient, String.valueOf(devopsClusterNodeDTO.getClusterId()), inventoryVO);
             // 执行删除节点操作
@@ -195,7 +195,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
             throw new CommonException(ERROR_DELETE_NODE_FAILED, e);
         } finally {
             devopsClusterService.updateStatusByIdInNewTrans(devopsClusterNodeDTO.getClusterId(), ClusterStatusEnum.DISCONNECT);
-            sshUtil.sshDisconnect(sshClient);
+            sshUtil.sshRelease(sshClient);
         }
     }
 
@@ -203,7 +203,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
     @Async
     @Transactional
     public void deleteNodeRole(Long projectId, DevopsClusterNodeDTO devopsClusterNodeDTO, Integer role, Long operationRecordId) {
-        SSHClient sshClient = new SSHClient();
+        SSHClient sshClient = null;
         String errorMsg = "";
         try {
             // 删除节点角色
@@ -233,7 +233,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
             }
             HostConnectionVO hostConnectionVO = ConvertUtils.convertObject(linkNode, HostConnectionVO.class);
             hostConnectionVO.setHostSource(HostSourceEnum.CUSTOMHOST.getValue());
-            sshUtil.sshConnect(hostConnectionVO, sshClient);
+            sshClient = sshUtil.sshConnect(hostConnectionVO);
             // 上传配置文件
             devopsClusterNodeService.generateAndUploadNodeConfiguration(sshClient, String.valueOf(devopsClusterNodeDTO.getClusterId()), inventoryVO);
             // 执行删除节点操作
@@ -260,7 +260,7 @@ public class DevopsClusterNodeOperatorServiceImpl implements DevopsClusterNodeOp
             throw new CommonException(ERROR_DELETE_NODE_FAILED, e);
         } finally {
             devopsClusterService.updateStatusByIdInNewTrans(devopsClusterNodeDTO.getClusterId(), ClusterStatusEnum.DISCONNECT);
-            sshUtil.sshDisconnect(sshClient);
+            sshUtil.sshRelease(sshClient);
         }
     }
 
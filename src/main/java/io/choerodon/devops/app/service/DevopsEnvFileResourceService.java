@@ -1,9 +1,11 @@
 package io.choerodon.devops.app.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 
 public interface DevopsEnvFileResourceService {
 
@@ -24,6 +26,15 @@ public interface DevopsEnvFileResourceService {
 
     List<DevopsEnvFileResourceDTO> baseQueryByEnvIdAndPath(Long envId, String path);
 
+    /**
+     * 一次查出环境下多个文件的解析纪录
+     *
+     * @param envId     环境id
+     * @param filePaths 文件路径
+     * @return 纪录
+     */
+    List<DevopsEnvFileResourceDTO> listByEnvIdAndFilePaths(Long envId, Collection<String> filePaths);
+
     void baseDeleteByEnvIdAndResourceId(Long envId, Long resourceId, String resourceType);
 
     /**
@@ -33,4 +44,12 @@ public interface DevopsEnvFileResourceService {
      * @param envId 环境id
      */
     void deleteByEnvId(Long envId);
+
+    /**
+     * 创建对象文件关系的批量写入, GitOps解析时由调用方创建并传给各个处理器
+     * 审计字段使用当前上下文的用户
+     *
+     * @return 批量写入
+     */
+    DevopsEnvFileResourceBatch beginBatch();
 }
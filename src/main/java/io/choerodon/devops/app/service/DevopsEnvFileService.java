@@ -1,6 +1,8 @@
 package io.choerodon.devops.app.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import io.choerodon.core.domain.Page;
 import io.choerodon.devops.api.vo.DevopsEnvFileErrorVO;
@@ -46,6 +48,16 @@ public interface DevopsEnvFileService {
 
     List<DevopsEnvFileDTO> baseListByEnvIdAndPath(Long envId, String path);
 
+    /**
+     * GitOps解析之后批量更新环境的文件纪录
+     * 一次查出环境下所有的文件纪录, 在内存中比较之后批量插入、更新和删除
+     *
+     * @param envId        环境id
+     * @param fileCommits  解析的文件路径 -> 文件最新的提交
+     * @param deletedFiles 删除的文件路径
+     */
+    void batchUpdateByGitOps(Long envId, Map<String, String> fileCommits, Collection<String> deletedFiles);
+
     /**
      * 根据环境id删除相应的纪录
      * 删除环境时使用
@@ -23,4 +23,13 @@ public interface DevopsEnvResourceDetailService {
      * @return
      */
     List<DevopsEnvResourceDetailDTO> listByMessageIds(Set<Long> resourceDetailIds);
+
+    /**
+     * 批量查询资源的摘要信息, 摘要信息的版本不是summaryVersion的纪录才会查询完整的资源信息
+     *
+     * @param resourceDetailIds 资源详情id
+     * @param summaryVersion    当前的摘要信息版本
+     * @return 资源详情
+     */
+    List<DevopsEnvResourceDetailDTO> listSummariesByMessageIds(Set<Long> resourceDetailIds, Integer summaryVersion);
 }
@@ -6,6 +6,7 @@ import io.choerodon.devops.api.vo.DevopsEnvResourceVO;
 import io.choerodon.devops.api.vo.InstanceEventVO;
 import io.choerodon.devops.api.vo.PodEventVO;
 import io.choerodon.devops.infra.dto.DevopsEnvResourceDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvResourceDetailDTO;
 import io.choerodon.devops.infra.enums.ResourceType;
 
 /**
@@ -22,6 +23,15 @@ public interface DevopsEnvResourceService {
      */
     DevopsEnvResourceVO listResourcesInHelmRelease(Long instanceId);
 
+    /**
+     * 根据资源信息生成摘要信息, 设置到资源详情中, 在保存资源详情之前调用
+     * 生成失败时摘要信息的版本会被置为0, 查询时会解析完整的资源信息
+     *
+     * @param kind                       资源类型
+     * @param devopsEnvResourceDetailDTO 资源详情, message不能为空
+     */
+    void fillResourceSummary(String kind, DevopsEnvResourceDetailDTO devopsEnvResourceDetailDTO);
+
     /**
      * 获取部署实例Event事件
      *
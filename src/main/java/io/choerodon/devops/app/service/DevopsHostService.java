@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
 
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 import io.choerodon.core.domain.Page;
 import io.choerodon.devops.api.vo.*;
 import io.choerodon.devops.infra.dto.DevopsHostDTO;
@@ -176,6 +178,15 @@ public interface DevopsHostService {
 
     CheckingProgressVO getCheckingProgress(Long projectId, String correctKey);
 
+    /**
+     * 推送批量校准主机状态的进度, 进度变化时推送, 所有主机校准完成后结束
+     *
+     * @param projectId  项目id
+     * @param correctKey 批量校准的key
+     * @return 推送进度的emitter
+     */
+    SseEmitter streamCheckingProgress(Long projectId, String correctKey);
+
     Page<DevopsHostVO> pagingWithCheckingStatus(Long projectId, PageRequest pageRequest, String correctKey, String searchParam);
 
     /**
@@ -0,0 +1,98 @@
+package io.choerodon.devops.app.service;
+
+import java.util.Date;
+import java.util.List;
+
+import io.choerodon.devops.api.vo.CountVO;
+import io.choerodon.devops.infra.enums.ProjectDailyMetricEnum;
+
+/**
+ * 项目每天的提交, 部署和流水线触发次数, 供项目概览的图表使用
+ * <p>
+ * 写入提交, 部署命令和流水线记录时累加对应日期的次数, 在事务中调用时事务提交之后才累加.
+ * 删除应用服务的提交和删除实例时减去对应的次数, 和重新统计的结果保持一致.
+ * 部署次数在下发部署命令时累加, 包含失败和处理中的部署.
+ * 日期都由数据库的DATE()计算, 累加和重新统计使用相同的时区.
+ * 累加失败不影响业务, 可以通过 {@link #rebuild()} 根据已有的数据重新统计.
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+public interface DevopsProjectDailyCountService {
+    /**
+     * 累加项目的提交次数
+     *
+     * @param projectId   项目id
+     * @param commitDates 新保存的commit的提交时间
+     */
+    void increaseCommitCount(Long projectId, List<Date> commitDates);
+
+    /**
+     * 累加实例所在项目的部署次数
+     *
+     * @param instanceId 实例id
+     * @param deployDate 部署命令的创建时间
+     */
+    void increaseDeployCount(Long instanceId, Date deployDate);
+
+    /**
+     * 累加流水线所在项目的触发次数
+     *
+     * @param pipelineId  流水线id
+     * @param triggerDate 流水线记录的创建时间
+     */
+    void increaseCiCount(Long pipelineId, Date triggerDate);
+
+    /**
+     * 在新的事务中累加项目的次数
+     *
+     * @param projectId 项目id
+     * @param metric    统计项
+     * @param dates     发生的时间, 每个时间计一次
+     */
+    void increase(Long projectId, ProjectDailyMetricEnum metric, List<Date> dates);
+
+    /**
+     * 减去应用服务的提交次数, 在删除提交的事务中, 删除之前调用
+     *
+     * @param appServiceId 应用服务id
+     */
+    void decreaseCommitCountByAppServiceId(Long appServiceId);
+
+    /**
+     * 减去实例的部署次数, 在删除实例的事务中, 删除之前调用
+     *
+     * @param instanceId 实例id
+     */
+    void decreaseDeployCountByInstanceId(Long instanceId);
+
+    /**
+     * 减去环境下所有实例的部署次数, 在删除实例的事务中, 删除之前调用
+     *
+     * @param envId 环境id
+     */
+    void decreaseDeployCountByEnvId(Long envId);
+
+    /**
+     * 查询项目在时间范围内每天的次数
+     *
+     * @param projectId 项目id
+     * @param metric    统计项
+     * @param startDate 开始日期(包含)
+     * @param endDate   结束日期(包含)
+     * @return 按照日期升序排列的次数, 没有数据的日期不返回
+     */
+    CountVO queryCount(Long projectId, ProjectDailyMetricEnum metric, Date startDate, Date endDate);
+
+    /**
+     * 根据已有的提交, 部署命令和流水线记录重新统计所有项目的次数
+     */
+    void rebuild();
+
+    /**
+     * 重新统计一个项目的次数
+     *
+     * @param projectId 项目id
+     */
+    void rebuildByProjectId(Long projectId);
+}
@@ -1,8 +1,33 @@
 package io.choerodon.devops.app.service;
 
+import javax.annotation.Nullable;
+
+import io.choerodon.devops.infra.dto.DevopsWebhookEventDTO;
+
 public interface GitlabWebHookService {
 
-    void forwardingEventToPortal(String body, String token);
+    /**
+     * 接收应用服务的webhook
+     *
+     * @param body      请求体
+     * @param token     X-Gitlab-Token
+     * @param eventUuid X-Gitlab-Event-UUID, 旧版本的gitlab没有这个请求头, 可以为空
+     */
+    void forwardingEventToPortal(String body, String token, @Nullable String eventUuid);
+
+    /**
+     * 接收环境库的webhook
+     *
+     * @param body      请求体
+     * @param token     X-Gitlab-Token
+     * @param eventUuid X-Gitlab-Event-UUID, 旧版本的gitlab没有这个请求头, 可以为空
+     */
+    void gitOpsWebHook(String body, String token, @Nullable String eventUuid);
 
-    void gitOpsWebHook(String body, String token);
+    /**
+     * 处理队列中保存的webhook事件
+     *
+     * @param event 事件
+     */
+    void processEvent(DevopsWebhookEventDTO event);
 }
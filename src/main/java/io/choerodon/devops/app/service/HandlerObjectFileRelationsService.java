@@ -6,6 +6,7 @@ import java.util.Map;
 import io.kubernetes.client.models.V1Endpoints;
 
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 
 
 /**
@@ -26,12 +27,14 @@ public interface HandlerObjectFileRelationsService<T> {
      * @param projectId   项目id
      * @param path        环境库的本地目录
      * @param userId      用户id
+     * @param fileResourceBatch 对象文件关系的批量写入
      */
     void handlerRelations(Map<String, String> objectPath,
                           List<DevopsEnvFileResourceDTO> beforeSync,
                           List<T> ts,
                           List<V1Endpoints> v1Endpoints,
-                          Long envId, Long projectId, String path, Long userId);
+                          Long envId, Long projectId, String path, Long userId,
+                          DevopsEnvFileResourceBatch fileResourceBatch);
 
     /**
      * 获取目标对象的类型
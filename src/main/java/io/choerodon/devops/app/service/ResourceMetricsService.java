@@ -0,0 +1,61 @@
+package io.choerodon.devops.app.service;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.lang.Nullable;
+
+import io.choerodon.devops.api.vo.AgentNodeInfoVO;
+import io.choerodon.devops.api.vo.MetricsPointVO;
+import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO;
+
+/**
+ * pod和节点监控数据的历史记录
+ *
+ * @author zmf
+ * @since 2020/11/12
+ */
+public interface ResourceMetricsService {
+    /**
+     * 记录pod的cpu和内存使用量
+     *
+     * @param pods Agent发送的实时pod数据
+     */
+    void recordPodMetrics(List<PodMetricsRedisInfoVO> pods);
+
+    /**
+     * 记录节点的资源分配情况
+     *
+     * @param clusterId 集群id
+     * @param nodes     Agent发送的节点数据
+     */
+    void recordNodeMetrics(Long clusterId, List<AgentNodeInfoVO> nodes);
+
+    /**
+     * 查询pod的cpu(单位: m)和内存(单位: Mi)的历史数据
+     *
+     * @param projectId  项目id
+     * @param envId      环境id
+     * @param podId      pod id
+     * @param resolution 精度(raw/1m/5m/1h), 为空时根据时间范围选择
+     * @param startTime  开始时间, 单位: 毫秒, 为空时为结束时间的一个小时之前
+     * @param endTime    结束时间, 单位: 毫秒, 为空时为当前时间
+     * @return 指标名称 -> 按时间排序的点
+     */
+    Map<String, List<MetricsPointVO>> queryPodMetrics(Long projectId, Long envId, Long podId, @Nullable String resolution,
+                                                      @Nullable Long startTime, @Nullable Long endTime);
+
+    /**
+     * 查询节点的资源分配的历史数据, cpu单位为核, 内存单位为字节
+     *
+     * @param projectId  项目id
+     * @param clusterId  集群id
+     * @param nodeName   节点名称
+     * @param resolution 精度(raw/1m/5m/1h), 为空时根据时间范围选择
+     * @param startTime  开始时间, 单位: 毫秒, 为空时为结束时间的一个小时之前
+     * @param endTime    结束时间, 单位: 毫秒, 为空时为当前时间
+     * @return 指标名称 -> 按时间排序的点
+     */
+    Map<String, List<MetricsPointVO>> queryNodeMetrics(Long projectId, Long clusterId, String nodeName, @Nullable String resolution,
+                                                       @Nullable Long startTime, @Nullable Long endTime);
+}
@@ -136,6 +136,8 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
     @Autowired
     private AgentPodService agentPodService;
     @Autowired
+    private ResourceMetricsService resourceMetricsService;
+    @Autowired
     private AgentCommandService agentCommandService;
     @Autowired
     private AppServiceMapper appServiceMapper;
@@ -1349,6 +1351,7 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
             devopsEnvResourceDTO.setCommandId(appServiceInstanceDTO.getCommandId());
         }
         if (oldDevopsEnvResourceDTO == null) {
+            devopsEnvResourceService.fillResourceSummary(devopsEnvResourceDTO.getKind(), devopsEnvResourceDetailDTO);
             devopsEnvResourceDTO.setResourceDetailId(
                     devopsEnvResourceDetailService.baseCreate(devopsEnvResourceDetailDTO).getId());
             devopsEnvResourceService.baseCreate(devopsEnvResourceDTO);
@@ -1373,6 +1376,7 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
             oldDevopsEnvResourceDTO.setReversion(devopsEnvResourceDTO.getReversion());
             devopsEnvResourceDetailDTO.setId(oldDevopsEnvResourceDTO.getResourceDetailId());
             devopsEnvResourceService.baseUpdate(oldDevopsEnvResourceDTO);
+            devopsEnvResourceService.fillResourceSummary(devopsEnvResourceDTO.getKind(), devopsEnvResourceDetailDTO);
             devopsEnvResourceDetailService.baseUpdate(devopsEnvResourceDetailDTO);
         }
 
@@ -2066,7 +2070,9 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
 
     @Override
     public void handleNodeSync(String msg, Long clusterId) {
-        clusterNodeInfoService.setValueForKey(clusterNodeInfoService.getRedisClusterKey(clusterId), JSONArray.parseArray(msg, AgentNodeInfoVO.class));
+        List<AgentNodeInfoVO> agentNodeInfoVOS = JSONArray.parseArray(msg, AgentNodeInfoVO.class);
+        clusterNodeInfoService.setValueForKey(clusterNodeInfoService.getRedisClusterKey(clusterId), agentNodeInfoVOS);
+        resourceMetricsService.recordNodeMetrics(clusterId, agentNodeInfoVOS);
     }
 
 
@@ -2103,6 +2109,7 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
                 podMetricsRedisInfoVOS.add(podMetricsRedisInfoVO);
             });
             agentPodService.handleRealTimePodData(podMetricsRedisInfoVOS);
+            resourceMetricsService.recordPodMetrics(podMetricsRedisInfoVOS);
         }
     }
 
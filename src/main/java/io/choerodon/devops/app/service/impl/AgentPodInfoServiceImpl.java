@@ -7,11 +7,15 @@ import java.util.stream.Collectors;
 import com.alibaba.fastjson.JSON;
 import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.devops.app.service.AgentPodService;
+import io.choerodon.devops.infra.util.TypeUtil;
 
 /**
  * @author zmf
@@ -26,24 +30,47 @@ public class AgentPodInfoServiceImpl implements AgentPodService {
      * 在redis中存的实时数据的最大数量
      */
     private static final long RECORD_SIZE = 30;
+    /**
+     * 一次pipeline中最多写入的pod数量
+     */
+    private static final int PIPELINE_BATCH_SIZE = 500;
+    /**
+     * 快照的紧凑格式: ${snapshotTime毫秒数}|${cpu}|${memory}, 其它字段可以从key中得到
+     */
+    private static final String SEPARATOR = "|";
+    private static final String SEPARATOR_REGEX = "\\|";
+    private static final String JSON_PREFIX = "{";
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 实时数据的过期时间, pod被删除之后数据会在这个时间之后被清理, 单位: 秒
+     */
+    @Value("${devops.pod.metrics.expireSeconds:3600}")
+    private Long expireSeconds;
+
     @Override
     public void handleRealTimePodData(List<PodMetricsRedisInfoVO> pods) {
-        Date snapshotTime = new Date();
-        pods.forEach(pod -> {
-            pod.setSnapShotTime(snapshotTime);
-            String key = String.format(KEY_PATTERN, pod.getName(), pod.getNamespace(), pod.getClusterCode());
-            Long size = stringRedisTemplate.opsForList().size(key);
-            if (size >= RECORD_SIZE) {
-                long stop = size - 1;
-                long start = stop - (RECORD_SIZE - 1) + 1;
-                stringRedisTemplate.opsForList().trim(key, start, stop);
-            }
-            stringRedisTemplate.opsForList().rightPush(key, JSON.toJSONString(pod));
-        });
+        if (pods.isEmpty()) {
+            return;
+        }
+        long snapshotTime = System.currentTimeMillis();
+        // 每个pod的 RPUSH + LTRIM + EXPIRE 在pipeline中批量发送, 不需要等待每条命令的响应
+        for (int from = 0; from < pods.size(); from += PIPELINE_BATCH_SIZE) {
+            List<PodMetricsRedisInfoVO> batch = pods.subList(from, Math.min(from + PIPELINE_BATCH_SIZE, pods.size()));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                batch.forEach(pod -> {
+                    String key = String.format(KEY_PATTERN, pod.getName(), pod.getNamespace(), pod.getClusterCode());
+                    stringRedisConnection.rPush(key, encode(snapshotTime, pod));
+                    // 只保留最新的 RECORD_SIZE 条
+                    stringRedisConnection.lTrim(key, -RECORD_SIZE, -1);
+                    stringRedisConnection.expire(key, expireSeconds);
+                });
+                return null;
+            });
+        }
     }
 
     @Override
@@ -51,7 +78,7 @@ public class AgentPodInfoServiceImpl implements AgentPodService {
         return stringRedisTemplate.opsForList()
                 .range(String.format(KEY_PATTERN, podName, namespace, clusterCode), 0, RECORD_SIZE - 1)
                 .stream()
-                .map(p -> JSON.parseObject(p, PodMetricsRedisInfoVO.class))
+                .map(p -> decode(p, podName, namespace, clusterCode))
                 .collect(Collectors.toList());
     }
 
@@ -59,7 +86,30 @@ public class AgentPodInfoServiceImpl implements AgentPodService {
     @Override
     public PodMetricsRedisInfoVO queryLatestPodSnapshot(String podName, String namespace, String clusterCode) {
         String key = String.format(KEY_PATTERN, podName, namespace, clusterCode);
-        Long size = stringRedisTemplate.opsForList().size(key);
-        return JSON.parseObject(stringRedisTemplate.opsForList().index(key, size - 1), PodMetricsRedisInfoVO.class);
+        return decode(stringRedisTemplate.opsForList().index(key, -1), podName, namespace, clusterCode);
+    }
+
+    private static String encode(long snapshotTime, PodMetricsRedisInfoVO pod) {
+        return snapshotTime + SEPARATOR + pod.getCpu() + SEPARATOR + pod.getMemory();
+    }
+
+    @Nullable
+    private static PodMetricsRedisInfoVO decode(@Nullable String value, String podName, String namespace, String clusterCode) {
+        if (value == null) {
+            return null;
+        }
+        // 兼容升级之前以json格式写入的数据
+        if (value.startsWith(JSON_PREFIX)) {
+            return JSON.parseObject(value, PodMetricsRedisInfoVO.class);
+        }
+        String[] fields = value.split(SEPARATOR_REGEX, -1);
+        PodMetricsRedisInfoVO pod = new PodMetricsRedisInfoVO();
+        pod.setName(podName);
+        pod.setNamespace(namespace);
+        pod.setClusterCode(clusterCode);
+        pod.setSnapShotTime(new Date(TypeUtil.objToLong(fields[0])));
+        pod.setCpu(fields[1]);
+        pod.setMemory(fields[2]);
+        return pod;
     }
 }
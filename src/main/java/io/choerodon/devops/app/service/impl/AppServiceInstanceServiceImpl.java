@@ -59,6 +59,7 @@ import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
 import io.choerodon.devops.infra.gitops.ResourceConvertToYamlHandler;
 import io.choerodon.devops.infra.gitops.ResourceFileCheckHandler;
 import io.choerodon.devops.infra.handler.ClusterConnectionHandler;
+import io.choerodon.devops.infra.handler.ValuesDiffCache;
 import io.choerodon.devops.infra.mapper.*;
 import io.choerodon.devops.infra.util.*;
 import io.choerodon.mybatis.pagehelper.PageHelper;
@@ -131,6 +132,8 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
     @Autowired
     private DevopsDeployRecordService devopsDeployRecordService;
     @Autowired
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
+    @Autowired
     private DevopsProjectMapper devopsProjectMapper;
     @Autowired
     private DevopsHarborUserService devopsHarborUserService;
@@ -151,6 +154,8 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
     private PermissionHelper permissionHelper;
     @Autowired
     private DevopsEnvApplicationService devopsEnvApplicationService;
+    @Autowired
+    private ValuesDiffCache valuesDiffCache;
 
     /**
      * 前端传入的排序字段和Mapper文件中的字段名的映射
@@ -173,7 +178,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
             return null;
         }
         AppServiceInstanceInfoVO appServiceInstanceInfoVO = new AppServiceInstanceInfoVO();
-        List<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterList();
         BeanUtils.copyProperties(appServiceInstanceInfoDTO, appServiceInstanceInfoVO);
         appServiceInstanceInfoVO.setConnect(updatedEnv.contains(appServiceInstanceInfoDTO.getClusterId()));
         return appServiceInstanceInfoVO;
@@ -185,7 +190,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
         Page<AppServiceInstanceInfoVO> pageInfo = ConvertUtils.convertPage(PageHelper.doPageAndSort(PageRequestUtil.getMappedPage(pageable, orderByFieldMap), () -> appServiceInstanceMapper.listInstanceInfoByEnvAndOptions(
                 envId, TypeUtil.cast(maps.get(TypeUtil.SEARCH_PARAM)), TypeUtil.cast(maps.get(TypeUtil.PARAMS)))),
                 AppServiceInstanceInfoVO.class);
-        List<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterList();
         pageInfo.getContent().forEach(appServiceInstanceInfoVO -> {
                     AppServiceDTO appServiceDTO = applicationService.baseQuery(appServiceInstanceInfoVO.getAppServiceId());
                     appServiceInstanceInfoVO.setAppServiceType(applicationService.checkAppServiceType(projectId, appServiceDTO));
@@ -953,6 +958,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
                 .baseQueryByEnvIdAndResourceId(devopsEnvironmentDTO.getId(), instanceId, C7NHELM_RELEASE);
         //如果文件对象对应关系不存在，证明没有部署成功，删掉gitops文件,删掉资源
         if (devopsEnvFileResourceDTO == null) {
+            devopsProjectDailyCountService.decreaseDeployCountByInstanceId(instanceId);
             appServiceInstanceMapper.deleteByPrimaryKey(instanceId);
             devopsDeployRecordService.deleteRelatedRecordOfInstance(instanceId);
             appServiceInstanceMapper.deleteInstanceRelInfo(instanceId);
@@ -969,6 +975,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
             //如果文件对象对应关系存在，但是gitops文件不存在，也直接删掉资源
             if (!gitlabServiceClientOperator.getFile(TypeUtil.objToInteger(devopsEnvironmentDTO.getGitlabEnvProjectId()), MASTER,
                     devopsEnvFileResourceDTO.getFilePath())) {
+                devopsProjectDailyCountService.decreaseDeployCountByInstanceId(instanceId);
                 appServiceInstanceMapper.deleteByPrimaryKey(instanceId);
                 devopsDeployRecordService.deleteRelatedRecordOfInstance(instanceId);
                 appServiceInstanceMapper.deleteInstanceRelInfo(instanceId);
@@ -1032,6 +1039,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
 
         devopsDeployRecordService.deleteRelatedRecordOfInstance(instanceId);
         appServiceInstanceMapper.deleteInstanceRelInfo(instanceId);
+        devopsProjectDailyCountService.decreaseDeployCountByInstanceId(instanceId);
         appServiceInstanceMapper.deleteByPrimaryKey(instanceId);
 
         // 删除prometheus的相关信息
@@ -1091,23 +1099,16 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
             return instanceValueVO;
         }
 
-        String fileName = GenerateUUID.generateUUID() + YAML_SUFFIX;
-        String path = "deployfile";
-        FileUtil.saveDataToFile(path, fileName, versionValue + "\n" + "---" + "\n" + deployValue);
-        InstanceValueVO instanceValueVO;
-        String absoluteFilePath = path + System.getProperty(FILE_SEPARATOR) + fileName;
-        try {
-            instanceValueVO = FileUtil.replaceNew(absoluteFilePath);
-        } catch (Exception e) {
-            FileUtil.deleteFile(absoluteFilePath);
-            throw new CommonException(e.getMessage(), e);
-        }
-        if (instanceValueVO.getHighlightMarkers() == null) {
-            instanceValueVO.setHighlightMarkers(new ArrayList<>());
-        }
-        instanceValueVO.setTotalLine(FileUtil.getFileTotalLine(instanceValueVO.getYaml()));
-        FileUtil.deleteFile(absoluteFilePath);
-        return instanceValueVO;
+        return valuesDiffCache.get(versionValue, deployValue, () -> {
+            InstanceValueVO instanceValueVO;
+            try {
+                instanceValueVO = YamlValuesMergeUtil.merge(versionValue, deployValue);
+            } catch (Exception e) {
+                throw new CommonException(e.getMessage(), e);
+            }
+            instanceValueVO.setTotalLine(FileUtil.getFileTotalLine(instanceValueVO.getYaml()));
+            return instanceValueVO;
+        });
     }
 
     @Override
@@ -1213,6 +1214,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
     public void deleteByEnvId(Long envId) {
         AppServiceInstanceDTO appServiceInstanceDTO = new AppServiceInstanceDTO();
         appServiceInstanceDTO.setEnvId(envId);
+        devopsProjectDailyCountService.decreaseDeployCountByEnvId(envId);
         appServiceInstanceMapper.delete(appServiceInstanceDTO);
     }
 
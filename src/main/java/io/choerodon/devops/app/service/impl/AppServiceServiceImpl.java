@@ -181,6 +181,8 @@ public class AppServiceServiceImpl implements AppServiceService {
     @Autowired
     private AppServiceVersionService appServiceVersionService;
     @Autowired
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
+    @Autowired
     private AppServiceShareRuleMapper appServiceShareRuleMapper;
     @Autowired
     private DevopsGitlabCommitMapper gitlabCommitMapper;
@@ -447,6 +449,7 @@ public class AppServiceServiceImpl implements AppServiceService {
         }
         // 删除应用服务的分支,合并请求，pipeline,commit
         devopsBranchService.deleteAllBaranch(appServiceId);
+        devopsProjectDailyCountService.decreaseCommitCountByAppServiceId(appServiceId);
         gitlabCommitMapper.deleteByAppServiceId(appServiceId);
         mergeRequestMapper.deleteByProjectId(appServiceDTO.getGitlabProjectId());
         gitlabPipelineMapper.deleteByAppServiceId(appServiceId);
@@ -5,9 +5,6 @@ import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toCollection;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -55,16 +52,6 @@ import io.choerodon.mybatis.pagehelper.domain.Sort;
 public class AppServiceVersionServiceImpl implements AppServiceVersionService {
     private static final Logger LOGGER = LoggerFactory.getLogger(AppServiceVersionServiceImpl.class);
 
-    /**
-     * 存储chart包的文件路径模板
-     * devops-应用服务id-版本号-commit值前8位
-     */
-    private static final String DESTINATION_PATH_TEMPLATE = "devops-%s-%s-%s";
-    /**
-     * 解压chart包的文件路径模板
-     * stores-应用服务id-版本号-commit值前8位
-     */
-    private static final String STORE_PATH_TEMPLATE = "stores-%s-%s-%s";
 
     private static final String APP_SERVICE = "appService";
     private static final String CHART = "chart";
@@ -172,39 +159,18 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
 
         newVersion.setRepository(helmUrl.endsWith("/") ? helmUrl + organization.getTenantNum() + "/" + projectDTO.getCode() + "/" : helmUrl + "/" + organization.getTenantNum() + "/" + projectDTO.getCode() + "/");
 
-        // 取commit的一部分作为文件路径
-        String commitPart = commit == null ? "" : commit.substring(0, 8);
-
-        String storeFilePath = String.format(STORE_PATH_TEMPLATE, appServiceDTO.getId(), version, commitPart);
-        String destFilePath = String.format(DESTINATION_PATH_TEMPLATE, appServiceDTO.getId(), version, commitPart);
-
-        String path = FileUtil.multipartFileToFile(storeFilePath, files);
+        // 上传chart包到 chart museum, 同时读取chart包中的values.yaml和README.md
+        ChartArchiveReader chartArchiveReader = chartUtil.uploadChart(helmUrl, organization.getTenantNum(), projectDTO.getCode(), files, helmConfig.getUserName(), helmConfig.getPassword());
 
-        // 上传chart包到 chart museum
-        chartUtil.uploadChart(helmUrl, organization.getTenantNum(), projectDTO.getCode(), new File(path), helmConfig.getUserName(), helmConfig.getPassword());
-
-        FileUtil.unTarGZ(path, destFilePath);
-
-        // 使用深度优先遍历查找文件, 避免查询到子chart的values值
-        File valuesFile = FileUtil.queryFileFromFilesBFS(new File(destFilePath), "values.yaml");
-
-        if (valuesFile == null) {
-            FileUtil.deleteDirectories(storeFilePath, destFilePath);
+        // 只取chart根目录下的values.yaml, 避免取到子chart的values值
+        String values = chartArchiveReader.getValues();
+        if (values == null) {
             throw new CommonException("error.find.values.yaml.in.chart");
         }
 
-        String values;
-        try (FileInputStream fis = new FileInputStream(valuesFile)) {
-            values = FileUtil.replaceReturnString(fis, null);
-        } catch (IOException e) {
-            FileUtil.deleteDirectories(storeFilePath, destFilePath);
-            throw new CommonException(e);
-        }
-
         try {
             FileUtil.checkYamlFormat(values);
         } catch (CommonException e) {
-            FileUtil.deleteDirectories(storeFilePath, destFilePath);
             throw new CommonException("The format of the values.yaml in the chart is invalid!", e);
         }
 
@@ -220,12 +186,11 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
                 newVersion.setValueId(appServiceVersionValueService
                         .baseCreate(appServiceVersionValueDTO).getId());
             } catch (Exception e) {
-                FileUtil.deleteDirectories(storeFilePath, destFilePath);
                 throw new CommonException(ERROR_VERSION_INSERT, e);
             }
 
             AppServiceVersionReadmeDTO appServiceVersionReadmeDTO = new AppServiceVersionReadmeDTO();
-            appServiceVersionReadmeDTO.setReadme(FileUtil.getReadme(destFilePath));
+            appServiceVersionReadmeDTO.setReadme(chartArchiveReader.getReadme() == null ? "# 暂无" : chartArchiveReader.getReadme());
             appServiceVersionReadmeMapper.insert(appServiceVersionReadmeDTO);
 
             newVersion.setReadmeValueId(appServiceVersionReadmeDTO.getId());
@@ -234,8 +199,6 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
             checkAutoDeploy(newVersion);
         }
 
-
-        FileUtil.deleteDirectories(destFilePath, storeFilePath);
         //生成版本成功后发送webhook json
         sendNotificationService.sendWhenAppServiceVersion(newVersion, appServiceDTO, projectDTO);
     }
@@ -390,7 +390,7 @@ public class CertificationServiceImpl implements CertificationService {
     @Override
     public Page<CertificationVO> pageByOptions(Long projectId, Long envId, PageRequest pageable, String params) {
         Page<CertificationVO> certificationDTOPage = ConvertUtils.convertPage(basePage(null, envId, pageable, params), this::dtoToVo);
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         certificationDTOPage.getContent().stream()
                 .filter(certificationDTO -> certificationDTO.getOrganizationId() == null)
                 .forEach(certificationDTO -> {
@@ -27,6 +27,7 @@ import io.choerodon.devops.infra.dto.workflow.DevopsPipelineDTO;
 import io.choerodon.devops.infra.enums.*;
 import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.WorkFlowServiceOperator;
+import io.choerodon.devops.infra.handler.FanOutAggregator;
 import io.choerodon.devops.infra.mapper.*;
 import io.choerodon.devops.infra.util.CiCdPipelineUtils;
 import io.choerodon.devops.infra.util.ConvertUtils;
@@ -78,6 +79,8 @@ public class CiCdPipelineRecordServiceImpl implements CiCdPipelineRecordService
 
     @Autowired
     private DevopsPipelineRecordRelService devopsPipelineRecordRelService;
+    @Autowired
+    private FanOutAggregator fanOutAggregator;
 
     @Autowired
     private DevopsPipelineRecordRelMapper devopsPipelineRecordRelMapper;
@@ -103,8 +106,13 @@ public class CiCdPipelineRecordServiceImpl implements CiCdPipelineRecordService
         DevopsPipelineRecordRelVO devopsPipelineRecordRelVO = relDtoToRelVO(devopsPipelineRecordRelDTO);
         CiCdPipelineRecordVO ciCdPipelineRecordVO = new CiCdPipelineRecordVO();
         ciCdPipelineRecordVO.setDevopsPipelineRecordRelId(devopsPipelineRecordRelVO.getId());
-        DevopsCiPipelineRecordVO devopsCiPipelineRecordVO = devopsCiPipelineRecordService.queryPipelineRecordDetails(projectId, devopsPipelineRecordRelVO.getCiPipelineRecordId());
-        DevopsCdPipelineRecordVO devopsCdPipelineRecordVO = devopsCdPipelineRecordService.queryPipelineRecordDetails(projectId, devopsPipelineRecordRelVO.getCdPipelineRecordId());
+        // ci和cd的记录详情互相独立, 并发查询
+        FanOutAggregator.Call<DevopsCiPipelineRecordVO> ciRecordCall = fanOutAggregator.submit("pipeline-ci-record-details",
+                () -> devopsCiPipelineRecordService.queryPipelineRecordDetails(projectId, devopsPipelineRecordRelVO.getCiPipelineRecordId()));
+        FanOutAggregator.Call<DevopsCdPipelineRecordVO> cdRecordCall = fanOutAggregator.submit("pipeline-cd-record-details",
+                () -> devopsCdPipelineRecordService.queryPipelineRecordDetails(projectId, devopsPipelineRecordRelVO.getCdPipelineRecordId()));
+        DevopsCiPipelineRecordVO devopsCiPipelineRecordVO = ciRecordCall.get();
+        DevopsCdPipelineRecordVO devopsCdPipelineRecordVO = cdRecordCall.get();
         //ci和cd都有记录
         List<StageRecordVO> stageRecordVOS = new ArrayList<>();
         if (devopsCiPipelineRecordVO != null && devopsCdPipelineRecordVO != null) {
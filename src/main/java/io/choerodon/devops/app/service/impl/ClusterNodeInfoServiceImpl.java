@@ -1,10 +1,7 @@
 package io.choerodon.devops.app.service.impl;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import com.alibaba.fastjson.JSONObject;
@@ -12,6 +9,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
@@ -44,6 +43,14 @@ import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 @Service
 public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
     private static final String REDIS_CLUSTER_KEY_TEMPLATE = "node_info_project_id_%s_cluster_id_%s";
+    /**
+     * 节点信息的hash, field为节点名称, value为节点信息的json
+     */
+    private static final String NODES_KEY_SUFFIX = "_nodes";
+    /**
+     * 节点名称的zset, score为Agent上报时的顺序, 用于分页
+     */
+    private static final String INDEX_KEY_SUFFIX = "_index";
     private static final String CPU_MEASURE_FORMAT = "%.2f";
     private static final String MEMORY_MEASURE_FORMAT = "%.2f%s";
     private static final String[] MEMORY_MEASURE = {"Ki", "Ki", "Mi", "Gi"};
@@ -78,8 +85,65 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
     @Override
     public void setValueForKey(String redisClusterKey, List<AgentNodeInfoVO> agentNodeInfoVOS) {
-        stringRedisTemplate.delete(redisClusterKey);
-        stringRedisTemplate.opsForList().rightPushAll(redisClusterKey, agentNodeInfoVOS.stream().map(this::node2JsonString).collect(Collectors.toList()));
+        String nodesKey = redisClusterKey + NODES_KEY_SUFFIX;
+        String indexKey = redisClusterKey + INDEX_KEY_SUFFIX;
+
+        Map<String, String> nodes = new LinkedHashMap<>();
+        agentNodeInfoVOS.forEach(node -> nodes.put(node.getNodeName(), node2JsonString(node)));
+
+        // 只写入有变化的节点, 删除不存在的节点
+        Map<Object, Object> previousNodes = stringRedisTemplate.opsForHash().entries(nodesKey);
+        Map<String, String> changedNodes = new HashMap<>();
+        nodes.forEach((name, json) -> {
+            if (!json.equals(previousNodes.get(name))) {
+                changedNodes.put(name, json);
+            }
+        });
+        String[] removedNodes = previousNodes.keySet().stream()
+                .map(String::valueOf)
+                .filter(name -> !nodes.containsKey(name))
+                .toArray(String[]::new);
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            if (!changedNodes.isEmpty()) {
+                stringRedisConnection.hMSet(nodesKey, changedNodes);
+            }
+            if (removedNodes.length > 0) {
+                stringRedisConnection.hDel(nodesKey, removedNodes);
+                stringRedisConnection.zRem(indexKey, removedNodes);
+            }
+            int order = 0;
+            for (String name : nodes.keySet()) {
+                stringRedisConnection.zAdd(indexKey, order++, name);
+            }
+            // 删除之前以list存储的数据
+            stringRedisConnection.del(redisClusterKey);
+            return null;
+        });
+    }
+
+    /**
+     * 根据节点名称批量查询节点信息
+     *
+     * @param redisClusterKey 集群的key
+     * @param nodeNames       节点名称
+     * @return 节点名称 -> 节点信息, 不包含查询不到的节点
+     */
+    private Map<String, ClusterNodeInfoVO> multiGetNodes(String redisClusterKey, Collection<String> nodeNames) {
+        Map<String, ClusterNodeInfoVO> result = new LinkedHashMap<>();
+        if (nodeNames.isEmpty()) {
+            return result;
+        }
+        List<Object> fields = new ArrayList<>(nodeNames);
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(redisClusterKey + NODES_KEY_SUFFIX, fields);
+        for (int i = 0; i < fields.size(); i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                result.put(String.valueOf(fields.get(i)), JSONObject.parseObject(String.valueOf(value), ClusterNodeInfoVO.class));
+            }
+        }
+        return result;
     }
 
     private void setCpuPercentage(ClusterNodeInfoVO node) {
@@ -167,7 +231,7 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
         Page<ClusterNodeInfoVO> result = new Page<>();
         DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(clusterId);
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
         String redisKey = getRedisClusterKey(clusterId, projectId);
         List<ClusterNodeInfoVO> nodes = new ArrayList<>();
 
@@ -177,14 +241,8 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
             // 查询为node添加id需要的数据
             List<DevopsClusterNodeDTO> outerNodes = devopsClusterNodeService.queryNodeByClusterIdAndType(clusterId, ClusterNodeTypeEnum.OUTTER);
-            Map<String, ClusterNodeInfoVO> redisNodeInfoMap = stringRedisTemplate
-                    .opsForList()
-                    .range(redisKey, 0, nodeDTOS.size())
-                    .stream()
-                    .map(node -> {
-                        return JSONObject.parseObject(node, ClusterNodeInfoVO.class);
-                    })
-                    .collect(Collectors.toMap(ClusterNodeInfoVO::getNodeName, v -> v));
+            Map<String, ClusterNodeInfoVO> redisNodeInfoMap = multiGetNodes(redisKey,
+                    nodeDTOS.getContent().stream().map(DevopsClusterNodeDTO::getName).collect(Collectors.toList()));
 
             List<ClusterNodeInfoVO> nodeInfoVOS = nodeDTOS.stream().map(node -> {
                 ClusterNodeInfoVO clusterNodeInfoVO = new ClusterNodeInfoVO();
@@ -251,16 +309,9 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
             long start = (long) (pageable.getPage()) * (long) pageable.getSize();
             // stop不怕越界， redis会将边界之前的最后的那些元素返回
             long stop = start + (long) pageable.getSize() - 1;
-            nodes = stringRedisTemplate
-                    .opsForList()
-                    .range(redisKey, start, stop)
-                    .stream()
-                    .map(node -> {
-                        ClusterNodeInfoVO clusterNodeInfoVO = JSONObject.parseObject(node, ClusterNodeInfoVO.class);
-                        return clusterNodeInfoVO;
-                    })
-                    .collect(Collectors.toList());
-            long total = stringRedisTemplate.opsForList().size(redisKey);
+            Set<String> nodeNames = stringRedisTemplate.opsForZSet().range(redisKey + INDEX_KEY_SUFFIX, start, stop);
+            nodes = new ArrayList<>(multiGetNodes(redisKey, nodeNames == null ? Collections.<String>emptyList() : nodeNames).values());
+            long total = countNodes(projectId, clusterId);
 
 
             if (total < pageable.getSize() * pageable.getPage()) {
@@ -286,17 +337,8 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
         }
 
         String redisKey = getRedisClusterKey(clusterId, projectId);
-        long total = stringRedisTemplate.opsForList().size(redisKey);
-
-        // get all nodes according to the cluster id and filter the node with the certain name
-        return stringRedisTemplate
-                .opsForList()
-                .range(redisKey, 0, total - 1)
-                .stream()
-                .map(node -> JSONObject.parseObject(node, ClusterNodeInfoVO.class))
-                .filter(node -> nodeName.equals(node.getNodeName()))
-                .findFirst()
-                .orElse(null);
+        Object node = stringRedisTemplate.opsForHash().get(redisKey + NODES_KEY_SUFFIX, nodeName);
+        return node == null ? null : JSONObject.parseObject(String.valueOf(node), ClusterNodeInfoVO.class);
     }
 
     @Override
@@ -305,22 +347,17 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
         String rediskey = getRedisClusterKey(clusterId, devopsClusterDTO.getProjectId());
 
-        long total = stringRedisTemplate.opsForList().size(rediskey);
-
-        return Objects.requireNonNull(stringRedisTemplate
-                .opsForList()
-                .range(rediskey, 0, total - 1))
-                .stream()
-                .map(node -> JSONObject.parseObject(node, ClusterNodeInfoVO.class))
-                .map(ClusterNodeInfoVO::getNodeName)
-                .collect(Collectors.toList());
+        // 节点名称直接从索引中读取, 不需要解析节点信息
+        return new ArrayList<>(Objects.requireNonNull(stringRedisTemplate
+                .opsForZSet()
+                .range(rediskey + INDEX_KEY_SUFFIX, 0, -1)));
 
     }
 
     @Override
     public long countNodes(Long projectId, Long clusterId) {
         String key = getRedisClusterKey(clusterId, projectId);
-        Long count = stringRedisTemplate.opsForList().size(key);
+        Long count = stringRedisTemplate.opsForZSet().zCard(key + INDEX_KEY_SUFFIX);
         return count == null ? 0 : count;
     }
 }
@@ -301,7 +301,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
         LOGGER.info("========================================");
         LOGGER.info("start image deploy cd host job,pipelineRecordId:{},cdStageRecordId:{},cdJobRecordId{}", pipelineRecordId, cdStageRecordId, cdJobRecordId);
         Boolean status = true;
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         String deployVersion = null;
         CdHostDeployConfigVO cdHostDeployConfigVO = new CdHostDeployConfigVO();
@@ -362,7 +362,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobRecordDTO.setDeployMetadata(gson.toJson(c7nImageDeployDTO));
             devopsCdJobRecordService.update(jobRecordDTO);
             // 2.
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             // 3.
             // 3.1
             sshUtil.dockerLogin(ssh, c7nImageDeployDTO, log);
@@ -457,7 +457,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
     public Boolean cdHostJarDeploy(Long pipelineRecordId, Long cdStageRecordId, Long cdJobRecordId) {
         LOGGER.info("========================================");
         LOGGER.info("start jar deploy cd host job,pipelineRecordId:{},cdStageRecordId:{},cdJobRecordId{}", pipelineRecordId, cdStageRecordId, cdJobRecordId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         Boolean status = true;
         StringBuilder log = new StringBuilder();
         DevopsCdJobRecordDTO jobRecordDTO = new DevopsCdJobRecordDTO();
@@ -523,7 +523,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobRecordDTO.setDeployMetadata(gson.toJson(c7nNexusDeployDTO));
             devopsCdJobRecordService.update(jobRecordDTO);
 
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
 
             // 2. 执行jar部署
             sshStopJar(ssh, jobRecordDTO.getJobId(), jarDeploy, log);
@@ -585,7 +585,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
     public Boolean cdHostCustomDeploy(Long pipelineRecordId, Long cdStageRecordId, Long cdJobRecordId) {
         LOGGER.info("========================================");
         LOGGER.info("start custom deploy cd host job,pipelineRecordId:{},cdStageRecordId:{},cdJobRecordId{}", pipelineRecordId, cdStageRecordId, cdJobRecordId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         Boolean status = true;
         StringBuilder log = new StringBuilder();
         try {
@@ -593,7 +593,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             DevopsCdJobRecordDTO jobRecordDTO = devopsCdJobRecordMapper.selectByPrimaryKey(cdJobRecordId);
             CdHostDeployConfigVO cdHostDeployConfigVO = gson.fromJson(jobRecordDTO.getMetadata(), CdHostDeployConfigVO.class);
             String value = new String(decoder.decodeBuffer(cdHostDeployConfigVO.getCustomize().getValues()), "UTF-8");
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             sshExecCustom(ssh, value, log);
             devopsCdJobRecordService.updateStatusById(cdJobRecordId, PipelineStatus.SUCCESS.toValue());
         } catch (Exception e) {
@@ -741,10 +741,11 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             if (session != null) {
                 session.close();
             }
-            ssh.disconnect();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        // 连接归还到连接池, 不断开
+        sshUtil.sshRelease(ssh);
     }
 
     private String getJarName(String url) {
@@ -811,10 +812,10 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
         CdHostDeployConfigVO cdHostDeployConfigVO = gson.fromJson(cdJobRecordDTO.getMetadata(), CdHostDeployConfigVO.class);
         CdHostDeployConfigVO.ImageDeploy imageDeploy = cdHostDeployConfigVO.getImageDeploy();
         C7nImageDeployDTO imageTagVoRecord = gson.fromJson(cdJobRecordDTO.getDeployMetadata(), C7nImageDeployDTO.class);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         try {
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             sshUtil.dockerLogin(ssh, imageTagVoRecord, log);
             sshUtil.dockerPull(ssh, imageTagVoRecord, log);
             sshUtil.dockerStop(ssh, imageDeploy.getContainerName(), log);
@@ -835,10 +836,10 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
         devopsCdJobRecordService.updateStatusById(cdJobRecordId, PipelineStatus.RUNNING.toValue());
         CdHostDeployConfigVO cdHostDeployConfigVO = gson.fromJson(cdJobRecordDTO.getMetadata(), CdHostDeployConfigVO.class);
         C7nNexusDeployDTO c7nNexusDeployDTO = gson.fromJson(cdJobRecordDTO.getDeployMetadata(), C7nNexusDeployDTO.class);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         try {
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             // 2.1
             sshStopJar(ssh, cdJobRecordDTO.getJobId(), cdHostDeployConfigVO.getJarDeploy(), log);
             sshExec(ssh, c7nNexusDeployDTO, cdHostDeployConfigVO.getJarDeploy(), log);
@@ -1161,15 +1162,15 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
 
     @Override
     public Boolean testConnection(HostConnectionVO hostConnectionVO) {
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         Session session = null;
         Boolean index = true;
         try {
-            sshUtil.sshConnect(hostConnectionVO, ssh);
+            ssh = sshUtil.sshConnect(hostConnectionVO);
             session = ssh.startSession();
             Session.Command cmd = session.exec("echo Hello World!!!");
-            LOGGER.info(IOUtils.readFully(cmd.getInputStream()).toString());
             cmd.join(5, TimeUnit.SECONDS);
+            LOGGER.info(IOUtils.readFully(cmd.getInputStream()).toString());
             LOGGER.info("\n** exit status: " + cmd.getExitStatus());
             if (cmd.getExitStatus() != 0) {
                 throw new CommonException("error.test.connection");
@@ -20,6 +20,7 @@ import io.choerodon.devops.app.service.AppServiceVersionService;
 import io.choerodon.devops.app.service.DevopsCdAuditRecordService;
 import io.choerodon.devops.app.service.DevopsCdAuditService;
 import io.choerodon.devops.app.service.DevopsCheckLogService;
+import io.choerodon.devops.app.service.DevopsProjectDailyCountService;
 import io.choerodon.devops.infra.dto.DevopsCheckLogDTO;
 import io.choerodon.devops.infra.mapper.DevopsCheckLogMapper;
 import io.choerodon.devops.infra.mapper.PipelineTaskMapper;
@@ -45,6 +46,8 @@ public class DevopsCheckLogServiceImpl implements DevopsCheckLogService {
     private DevopsCdAuditService devopsCdAuditService;
     @Autowired
     private DevopsCdAuditRecordService devopsCdAuditRecordService;
+    @Autowired
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
 
     @Override
     public void checkLog(String version) {
@@ -93,6 +96,10 @@ public class DevopsCheckLogServiceImpl implements DevopsCheckLogService {
                     devopsCdAuditService.fixProjectId();
                     devopsCdAuditRecordService.fixProjectId();
                     LOGGER.info("修复数据完成!!!!!!");
+                } else if ("0.24.0".equals(version)) {
+                    LOGGER.info("修复数据开始");
+                    devopsProjectDailyCountService.rebuild();
+                    LOGGER.info("修复数据完成!!!!!!");
                 } else {
                     LOGGER.info("version not matched");
                 }
@@ -4,15 +4,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.api.vo.DevopsCiContentVO;
 import io.choerodon.devops.app.service.DevopsCiContentService;
 import io.choerodon.devops.infra.dto.CiCdPipelineDTO;
 import io.choerodon.devops.infra.dto.DevopsCiContentDTO;
 import io.choerodon.devops.infra.exception.DevopsCiInvalidException;
+import io.choerodon.devops.infra.handler.CiContentCache;
 import io.choerodon.devops.infra.mapper.DevopsCiContentMapper;
 import io.choerodon.devops.infra.mapper.DevopsCiCdPipelineMapper;
 
@@ -36,6 +39,7 @@ public class DevopsCiContentServiceImpl implements DevopsCiContentService {
     private static final String DEFAULT_EMPTY_GITLAB_CI_FILE_CONTENT;
     private DevopsCiContentMapper devopsCiContentMapper;
     private DevopsCiCdPipelineMapper devopsCiCdPipelineMapper;
+    private CiContentCache ciContentCache;
 
 
     static {
@@ -47,21 +51,29 @@ public class DevopsCiContentServiceImpl implements DevopsCiContentService {
         }
     }
 
-    public DevopsCiContentServiceImpl(DevopsCiContentMapper devopsCiContentMapper, DevopsCiCdPipelineMapper devopsCiCdPipelineMapper) {
+    public DevopsCiContentServiceImpl(DevopsCiContentMapper devopsCiContentMapper, DevopsCiCdPipelineMapper devopsCiCdPipelineMapper, CiContentCache ciContentCache) {
         this.devopsCiContentMapper = devopsCiContentMapper;
         this.devopsCiCdPipelineMapper = devopsCiCdPipelineMapper;
+        this.ciContentCache = ciContentCache;
     }
 
     @Override
     public String queryLatestContent(String pipelineToken) {
-        CiCdPipelineDTO devopsCiPipelineDTO = devopsCiCdPipelineMapper.queryByToken(pipelineToken);
-        if (devopsCiPipelineDTO == null) {
-            throw new DevopsCiInvalidException(ERROR_PIPELINE_TOKEN_MISMATCH);
-        }
-        if (Boolean.FALSE.equals(devopsCiPipelineDTO.getEnabled())) {
-            return DEFAULT_EMPTY_GITLAB_CI_FILE_CONTENT;
-        }
-        return devopsCiContentMapper.queryLatestContent(devopsCiPipelineDTO.getId());
+        return queryLatestContentWithETag(pipelineToken).getCiContentFile();
+    }
+
+    @Override
+    public DevopsCiContentVO queryLatestContentWithETag(String pipelineToken) {
+        return ciContentCache.get(pipelineToken, () -> {
+            CiCdPipelineDTO devopsCiPipelineDTO = devopsCiCdPipelineMapper.queryByToken(pipelineToken);
+            if (devopsCiPipelineDTO == null) {
+                throw new DevopsCiInvalidException(ERROR_PIPELINE_TOKEN_MISMATCH);
+            }
+            String content = Boolean.FALSE.equals(devopsCiPipelineDTO.getEnabled())
+                    ? DEFAULT_EMPTY_GITLAB_CI_FILE_CONTENT
+                    : devopsCiContentMapper.queryLatestContent(devopsCiPipelineDTO.getId());
+            return new DevopsCiContentVO(devopsCiPipelineDTO.getId(), content, content == null ? null : "\"" + DigestUtils.sha256Hex(content) + "\"");
+        });
     }
 
     @Override
@@ -69,6 +81,12 @@ public class DevopsCiContentServiceImpl implements DevopsCiContentService {
         if (devopsCiContentMapper.insertSelective(devopsCiContentDTO) != 1) {
             throw new CommonException(CREATE_CI_CONTENT_FAILED);
         }
+        ciContentCache.evict(devopsCiContentDTO.getCiPipelineId());
+    }
+
+    @Override
+    public void evictCache(Long ciPipelineId) {
+        ciContentCache.evict(ciPipelineId);
     }
 
     @Override
@@ -80,5 +98,6 @@ public class DevopsCiContentServiceImpl implements DevopsCiContentService {
         DevopsCiContentDTO devopsCiContentDTO = new DevopsCiContentDTO();
         devopsCiContentDTO.setCiPipelineId(ciPipelineId);
         devopsCiContentMapper.delete(devopsCiContentDTO);
+        ciContentCache.evict(ciPipelineId);
     }
 }
@@ -1,8 +1,7 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.context.annotation.Lazy;
@@ -58,6 +57,15 @@ public class DevopsCiJobRecordServiceImpl implements DevopsCiJobRecordService {
         return devopsCiJobRecordMapper.selectOne(devopsCiJobRecordDTO);
     }
 
+    @Override
+    public Map<Long, DevopsCiJobRecordDTO> listByGitlabJobIds(Collection<Long> gitlabJobIds) {
+        if (CollectionUtils.isEmpty(gitlabJobIds)) {
+            return new HashMap<>();
+        }
+        return devopsCiJobRecordMapper.listByGitlabJobIds(gitlabJobIds).stream()
+                .collect(Collectors.toMap(DevopsCiJobRecordDTO::getGitlabJobId, Function.identity(), (oldValue, newValue) -> newValue));
+    }
+
     @Override
     public void update(JobWebHookVO jobWebHookVO) {
         DevopsCiJobRecordDTO recordDTO = new DevopsCiJobRecordDTO();
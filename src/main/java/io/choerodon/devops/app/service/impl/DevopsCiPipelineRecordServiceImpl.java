@@ -62,6 +62,10 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
     private static final Logger LOGGER = LoggerFactory.getLogger(DevopsCiPipelineRecordServiceImpl.class);
 
 
+    /**
+     * job纪录因为并发更新而更新失败时的最大重试次数
+     */
+    private static final int MAX_JOB_RECORD_UPDATE_RETRIES = 3;
     private static final String ERROR_PIPELINE_ID_IS_NULL = "error.pipeline.id.is.null";
     private static final String ERROR_GITLAB_PIPELINE_ID_IS_NULL = "error.gitlab.pipeline.id.is.null";
     private static final String ERROR_GITLAB_PROJECT_ID_IS_NULL = "error.gitlab.project.id.is.null";
@@ -338,6 +342,13 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
         handUpdate(appServiceDTO, pipelineRecordId, gitlabPipelineIdLong, pipelineDTO, jobDTOList);
     }
 
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void syncPipelineRecord(AppServiceDTO appServiceDTO, Long pipelineRecordId, Long gitlabPipelineId, GitlabPipelineDTO gitlabPipelineDTO, List<JobDTO> jobs) {
+        AssertUtils.notNull(pipelineRecordId, "pipelineRecordId shouldn't be null");
+        handUpdate(appServiceDTO, pipelineRecordId, gitlabPipelineId, gitlabPipelineDTO, jobs);
+    }
+
     private void handUpdate(AppServiceDTO appServiceDTO, Long pipelineRecordId, Long gitlabPipelineId, GitlabPipelineDTO gitlabPipelineDTO, List<JobDTO> jobs) {
         CiCdPipelineDTO devopsCiPipelineDTO = devopsCiPipelineService.queryByAppSvcId(appServiceDTO.getId());
 
@@ -389,9 +400,22 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
     }
 
     private void saveJobRecords(Long gitlabProjectId, Long pipelineRecordId, List<JobDTO> jobs, Map<Integer, String> jobType) {
+        if (CollectionUtils.isEmpty(jobs)) {
+            return;
+        }
+        // 一次查出所有已存在的job记录, 只插入新的job, 只更新状态有变化的job
+        Map<Long, DevopsCiJobRecordDTO> existedRecords = devopsCiJobRecordService.listByGitlabJobIds(
+                jobs.stream().map(job -> TypeUtil.objToLong(job.getId())).collect(Collectors.toSet()));
+        Map<String, Long> iamUserIds = new HashMap<>();
+        Map<Long, JobDTO> updatedJobs = new HashMap<>();
+        List<DevopsCiJobRecordDTO> toInsert = new ArrayList<>();
+        List<DevopsCiJobRecordDTO> toUpdate = new ArrayList<>();
+        Long auditUserId = DetailsHelper.getUserDetails() == null ? 0L : DetailsHelper.getUserDetails().getUserId();
+        Date now = new Date();
         jobs.forEach(ciJobWebHookVO -> {
             Long jobId = TypeUtil.objToLong(ciJobWebHookVO.getId());
-            DevopsCiJobRecordDTO devopsCiJobRecordDTO = devopsCiJobRecordService.queryByGitlabJobId(jobId);
+            Long triggerUserId = iamUserIds.computeIfAbsent(ciJobWebHookVO.getUser().getUsername(), this::getIamUserIdByGitlabUserName);
+            DevopsCiJobRecordDTO devopsCiJobRecordDTO = existedRecords.get(jobId);
             if (devopsCiJobRecordDTO == null) {
                 LOGGER.debug("Start to create job with gitlab job id {}...", ciJobWebHookVO.getId());
                 devopsCiJobRecordDTO = new DevopsCiJobRecordDTO();
@@ -404,18 +428,91 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
                 devopsCiJobRecordDTO.setName(ciJobWebHookVO.getName());
                 devopsCiJobRecordDTO.setStatus(ciJobWebHookVO.getStatus().toValue());
                 devopsCiJobRecordDTO.setGitlabProjectId(gitlabProjectId);
-                devopsCiJobRecordDTO.setTriggerUserId(getIamUserIdByGitlabUserName(ciJobWebHookVO.getUser().getUsername()));
-                devopsCiJobRecordMapper.insertSelective(devopsCiJobRecordDTO);
-            } else {
+                devopsCiJobRecordDTO.setTriggerUserId(triggerUserId);
+                devopsCiJobRecordDTO.setCreatedBy(auditUserId);
+                devopsCiJobRecordDTO.setCreationDate(now);
+                devopsCiJobRecordDTO.setLastUpdatedBy(auditUserId);
+                devopsCiJobRecordDTO.setLastUpdateDate(now);
+                devopsCiJobRecordDTO.setObjectVersionNumber(1L);
+                toInsert.add(devopsCiJobRecordDTO);
+                // 同一个job只插入一次
+                existedRecords.put(jobId, devopsCiJobRecordDTO);
+            } else if (devopsCiJobRecordDTO.getId() != null
+                    && applyJobStatus(devopsCiJobRecordDTO, ciJobWebHookVO, pipelineRecordId, triggerUserId)) {
                 LOGGER.debug("Start to update job with gitlab job id {}...", ciJobWebHookVO.getId());
-                devopsCiJobRecordDTO.setCiPipelineRecordId(pipelineRecordId);
-                devopsCiJobRecordDTO.setStartedDate(ciJobWebHookVO.getStartedAt());
-                devopsCiJobRecordDTO.setFinishedDate(ciJobWebHookVO.getFinishedAt());
-                devopsCiJobRecordDTO.setStatus(ciJobWebHookVO.getStatus().toValue());
-                devopsCiJobRecordDTO.setTriggerUserId(getIamUserIdByGitlabUserName(ciJobWebHookVO.getUser().getUsername()));
-                MapperUtil.resultJudgedUpdateByPrimaryKeySelective(devopsCiJobRecordMapper, devopsCiJobRecordDTO, "error.update.ci.job.record", ciJobWebHookVO.getId());
+                devopsCiJobRecordDTO.setLastUpdatedBy(auditUserId);
+                toUpdate.add(devopsCiJobRecordDTO);
+                updatedJobs.put(jobId, ciJobWebHookVO);
             }
         });
+        if (!toInsert.isEmpty()) {
+            devopsCiJobRecordMapper.batchInsert(toInsert);
+        }
+        updateJobRecords(pipelineRecordId, toUpdate, updatedJobs, iamUserIds, auditUserId);
+    }
+
+    /**
+     * 批量更新job纪录的状态, 查询之后被webhook等并发更新的纪录重新查询最新的版本后再次更新
+     *
+     * @param pipelineRecordId 流水线纪录id
+     * @param toUpdate         需要更新的纪录
+     * @param updatedJobs      gitlab job id和gitlab中job的映射
+     * @param iamUserIds       gitlab用户名和猪齿鱼用户id的映射
+     * @param auditUserId      审计用户id
+     */
+    private void updateJobRecords(Long pipelineRecordId, List<DevopsCiJobRecordDTO> toUpdate, Map<Long, JobDTO> updatedJobs,
+                                  Map<String, Long> iamUserIds, Long auditUserId) {
+        int attempt = 0;
+        while (!toUpdate.isEmpty()) {
+            int updated = devopsCiJobRecordMapper.batchUpdateStatus(toUpdate);
+            if (updated >= toUpdate.size()) {
+                return;
+            }
+            if (++attempt > MAX_JOB_RECORD_UPDATE_RETRIES) {
+                LOGGER.warn("{} of {} job records of pipeline record {} were still updated concurrently after {} retries, leave them to the next sync",
+                        toUpdate.size() - updated, toUpdate.size(), pipelineRecordId, MAX_JOB_RECORD_UPDATE_RETRIES);
+                return;
+            }
+            LOGGER.warn("{} of {} job records of pipeline record {} were updated concurrently, re-read and retry",
+                    toUpdate.size() - updated, toUpdate.size(), pipelineRecordId);
+            // 不能区分哪些纪录更新成功, 重新查询所有纪录, 已经是最新状态的纪录在比较时会被跳过
+            Map<Long, DevopsCiJobRecordDTO> latestRecords = devopsCiJobRecordService.listByGitlabJobIds(
+                    toUpdate.stream().map(DevopsCiJobRecordDTO::getGitlabJobId).collect(Collectors.toSet()));
+            List<DevopsCiJobRecordDTO> retries = new ArrayList<>();
+            latestRecords.forEach((jobId, devopsCiJobRecordDTO) -> {
+                JobDTO job = updatedJobs.get(jobId);
+                if (job != null && applyJobStatus(devopsCiJobRecordDTO, job, pipelineRecordId, iamUserIds.get(job.getUser().getUsername()))) {
+                    devopsCiJobRecordDTO.setLastUpdatedBy(auditUserId);
+                    retries.add(devopsCiJobRecordDTO);
+                }
+            });
+            toUpdate = retries;
+        }
+    }
+
+    /**
+     * 把gitlab中job的状态设置到job纪录中
+     *
+     * @return 纪录有变化时返回true
+     */
+    private boolean applyJobStatus(DevopsCiJobRecordDTO devopsCiJobRecordDTO, JobDTO job, Long pipelineRecordId, Long triggerUserId) {
+        // 和选择性更新一致, 为空的时间不覆盖原有的值
+        Date startedDate = job.getStartedAt() == null ? devopsCiJobRecordDTO.getStartedDate() : job.getStartedAt();
+        Date finishedDate = job.getFinishedAt() == null ? devopsCiJobRecordDTO.getFinishedDate() : job.getFinishedAt();
+        String status = job.getStatus().toValue();
+        if (Objects.equals(pipelineRecordId, devopsCiJobRecordDTO.getCiPipelineRecordId())
+                && Objects.equals(status, devopsCiJobRecordDTO.getStatus())
+                && Objects.equals(startedDate, devopsCiJobRecordDTO.getStartedDate())
+                && Objects.equals(finishedDate, devopsCiJobRecordDTO.getFinishedDate())
+                && Objects.equals(triggerUserId, devopsCiJobRecordDTO.getTriggerUserId())) {
+            return false;
+        }
+        devopsCiJobRecordDTO.setCiPipelineRecordId(pipelineRecordId);
+        devopsCiJobRecordDTO.setStartedDate(startedDate);
+        devopsCiJobRecordDTO.setFinishedDate(finishedDate);
+        devopsCiJobRecordDTO.setStatus(status);
+        devopsCiJobRecordDTO.setTriggerUserId(triggerUserId);
+        return true;
     }
 
     private List<DevopsCiJobRecordDTO> filterJobs(List<DevopsCiJobRecordDTO> devopsCiJobRecordDTOS) {
@@ -722,6 +819,11 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
         return devopsCiPipelineRecordMapper.queryNotSynchronizedRecord(new Date(System.currentTimeMillis() - statusUpdatePeriodMilliSeconds), currentDate);
     }
 
+    @Override
+    public AppServiceDTO queryAppServiceByRecordId(Long pipelineRecordId) {
+        return devopsCiPipelineRecordMapper.queryGitlabProjectIdByRecordId(pipelineRecordId);
+    }
+
     /**
      * 校验用户是否有分支权限
      */
@@ -742,6 +742,7 @@ public class DevopsCiPipelineServiceImpl implements DevopsCiPipelineService {
         if (ciCdPipelineMapper.disablePipeline(pipelineId) != 1) {
             throw new CommonException(DISABLE_PIPELINE_FAILED);
         }
+        devopsCiContentService.evictCache(pipelineId);
         return ciCdPipelineMapper.selectByPrimaryKey(pipelineId);
     }
 
@@ -790,6 +791,7 @@ public class DevopsCiPipelineServiceImpl implements DevopsCiPipelineService {
         if (ciCdPipelineMapper.enablePipeline(pipelineId) != 1) {
             throw new CommonException(ENABLE_PIPELINE_FAILED);
         }
+        devopsCiContentService.evictCache(pipelineId);
         return ciCdPipelineMapper.selectByPrimaryKey(pipelineId);
     }
 
@@ -6,10 +6,17 @@ import static org.hzero.core.util.StringPool.SLASH;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import net.schmizz.sshj.SSHClient;
@@ -19,8 +26,12 @@ import org.hzero.core.util.UUIDUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
@@ -42,6 +53,7 @@ import io.choerodon.devops.app.service.DevopsClusterNodeService;
 import io.choerodon.devops.app.service.DevopsClusterOperatingRecordService;
 import io.choerodon.devops.app.service.DevopsClusterService;
 import io.choerodon.devops.infra.constant.ClusterCheckConstant;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
 import io.choerodon.devops.infra.constant.MiscConstants;
 import io.choerodon.devops.infra.constant.ResourceCheckConstant;
 import io.choerodon.devops.infra.dto.DevopsClusterDTO;
@@ -69,11 +81,42 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
     private static final String ERROR_ADD_NODE_ROLE_FAILED = "error.add.node.role.failed";
     private static final String CLUSTER_STATUS_SYNC_REDIS_LOCK = "cluster-status-sync-lock";
     private static final Integer MAX_LOG_MSG_LENGTH = 65535;
+    /**
+     * 状态同步的锁的续期间隔
+     */
+    private static final long LOCK_RENEW_INTERVAL_SECONDS = 20;
+    /**
+     * 读取状态文件和安装日志等命令的超时时间
+     */
+    private static final long STATUS_COMMAND_TIMEOUT_MINUTES = 1;
+    /**
+     * 安装helm和agent的命令的超时时间
+     */
+    private static final long INSTALL_AGENT_TIMEOUT_MINUTES = 10;
+    /**
+     * 值等于自己持有的锁的值时才续期, 避免锁过期后被其它实例获取时续期了别人的锁
+     */
+    private static final RedisScript<Long> RENEW_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+    /**
+     * 值等于自己持有的锁的值时才删除
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+    private static final String STATUS_BEGIN_MARK = "==c7n-status-begin==";
+    private static final String STATUS_EXIT_MARK = "==c7n-status-exit==";
 
     @Value("${devops.ansible.image}")
     private String ansibleImage;
     @Value(value = "${devops.helm.download-url}")
     private String helmDownloadUrl;
+    @Value("${devops.cluster.status.hostTimeoutSeconds:900}")
+    private Long hostTimeoutSeconds;
+    @Autowired
+    @Qualifier(GitOpsConstants.CLUSTER_STATUS_EXECUTOR)
+    private AsyncTaskExecutor clusterStatusExecutor;
     @Autowired
     private SshUtil sshUtil;
     @Autowired
@@ -120,7 +163,7 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
         if (hostConnectionVO.getAuthType().equalsIgnoreCase(HostAuthType.PUBLICKEY.value())) {
             password = Base64Util.getBase64DecodedString(password);
         }
-        return SshUtil.sshConnectForOK(hostConnectionVO.getHostIp(),
+        return sshUtil.testConnection(hostConnectionVO.getHostIp(),
                 hostConnectionVO.getHostPort(),
                 hostConnectionVO.getAuthType(),
                 hostConnectionVO.getUsername(),
@@ -365,10 +408,10 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
             hostConnectionVO = ConvertUtils.convertObject(devopsClusterNodeDTOList.get(0), HostConnectionVO.class);
         }
 
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         try {
             LOGGER.info(">>>>>>>>> [install k8s] clusterId {} :start to create ssh connection object <<<<<<<<<", devopsClusterInstallPayload.getClusterId());
-            sshUtil.sshConnect(ConvertUtils.convertObject(hostConnectionVO, HostConnectionVO.class), ssh);
+            ssh = sshUtil.sshConnect(ConvertUtils.convertObject(hostConnectionVO, HostConnectionVO.class));
             // 检查集群是否安装成功，该情况是如果集群安装成功，但是saga失败导致数据没有更新，防止saga重试使得集群被重新安装。如果成功，此次saga任务成功
             if (checkInstallSuccess(ssh, record, devopsClusterDTO)) {
                 return;
@@ -394,7 +437,7 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
                     .appendErrorMsg(e.getMessage());
             devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
             if (e instanceof TransportException) {
-                LOGGER.info(">>>>>>>>> [install k8s] clusterId {} : ssh connection disconnect ,host: [ {} ] <<<<<<<<<", devopsClusterInstallPayload.getClusterId(), ssh.getRemoteHostname());
+                LOGGER.info(">>>>>>>>> [install k8s] clusterId {} : ssh connection disconnect ,host: [ {} ] <<<<<<<<<", devopsClusterInstallPayload.getClusterId(), hostConnectionVO.getHostIp());
             } else {
                 LOGGER.info(">>>>>>>>> [install k8s] clusterId {} :failed to install ,error: {}<<<<<<<<<", devopsClusterInstallPayload.getClusterId(), e.getMessage());
                 e.printStackTrace();
@@ -402,7 +445,7 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
         } finally {
             devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(record);
             devopsClusterMapper.updateByPrimaryKeySelective(devopsClusterDTO);
-            sshUtil.sshDisconnect(ssh);
+            sshUtil.sshRelease(ssh);
         }
     }
 
@@ -433,12 +476,12 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
 
     private void installAgent(DevopsClusterDTO devopsClusterDTO, DevopsClusterOperationRecordDTO devopsClusterOperationRecordDTO, SSHClient ssh) {
         try {
-            ExecResultInfoVO helmInstallResult = sshUtil.execCommand(ssh, String.format(INSTALL_HELM_TEMPLATE, helmDownloadUrl));
+            ExecResultInfoVO helmInstallResult = sshUtil.execCommand(ssh, String.format(INSTALL_HELM_TEMPLATE, helmDownloadUrl), INSTALL_AGENT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
             if (helmInstallResult.getExitCode() != 0) {
                 devopsClusterOperationRecordDTO.appendErrorMsg(helmInstallResult.getStdOut() + "\n" + helmInstallResult.getStdErr());
             }
             String agentInstallCommand = devopsClusterService.getInstallString(devopsClusterDTO, "");
-            ExecResultInfoVO agentInstallResult = sshUtil.execCommand(ssh, agentInstallCommand);
+            ExecResultInfoVO agentInstallResult = sshUtil.execCommand(ssh, agentInstallCommand, INSTALL_AGENT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
             if (agentInstallResult.getExitCode() != 0) {
                 devopsClusterOperationRecordDTO.appendErrorMsg(agentInstallResult.getStdOut() + "\n" + agentInstallResult.getStdErr());
             }
@@ -530,12 +573,12 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
 
         DevopsClusterInstallInfoVO devopsClusterInstallInfoVO = JsonHelper.unmarshalByJackson(clusterInstallInfoRaw, DevopsClusterInstallInfoVO.class);
 
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         DevopsNodeCheckResultVO devopsNodeCheckResultVO = new DevopsNodeCheckResultVO();
         try {
             try {
                 LOGGER.info(">>>>>>>>> [check node] key {} :start to create ssh connection object <<<<<<<<<", redisKey);
-                sshUtil.sshConnect(devopsClusterInstallInfoVO.getHostConnectionVO(), ssh);
+                ssh = sshUtil.sshConnect(devopsClusterInstallInfoVO.getHostConnectionVO());
             } catch (IOException e) {
                 throw new Exception(String.format(">>>>>>>>> [check node] failed to connect to host: [ %s ] by ssh <<<<<<<<<", devopsClusterInstallInfoVO.getHostConnectionVO().getHostIp()));
             }
@@ -576,7 +619,7 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
         } finally {
             stringRedisTemplate.expire(redisKey, 3, TimeUnit.MINUTES);
             stringRedisTemplate.delete(clusterInfoRedisKey);
-            sshUtil.sshDisconnect(ssh);
+            sshUtil.sshRelease(ssh);
         }
     }
 
@@ -698,11 +741,12 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
 
     @Override
     public void update() {
-        // 添加redis锁，防止多个pod重复执行
+        // 添加redis锁，防止多个pod重复执行, 锁的值用于只续期和释放自己持有的锁
+        String lockValue = UUIDUtils.generateUUID();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(CLUSTER_STATUS_SYNC_REDIS_LOCK, lockValue, 1, TimeUnit.MINUTES))) {
+            return;
+        }
         try {
-            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(CLUSTER_STATUS_SYNC_REDIS_LOCK, "lock", 1, TimeUnit.MINUTES))) {
-                return;
-            }
             DevopsClusterOperationRecordDTO devopsClusterOperationRecordDTO = new DevopsClusterOperationRecordDTO()
                     .setStatus(ClusterOperationStatusEnum.OPERATING.value())
                     .setType(ClusterOperationTypeEnum.INSTALL_K8S.getType());
@@ -714,6 +758,9 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
             Map<Long, DevopsClusterDTO> devopsClusterDTOMap = devopsClusterMapper.listByClusterIds(clusterIds)
                     .stream()
                     .collect(Collectors.toMap(DevopsClusterDTO::getId, d -> d));
+
+            // 按照要连接的主机分组, 同一个主机上的操作使用同一个ssh连接, 一次读取所有的状态文件
+            Map<String, List<ClusterOperation>> hostOperations = new LinkedHashMap<>();
             for (DevopsClusterOperationRecordDTO record : devopsClusterOperationRecordDTOList) {
                 Long clusterId = record.getClusterId();
                 LOGGER.info(">>>>>>>>> [update cluster status] clusterId:{} operationId:{} <<<<<<<<<", clusterId, record.getId());
@@ -731,58 +778,255 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
                     devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(record);
                     continue;
                 }
-                SSHClient ssh = new SSHClient();
-                try {
-                    List<DevopsClusterNodeDTO> devopsClusterNodeDTOList = devopsClusterNodeMapper.listByClusterId(clusterId);
-                    List<DevopsClusterNodeDTO> devopsClusterOutterNodeDTOList = devopsClusterNodeDTOList.stream().filter(n -> ClusterNodeTypeEnum.OUTTER.getType().equalsIgnoreCase(n.getType())).collect(Collectors.toList());
-                    if (!CollectionUtils.isEmpty(devopsClusterOutterNodeDTOList)) {
-                        sshUtil.sshConnect(ConvertUtils.convertObject(devopsClusterOutterNodeDTOList.get(0), HostConnectionVO.class), ssh);
-                    } else {
-                        sshUtil.sshConnect(ConvertUtils.convertObject(devopsClusterNodeDTOList.get(0), HostConnectionVO.class), ssh);
-                    }
-                    ExecResultInfoVO resultInfoVO = sshUtil.execCommand(ssh, String.format(CAT_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())));
-                    if (resultInfoVO.getExitCode() != 0) {
-                        if (resultInfoVO.getStdErr().contains("No such file or directory")) {
-                            LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] is installing <<<<<<<<<", clusterId, record.getId());
-                        } else {
-                            LOGGER.info(">>>>>>>>> [update cluster status] Failed to get install status of host [ {} ],error is: {} <<<<<<<<<", ssh.getRemoteHostname(), resultInfoVO.getStdErr());
-                            record.setStatus(ClusterOperationStatusEnum.FAILED.value())
-                                    .appendErrorMsg(resultInfoVO.getStdErr());
-                            devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
-                        }
-                    } else {
-                        if ("0".equals(resultInfoVO.getStdOut().replaceAll("\r|\n", ""))) {
-                            // k8s安装成功
-                            LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install success <<<<<<<<<", clusterId, record.getId());
-                            record.setStatus(ClusterOperationStatusEnum.SUCCESS.value());
-                            devopsClusterDTO.setStatus(ClusterStatusEnum.DISCONNECT.value());
-                            // 安装agent, 第一步安装helm ，第二步安装agent。这一步骤如果出现错误,只保存错误信息
-                            installAgent(devopsClusterDTO, record, ssh);
-                        } else {
-                            LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install failed <<<<<<<<<", clusterId, record.getId());
-                            String installLog = sshUtil.execCommand(ssh, String.format(CAT_FILE, INSTALL_K8S_LOG)).getStdOut();
-                            int length = installLog.length();
-                            installLog = length > MAX_LOG_MSG_LENGTH ? installLog.substring(length - MAX_LOG_MSG_LENGTH, length) : installLog;
-                            record.setStatus(ClusterOperationStatusEnum.FAILED.value());
-                            devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
-                            record.appendErrorMsg(String.format("install failed.%s for more detail ,login in node [ %s ] and cat %s", installLog, ssh.getRemoteHostname(), INSTALL_K8S_LOG));
-                            // 删除执行状态文件，防止重试安装后，该方法读取错误的状态
-                            sshUtil.execCommand(ssh, String.format(DELETE_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())));
-                        }
-                    }
-                } catch (Exception e) {
+                List<DevopsClusterNodeDTO> devopsClusterNodeDTOList = devopsClusterNodeMapper.listByClusterId(clusterId);
+                if (CollectionUtils.isEmpty(devopsClusterNodeDTOList)) {
                     record.setStatus(ClusterOperationStatusEnum.FAILED.value())
-                            .appendErrorMsg(e.getMessage());
+                            .appendErrorMsg("no node found for the cluster");
                     devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
-                    e.printStackTrace();
-                } finally {
                     devopsClusterMapper.updateByPrimaryKeySelective(devopsClusterDTO);
                     devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(record);
-                    sshUtil.sshDisconnect(ssh);
+                    continue;
+                }
+                DevopsClusterNodeDTO node = devopsClusterNodeDTOList.stream()
+                        .filter(n -> ClusterNodeTypeEnum.OUTTER.getType().equalsIgnoreCase(n.getType()))
+                        .findFirst()
+                        .orElse(devopsClusterNodeDTOList.get(0));
+                HostConnectionVO hostConnectionVO = ConvertUtils.convertObject(node, HostConnectionVO.class);
+                String hostKey = hostConnectionVO.getHostIp() + ":" + hostConnectionVO.getHostPort() + ":" + hostConnectionVO.getUsername();
+                hostOperations.computeIfAbsent(hostKey, k -> new ArrayList<>()).add(new ClusterOperation(record, devopsClusterDTO, hostConnectionVO));
+            }
+
+            // 不同主机并发处理, 一个主机较慢不影响其它主机
+            List<HostTask> hostTasks = new ArrayList<>();
+            hostOperations.forEach((hostKey, operations) -> {
+                try {
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(hostTimeoutSeconds);
+                    hostTasks.add(new HostTask(hostKey, operations, clusterStatusExecutor.submit(() -> updateHostOperations(operations)), deadline));
+                } catch (Exception ex) {
+                    LOGGER.warn(">>>>>>>>> [update cluster status] Failed to submit status check of host [ {} ] <<<<<<<<<", hostKey, ex);
+                }
+            });
+            waitAndRenewLock(hostTasks, lockValue);
+        } finally {
+            releaseLock(lockValue);
+        }
+    }
+
+    /**
+     * 等待所有主机处理完成, 等待期间定期为锁续期, 避免处理较慢时锁过期导致其它实例重复处理
+     * 超过截止时间还没有处理完的主机会被取消, 主机上的操作标记为失败
+     */
+    private void waitAndRenewLock(List<HostTask> hostTasks, String lockValue) {
+        long renewIntervalNanos = TimeUnit.SECONDS.toNanos(LOCK_RENEW_INTERVAL_SECONDS);
+        for (HostTask hostTask : hostTasks) {
+            while (true) {
+                long remaining = hostTask.deadline - System.nanoTime();
+                if (remaining <= 0 && !hostTask.future.isDone()) {
+                    failTimeoutHost(hostTask);
+                    break;
+                }
+                try {
+                    hostTask.future.get(Math.max(Math.min(remaining, renewIntervalNanos), 0), TimeUnit.NANOSECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    renewLock(lockValue);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException | CancellationException e) {
+                    LOGGER.warn(">>>>>>>>> [update cluster status] Unexpected error <<<<<<<<<", e instanceof ExecutionException ? e.getCause() : e);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 取消超时的主机的处理, 还没有保存结果的操作标记为失败
+     */
+    private void failTimeoutHost(HostTask hostTask) {
+        hostTask.future.cancel(true);
+        LOGGER.warn(">>>>>>>>> [update cluster status] Status check of host [ {} ] timed out after {} seconds <<<<<<<<<", hostTask.hostKey, hostTimeoutSeconds);
+        for (ClusterOperation operation : hostTask.operations) {
+            if (!operation.saved.compareAndSet(false, true)) {
+                continue;
+            }
+            operation.record.setStatus(ClusterOperationStatusEnum.FAILED.value())
+                    .appendErrorMsg(String.format("timed out after %d seconds while checking the install status", hostTimeoutSeconds));
+            operation.devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
+            devopsClusterMapper.updateByPrimaryKeySelective(operation.devopsClusterDTO);
+            devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(operation.record);
+        }
+    }
+
+    private void renewLock(String lockValue) {
+        stringRedisTemplate.execute(RENEW_LOCK_SCRIPT, Collections.singletonList(CLUSTER_STATUS_SYNC_REDIS_LOCK),
+                lockValue, String.valueOf(TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    private void releaseLock(String lockValue) {
+        stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(CLUSTER_STATUS_SYNC_REDIS_LOCK), lockValue);
+    }
+
+    /**
+     * 处理同一个主机上的安装操作, 使用同一个从连接池借出的ssh连接
+     *
+     * @param operations 同一个主机上的操作
+     */
+    private void updateHostOperations(List<ClusterOperation> operations) {
+        SSHClient ssh = null;
+        try {
+            Map<String, ExecResultInfoVO> results;
+            try {
+                ssh = sshUtil.sshConnect(operations.get(0).hostConnectionVO);
+                results = readExitCodes(ssh, operations);
+            } catch (Exception e) {
+                operations.forEach(operation -> {
+                    operation.record.setStatus(ClusterOperationStatusEnum.FAILED.value())
+                            .appendErrorMsg(e.getMessage());
+                    operation.devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
+                    saveOperation(operation);
+                });
+                LOGGER.warn(">>>>>>>>> [update cluster status] Failed to read install status of host [ {} ] <<<<<<<<<", operations.get(0).hostConnectionVO.getHostIp(), e);
+                return;
+            }
+            for (ClusterOperation operation : operations) {
+                try {
+                    handleExitCode(ssh, operation, results.get(operation.devopsClusterDTO.getCode()));
+                } catch (Exception e) {
+                    operation.record.setStatus(ClusterOperationStatusEnum.FAILED.value())
+                            .appendErrorMsg(e.getMessage());
+                    operation.devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
+                    LOGGER.warn(">>>>>>>>> [update cluster status] Failed to update status of cluster [ {} ] <<<<<<<<<", operation.devopsClusterDTO.getId(), e);
+                } finally {
+                    saveOperation(operation);
                 }
             }
         } finally {
-            stringRedisTemplate.delete(CLUSTER_STATUS_SYNC_REDIS_LOCK);
+            sshUtil.sshRelease(ssh);
+        }
+    }
+
+    /**
+     * 一次读取主机上所有集群的安装状态文件
+     *
+     * @return 集群code和读取结果的映射
+     */
+    private Map<String, ExecResultInfoVO> readExitCodes(SSHClient ssh, List<ClusterOperation> operations) throws IOException {
+        StringBuilder command = new StringBuilder();
+        for (ClusterOperation operation : operations) {
+            String code = operation.devopsClusterDTO.getCode();
+            command.append(String.format("echo '%s%s'; %s 2>&1; echo \"%s$?\"; ",
+                    STATUS_BEGIN_MARK, code, String.format(CAT_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, code)), STATUS_EXIT_MARK));
+        }
+        ExecResultInfoVO resultInfoVO = sshUtil.execCommand(ssh, command.toString(), STATUS_COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        Map<String, ExecResultInfoVO> results = new HashMap<>();
+        String code = null;
+        StringBuilder output = new StringBuilder();
+        for (String line : resultInfoVO.getStdOut().split("\r?\n")) {
+            if (line.startsWith(STATUS_BEGIN_MARK)) {
+                code = line.substring(STATUS_BEGIN_MARK.length());
+                output.setLength(0);
+            } else if (line.startsWith(STATUS_EXIT_MARK) && code != null) {
+                ExecResultInfoVO result = new ExecResultInfoVO();
+                result.setExitCode(TypeUtil.objToInteger(line.substring(STATUS_EXIT_MARK.length())));
+                // 标准错误被重定向到标准输出
+                result.setStdOut(output.toString());
+                result.setStdErr(output.toString());
+                results.put(code, result);
+                code = null;
+            } else {
+                output.append(line).append("\n");
+            }
+        }
+        return results;
+    }
+
+    private void handleExitCode(SSHClient ssh, ClusterOperation operation, ExecResultInfoVO resultInfoVO) throws IOException {
+        DevopsClusterOperationRecordDTO record = operation.record;
+        DevopsClusterDTO devopsClusterDTO = operation.devopsClusterDTO;
+        Long clusterId = devopsClusterDTO.getId();
+        if (resultInfoVO == null) {
+            throw new CommonException("failed to read install status");
+        }
+        if (resultInfoVO.getExitCode() != 0) {
+            if (resultInfoVO.getStdErr().contains("No such file or directory")) {
+                LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] is installing <<<<<<<<<", clusterId, record.getId());
+            } else {
+                LOGGER.info(">>>>>>>>> [update cluster status] Failed to get install status of host [ {} ],error is: {} <<<<<<<<<", ssh.getRemoteHostname(), resultInfoVO.getStdErr());
+                record.setStatus(ClusterOperationStatusEnum.FAILED.value())
+                        .appendErrorMsg(resultInfoVO.getStdErr());
+                devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
+            }
+        } else {
+            if ("0".equals(resultInfoVO.getStdOut().replaceAll("\r|\n", ""))) {
+                // k8s安装成功
+                LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install success <<<<<<<<<", clusterId, record.getId());
+                record.setStatus(ClusterOperationStatusEnum.SUCCESS.value());
+                devopsClusterDTO.setStatus(ClusterStatusEnum.DISCONNECT.value());
+                // 安装agent, 第一步安装helm ，第二步安装agent。这一步骤如果出现错误,只保存错误信息
+                installAgent(devopsClusterDTO, record, ssh);
+            } else {
+                LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install failed <<<<<<<<<", clusterId, record.getId());
+                String installLog = sshUtil.execCommand(ssh, String.format(CAT_FILE, INSTALL_K8S_LOG), STATUS_COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES).getStdOut();
+                int length = installLog.length();
+                installLog = length > MAX_LOG_MSG_LENGTH ? installLog.substring(length - MAX_LOG_MSG_LENGTH, length) : installLog;
+                record.setStatus(ClusterOperationStatusEnum.FAILED.value());
+                devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
+                record.appendErrorMsg(String.format("install failed.%s for more detail ,login in node [ %s ] and cat %s", installLog, ssh.getRemoteHostname(), INSTALL_K8S_LOG));
+                // 删除执行状态文件，防止重试安装后，该方法读取错误的状态
+                sshUtil.execCommand(ssh, String.format(DELETE_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())), STATUS_COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    /**
+     * 保存操作的结果, 主机超时后已经被标记为失败的操作不再保存
+     */
+    private void saveOperation(ClusterOperation operation) {
+        if (!operation.saved.compareAndSet(false, true)) {
+            return;
+        }
+        devopsClusterMapper.updateByPrimaryKeySelective(operation.devopsClusterDTO);
+        devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(operation.record);
+    }
+
+    /**
+     * 一个正在安装的集群, 以及状态文件所在的主机
+     */
+    private static class ClusterOperation {
+        private final DevopsClusterOperationRecordDTO record;
+        private final DevopsClusterDTO devopsClusterDTO;
+        private final HostConnectionVO hostConnectionVO;
+        /**
+         * 结果是否已经保存, 处理线程和超时处理只有一方可以保存
+         */
+        private final AtomicBoolean saved = new AtomicBoolean(false);
+
+        private ClusterOperation(DevopsClusterOperationRecordDTO record, DevopsClusterDTO devopsClusterDTO, HostConnectionVO hostConnectionVO) {
+            this.record = record;
+            this.devopsClusterDTO = devopsClusterDTO;
+            this.hostConnectionVO = hostConnectionVO;
+        }
+    }
+
+    /**
+     * 一个主机的处理任务
+     */
+    private static class HostTask {
+        private final String hostKey;
+        private final List<ClusterOperation> operations;
+        private final Future<?> future;
+        /**
+         * 截止时间, {@link System#nanoTime()}
+         */
+        private final long deadline;
+
+        private HostTask(String hostKey, List<ClusterOperation> operations, Future<?> future, long deadline) {
+            this.hostKey = hostKey;
+            this.operations = operations;
+            this.future = future;
+            this.deadline = deadline;
         }
     }
 
@@ -388,7 +388,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
         Page<DevopsClusterRepVO> devopsClusterRepVOPageInfo = ConvertUtils.convertPage(basePageClustersByOptions(projectId, doPage, pageable, params), DevopsClusterRepVO.class);
         Page<ClusterWithNodesVO> devopsClusterRepDTOPage = ConvertUtils.convertPage(devopsClusterRepVOPageInfo, ClusterWithNodesVO.class);
 
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         devopsClusterRepVOPageInfo.getContent().forEach(devopsClusterRepVO -> {
             if (updatedEnvList.contains(devopsClusterRepVO.getId())) {
                 devopsClusterRepVO.setConnect(true);
@@ -545,7 +545,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
         devopsClusterDTO.setProjectId(projectId);
         List<DevopsClusterDTO> devopsClusterDTOList = devopsClusterMapper.select(devopsClusterDTO);
         List<DevopsClusterBasicInfoVO> devopsClusterBasicInfoVOList = ConvertUtils.convertList(devopsClusterDTOList, DevopsClusterBasicInfoVO.class);
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
 
         // 连接的集群
         List<DevopsClusterBasicInfoVO> connectedClusters = new ArrayList<>();
@@ -671,7 +671,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
     }
 
     private void checkConnectAndExistEnvsOrPV(Long clusterId) {
-        List<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentService.baseListUserEnvByClusterId(clusterId);
 
         if (connectedEnvList.contains(clusterId)) {
@@ -690,7 +690,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
     @Override
     public ClusterMsgVO checkConnectEnvsAndPV(Long clusterId) {
         ClusterMsgVO clusterMsgVO = new ClusterMsgVO(false, false);
-        List<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentService.baseListUserEnvByClusterId(clusterId);
 
         if (connectedEnvList.contains(clusterId)) {
@@ -714,7 +714,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
         if (result == null) {
             return null;
         }
-        List<Long> upToDateList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upToDateList = clusterConnectionHandler.getUpdatedClusterList();
         if (upToDateList.contains(clusterId)) {
             result.setConnect(true);
             if (result.getStatus().equalsIgnoreCase(ClusterStatusEnum.DISCONNECT.value())) {
@@ -852,7 +852,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
 
     @Override
     public ClusterOverViewVO getOrganizationClusterOverview(Long organizationId) {
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
         List<DevopsClusterDTO> clusterDTOList = devopsClusterMapper.listByOrganizationId(organizationId);
         if (CollectionUtils.isEmpty(clusterDTOList)) {
 
@@ -913,7 +913,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
 
     private DevopsClusterRepVO getDevopsClusterStatus(Long clusterId) {
         DevopsClusterRepVO devopsClusterRepVO = ConvertUtils.convertObject(baseQuery(clusterId), DevopsClusterRepVO.class);
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
 
         if (updatedEnvList.contains(clusterId)) {
             devopsClusterRepVO.setConnect(true);
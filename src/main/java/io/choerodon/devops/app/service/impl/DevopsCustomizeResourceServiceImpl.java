@@ -261,7 +261,7 @@ public class DevopsCustomizeResourceServiceImpl implements DevopsCustomizeResour
     @Override
     public Page<DevopsCustomizeResourceVO> pageResources(Long envId, PageRequest pageable, String params) {
         Page<DevopsCustomizeResourceDTO> devopsCustomizeResourceDTOPageInfo = pageDevopsCustomizeResourceE(envId, pageable, params);
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         Page<DevopsCustomizeResourceVO> devopsCustomizeResourceVOPageInfo = ConvertUtils.convertPage(devopsCustomizeResourceDTOPageInfo, DevopsCustomizeResourceVO.class);
         devopsCustomizeResourceVOPageInfo.getContent().forEach(devopsCustomizeResourceVO -> {
             DevopsEnvironmentDTO devopsEnvironmentDTO = devopsEnvironmentService.baseQueryById(envId);
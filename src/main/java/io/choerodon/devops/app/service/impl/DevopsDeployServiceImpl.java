@@ -87,7 +87,7 @@ public class DevopsDeployServiceImpl implements DevopsDeployService {
     private void hostJarDeploy(Long projectId, DeployConfigVO deployConfigVO) {
         LOGGER.info("========================================");
         LOGGER.info("start jar deploy cd host job,projectId:{}", projectId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         DeployConfigVO.JarDeploy jarDeploy;
         C7nNexusComponentDTO c7nNexusComponentDTO = new C7nNexusComponentDTO();
@@ -122,7 +122,7 @@ public class DevopsDeployServiceImpl implements DevopsDeployService {
             c7nNexusComponentDTO = nexusComponentDTOList.get(0);
             c7nNexusDeployDTO.setJarName(jarDeploy.getArtifactId());
 
-            sshUtil.sshConnect(deployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(deployConfigVO.getHostConnectionVO());
 
             // 2. 执行jar部署
             sshUtil.sshStopJar(ssh, c7nNexusDeployDTO.getJarName(),jarDeploy.getWorkingPath(), log);
@@ -156,7 +156,7 @@ public class DevopsDeployServiceImpl implements DevopsDeployService {
                     null);
             throw new CommonException(ERROR_DEPLOY_JAR_FAILED, e);
         } finally {
-            sshUtil.closeSsh(ssh, null);
+            sshUtil.sshRelease(ssh);
         }
     }
 
@@ -168,7 +168,7 @@ public class DevopsDeployServiceImpl implements DevopsDeployService {
     private void hostImagedeploy(Long projectId, DeployConfigVO deployConfigVO) {
         LOGGER.info("========================================");
         LOGGER.info("start image deploy cd host job,projectId:{}", projectId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         DeployConfigVO.ImageDeploy imageDeploy = new DeployConfigVO.ImageDeploy();
         try {
@@ -187,7 +187,7 @@ public class DevopsDeployServiceImpl implements DevopsDeployService {
             c7nImageDeployDTO.setHarborUrl(imageTagVo.getHarborUrl());
             c7nImageDeployDTO.setPullCmd(imageTagVo.getImageTagList().get(0).getPullCmd());
             // 2.
-            sshUtil.sshConnect(deployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(deployConfigVO.getHostConnectionVO());
             // 3.
             // 3.1
             sshUtil.dockerLogin(ssh, c7nImageDeployDTO, log);
@@ -228,7 +228,7 @@ public class DevopsDeployServiceImpl implements DevopsDeployService {
                     null);
             throw new CommonException("error.deploy.hostImage.failed.", e);
         } finally {
-            sshUtil.closeSsh(ssh, null);
+            sshUtil.sshRelease(ssh);
         }
     }
 }
@@ -18,7 +18,9 @@ import io.choerodon.devops.app.service.DevopsCommandEventService;
 import io.choerodon.devops.app.service.DevopsEnvCommandLogService;
 import io.choerodon.devops.app.service.DevopsEnvCommandService;
 import io.choerodon.devops.app.service.DevopsEnvCommandValueService;
+import io.choerodon.devops.app.service.DevopsProjectDailyCountService;
 import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO;
+import io.choerodon.devops.infra.enums.CommandType;
 import io.choerodon.devops.infra.enums.ObjectType;
 import io.choerodon.devops.infra.mapper.DevopsEnvCommandMapper;
 import io.choerodon.devops.infra.util.ConvertUtils;
@@ -43,6 +45,8 @@ public class DevopsEnvCommandServiceImpl implements DevopsEnvCommandService {
     DevopsCommandEventService devopsCommandEventService;
     @Autowired
     private DevopsEnvCommandMapper devopsEnvCommandMapper;
+    @Autowired
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
 
 
     @Override
@@ -50,7 +54,13 @@ public class DevopsEnvCommandServiceImpl implements DevopsEnvCommandService {
         if (devopsEnvCommandMapper.insert(devopsEnvCommandDTO) != 1) {
             throw new CommonException("error.env.command.insert");
         }
-        return devopsEnvCommandMapper.selectByPrimaryKey(devopsEnvCommandDTO);
+        DevopsEnvCommandDTO created = devopsEnvCommandMapper.selectByPrimaryKey(devopsEnvCommandDTO);
+        if (ObjectType.INSTANCE.getType().equals(devopsEnvCommandDTO.getObject())
+                && (CommandType.CREATE.getType().equals(devopsEnvCommandDTO.getCommandType())
+                || CommandType.UPDATE.getType().equals(devopsEnvCommandDTO.getCommandType()))) {
+            devopsProjectDailyCountService.increaseDeployCount(devopsEnvCommandDTO.getObjectId(), created == null ? null : created.getCreationDate());
+        }
+        return created;
     }
 
     @Override
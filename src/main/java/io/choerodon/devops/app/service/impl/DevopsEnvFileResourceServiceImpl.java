@@ -1,5 +1,7 @@
 package io.choerodon.devops.app.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -9,15 +11,16 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.choerodon.core.oauth.DetailsHelper;
 import io.choerodon.devops.app.service.DevopsEnvFileResourceService;
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.mapper.DevopsEnvFileResourceMapper;
 import io.choerodon.devops.infra.util.MapperUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
 
 @Service
 public class DevopsEnvFileResourceServiceImpl implements DevopsEnvFileResourceService {
-
     @Autowired
     private DevopsEnvFileResourceService devopsEnvFileResourceService;
     @Autowired
@@ -29,8 +32,12 @@ public class DevopsEnvFileResourceServiceImpl implements DevopsEnvFileResourceSe
                                            DevopsEnvFileResourceDTO devopsEnvFileResourceDTO,
                                            Integer i, Long id, String kind) {
         if (devopsEnvFileResourceDTO != null) {
-            devopsEnvFileResourceDTO.setFilePath(objectPath.get(
-                    TypeUtil.objToString(i)));
+            String filePath = objectPath.get(TypeUtil.objToString(i));
+            // 文件路径没有变化时不需要更新
+            if (Objects.equals(filePath, devopsEnvFileResourceDTO.getFilePath())) {
+                return;
+            }
+            devopsEnvFileResourceDTO.setFilePath(filePath);
             devopsEnvFileResourceService.baseUpdate(devopsEnvFileResourceDTO);
         } else {
             devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
@@ -82,6 +89,14 @@ public class DevopsEnvFileResourceServiceImpl implements DevopsEnvFileResourceSe
         return devopsEnvFileResourceMapper.select(devopsEnvFileResourceDTO);
     }
 
+    @Override
+    public List<DevopsEnvFileResourceDTO> listByEnvIdAndFilePaths(Long envId, Collection<String> filePaths) {
+        if (filePaths == null || filePaths.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return devopsEnvFileResourceMapper.listByEnvIdAndFilePaths(Objects.requireNonNull(envId), filePaths);
+    }
+
     @Override
     public void baseDeleteByEnvIdAndResourceId(Long envId, Long resourceId, String resourceType) {
         DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
@@ -98,4 +113,10 @@ public class DevopsEnvFileResourceServiceImpl implements DevopsEnvFileResourceSe
         devopsEnvFileResourceDTO.setEnvId(Objects.requireNonNull(envId));
         devopsEnvFileResourceMapper.delete(devopsEnvFileResourceDTO);
     }
+
+    @Override
+    public DevopsEnvFileResourceBatch beginBatch() {
+        Long userId = DetailsHelper.getUserDetails() == null ? 0L : DetailsHelper.getUserDetails().getUserId();
+        return new DevopsEnvFileResourceBatch(devopsEnvFileResourceMapper, userId);
+    }
 }
@@ -1,8 +1,6 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -133,6 +131,59 @@ public class DevopsEnvFileServiceImpl implements DevopsEnvFileService {
         return devopsEnvFileMapper.select(devopsEnvFileDTO);
     }
 
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class)
+    @Override
+    public void batchUpdateByGitOps(Long envId, Map<String, String> fileCommits, Collection<String> deletedFiles) {
+        Objects.requireNonNull(envId);
+        Set<String> deletedFileSet = new HashSet<>(deletedFiles);
+        // 同一个路径可能因为历史原因存在多条纪录
+        Map<String, List<DevopsEnvFileDTO>> existedFiles = new HashMap<>();
+        baseListByEnvId(envId).forEach(file -> existedFiles.computeIfAbsent(file.getFilePath(), k -> new ArrayList<>()).add(file));
+
+        List<DevopsEnvFileDTO> toInsert = new ArrayList<>();
+        List<DevopsEnvFileDTO> toUpdate = new ArrayList<>();
+        Set<Long> toDelete = new HashSet<>();
+
+        fileCommits.forEach((filePath, commit) -> {
+            // 同时被删除的文件以删除为准
+            if (deletedFileSet.contains(filePath)) {
+                return;
+            }
+            List<DevopsEnvFileDTO> files = existedFiles.get(filePath);
+            if (files == null) {
+                DevopsEnvFileDTO devopsEnvFileDTO = new DevopsEnvFileDTO();
+                devopsEnvFileDTO.setEnvId(envId);
+                devopsEnvFileDTO.setFilePath(filePath);
+                devopsEnvFileDTO.setDevopsCommit(commit);
+                toInsert.add(devopsEnvFileDTO);
+                return;
+            }
+            files.stream()
+                    .filter(file -> !Objects.equals(commit, file.getDevopsCommit()))
+                    .forEach(file -> {
+                        file.setDevopsCommit(commit);
+                        toUpdate.add(file);
+                    });
+        });
+
+        deletedFileSet.forEach(filePath -> {
+            List<DevopsEnvFileDTO> files = existedFiles.get(filePath);
+            if (files != null) {
+                files.forEach(file -> toDelete.add(file.getId()));
+            }
+        });
+
+        if (!toInsert.isEmpty()) {
+            devopsEnvFileMapper.batchInsert(toInsert);
+        }
+        if (!toUpdate.isEmpty()) {
+            devopsEnvFileMapper.batchUpdateDevopsCommit(toUpdate);
+        }
+        if (!toDelete.isEmpty()) {
+            devopsEnvFileMapper.batchDeleteByIds(toDelete);
+        }
+    }
+
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class)
     @Override
     public void deleteByEnvId(Long envId) {
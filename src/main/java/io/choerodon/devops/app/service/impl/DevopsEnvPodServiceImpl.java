@@ -59,7 +59,7 @@ public class DevopsEnvPodServiceImpl implements DevopsEnvPodService {
 
     @Override
     public Page<DevopsEnvPodVO> pageByOptions(Long projectId, Long envId, Long appServiceId, Long instanceId, PageRequest pageable, String searchParam) {
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         Page<DevopsEnvPodDTO> devopsEnvPodDTOPageInfo = basePageByIds(projectId, envId, appServiceId, instanceId, pageable, searchParam);
         Page<DevopsEnvPodVO> devopsEnvPodVOPageInfo = ConvertUtils.convertPage(devopsEnvPodDTOPageInfo, DevopsEnvPodVO.class);
 
@@ -55,4 +55,12 @@ public class DevopsEnvResourceDetailServiceImpl implements DevopsEnvResourceDeta
        }
        return  devopsEnvResourceDetailDTOS;
     }
+
+    @Override
+    public List<DevopsEnvResourceDetailDTO> listSummariesByMessageIds(Set<Long> resourceDetailIds, Integer summaryVersion) {
+        if (CollectionUtils.isEmpty(resourceDetailIds)) {
+            return new ArrayList<>();
+        }
+        return devopsEnvResourceDetailMapper.listSummariesByMessageIds(resourceDetailIds, summaryVersion);
+    }
 }
@@ -2,12 +2,14 @@ package io.choerodon.devops.app.service.impl;
 
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
 import io.kubernetes.client.JSON;
 import io.kubernetes.client.models.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
@@ -34,6 +36,12 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
     private static final String ERROR_COMMAND_ID_IS_NULL = "error.command.id.is.null";
     private static final String LINE_SEPARATOR = "line.separator";
     private static final String NONE_LABEL = "<none>";
+    private static final Logger LOGGER = LoggerFactory.getLogger(DevopsEnvResourceServiceImpl.class);
+    /**
+     * 资源摘要信息的格式版本, 摘要信息的内容或者生成逻辑变化时需要增加版本
+     */
+    private static final Integer RESOURCE_SUMMARY_VERSION = 1;
+    private static final Gson GSON = new Gson();
     private static JSON json = new JSON();
 
     @Autowired
@@ -49,8 +57,6 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
     @Autowired
     private DevopsEnvResourceDetailService devopsEnvResourceDetailService;
     @Autowired
-    private AppServiceInstanceService appServiceInstanceService;
-    @Autowired
     private DevopsEnvResourceService devopsEnvResourceService;
     @Autowired
     private DevopsServiceService devopsServiceService;
@@ -59,7 +65,6 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
 
     @Override
     public DevopsEnvResourceVO listResourcesInHelmRelease(Long instanceId) {
-        AppServiceInstanceDTO appServiceInstanceDTO = appServiceInstanceService.baseQuery(instanceId);
         List<DevopsEnvResourceDTO> devopsEnvResourceDTOS =
                 devopsEnvResourceService.baseListByInstanceId(instanceId);
         DevopsEnvResourceVO devopsEnvResourceDTO = new DevopsEnvResourceVO();
@@ -67,126 +72,145 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
             return devopsEnvResourceDTO;
         }
 
+        // 一次查询所有资源的摘要信息, 摘要信息是旧版本的才查询完整的资源信息
+        Set<Long> resourceDetailIds = devopsEnvResourceDTOS.stream()
+                .map(DevopsEnvResourceDTO::getResourceDetailId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, DevopsEnvResourceDetailDTO> detailMap = devopsEnvResourceDetailService.listSummariesByMessageIds(resourceDetailIds, RESOURCE_SUMMARY_VERSION)
+                .stream()
+                .collect(Collectors.toMap(DevopsEnvResourceDetailDTO::getId, Function.identity()));
+
         // 关联资源
         devopsEnvResourceDTOS.forEach(envResourceDTO -> {
-                    DevopsEnvResourceDetailDTO envResourceDetailDTO = devopsEnvResourceDetailService.baesQueryByMessageId(envResourceDTO.getResourceDetailId());
-                    if (isReleaseGenerated(envResourceDetailDTO.getMessage())) {
-                        dealWithResource(envResourceDetailDTO, envResourceDTO, devopsEnvResourceDTO, appServiceInstanceDTO.getEnvId());
+                    DevopsEnvResourceDetailDTO envResourceDetailDTO = detailMap.get(envResourceDTO.getResourceDetailId());
+                    if (envResourceDetailDTO == null) {
+                        return;
                     }
+                    DevopsEnvResourceVO summary;
+                    if (RESOURCE_SUMMARY_VERSION.equals(envResourceDetailDTO.getSummaryVersion())) {
+                        summary = GSON.fromJson(envResourceDetailDTO.getSummary(), DevopsEnvResourceVO.class);
+                    } else {
+                        summary = buildResourceSummary(envResourceDTO.getKind(), envResourceDetailDTO.getMessage());
+                    }
+                    mergeResourceSummary(devopsEnvResourceDTO, summary, envResourceDTO);
                 }
         );
         return devopsEnvResourceDTO;
     }
 
+    @Override
+    public void fillResourceSummary(String kind, DevopsEnvResourceDetailDTO devopsEnvResourceDetailDTO) {
+        try {
+            devopsEnvResourceDetailDTO.setSummary(GSON.toJson(buildResourceSummary(kind, devopsEnvResourceDetailDTO.getMessage())));
+            devopsEnvResourceDetailDTO.setSummaryVersion(RESOURCE_SUMMARY_VERSION);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to build summary for resource of kind {}", kind, e);
+            // 置为无效的版本, 更新时会覆盖之前的摘要信息
+            devopsEnvResourceDetailDTO.setSummary(null);
+            devopsEnvResourceDetailDTO.setSummaryVersion(0);
+        }
+    }
+
     /**
      * 判断该资源是否是应用chart包中定义而生成资源
      *
-     * @param message 资源的信息
+     * @param metadata 资源的元数据
      * @return true 如果是chart包定义生成的
      */
-    private boolean isReleaseGenerated(String message) {
-        try {
-            JsonNode info = new ObjectMapper().readTree(message);
-            return info.get("metadata").get("labels").get("choerodon.io/release") != null;
-        } catch (Exception e) {
-            return false;
-        }
+    private boolean isReleaseGenerated(V1ObjectMeta metadata) {
+        return metadata != null
+                && metadata.getLabels() != null
+                && metadata.getLabels().containsKey(AppServiceInstanceService.INSTANCE_LABEL_RELEASE);
     }
 
-
     /**
-     * 处理获取的资源详情，将资源详情根据类型进行数据处理填入 devopsEnvResourceDTO 中
+     * 生成资源的摘要信息, 即只包含这个资源的DevopsEnvResourceVO
+     * 不是chart包中定义而生成的资源以及不需要展示的资源类型, 摘要信息中没有数据
      *
-     * @param devopsEnvResourceDetailDTO 资源详情
-     * @param devopsEnvResourceDTO       资源
-     * @param devopsEnvResourceVO        存放处理结果的dto
-     * @param envId                      环境id
+     * @param kind    资源类型
+     * @param message 资源信息
+     * @return 摘要信息
      */
-    private void dealWithResource(DevopsEnvResourceDetailDTO devopsEnvResourceDetailDTO, DevopsEnvResourceDTO devopsEnvResourceDTO, DevopsEnvResourceVO devopsEnvResourceVO, Long envId) {
-        ResourceType resourceType = ResourceType.forString(devopsEnvResourceDTO.getKind());
-        if (resourceType == null) {
-            resourceType = ResourceType.MISSTYPE;
+    private DevopsEnvResourceVO buildResourceSummary(String kind, String message) {
+        DevopsEnvResourceVO devopsEnvResourceVO = new DevopsEnvResourceVO();
+        ResourceType resourceType = kind == null ? null : ResourceType.forString(kind);
+        if (resourceType == null || message == null) {
+            return devopsEnvResourceVO;
         }
         switch (resourceType) {
             case POD:
-                V1Pod v1Pod = json.deserialize(devopsEnvResourceDetailDTO.getMessage(), V1Pod.class);
-                addPodToResource(devopsEnvResourceVO, v1Pod);
+                V1Pod v1Pod = json.deserialize(message, V1Pod.class);
+                if (isReleaseGenerated(v1Pod.getMetadata())) {
+                    addPodToResource(devopsEnvResourceVO, v1Pod);
+                }
                 break;
             case DEPLOYMENT:
-                V1beta2Deployment v1beta2Deployment = json.deserialize(
-                        devopsEnvResourceDetailDTO.getMessage(),
-                        V1beta2Deployment.class);
-
-                addDeploymentToResource(devopsEnvResourceVO, v1beta2Deployment);
+                V1beta2Deployment v1beta2Deployment = json.deserialize(message, V1beta2Deployment.class);
+                if (isReleaseGenerated(v1beta2Deployment.getMetadata())) {
+                    addDeploymentToResource(devopsEnvResourceVO, v1beta2Deployment);
+                }
                 break;
             case SERVICE:
-                V1Service v1Service = json.deserialize(devopsEnvResourceDetailDTO.getMessage(),
-                        V1Service.class);
-//                DevopsServiceDTO devopsServiceDTO = devopsServiceService.baseQueryByNameAndEnvId(
-//                        devopsEnvResourceDTO.getName(), envId);
-//                if (devopsServiceDTO != null) {
-//                    List<String> domainNames =
-//                            devopsIngressService.baseListNameByServiceId(
-//                                    devopsServiceDTO.getId());
-//                    domainNames.forEach(domainName -> {
-//                        DevopsEnvResourceDTO newDevopsEnvResourceDTO =
-//                                baseQueryOptions(
-//                                        null,
-//                                        null,
-//                                        envId,
-//                                        "Ingress",
-//                                        domainName);
-//                        //升级0.11.0-0.12.0,资源表新增envId,修复以前的域名数据
-//                        if (newDevopsEnvResourceDTO == null) {
-//                            newDevopsEnvResourceDTO = baseQueryOptions(
-//                                    null,
-//                                    null,
-//                                    null,
-//                                    "Ingress",
-//                                    domainName);
-//                        }
-//                        if (newDevopsEnvResourceDTO != null) {
-//                            DevopsEnvResourceDetailDTO newDevopsEnvResourceDetailDTO =
-//                                    devopsEnvResourceDetailService.baesQueryByMessageId(
-//                                            newDevopsEnvResourceDTO.getResourceDetailId());
-//                            V1beta1Ingress v1beta1Ingress = json.deserialize(
-//                                    newDevopsEnvResourceDetailDTO.getMessage(),
-//                                    V1beta1Ingress.class);
-//                            devopsEnvResourceVO.getIngressVOS().add(addIngressToResource(v1beta1Ingress));
-//                        }
-//                    });
-//                }
-                addServiceToResource(devopsEnvResourceVO, v1Service);
+                V1Service v1Service = json.deserialize(message, V1Service.class);
+                if (isReleaseGenerated(v1Service.getMetadata())) {
+                    addServiceToResource(devopsEnvResourceVO, v1Service);
+                }
                 break;
             case INGRESS:
-                if (devopsEnvResourceDTO.getInstanceId() != null) {
-                    V1beta1Ingress v1beta1Ingress = json.deserialize(
-                            devopsEnvResourceDetailDTO.getMessage(),
-                            V1beta1Ingress.class);
+                V1beta1Ingress v1beta1Ingress = json.deserialize(message, V1beta1Ingress.class);
+                if (isReleaseGenerated(v1beta1Ingress.getMetadata())) {
                     devopsEnvResourceVO.getIngressVOS().add(addIngressToResource(v1beta1Ingress));
                 }
                 break;
             case REPLICASET:
-                V1beta2ReplicaSet v1beta2ReplicaSet = json.deserialize(
-                        devopsEnvResourceDetailDTO.getMessage(),
-                        V1beta2ReplicaSet.class);
-                addReplicaSetToResource(devopsEnvResourceVO, v1beta2ReplicaSet);
+                V1beta2ReplicaSet v1beta2ReplicaSet = json.deserialize(message, V1beta2ReplicaSet.class);
+                if (isReleaseGenerated(v1beta2ReplicaSet.getMetadata())) {
+                    addReplicaSetToResource(devopsEnvResourceVO, v1beta2ReplicaSet);
+                }
                 break;
             case DAEMONSET:
-                V1beta2DaemonSet v1beta2DaemonSet = json.deserialize(devopsEnvResourceDetailDTO.getMessage(), V1beta2DaemonSet.class);
-                addDaemonSetToResource(devopsEnvResourceVO, v1beta2DaemonSet);
+                V1beta2DaemonSet v1beta2DaemonSet = json.deserialize(message, V1beta2DaemonSet.class);
+                if (isReleaseGenerated(v1beta2DaemonSet.getMetadata())) {
+                    addDaemonSetToResource(devopsEnvResourceVO, v1beta2DaemonSet);
+                }
                 break;
             case STATEFULSET:
-                V1beta2StatefulSet v1beta2StatefulSet = json.deserialize(devopsEnvResourceDetailDTO.getMessage(), V1beta2StatefulSet.class);
-                addStatefulSetSetToResource(devopsEnvResourceVO, v1beta2StatefulSet);
+                V1beta2StatefulSet v1beta2StatefulSet = json.deserialize(message, V1beta2StatefulSet.class);
+                if (isReleaseGenerated(v1beta2StatefulSet.getMetadata())) {
+                    addStatefulSetSetToResource(devopsEnvResourceVO, v1beta2StatefulSet);
+                }
                 break;
             case PERSISTENT_VOLUME_CLAIM:
-                V1PersistentVolumeClaim persistentVolumeClaim = json.deserialize(devopsEnvResourceDetailDTO.getMessage(), V1PersistentVolumeClaim.class);
-                addPersistentVolumeClaimToResource(devopsEnvResourceVO, persistentVolumeClaim);
+                V1PersistentVolumeClaim persistentVolumeClaim = json.deserialize(message, V1PersistentVolumeClaim.class);
+                if (isReleaseGenerated(persistentVolumeClaim.getMetadata())) {
+                    addPersistentVolumeClaimToResource(devopsEnvResourceVO, persistentVolumeClaim);
+                }
                 break;
             default:
                 break;
         }
+        return devopsEnvResourceVO;
+    }
+
+    /**
+     * 将资源的摘要信息合并到结果中
+     *
+     * @param devopsEnvResourceVO  存放处理结果的dto
+     * @param summary              资源的摘要信息
+     * @param devopsEnvResourceDTO 资源
+     */
+    private void mergeResourceSummary(DevopsEnvResourceVO devopsEnvResourceVO, DevopsEnvResourceVO summary, DevopsEnvResourceDTO devopsEnvResourceDTO) {
+        devopsEnvResourceVO.getPodVOS().addAll(summary.getPodVOS());
+        devopsEnvResourceVO.getDeploymentVOS().addAll(summary.getDeploymentVOS());
+        devopsEnvResourceVO.getServiceVOS().addAll(summary.getServiceVOS());
+        if (devopsEnvResourceDTO.getInstanceId() != null) {
+            devopsEnvResourceVO.getIngressVOS().addAll(summary.getIngressVOS());
+        }
+        devopsEnvResourceVO.getReplicaSetVOS().addAll(summary.getReplicaSetVOS());
+        devopsEnvResourceVO.getDaemonSetVOS().addAll(summary.getDaemonSetVOS());
+        devopsEnvResourceVO.getStatefulSetVOS().addAll(summary.getStatefulSetVOS());
+        devopsEnvResourceVO.getPersistentVolumeClaimVOS().addAll(summary.getPersistentVolumeClaimVOS());
     }
 
 
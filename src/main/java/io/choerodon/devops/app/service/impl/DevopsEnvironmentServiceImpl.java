@@ -290,7 +290,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     @Override
     public List<DevopsEnvGroupEnvsVO> listDevopsEnvGroupEnvs(Long projectId, Boolean active) {
         List<DevopsEnvGroupEnvsVO> devopsEnvGroupEnvsDTOS = new ArrayList<>();
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = baseListByProjectIdAndActive(projectId, active).stream().peek(t ->
                 setEnvStatus(upgradeClusterList, t)
         )
@@ -342,7 +342,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     public List<DevopsEnvGroupEnvsVO> listEnvTreeMenu(Long projectId) {
         List<DevopsEnvGroupEnvsVO> devopsEnvGroupEnvsDTOS = new ArrayList<>();
         // 获得环境列表(包含激活与不激活)
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
 
         List<DevopsEnvironmentDTO> devopsEnvironmentList = devopsEnvironmentMapper.listByProjectId(projectId)
                 .stream()
@@ -402,7 +402,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public List<DevopsEnvironmentRepVO> listByGroup(Long projectId, Long groupId) {
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectIdAndGroupId(projectId, groupId)
                 .stream()
                 .peek(t -> setEnvStatus(upgradeClusterList, t))
@@ -491,7 +491,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         // 查询当前用户是否为项目所有者
         Boolean projectOwnerOrRoot = permissionHelper.isGitlabProjectOwnerOrGitlabAdmin(projectId);
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = baseListByProjectIdAndActive(projectId, active).stream()
                 .filter(devopsEnvironmentE -> !devopsEnvironmentE.getFailed()).peek(t -> {
                     setEnvStatus(upgradeClusterList, t);
@@ -504,7 +504,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public List<DevopsEnvironmentViewVO> listInstanceEnvTree(Long projectId) {
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
 
         List<DevopsEnvironmentViewVO> connectedEnvs = new ArrayList<>();
         List<DevopsEnvironmentViewVO> unConnectedEnvs = new ArrayList<>();
@@ -553,7 +553,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public List<DevopsResourceEnvOverviewVO> listResourceEnvTree(Long projectId) {
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
 
         List<DevopsResourceEnvOverviewVO> connectedEnvs = new ArrayList<>();
         List<DevopsResourceEnvOverviewVO> unConnectedEnvs = new ArrayList<>();
@@ -595,7 +595,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         if (active == null) {
             active = Boolean.TRUE;
         }
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
 
         // 要停用环境时，对环境进行校验
         if (!active) {
@@ -641,7 +641,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         BeanUtils.copyProperties(envInfo, vo);
         vo.setFail(envInfo.getFailed());
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
         vo.setConnect(upgradeClusterList.contains(envInfo.getClusterId()));
 
 
@@ -705,7 +705,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         return ConvertUtils.convertObject(baseUpdate(toUpdate), DevopsEnvironmentUpdateVO.class);
     }
 
-    private void setEnvStatus(List<Long> upgradeEnvList, DevopsEnvironmentDTO t) {
+    private void setEnvStatus(Set<Long> upgradeEnvList, DevopsEnvironmentDTO t) {
         t.setConnected(upgradeEnvList.contains(t.getClusterId()));
     }
 
@@ -1333,7 +1333,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         CommonExAssertUtil.assertNotNull(devopsEnvironmentDTO, "error.env.id.not.exist", envId);
         CommonExAssertUtil.assertTrue(projectId.equals(devopsEnvironmentDTO.getProjectId()), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
         //排除掉运行中的环境
         if (Boolean.TRUE.equals(devopsEnvironmentDTO.getActive()) && Boolean.FALSE.equals(devopsEnvironmentDTO.getFailed()) && upgradeClusterList.contains(devopsEnvironmentDTO.getClusterId())) {
             throw new CommonException("error.env.delete");
@@ -1627,7 +1627,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     public List<DevopsClusterRepVO> listDevopsCluster(Long projectId) {
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
         List<DevopsClusterRepVO> devopsClusterRepVOS = ConvertUtils.convertList(devopsClusterService.baseListByProjectId(projectId, projectDTO.getOrganizationId()), DevopsClusterRepVO.class);
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
         devopsClusterRepVOS.forEach(t -> {
             if (upgradeClusterList.contains(t.getId())) {
                 t.setConnect(true);
@@ -3,9 +3,6 @@ package io.choerodon.devops.app.service.impl;
 import static io.choerodon.devops.infra.constant.KubernetesConstants.METADATA;
 import static io.choerodon.devops.infra.constant.KubernetesConstants.NAME;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -14,6 +11,8 @@ import javax.annotation.PostConstruct;
 import com.alibaba.fastjson.JSONObject;
 import io.kubernetes.client.models.V1Endpoints;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,14 +23,12 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.util.CollectionUtils;
-import org.yaml.snakeyaml.Yaml;
 
 import io.choerodon.asgard.saga.annotation.Saga;
 import io.choerodon.asgard.saga.producer.StartSagaBuilder;
 import io.choerodon.asgard.saga.producer.TransactionalProducer;
 import io.choerodon.core.domain.Page;
 import io.choerodon.core.exception.CommonException;
-import io.choerodon.core.exception.FeignException;
 import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.core.oauth.DetailsHelper;
 import io.choerodon.devops.api.vo.*;
@@ -45,7 +42,7 @@ import io.choerodon.devops.infra.dto.agile.IssueDTO;
 import io.choerodon.devops.infra.dto.gitlab.BranchDTO;
 import io.choerodon.devops.infra.dto.gitlab.CommitDTO;
 import io.choerodon.devops.infra.dto.gitlab.CompareResultDTO;
-import io.choerodon.devops.infra.dto.gitlab.MemberDTO;
+import io.choerodon.devops.infra.dto.gitlab.DiffDTO;
 import io.choerodon.devops.infra.dto.iam.IamUserDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.dto.iam.Tenant;
@@ -56,6 +53,10 @@ import io.choerodon.devops.infra.feign.operator.AgileServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.AsgardServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
+import io.choerodon.devops.infra.gitops.GitOpsObjectCache;
+import io.choerodon.devops.infra.gitops.GitOpsRepositoryPool;
+import io.choerodon.devops.infra.handler.FanOutAggregator;
 import io.choerodon.devops.infra.mapper.DevopsMergeRequestMapper;
 import io.choerodon.devops.infra.util.*;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -96,8 +97,6 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     @Autowired
     private AgileServiceClientOperator agileServiceClientOperator;
     @Autowired
-    private GitUtil gitUtil;
-    @Autowired
     private DevopsEnvironmentService devopsEnvironmentService;
     @Autowired
     private DevopsEnvFileResourceService devopsEnvFileResourceService;
@@ -134,6 +133,12 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     private List<ConvertK8sObjectService> convertK8sObjectServices;
     @Autowired
     private AsgardServiceClientOperator asgardServiceClientOperator;
+    @Autowired
+    private GitOpsObjectCache gitOpsObjectCache;
+    @Autowired
+    private GitOpsRepositoryPool gitOpsRepositoryPool;
+    @Autowired
+    private FanOutAggregator fanOutAggregator;
 
     /**
      * 初始化转换类和处理关系的类
@@ -310,8 +315,6 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         } catch (GitlabAccessInvalidException e) {
             return null;
         }
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId, false, false, false);
-        Tenant organizationDTO = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId(), false);
         AppServiceDTO applicationDTO = appServiceService.baseQuery(appServiceId);
         if (applicationDTO == null) {
             return null;
@@ -321,18 +324,24 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         if (userAttrDTO == null) {
             throw new CommonException(ERROR_GITLAB_USER_SYNC_FAILED);
         }
-        if (!permissionHelper.isGitlabProjectOwnerOrGitlabAdmin(projectId)) {
-            MemberDTO memberDTO = gitlabServiceClientOperator.getProjectMember(applicationDTO.getGitlabProjectId(), TypeUtil.objToInteger(userAttrDTO.getGitlabUserId()));
-            if (memberDTO == null) {
-                throw new CommonException("error.user.not.in.gitlab.project");
-            }
-        }
+        // 项目, 组织和gitlab成员的查询互相独立, 与分支的分页查询同时进行
+        FanOutAggregator.Call<String> pathCall = fanOutAggregator.submit("branch-repository-path", () -> {
+            ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId, false, false, false);
+            Tenant organizationDTO = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId(), false);
+            String urlSlash = gitlabUrl.endsWith("/") ? "" : "/";
+            return String.format("%s%s%s-%s/%s",
+                    gitlabUrl, urlSlash, organizationDTO.getTenantNum(), projectDTO.getCode(), applicationDTO.getCode());
+        });
+        FanOutAggregator.Call<Boolean> memberCall = fanOutAggregator.submit("branch-gitlab-member", () ->
+                permissionHelper.isGitlabProjectOwnerOrGitlabAdmin(projectId)
+                        || gitlabServiceClientOperator.getProjectMember(applicationDTO.getGitlabProjectId(), TypeUtil.objToInteger(userAttrDTO.getGitlabUserId())) != null);
 
-        String urlSlash = gitlabUrl.endsWith("/") ? "" : "/";
-        String path = String.format("%s%s%s-%s/%s",
-                gitlabUrl, urlSlash, organizationDTO.getTenantNum(), projectDTO.getCode(), applicationDTO.getCode());
         Page<DevopsBranchDTO> devopsBranchDTOPageInfo =
                 devopsBranchService.basePageBranch(appServiceId, pageable, params, null);
+        if (!Boolean.TRUE.equals(memberCall.get())) {
+            throw new CommonException("error.user.not.in.gitlab.project");
+        }
+        String path = pathCall.get();
         Page<BranchVO> devopsBranchVOPageInfo = ConvertUtils.convertPage(devopsBranchDTOPageInfo, BranchVO.class);
 
         if (CollectionUtils.isEmpty(devopsBranchVOPageInfo.getContent())) {
@@ -340,31 +349,26 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         }
         Set<Long> branchCreaterGitlabUserIds = devopsBranchDTOPageInfo.getContent().stream().map(DevopsBranchDTO::getUserId).collect(Collectors.toSet());
         Set<Long> lastCommitGitlabUserIds = devopsBranchDTOPageInfo.getContent().stream().map(DevopsBranchDTO::getLastCommitUser).collect(Collectors.toSet());
-
-        List<UserAttrVO> creater = userAttrService.listUsersByGitlabUserIds(branchCreaterGitlabUserIds);
-        List<Long> createIamUserIds = creater.stream().map(UserAttrVO::getIamUserId).collect(Collectors.toList());
-        Map<Long, Long> createrIamUserIdAndGitlabUserIdMap = creater.stream().filter(userAttrVO -> userAttrVO.getIamUserId() != null && userAttrVO.getGitlabUserId() != null).collect(Collectors.toMap(UserAttrVO::getGitlabUserId, UserAttrVO::getIamUserId));
-
-
-        List<UserAttrVO> lastCommitUser = userAttrService.listUsersByGitlabUserIds(lastCommitGitlabUserIds);
-        List<Long> lastCommitIamUserIds = lastCommitUser.stream().map(UserAttrVO::getIamUserId).collect(Collectors.toList());
-        Map<Long, Long> lastCommitIamUserIdAndGitlabUserIdMap = lastCommitUser.stream().filter(userAttrVO -> userAttrVO.getIamUserId() != null && userAttrVO.getGitlabUserId() != null).collect(Collectors.toMap(UserAttrVO::getGitlabUserId, UserAttrVO::getIamUserId));
-
         List<Long> issuedIds = devopsBranchDTOPageInfo.getContent().stream().map(DevopsBranchDTO::getIssueId).filter(Objects::nonNull).collect(Collectors.toList());
-
-        Map<Long, IamUserDTO> iamUserDTOMap = baseServiceClientOperator.listUsersByIds(createIamUserIds).stream().collect(Collectors.toMap(IamUserDTO::getId, v -> v));
-        Map<Long, IamUserDTO> lastCommitUserDTOMap = baseServiceClientOperator.listUsersByIds(lastCommitIamUserIds).stream().collect(Collectors.toMap(IamUserDTO::getId, v -> v));
-        Map<Long, IssueDTO> issues = null;
-        // 读取敏捷问题列表可能会失败，但是不希望影响查询分支逻辑，所以捕获异常
-        try {
-            issues = agileServiceClientOperator.listIssueByIds(currentProjectId != null ? currentProjectId : projectId, issuedIds).stream().collect(Collectors.toMap(IssueDTO::getIssueId, v -> v));
-        } catch (Exception e) {
-            LOGGER.error("query agile issue failed.", e);
-        }
-
-        Map<Long, IssueDTO> finalIssues = issues;
         List<String> refIds = devopsBranchDTOPageInfo.getContent().stream().map(devopsBranchDTO -> String.valueOf(devopsBranchDTO.getId())).collect(Collectors.toList());
-        Map<String, SagaInstanceDetails> stringSagaInstanceDetailsMap = SagaInstanceUtils.listToMap(asgardServiceClientOperator.queryByRefTypeAndRefIds(PROJECT, refIds, SagaTopicCodeConstants.DEVOPS_CREATE_BRANCH));
+
+        // 用户, 敏捷问题和saga实例只用于展示, 查询失败时分支列表中缺少这部分信息
+        FanOutAggregator.Call<Map<Long, IamUserDTO>> createrCall = fanOutAggregator.submit("branch-creators",
+                () -> queryIamUsersByGitlabUserIds(branchCreaterGitlabUserIds), Collections::emptyMap);
+        FanOutAggregator.Call<Map<Long, IamUserDTO>> lastCommitUserCall = fanOutAggregator.submit("branch-last-commit-users",
+                () -> queryIamUsersByGitlabUserIds(lastCommitGitlabUserIds), Collections::emptyMap);
+        FanOutAggregator.Call<Map<Long, IssueDTO>> issueCall = fanOutAggregator.submit("branch-issues",
+                () -> agileServiceClientOperator.listIssueByIds(currentProjectId != null ? currentProjectId : projectId, issuedIds).stream().collect(Collectors.toMap(IssueDTO::getIssueId, v -> v)),
+                () -> null);
+        FanOutAggregator.Call<Map<String, SagaInstanceDetails>> sagaCall = fanOutAggregator.submit("branch-saga-instances",
+                () -> SagaInstanceUtils.listToMap(asgardServiceClientOperator.queryByRefTypeAndRefIds(PROJECT, refIds, SagaTopicCodeConstants.DEVOPS_CREATE_BRANCH)),
+                Collections::emptyMap);
+
+        // key为gitlab用户id
+        Map<Long, IamUserDTO> createrMap = createrCall.get();
+        Map<Long, IamUserDTO> lastCommitUserMap = lastCommitUserCall.get();
+        Map<Long, IssueDTO> finalIssues = issueCall.get();
+        Map<String, SagaInstanceDetails> stringSagaInstanceDetailsMap = sagaCall.get();
         devopsBranchVOPageInfo.setContent(devopsBranchDTOPageInfo.getContent().stream().map(t -> {
             IssueDTO issueDTO = null;
             if (!CollectionUtils.isEmpty(finalIssues)) {
@@ -373,17 +377,33 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 }
             }
 
-            Long createUserId = createrIamUserIdAndGitlabUserIdMap.get(t.getUserId());
-            IamUserDTO userDTO = createUserId == null ? null : iamUserDTOMap.get(createUserId);
-
-            Long lastCommitUserId = lastCommitIamUserIdAndGitlabUserIdMap.get(t.getLastCommitUser());
-            IamUserDTO commitUserDTO = lastCommitUserId == null ? null : lastCommitUserDTOMap.get(lastCommitUserId);
+            IamUserDTO userDTO = createrMap.get(t.getUserId());
+            IamUserDTO commitUserDTO = lastCommitUserMap.get(t.getLastCommitUser());
             String commitUrl = String.format("%s/commit/%s?view=parallel", path, t.getLastCommit());
             return getBranchVO(t, commitUrl, commitUserDTO, userDTO, issueDTO, SagaInstanceUtils.fillInstanceId(stringSagaInstanceDetailsMap, String.valueOf(t.getId())));
         }).collect(Collectors.toList()));
         return devopsBranchVOPageInfo;
     }
 
+    /**
+     * 根据gitlab用户id查询iam用户
+     *
+     * @return key为gitlab用户id
+     */
+    private Map<Long, IamUserDTO> queryIamUsersByGitlabUserIds(Set<Long> gitlabUserIds) {
+        List<UserAttrVO> userAttrVOS = userAttrService.listUsersByGitlabUserIds(gitlabUserIds);
+        Map<Long, Long> gitlabUserIdAndIamUserIdMap = userAttrVOS.stream().filter(userAttrVO -> userAttrVO.getIamUserId() != null && userAttrVO.getGitlabUserId() != null).collect(Collectors.toMap(UserAttrVO::getGitlabUserId, UserAttrVO::getIamUserId));
+        Map<Long, IamUserDTO> iamUserDTOMap = baseServiceClientOperator.listUsersByIds(new ArrayList<>(gitlabUserIdAndIamUserIdMap.values())).stream().collect(Collectors.toMap(IamUserDTO::getId, v -> v));
+        Map<Long, IamUserDTO> result = new HashMap<>();
+        gitlabUserIdAndIamUserIdMap.forEach((gitlabUserId, iamUserId) -> {
+            IamUserDTO iamUserDTO = iamUserDTOMap.get(iamUserId);
+            if (iamUserDTO != null) {
+                result.put(gitlabUserId, iamUserDTO);
+            }
+        });
+        return result;
+    }
+
     @Override
     public DevopsBranchVO queryBranch(Long projectId, Long applicationId, String branchName) {
         DevopsBranchDTO branchDTO = devopsBranchService.baseQueryByAppAndBranchName(applicationId, branchName);
@@ -459,12 +479,32 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
         //设置每个合并请求下关联的commit
         if (devopsMergeRequestDTOS != null && !devopsMergeRequestDTOS.isEmpty()) {
+            // 作者和处理人一起查询, 每个合并请求的commit并发查询
+            Set<Long> gitlabUserIds = new HashSet<>();
             devopsMergeRequestDTOS.forEach(content -> {
-                MergeRequestVO mergeRequestVO = devopsMergeRequestToMergeRequest(content);
+                gitlabUserIds.add(content.getAuthorId());
+                gitlabUserIds.add(content.getAssigneeId());
+            });
+            gitlabUserIds.remove(null);
+            FanOutAggregator.Call<Map<Long, IamUserDTO>> userCall = fanOutAggregator.submit("merge-request-users",
+                    () -> queryIamUsersByGitlabUserIds(gitlabUserIds), Collections::emptyMap);
+            Integer gitlabUserId = getGitlabUserId();
+            // 结果为空表示合并请求在gitlab中已经不存在, 降级值null表示查询失败
+            List<FanOutAggregator.Call<Optional<List<CommitDTO>>>> commitCalls = devopsMergeRequestDTOS.stream()
+                    .map(content -> fanOutAggregator.submit("merge-request-commits",
+                            () -> Optional.ofNullable(gitlabServiceClientOperator.listCommits(
+                                    content.getGitlabProjectId().intValue(),
+                                    content.getGitlabMergeRequestId().intValue(), gitlabUserId)),
+                            () -> null))
+                    .collect(Collectors.toList());
+
+            Map<Long, IamUserDTO> users = userCall.get();
+            for (int i = 0; i < devopsMergeRequestDTOS.size(); i++) {
+                MergeRequestVO mergeRequestVO = devopsMergeRequestToMergeRequest(devopsMergeRequestDTOS.get(i), commitCalls.get(i).get(), users);
                 if (mergeRequestVO != null) {
                     pageContent.add(mergeRequestVO);
                 }
-            });
+            }
         }
         Page<MergeRequestVO> mergeRequestVOPageInfo = ConvertUtils.convertPage(devopsMergeRequestDTOPageInfo, MergeRequestVO.class);
         mergeRequestVOPageInfo.setContent(pageContent);
@@ -633,31 +673,31 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
         final Long projectId = devopsEnvironmentDTO.getProjectId();
 
+        // 解析完成之前其它线程不能更新这个环境的本地库
+        gitOpsRepositoryPool.lock(path);
         try {
             //更新本地库到最新提交
-            Git git = handDevopsEnvGitRepository(path, url, devopsEnvironmentDTO.getEnvIdRsa(), devopsEnvCommitDTO.getCommitSha());
+            Git git = gitOpsRepositoryPool.update(path, url, devopsEnvironmentDTO.getEnvIdRsa());
             LOGGER.info("更新gitops库成功");
             //查询devops-sync tag是否存在，存在则比较tag和最新commit的diff，不存在则识别gitops库下所有文件为新增文件
-            tagNotExist = getDevopsSyncTag(pushWebHookVO);
+            String devopsSyncTagCommit = queryDevopsSyncTagCommit(pushWebHookVO);
+            tagNotExist = devopsSyncTagCommit == null;
+
+            // 当前工作区(HEAD)中所有yaml文件的blob id, 用于读取解析结果的缓存
+            Map<String, String> fileBlobs = GitUtil.listYamlFileBlobs(path + GIT_SUFFIX, Constants.HEAD);
 
             if (tagNotExist) {
-                operationFiles.addAll(FileUtil.getFilesPath(path));
-                operationFiles.forEach(file -> {
-                    List<DevopsEnvFileResourceDTO> devopsEnvFileResourceDTOS = devopsEnvFileResourceService
-                            .baseQueryByEnvIdAndPath(devopsEnvironmentDTO.getId(), file);
-                    if (!devopsEnvFileResourceDTOS.isEmpty()) {
-                        beforeSync.addAll(devopsEnvFileResourceDTOS);
-                    }
-                });
+                operationFiles.addAll(fileBlobs.keySet());
+                beforeSync.addAll(devopsEnvFileResourceService.listByEnvIdAndFilePaths(envId, operationFiles));
             } else {
-                handleDiffs(gitLabProjectId, operationFiles, deletedFiles, beforeSync, beforeSyncDelete,
+                handleDiffs(gitLabProjectId, path, devopsSyncTagCommit, operationFiles, deletedFiles, beforeSync, beforeSyncDelete,
                         devopsEnvironmentDTO, devopsEnvCommitDTO);
             }
 
             Map<Class, List> resourceKindMap = initResourceKindContainer();
 
             //从文件中读出对象,序列化为K8S对象
-            objectPath = convertFileToK8sObjects(operationFiles, path,
+            objectPath = convertFileToK8sObjects(operationFiles, git.getRepository(), fileBlobs,
                     EnvironmentType.forValue(devopsEnvironmentDTO.getType()),
                     resourceKindMap, devopsEnvironmentDTO.getId(),
                     new ArrayList<>(beforeSyncDelete));
@@ -668,6 +708,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
             //将k8s对象初始化为实例，网络，域名，证书，秘钥对象,处理对象文件关系
             resourceKindMap.computeIfAbsent(V1Endpoints.class, key -> new ArrayList());
+            // 对象文件关系的写入合并为批量语句, 每个处理器处理完后写入
+            DevopsEnvFileResourceBatch fileResourceBatch = devopsEnvFileResourceService.beginBatch();
             resourceKindMap.forEach((k, v) -> {
                 HandlerObjectFileRelationsService handler = objectFileRelationHandlers.get(k);
                 if (handler == null) {
@@ -676,14 +718,15 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                     }
                     return;
                 }
-                handler.handlerRelations(objectPath, beforeSyncFileResource, v, resourceKindMap.get(V1Endpoints.class), envId, projectId, path, userId);
+                handler.handlerRelations(objectPath, beforeSyncFileResource, v, resourceKindMap.get(V1Endpoints.class), envId, projectId, path, userId, fileResourceBatch);
+                fileResourceBatch.flush();
             });
             LOGGER.info("k8s对象转换平台对象成功！");
             // 处理文件
             handleFiles(operationFiles, deletedFiles, devopsEnvironmentDTO, devopsEnvCommitDTO, path);
 
             // 更新远程仓库的DevOps相关的tag
-            handleTag(git, devopsEnvironmentDTO.getEnvIdRsa(), pushWebHookVO, devopsEnvCommitDTO, tagNotExist);
+            handleTag(git, devopsEnvironmentDTO.getEnvIdRsa(), devopsEnvCommitDTO, tagNotExist);
 
             devopsEnvironmentDTO.setDevopsSyncCommit(devopsEnvCommitDTO.getId());
             //更新环境 解释commit
@@ -715,6 +758,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
             LOGGER.info(e.getMessage(), e);
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return;
+        } finally {
+            gitOpsRepositoryPool.unlock(path);
         }
 
         //删除文件错误记录
@@ -749,54 +794,41 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
     private void handleFiles(List<String> operationFiles, List<String> deletedFiles,
                              DevopsEnvironmentDTO devopsEnvironmentDTO, DevopsEnvCommitDTO devopsEnvCommitDTO, String path) {
-        //新增解释文件记录
-        for (String filePath : operationFiles) {
-            DevopsEnvFileDTO devopsEnvFileDTO = devopsEnvFileService
-                    .baseQueryByEnvAndPath(devopsEnvironmentDTO.getId(), filePath);
-            if (devopsEnvFileDTO == null) {
-                devopsEnvFileDTO = new DevopsEnvFileDTO();
-                devopsEnvFileDTO.setDevopsCommit(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
-                devopsEnvFileDTO.setFilePath(filePath);
-                devopsEnvFileDTO.setEnvId(devopsEnvCommitDTO.getEnvId());
-                devopsEnvFileService.baseCreate(devopsEnvFileDTO);
-            } else {
-                devopsEnvFileDTO.setDevopsCommit(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
-                devopsEnvFileService.baseUpdate(devopsEnvFileDTO);
-            }
-        }
-
-        for (String filePath : deletedFiles) {
-            DevopsEnvFileDTO devopsEnvFileDTO = new DevopsEnvFileDTO();
-            devopsEnvFileDTO.setEnvId(devopsEnvironmentDTO.getId());
-            devopsEnvFileDTO.setFilePath(filePath);
-            devopsEnvFileService.baseDelete(devopsEnvFileDTO);
-        }
+        // 一次遍历提交历史查出所有文件的最新提交
+        Map<String, String> latestCommits = GitUtil.getFilesLatestCommit(path + GIT_SUFFIX, operationFiles);
+        Map<String, String> fileCommits = new HashMap<>();
+        operationFiles.forEach(filePath -> fileCommits.put(filePath, latestCommits.get(filePath)));
+        //新增、更新和删除解释文件记录
+        devopsEnvFileService.batchUpdateByGitOps(devopsEnvironmentDTO.getId(), fileCommits, deletedFiles);
     }
 
-    private void handleTag(Git git, String sshKey, PushWebHookVO pushWebHookVO,
-                           DevopsEnvCommitDTO devopsEnvCommitDTO, Boolean tagNotExist) {
+    /**
+     * 更新远程仓库的devops-sync tag, 推送失败时抛出异常
+     * tag是否存在使用解析开始时查询的结果, 不再重新查询远程仓库的tag
+     */
+    private void handleTag(Git git, String sshKey, DevopsEnvCommitDTO devopsEnvCommitDTO, boolean tagNotExist) {
         if (tagNotExist) {
             GitUtil.createTagAndPush(git, sshKey, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
-            if (getDevopsSyncTag(pushWebHookVO)) {
-                GitUtil.createTagAndPush(git, sshKey, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
-            }
         } else {
             GitUtil.pushTag(git, sshKey, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
-            if (getDevopsSyncTag(pushWebHookVO)) {
-                GitUtil.createTagAndPush(git, sshKey, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
-            }
         }
     }
 
 
-    private void handleDiffs(Integer gitLabProjectId, List<String> operationFiles, List<String> deletedFiles,
+    private void handleDiffs(Integer gitLabProjectId, String path, String devopsSyncTagCommit,
+                             List<String> operationFiles, List<String> deletedFiles,
                              Set<DevopsEnvFileResourceDTO> beforeSync, Set<DevopsEnvFileResourceDTO> beforeSyncDelete,
                              DevopsEnvironmentDTO devopsEnvironmentDTO, DevopsEnvCommitDTO devopsEnvCommitDTO) {
-        //获取将此次最新提交与tag作比价得到diff
-        CompareResultDTO compareResultDTO = gitlabServiceClientOperator
-                .queryCompareResult(gitLabProjectId, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
-        compareResultDTO.getDiffs().forEach(t -> {
-            if (t.getNewPath().contains("yaml") || t.getNewPath().contains("yml")) {
+        //获取将此次最新提交与tag作比价得到diff, 优先在本地仓库比较, 本地没有tag对应的提交时再调用GitLab的接口
+        List<DiffDTO> diffs = GitUtil.diffCommits(path + GIT_SUFFIX, devopsSyncTagCommit, devopsEnvCommitDTO.getCommitSha());
+        if (diffs == null) {
+            CompareResultDTO compareResultDTO = gitlabServiceClientOperator
+                    .queryCompareResult(gitLabProjectId, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
+            diffs = compareResultDTO.getDiffs();
+        }
+        Set<String> beforeSyncFiles = new HashSet<>();
+        diffs.forEach(t -> {
+            if (GitUtil.isYamlFile(t.getNewPath())) {
                 if (t.getDeletedFile()) {
                     // t.getNewPath() 而不是t.getOldPath()，这里能用是因为删除的文件的两个的值一致
                     deletedFiles.add(t.getNewPath());
@@ -807,21 +839,12 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                     operationFiles.add(t.getNewPath());
                 }
             }
-
-            List<DevopsEnvFileResourceDTO> devopsEnvFileResourceDTOS = devopsEnvFileResourceService
-                    .baseQueryByEnvIdAndPath(devopsEnvironmentDTO.getId(), t.getOldPath());
-            if (!devopsEnvFileResourceDTOS.isEmpty()) {
-                beforeSync.addAll(devopsEnvFileResourceDTOS);
-            }
+            beforeSyncFiles.add(t.getOldPath());
         });
 
-        deletedFiles.forEach(file -> {
-            List<DevopsEnvFileResourceDTO> devopsEnvFileResourceDTOS = devopsEnvFileResourceService
-                    .baseQueryByEnvIdAndPath(devopsEnvironmentDTO.getId(), file);
-            if (!devopsEnvFileResourceDTOS.isEmpty()) {
-                beforeSyncDelete.addAll(devopsEnvFileResourceDTOS);
-            }
-        });
+        // 每类文件的关联关系只查询一次
+        beforeSync.addAll(devopsEnvFileResourceService.listByEnvIdAndFilePaths(devopsEnvironmentDTO.getId(), beforeSyncFiles));
+        beforeSyncDelete.addAll(devopsEnvFileResourceService.listByEnvIdAndFilePaths(devopsEnvironmentDTO.getId(), deletedFiles));
     }
 
 
@@ -829,7 +852,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
      * 将涉及的文件内的对象进行反序列化处理，获取后续处理所需要的元数据
      *
      * @param files             对应之前diff操作的operationFiles
-     * @param path              环境库的本地目录
+     * @param repository        环境库的本地仓库
+     * @param fileBlobs         文件路径和blob id的映射
      * @param environmentType   环境的类型 user/system
      * @param resourceContainer 用于放置解析出的资源的容器
      * @param envId             环境ID
@@ -837,35 +861,22 @@ public class DevopsGitServiceImpl implements DevopsGitService {
      * @return 对象hashcode和对象所处文件名对映射
      */
     private Map<String, String> convertFileToK8sObjects(List<String> files,
-                                                        String path,
+                                                        Repository repository,
+                                                        Map<String, String> fileBlobs,
                                                         EnvironmentType environmentType,
                                                         Map<Class, List> resourceContainer,
                                                         Long envId,
                                                         List<DevopsEnvFileResourceDTO> beforeSyncDelete) {
         Map<String, String> objectPath = new HashMap<>();
-        Yaml yaml = new Yaml();
         final Map<String, ConvertK8sObjectService> converters = EnvironmentType.USER == environmentType ? userEnvSupportedResourceConverters : systemEnvSupportedResourceConverters;
 
         files.forEach(filePath -> {
-            File file = new File(String.format("%s/%s", path, filePath));
-            Iterable<Object> allParts;
-            try {
-                allParts = yaml.loadAll(new FileInputStream(file));
-            } catch (FileNotFoundException e) {
-                throw new CommonException(e.getMessage(), e);
+            String blobId = fileBlobs.get(filePath);
+            if (blobId == null) {
+                throw new CommonException("error.gitops.file.not.found", filePath);
             }
-            while (allParts.iterator().hasNext()) {
-                Object data;
-                try {
-                    // 真正对数据进行解析是在next方法中调用
-                    // next方法会调用 org.yaml.snakeyaml.constructor.BaseConstructor.getData()
-                    data = allParts.iterator().next();
-                } catch (Exception e) {
-                    // 捕获Yaml解析出错，如： "---{}\n---"
-                    // 返回友好的方式
-                    throw new GitOpsExplainException(GitOpsObjectError.FILE_NOT_YAML.getError(), filePath);
-                }
-
+            // 内容相同的文件(blob id相同)只解析一次
+            for (Object data : gitOpsObjectCache.loadAll(repository, blobId, filePath)) {
                 if (data == null) {
                     // 跳过只有"---"而没有内容的对象，例如"---\n---\n"
                     continue;
@@ -971,31 +982,22 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     }
 
 
-    private MergeRequestVO devopsMergeRequestToMergeRequest(DevopsMergeRequestDTO
-                                                                    devopsMergeRequestDTO) {
+    private MergeRequestVO devopsMergeRequestToMergeRequest(DevopsMergeRequestDTO devopsMergeRequestDTO,
+                                                            Optional<List<CommitDTO>> commitDTOS,
+                                                            Map<Long, IamUserDTO> users) {
         MergeRequestVO mergeRequestVO = ConvertUtils.convertObject(devopsMergeRequestDTO, MergeRequestVO.class);
         mergeRequestVO.setProjectId(devopsMergeRequestDTO.getGitlabProjectId().intValue());
         mergeRequestVO.setId(devopsMergeRequestDTO.getId().intValue());
         mergeRequestVO.setIid(devopsMergeRequestDTO.getGitlabMergeRequestId().intValue());
-        Long authorUserId = userAttrService
-                .queryUserIdByGitlabUserId(devopsMergeRequestDTO.getAuthorId());
-        Long assigneeId = userAttrService
-                .queryUserIdByGitlabUserId(devopsMergeRequestDTO.getAssigneeId());
-        List<CommitDTO> commitDTOS;
-        try {
-            commitDTOS = gitlabServiceClientOperator.listCommits(
-                    devopsMergeRequestDTO.getGitlabProjectId().intValue(),
-                    devopsMergeRequestDTO.getGitlabMergeRequestId().intValue(), getGitlabUserId());
-            if (commitDTOS == null) {
+        if (commitDTOS != null) {
+            if (!commitDTOS.isPresent()) {
                 LOGGER.info("MergeRequest not exist");
                 devopsMergeRequestMapper.delete(devopsMergeRequestDTO);
                 return null;
             }
-            mergeRequestVO.setCommits(ConvertUtils.convertList(commitDTOS, CommitVO.class));
-        } catch (FeignException e) {
-            LOGGER.info(e.getMessage());
+            mergeRequestVO.setCommits(ConvertUtils.convertList(commitDTOS.get(), CommitVO.class));
         }
-        IamUserDTO authorUser = baseServiceClientOperator.queryUserByUserId(authorUserId);
+        IamUserDTO authorUser = devopsMergeRequestDTO.getAuthorId() == null ? null : users.get(devopsMergeRequestDTO.getAuthorId());
         if (authorUser != null) {
             AuthorVO authorVO = new AuthorVO();
             authorVO.setUsername(authorUser.getLdap() ? authorUser.getLoginName() : authorUser.getEmail());
@@ -1004,7 +1006,7 @@ public class DevopsGitServiceImpl implements DevopsGitService {
             authorVO.setWebUrl(authorUser.getImageUrl());
             mergeRequestVO.setAuthor(authorVO);
         }
-        IamUserDTO assigneeUser = baseServiceClientOperator.queryUserByUserId(assigneeId);
+        IamUserDTO assigneeUser = devopsMergeRequestDTO.getAssigneeId() == null ? null : users.get(devopsMergeRequestDTO.getAssigneeId());
         if (assigneeUser != null) {
             AssigneeVO assigneeVO = new AssigneeVO();
             if (assigneeUser.getLdap()) {
@@ -1013,7 +1015,7 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 assigneeVO.setUsername(assigneeUser.getEmail());
             }
             assigneeVO.setName(assigneeUser.getRealName());
-            assigneeVO.setId(assigneeId.intValue());
+            assigneeVO.setId(assigneeUser.getId().intValue());
             assigneeVO.setWebUrl(assigneeUser.getImageUrl());
             mergeRequestVO.setAssignee(assigneeVO);
         }
@@ -1106,28 +1108,21 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         return devopsEnvFileErrorDTO;
     }
 
-    private boolean getDevopsSyncTag(PushWebHookVO pushWebHookVO) {
-
+    /**
+     * 查询devops-sync tag对应的提交
+     *
+     * @param pushWebHookVO push事件
+     * @return tag对应的commit sha, tag不存在时为null
+     */
+    private String queryDevopsSyncTagCommit(PushWebHookVO pushWebHookVO) {
         return gitlabServiceClientOperator.listTags(pushWebHookVO.getProjectId(), pushWebHookVO.getUserId())
-                .stream().noneMatch(tagDO -> tagDO.getName().equals(GitUtil.DEV_OPS_SYNC_TAG));
-
-    }
-
-    private Git handDevopsEnvGitRepository(String path, String url, String envIdRsa, String commit) {
-        File file = new File(path);
-        if (!file.exists()) {
-            return gitUtil.cloneBySsh(path, url, envIdRsa);
-        } else {
-            if (file.isDirectory() && file.listFiles().length > 0) {
-                String localPath = String.format("%s%s", path, GIT_SUFFIX);
-                return GitUtil.pullBySsh(localPath, envIdRsa);
-            } else {
-                return gitUtil.cloneBySsh(path, url, envIdRsa);
-            }
-        }
+                .stream()
+                .filter(tagDO -> tagDO.getName().equals(GitUtil.DEV_OPS_SYNC_TAG))
+                .findFirst()
+                .map(tagDO -> tagDO.getCommit() == null ? GitUtil.DEV_OPS_SYNC_TAG : tagDO.getCommit().getId())
+                .orElse(null);
     }
 
-
     @Override
     public BranchDTO baseQueryBranch(Integer gitLabProjectId, String branchName) {
         return gitlabServiceClientOperator.queryBranch(gitLabProjectId, branchName);
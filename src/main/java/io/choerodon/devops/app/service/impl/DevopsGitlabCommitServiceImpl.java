@@ -5,20 +5,26 @@ import java.util.stream.Collectors;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
 
 import io.choerodon.core.domain.Page;
 import io.choerodon.core.exception.CommonException;
+import io.choerodon.core.oauth.DetailsHelper;
 import io.choerodon.devops.api.vo.CommitFormRecordVO;
 import io.choerodon.devops.api.vo.CommitFormUserVO;
+import io.choerodon.devops.api.vo.CommitVO;
 import io.choerodon.devops.api.vo.DevopsGitlabCommitVO;
 import io.choerodon.devops.api.vo.PushWebHookVO;
 import io.choerodon.devops.app.service.AppServiceService;
 import io.choerodon.devops.app.service.DevopsGitService;
 import io.choerodon.devops.app.service.DevopsGitlabCommitService;
+import io.choerodon.devops.app.service.DevopsProjectDailyCountService;
 import io.choerodon.devops.infra.dto.AppServiceDTO;
 import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO;
 import io.choerodon.devops.infra.dto.gitlab.CommitDTO;
@@ -37,6 +43,11 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
 
     private static final Gson gson = new Gson();
     private static final Integer ADMIN = 1;
+    /**
+     * 批量保存commit时每批的数量, 限制IN查询和插入语句的大小
+     */
+    private static final int BATCH_SIZE = 500;
+    private static final Logger LOGGER = LoggerFactory.getLogger(DevopsGitlabCommitServiceImpl.class);
 
     @Autowired
     private BaseServiceClientOperator baseServiceClientOperator;
@@ -50,35 +61,15 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
     private DevopsGitService devopsGitService;
     @Autowired
     private GitlabServiceClientOperator gitlabServiceClientOperator;
+    @Autowired
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
 
     @Override
     public void create(PushWebHookVO pushWebHookVO, String token) {
         AppServiceDTO applicationDTO = applicationService.baseQueryByToken(token);
         String ref = pushWebHookVO.getRef().split("/")[2];
         if (!pushWebHookVO.getCommits().isEmpty()) {
-            pushWebHookVO.getCommits().forEach(commitDTO -> {
-                DevopsGitlabCommitDTO devopsGitlabCommitDTO = devopsGitlabCommitService.baseQueryByShaAndRef(commitDTO.getId(), ref);
-
-                if (devopsGitlabCommitDTO == null) {
-                    devopsGitlabCommitDTO = new DevopsGitlabCommitDTO();
-                    devopsGitlabCommitDTO.setAppServiceId(applicationDTO.getId());
-                    devopsGitlabCommitDTO.setCommitContent(commitDTO.getMessage());
-                    devopsGitlabCommitDTO.setCommitSha(commitDTO.getId());
-                    devopsGitlabCommitDTO.setRef(ref);
-                    devopsGitlabCommitDTO.setUrl(commitDTO.getUrl());
-                    if ("root".equals(commitDTO.getAuthor().getName())) {
-                        devopsGitlabCommitDTO.setUserId(1L);
-                    } else {
-                        IamUserDTO iamUserDTO = baseServiceClientOperator.queryByEmail(applicationDTO.getProjectId(),
-                                commitDTO.getAuthor().getEmail());
-                        if (iamUserDTO != null) {
-                            devopsGitlabCommitDTO.setUserId(iamUserDTO.getId());
-                        }
-                    }
-                    devopsGitlabCommitDTO.setCommitDate(commitDTO.getTimestamp());
-                    devopsGitlabCommitService.baseCreate(devopsGitlabCommitDTO);
-                }
-            });
+            batchCreate(applicationDTO, ref, pushWebHookVO.getCommits());
         } else {
             //直接从一个分支切出来另外一个分支，没有commits记录
             DevopsGitlabCommitDTO devopsGitlabCommitDTO = devopsGitlabCommitService.baseQueryByShaAndRef(pushWebHookVO.getCheckoutSha(), ref);
@@ -101,11 +92,84 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
                 }
                 devopsGitlabCommitDTO.setCommitDate(commitDTO.getCommittedDate());
                 devopsGitlabCommitService.baseCreate(devopsGitlabCommitDTO);
+                devopsProjectDailyCountService.increaseCommitCount(applicationDTO.getProjectId(),
+                        Collections.singletonList(devopsGitlabCommitDTO.getCommitDate()));
             }
         }
 
     }
 
+    /**
+     * 批量保存推送的commit, 每批只查询一次已经存在的commit, 相同的作者邮箱只查询一次用户
+     */
+    private void batchCreate(AppServiceDTO applicationDTO, String ref, List<CommitVO> commits) {
+        // 同一次推送中重复的commit只保存一次
+        Map<String, CommitVO> commitMap = new LinkedHashMap<>();
+        commits.forEach(commitVO -> commitMap.putIfAbsent(commitVO.getId(), commitVO));
+        List<CommitVO> distinctCommits = new ArrayList<>(commitMap.values());
+
+        for (int from = 0; from < distinctCommits.size(); from += BATCH_SIZE) {
+            List<CommitVO> batch = distinctCommits.subList(from, Math.min(from + BATCH_SIZE, distinctCommits.size()));
+            Set<String> existingShas = new HashSet<>(devopsGitlabCommitMapper.listExistingShas(ref,
+                    batch.stream().map(CommitVO::getId).collect(Collectors.toList())));
+            List<CommitVO> newCommits = batch.stream()
+                    .filter(commitVO -> !existingShas.contains(commitVO.getId()))
+                    .collect(Collectors.toList());
+            if (newCommits.isEmpty()) {
+                continue;
+            }
+
+            Map<String, IamUserDTO> emailUsers = baseServiceClientOperator.queryUsersByEmails(applicationDTO.getProjectId(),
+                    newCommits.stream()
+                            .filter(commitVO -> !"root".equals(commitVO.getAuthor().getName()))
+                            .map(commitVO -> commitVO.getAuthor().getEmail())
+                            .collect(Collectors.toSet()));
+
+            Long auditUserId = DetailsHelper.getUserDetails() == null ? 0L : DetailsHelper.getUserDetails().getUserId();
+            Date now = new Date();
+            List<DevopsGitlabCommitDTO> devopsGitlabCommitDTOS = newCommits.stream().map(commitVO -> {
+                DevopsGitlabCommitDTO devopsGitlabCommitDTO = new DevopsGitlabCommitDTO();
+                devopsGitlabCommitDTO.setAppServiceId(applicationDTO.getId());
+                devopsGitlabCommitDTO.setCommitContent(commitVO.getMessage());
+                devopsGitlabCommitDTO.setCommitSha(commitVO.getId());
+                devopsGitlabCommitDTO.setRef(ref);
+                devopsGitlabCommitDTO.setUrl(commitVO.getUrl());
+                if ("root".equals(commitVO.getAuthor().getName())) {
+                    devopsGitlabCommitDTO.setUserId(1L);
+                } else {
+                    IamUserDTO iamUserDTO = emailUsers.get(commitVO.getAuthor().getEmail());
+                    if (iamUserDTO != null) {
+                        devopsGitlabCommitDTO.setUserId(iamUserDTO.getId());
+                    }
+                }
+                devopsGitlabCommitDTO.setCommitDate(commitVO.getTimestamp());
+                // 批量插入不经过通用Mapper的审计拦截, 需要手动填写审计字段
+                devopsGitlabCommitDTO.setCreatedBy(auditUserId);
+                devopsGitlabCommitDTO.setCreationDate(now);
+                devopsGitlabCommitDTO.setLastUpdatedBy(auditUserId);
+                devopsGitlabCommitDTO.setLastUpdateDate(now);
+                devopsGitlabCommitDTO.setObjectVersionNumber(1L);
+                return devopsGitlabCommitDTO;
+            }).collect(Collectors.toList());
+
+            List<Date> createdCommitDates = new ArrayList<>();
+            try {
+                devopsGitlabCommitMapper.batchInsert(devopsGitlabCommitDTOS);
+                devopsGitlabCommitDTOS.forEach(devopsGitlabCommitDTO -> createdCommitDates.add(devopsGitlabCommitDTO.getCommitDate()));
+            } catch (DuplicateKeyException e) {
+                // 查询之后有相同的commit被其它请求保存, 逐个保存并跳过已经存在的commit
+                LOGGER.info("Some commits of ref {} were saved concurrently, save them one by one", ref);
+                devopsGitlabCommitDTOS.forEach(devopsGitlabCommitDTO -> {
+                    if (devopsGitlabCommitService.baseQueryByShaAndRef(devopsGitlabCommitDTO.getCommitSha(), ref) == null) {
+                        devopsGitlabCommitService.baseCreate(devopsGitlabCommitDTO);
+                        createdCommitDates.add(devopsGitlabCommitDTO.getCommitDate());
+                    }
+                });
+            }
+            devopsProjectDailyCountService.increaseCommitCount(applicationDTO.getProjectId(), createdCommitDates);
+        }
+    }
+
     @Override
     public DevopsGitlabCommitVO queryCommits(Long projectId, String appServiceIds, Date startDate, Date
             endDate) {
@@ -1,27 +1,33 @@
 package io.choerodon.devops.app.service.impl;
 
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 import com.google.common.base.Functions;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import net.schmizz.sshj.SSHClient;
-import net.schmizz.sshj.common.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hzero.core.util.UUIDUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import io.choerodon.core.convertor.ApplicationContextHelper;
 import io.choerodon.core.domain.Page;
@@ -57,6 +63,23 @@ public class DevopsHostServiceImpl implements DevopsHostService {
      */
     private static final long OPERATING_TIMEOUT = 60 * 1000;
     private static final String CHECKING_HOST = "checking";
+    /**
+     * 批量校准进度的过期时间
+     */
+    private static final long CHECKING_PROGRESS_EXPIRE_MINUTES = 10;
+    private static final long CHECKING_PROGRESS_PUSH_INTERVAL_MILLIS = 1000;
+    private static final String CHECKING_PROGRESS_EVENT = "progress";
+    /**
+     * 批量校准进度存在时才写入主机的校准结果, 进度已经过期的不再写入, 避免留下没有过期时间的key
+     */
+    private static final RedisScript<Long> UPDATE_CHECKING_STATUS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) end return -1",
+            Long.class);
+
+    /**
+     * 批量校准进度的redis key, 变量是项目id和返回给客户端的校准的key, 其它项目使用这个校准的key查询不到进度
+     */
+    private static final String CHECKING_PROGRESS_REDIS_KEY_TEMPLATE = "devops-service:hosts:checking-progress:%s:%s";
 
     /**
      * 主机占用的锁的redis key, 变量是主机id
@@ -84,6 +107,9 @@ public class DevopsHostServiceImpl implements DevopsHostService {
     private StringRedisTemplate redisTemplate;
     @Autowired
     private SshUtil sshUtil;
+    @Autowired
+    @Qualifier(GitOpsConstants.HOST_CHECKING_PROGRESS_SCHEDULER)
+    private TaskScheduler checkingProgressScheduler;
 
     private final Gson gson = new Gson();
 
@@ -158,11 +184,16 @@ public class DevopsHostServiceImpl implements DevopsHostService {
     @Override
     public String asyncBatchCorrectStatusWithProgress(Long projectId, Set<Long> hostIds) {
         String correctKey = UUIDUtils.generateUUID();
-        // 初始化校验状态
-        Map<Long, String> map = new HashMap<>();
-        hostIds.forEach(hostId -> map.put(hostId, CHECKING_HOST));
+        // 初始化校验状态, 每个主机是hash中的一个字段, 各个主机的校验结果单独写入, 不需要加锁
+        Map<String, String> map = new HashMap<>();
+        hostIds.forEach(hostId -> map.put(String.valueOf(hostId), CHECKING_HOST));
 
-        redisTemplate.opsForValue().set(correctKey, gson.toJson(map), 10, TimeUnit.MINUTES);
+        if (map.isEmpty()) {
+            return correctKey;
+        }
+        String progressKey = checkingProgressKey(projectId, correctKey);
+        redisTemplate.opsForHash().putAll(progressKey, map);
+        redisTemplate.expire(progressKey, CHECKING_PROGRESS_EXPIRE_MINUTES, TimeUnit.MINUTES);
         hostIds.forEach(hostId -> ApplicationContextHelper.getContext().getBean(DevopsHostService.class).correctStatus(projectId, correctKey, hostId));
         return correctKey;
     }
@@ -279,7 +310,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
             if (DevopsHostStatus.SUCCESS.getValue().equals(result.getHostStatus()) && DevopsHostStatus.SUCCESS.getValue().equals(result.getJmeterStatus())) {
                 status = DevopsHostStatus.SUCCESS.getValue();
             }
-            updateHostStatus(correctKey, hostId, status);
+            updateHostStatus(projectId, correctKey, hostId, status);
             LOGGER.debug("connection result for host with id {} is {}", hostId, result);
         } catch (Exception ex) {
             LOGGER.warn("Failed to correct status for host with id {}", hostId);
@@ -292,27 +323,26 @@ public class DevopsHostServiceImpl implements DevopsHostService {
         }
     }
 
-    private void updateHostStatus(String correctKey, Long hostId, String status) {
-        String lockKey = "checkHost:status:lock:" + correctKey;
-        while (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, "lock", 10, TimeUnit.MINUTES))) {
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                LOGGER.info("sleep.failed.", e);
-            }
-        }
-        try {
-            Map<Long, String> hostStatus = gson.fromJson(redisTemplate.opsForValue().get(correctKey), new TypeToken<Map<Long, String>>() {
-            }.getType());
-            if (hostStatus == null) {
-                hostStatus = new HashMap<>();
-            }
-            hostStatus.put(hostId, status);
-            redisTemplate.opsForValue().set(correctKey, gson.toJson(hostStatus), 10, TimeUnit.MINUTES);
-        } finally {
-            redisTemplate.delete(lockKey);
-        }
+    private void updateHostStatus(Long projectId, String correctKey, Long hostId, String status) {
+        redisTemplate.execute(UPDATE_CHECKING_STATUS_SCRIPT, Collections.singletonList(checkingProgressKey(projectId, correctKey)), String.valueOf(hostId), status);
+    }
+
+    private static String checkingProgressKey(Long projectId, String correctKey) {
+        return String.format(CHECKING_PROGRESS_REDIS_KEY_TEMPLATE, projectId, correctKey);
+    }
 
+    /**
+     * 查询批量校准的各个主机的状态
+     *
+     * @param projectId  项目id
+     * @param correctKey 批量校准的key
+     * @return 主机id和状态的映射, 不存在或者不属于这个项目时为空
+     */
+    private Map<Long, String> queryCheckingStatus(Long projectId, String correctKey) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(checkingProgressKey(projectId, correctKey));
+        Map<Long, String> hostStatusMap = new HashMap<>(entries.size());
+        entries.forEach((hostId, status) -> hostStatusMap.put(TypeUtil.objToLong(hostId), String.valueOf(status)));
+        return hostStatusMap;
     }
 
     /**
@@ -439,9 +469,16 @@ public class DevopsHostServiceImpl implements DevopsHostService {
         SSHClient sshClient = null;
         try {
             DevopsHostConnectionTestResultVO result = new DevopsHostConnectionTestResultVO();
-            sshClient = SshUtil.sshConnect(devopsHostConnectionTestVO.getHostIp(), devopsHostConnectionTestVO.getSshPort(), devopsHostConnectionTestVO.getAuthType(), devopsHostConnectionTestVO.getUsername(), devopsHostConnectionTestVO.getPassword());
-            result.setHostStatus(sshClient != null ? DevopsHostStatus.SUCCESS.getValue() : DevopsHostStatus.FAILED.getValue());
-            if (sshClient == null) {
+            // 使用连接池中的连接, 批量校准主机状态时不需要每次都重新建立连接
+            try {
+                sshClient = sshUtil.sshConnectPooled(devopsHostConnectionTestVO.getHostIp(), devopsHostConnectionTestVO.getSshPort(), devopsHostConnectionTestVO.getAuthType(), devopsHostConnectionTestVO.getUsername(), devopsHostConnectionTestVO.getPassword());
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to connect to host by ssh, the host is {}, port is {}, username: {}", devopsHostConnectionTestVO.getHostIp(), devopsHostConnectionTestVO.getSshPort(), devopsHostConnectionTestVO.getUsername());
+                LOGGER.warn("The ex is ", ex);
+            }
+            boolean connected = SshUtil.execForOk(sshClient, "echo Hello World");
+            result.setHostStatus(connected ? DevopsHostStatus.SUCCESS.getValue() : DevopsHostStatus.FAILED.getValue());
+            if (!connected) {
                 result.setHostCheckError("failed to check ssh, please ensure network and authentication is valid");
             }
 
@@ -469,7 +506,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
             }
             return result;
         } finally {
-            IOUtils.closeQuietly(sshClient);
+            sshUtil.sshRelease(sshClient);
         }
     }
 
@@ -483,7 +520,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
         CommonExAssertUtil.assertTrue(projectId.equals(devopsHostDTO.getProjectId()), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
         CommonExAssertUtil.assertTrue(DevopsHostType.DEPLOY.getValue().equals(devopsHostDTO.getType()), "error.host.type.invalid");
 
-        return SshUtil.sshConnectForOK(devopsHostDTO.getHostIp(), devopsHostDTO.getSshPort(), devopsHostDTO.getAuthType(), devopsHostDTO.getUsername(), devopsHostDTO.getPassword());
+        return sshUtil.testConnection(devopsHostDTO.getHostIp(), devopsHostDTO.getSshPort(), devopsHostDTO.getAuthType(), devopsHostDTO.getUsername(), devopsHostDTO.getPassword());
     }
 
     @Override
@@ -617,11 +654,49 @@ public class DevopsHostServiceImpl implements DevopsHostService {
 
     @Override
     public CheckingProgressVO getCheckingProgress(Long projectId, String correctKey) {
-        Map<Long, String> hostStatusMap = gson.fromJson(redisTemplate.opsForValue().get(correctKey), new TypeToken<Map<Long, String>>() {
-        }.getType());
-        if (hostStatusMap == null) {
-            return null;
-        }
+        return calculateCheckingProgress(queryCheckingStatus(projectId, correctKey));
+    }
+
+    @Override
+    public SseEmitter streamCheckingProgress(Long projectId, String correctKey) {
+        // 校准的key是在项目下生成的, 只能订阅本项目的进度
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(checkingProgressKey(projectId, correctKey)))) {
+            throw new CommonException("error.host.checking.progress.not.exist");
+        }
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(CHECKING_PROGRESS_EXPIRE_MINUTES));
+        AtomicReference<String> lastProgress = new AtomicReference<>();
+        AtomicReference<ScheduledFuture<?>> task = new AtomicReference<>();
+        Runnable cancel = () -> {
+            ScheduledFuture<?> future = task.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        task.set(checkingProgressScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                Map<Long, String> hostStatusMap = queryCheckingStatus(projectId, correctKey);
+                CheckingProgressVO checkingProgressVO = calculateCheckingProgress(hostStatusMap);
+                // 进度有变化时才推送
+                String progress = gson.toJson(checkingProgressVO);
+                if (!progress.equals(lastProgress.getAndSet(progress))) {
+                    emitter.send(SseEmitter.event().name(CHECKING_PROGRESS_EVENT).data(progress, MediaType.APPLICATION_JSON));
+                }
+                if (!hostStatusMap.containsValue(CHECKING_HOST)) {
+                    emitter.complete();
+                    cancel.run();
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("Stop pushing the checking progress of {}", correctKey, ex);
+                emitter.completeWithError(ex);
+                cancel.run();
+            }
+        }, CHECKING_PROGRESS_PUSH_INTERVAL_MILLIS));
+        return emitter;
+    }
+
+    private CheckingProgressVO calculateCheckingProgress(Map<Long, String> hostStatusMap) {
         int size = hostStatusMap.size();
         if (size == 0) {
             return null;
@@ -661,8 +736,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
     public Page<DevopsHostVO> pagingWithCheckingStatus(Long projectId, PageRequest pageRequest, String correctKey, String searchParam) {
         Set<Long> hostIds = new HashSet<>();
         if (!StringUtils.isAllEmpty(correctKey)) {
-            Map<Long, String> hostStatusMap = gson.fromJson(redisTemplate.opsForValue().get(correctKey), new TypeToken<Map<Long, String>>() {
-            }.getType());
+            Map<Long, String> hostStatusMap = queryCheckingStatus(projectId, correctKey);
             if (!CollectionUtils.isEmpty(hostStatusMap)) {
                 hostIds = hostStatusMap.keySet();
             }
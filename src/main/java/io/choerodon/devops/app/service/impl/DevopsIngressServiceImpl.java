@@ -381,7 +381,7 @@ public class DevopsIngressServiceImpl implements DevopsIngressService {
             return null;
         }
 
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
 
         DevopsIngressVO vo = new DevopsIngressVO();
         BeanUtils.copyProperties(devopsIngressDTO, vo, "annotations");
@@ -420,7 +420,7 @@ public class DevopsIngressServiceImpl implements DevopsIngressService {
     public Page<DevopsIngressVO> pageByEnv(Long projectId, Long envId, PageRequest pageable, String params) {
         Page<DevopsIngressVO> devopsIngressVOPage = basePageByOptions(projectId, envId, null, pageable, params);
 
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
         devopsIngressVOPage.getContent().forEach(devopsIngressVO -> {
             DevopsEnvironmentDTO devopsEnvironmentDTO = devopsEnvironmentService.baseQueryById(devopsIngressVO.getEnvId());
             devopsIngressVO.setEnvStatus(updatedEnvList.contains(devopsEnvironmentDTO.getClusterId()));
@@ -0,0 +1,170 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.CollectionUtils;
+
+import io.choerodon.devops.api.vo.CountVO;
+import io.choerodon.devops.app.service.DevopsProjectDailyCountService;
+import io.choerodon.devops.infra.dto.AppServiceInstanceDTO;
+import io.choerodon.devops.infra.dto.CiCdPipelineDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
+import io.choerodon.devops.infra.dto.DevopsProjectDailyCountDTO;
+import io.choerodon.devops.infra.enums.ProjectDailyMetricEnum;
+import io.choerodon.devops.infra.mapper.AppServiceInstanceMapper;
+import io.choerodon.devops.infra.mapper.DevopsCiCdPipelineMapper;
+import io.choerodon.devops.infra.mapper.DevopsEnvironmentMapper;
+import io.choerodon.devops.infra.mapper.DevopsProjectDailyCountMapper;
+
+/**
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Service
+public class DevopsProjectDailyCountServiceImpl implements DevopsProjectDailyCountService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DevopsProjectDailyCountServiceImpl.class);
+
+    @Autowired
+    private DevopsProjectDailyCountMapper devopsProjectDailyCountMapper;
+    @Autowired
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
+    @Autowired
+    private AppServiceInstanceMapper appServiceInstanceMapper;
+    @Autowired
+    private DevopsEnvironmentMapper devopsEnvironmentMapper;
+    @Autowired
+    private DevopsCiCdPipelineMapper devopsCiCdPipelineMapper;
+
+    @Override
+    public void increaseCommitCount(Long projectId, List<Date> commitDates) {
+        if (projectId == null || CollectionUtils.isEmpty(commitDates)) {
+            return;
+        }
+        List<Date> dates = commitDates.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        if (dates.isEmpty()) {
+            return;
+        }
+        // 一次推送中的commit由一条语句按照日期合并之后累加
+        afterCommit(() -> devopsProjectDailyCountService.increase(projectId, ProjectDailyMetricEnum.COMMIT, dates));
+    }
+
+    @Override
+    public void increaseDeployCount(Long instanceId, Date deployDate) {
+        Date date = deployDate == null ? new Date() : deployDate;
+        // 新建的实例在事务提交之前查询不到, 提交之后再查询所在的项目
+        afterCommit(() -> {
+            AppServiceInstanceDTO appServiceInstanceDTO = appServiceInstanceMapper.selectByPrimaryKey(instanceId);
+            if (appServiceInstanceDTO == null) {
+                return;
+            }
+            DevopsEnvironmentDTO devopsEnvironmentDTO = devopsEnvironmentMapper.selectByPrimaryKey(appServiceInstanceDTO.getEnvId());
+            if (devopsEnvironmentDTO != null) {
+                devopsProjectDailyCountService.increase(devopsEnvironmentDTO.getProjectId(), ProjectDailyMetricEnum.DEPLOY, Collections.singletonList(date));
+            }
+        });
+    }
+
+    @Override
+    public void increaseCiCount(Long pipelineId, Date triggerDate) {
+        Date date = triggerDate == null ? new Date() : triggerDate;
+        afterCommit(() -> {
+            CiCdPipelineDTO ciCdPipelineDTO = devopsCiCdPipelineMapper.selectByPrimaryKey(pipelineId);
+            if (ciCdPipelineDTO != null) {
+                devopsProjectDailyCountService.increase(ciCdPipelineDTO.getProjectId(), ProjectDailyMetricEnum.CI, Collections.singletonList(date));
+            }
+        });
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void increase(Long projectId, ProjectDailyMetricEnum metric, List<Date> dates) {
+        devopsProjectDailyCountMapper.increase(projectId, metric.value(), dates);
+    }
+
+    @Override
+    public void decreaseCommitCountByAppServiceId(Long appServiceId) {
+        // 提交删除之后无法再统计, 在删除的事务中减去
+        devopsProjectDailyCountMapper.decreaseCommitCountByAppServiceId(appServiceId);
+    }
+
+    @Override
+    public void decreaseDeployCountByInstanceId(Long instanceId) {
+        devopsProjectDailyCountMapper.decreaseDeployCount(instanceId, null);
+    }
+
+    @Override
+    public void decreaseDeployCountByEnvId(Long envId) {
+        devopsProjectDailyCountMapper.decreaseDeployCount(null, envId);
+    }
+
+    @Override
+    public CountVO queryCount(Long projectId, ProjectDailyMetricEnum metric, Date startDate, Date endDate) {
+        List<DevopsProjectDailyCountDTO> dailyCounts = devopsProjectDailyCountMapper.listByProjectIdAndDate(projectId, metric.value(), startDate, endDate);
+        CountVO result = new CountVO();
+        result.setDate(dailyCounts.stream()
+                .map(dailyCount -> new java.sql.Date(dailyCount.getStatDate().getTime()).toString())
+                .collect(Collectors.toList()));
+        result.setCount(dailyCounts.stream()
+                .map(DevopsProjectDailyCountDTO::getTotal)
+                .collect(Collectors.toList()));
+        return result;
+    }
+
+    @Override
+    public void rebuild() {
+        List<Long> projectIds = devopsProjectDailyCountMapper.listProjectIds();
+        LOGGER.info("Start to rebuild the daily counts of {} projects", projectIds.size());
+        // 逐个项目统计, 避免一条语句扫描全表的数据
+        projectIds.forEach(projectId -> {
+            try {
+                devopsProjectDailyCountService.rebuildByProjectId(projectId);
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to rebuild the daily counts of project {}", projectId, ex);
+            }
+        });
+        LOGGER.info("Finished rebuilding the daily counts");
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void rebuildByProjectId(Long projectId) {
+        devopsProjectDailyCountMapper.deleteByProjectId(projectId);
+        devopsProjectDailyCountMapper.rebuildCommitCount(projectId);
+        devopsProjectDailyCountMapper.rebuildDeployCount(projectId);
+        devopsProjectDailyCountMapper.rebuildCiCount(projectId);
+    }
+
+    /**
+     * 在事务提交之后执行, 不在事务中时立即执行
+     * <p>
+     * 累加在独立的事务中进行, 不会长时间锁住统计的记录, 失败时只打印日志
+     */
+    private void afterCommit(Runnable runnable) {
+        Runnable task = () -> {
+            try {
+                runnable.run();
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to increase the daily count of project", ex);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package io.choerodon.devops.app.service.impl;
 
 import io.choerodon.devops.api.vo.CountVO;
-import io.choerodon.devops.app.service.AppServiceInstanceService;
+import io.choerodon.devops.app.service.DevopsProjectDailyCountService;
 import io.choerodon.devops.app.service.DevopsProjectOverview;
 import io.choerodon.devops.infra.dto.*;
 import io.choerodon.devops.infra.dto.agile.SprintDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
+import io.choerodon.devops.infra.enums.ProjectDailyMetricEnum;
 import io.choerodon.devops.infra.feign.operator.AgileServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.handler.ClusterConnectionHandler;
@@ -14,17 +15,13 @@ import io.choerodon.devops.infra.mapper.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
-import org.springframework.util.CollectionUtils;
 
 @Service
 public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
 
     private static final String UP = "up";
     private static final String DOWN = "down";
-    private static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
 
     @Autowired
     private ClusterConnectionHandler clusterConnectionHandler;
@@ -37,7 +34,7 @@ public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
     private AgileServiceClientOperator agileServiceClientOperator;
 
     @Autowired
-    private AppServiceInstanceService appServiceInstanceService;
+    private DevopsProjectDailyCountService devopsProjectDailyCountService;
 
     @Autowired
     private DevopsEnvironmentMapper devopsEnvironmentMapper;
@@ -45,27 +42,18 @@ public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
     @Autowired
     private AppServiceMapper appServiceMapper;
 
-    @Autowired
-    private DevopsGitlabCommitMapper devopsGitlabCommitMapper;
-
     @Autowired
     private AppServiceInstanceMapper appServiceInstanceMapper;
 
     @Autowired
     private DevopsEnvCommandMapper devopsEnvCommandMapper;
 
-    @Autowired
-    private DevopsCiCdPipelineMapper devopsCiCdPipelineMapper;
-
-    @Autowired
-    private DevopsPipelineRecordRelMapper devopsPipelineRecordRelMapper;
-
     @Override
     public Map<String, Long> getEnvStatusCount(Long projectId) {
 
         Map<String, Long> count = new HashMap<>();
 
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
 
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectId(projectId);
 
@@ -103,118 +91,32 @@ public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
 
     @Override
     public CountVO getCommitCount(Long projectId) {
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
-        SprintDTO sprintDTO = agileServiceClientOperator.getActiveSprint(projectId, projectDTO.getOrganizationId());
-        if (sprintDTO.getSprintId() == null) {
-            return new CountVO();
-        }
-        List<Date> dateList = devopsGitlabCommitMapper.queryCountByProjectIdAndDate(projectId, new java.sql.Date(sprintDTO.getStartDate().getTime()), new java.sql.Date(sprintDTO.getEndDate().getTime()));
-
-        Map<String, Long> dateCount = dateList.stream().map(simpleDateFormat::format)
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.groupingBy(t -> t, Collectors.counting()));
-
-        List<String> date = dateCount.keySet().stream().sorted(Comparator.naturalOrder()).collect(Collectors.toList());
-
-        List<Long> count = new ArrayList<>();
-
-        date.forEach(d -> count.add(dateCount.get(d)));
-
-
-        CountVO result = new CountVO();
-
-        result.setDate(date);
-        result.setCount(count);
-
-        return result;
+        return queryCountOfActiveSprint(projectId, ProjectDailyMetricEnum.COMMIT);
     }
 
     @Override
     public CountVO getDeployCount(Long projectId) {
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
-
-        // 该项目下所有环境
-        List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectId(projectId);
-
-        List<Long> envIds = devopsEnvironmentDTOS.stream()
-                .map(DevopsEnvironmentDTO::getId)
-                .collect(Collectors.toList());
-
-        if (envIds.size() == 0) {
-            return new CountVO();
-        }
-
-        SprintDTO sprintDTO = agileServiceClientOperator.getActiveSprint(projectId, projectDTO.getOrganizationId());
-        if (sprintDTO.getSprintId() == null) {
-            return new CountVO();
-        }
-
-        List<DeployDTO> deployDTOS = appServiceInstanceService.baseListDeployFrequency(projectId, envIds.toArray(new Long[0]), null, sprintDTO.getStartDate(), sprintDTO.getEndDate());
-
-        //以时间维度分组
-        Map<String, List<DeployDTO>> resultMaps = deployDTOS.stream()
-                .collect(Collectors.groupingBy(t -> new java.sql.Date(t.getCreationDate().getTime()).toString()));
-
-        List<String> creationDates = deployDTOS.stream()
-                .map(deployDTO -> new java.sql.Date(deployDTO.getCreationDate().getTime()).toString())
-                .collect(Collectors.toList());
-        creationDates = new ArrayList<>(new HashSet<>(creationDates)).stream().sorted(Comparator.naturalOrder())
-                .collect(Collectors.toList());
-
-
-        List<Long> count = new ArrayList<>();
-        creationDates.forEach(date -> {
-            Long[] newDeployFrequency = {0L};
-            resultMaps.get(date).forEach(deployFrequencyDO -> newDeployFrequency[0] = newDeployFrequency[0] + 1L);
-            count.add(newDeployFrequency[0]);
-        });
-
-        CountVO result = new CountVO();
-
-        result.setDate(creationDates);
-        result.setCount(count);
-        return result;
+        return queryCountOfActiveSprint(projectId, ProjectDailyMetricEnum.DEPLOY);
     }
 
     @Override
     public CountVO getCiCount(Long projectId) {
+        return queryCountOfActiveSprint(projectId, ProjectDailyMetricEnum.CI);
+    }
+
+    /**
+     * 查询当前冲刺中每天的次数, 直接读取按天统计的数据
+     */
+    private CountVO queryCountOfActiveSprint(Long projectId, ProjectDailyMetricEnum metric) {
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
         SprintDTO sprintDTO = agileServiceClientOperator.getActiveSprint(projectId, projectDTO.getOrganizationId());
         if (sprintDTO.getSprintId() == null) {
             return new CountVO();
         }
-        //根据项目的id查询项目下所有的流水线的id
-        List<CiCdPipelineDTO> ciCdPipelineDTOS = devopsCiCdPipelineMapper.selectPipelineByProjectId(projectDTO.getId());
-        if (CollectionUtils.isEmpty(ciCdPipelineDTOS)) {
-            return new CountVO();
-        }
-        //查询流水线在这个冲刺中的部署次数
-        List<DevopsPipelineRecordRelDTO> devopsPipelineRecordRelDTOS = new ArrayList<>();
-        ciCdPipelineDTOS.forEach(ciCdPipelineDTO -> {
-            //当前冲刺下流水线的触发次数
-            devopsPipelineRecordRelDTOS.addAll(devopsPipelineRecordRelMapper.selectBySprint(ciCdPipelineDTO.getId(),
-                    new java.sql.Date(sprintDTO.getStartDate().getTime()),
-                    new java.sql.Date(sprintDTO.getEndDate().getTime())));
-
-        });
-        if (CollectionUtils.isEmpty(devopsPipelineRecordRelDTOS)) {
-            return new CountVO();
-        }
-        Map<String, Long> dateCount = devopsPipelineRecordRelDTOS.stream().map(DevopsPipelineRecordRelDTO::getCreationDate).map(simpleDateFormat::format)
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.groupingBy(t -> t, Collectors.counting()));
-
-
-        List<String> date = dateCount.keySet().stream().sorted(Comparator.naturalOrder()).collect(Collectors.toList());
-        List<Long> count = new ArrayList<>();
-        date.forEach(d -> count.add(dateCount.get(d)));
-        CountVO result = new CountVO();
-        result.setDate(date);
-        result.setCount(count);
-        return result;
+        return devopsProjectDailyCountService.queryCount(projectId, metric, sprintDTO.getStartDate(), sprintDTO.getEndDate());
     }
 
-    private boolean isEnvUp(List<Long> updatedClusterList, DevopsEnvironmentDTO t) {
+    private boolean isEnvUp(Set<Long> updatedClusterList, DevopsEnvironmentDTO t) {
         return updatedClusterList.contains(t.getClusterId());
     }
 
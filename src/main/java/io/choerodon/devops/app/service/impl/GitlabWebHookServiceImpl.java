@@ -1,29 +1,50 @@
 package io.choerodon.devops.app.service.impl;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nullable;
+
 import com.alibaba.fastjson.JSONArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hzero.core.util.UUIDUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import io.choerodon.devops.api.vo.DevopsMergeRequestVO;
 import io.choerodon.devops.api.vo.JobWebHookVO;
 import io.choerodon.devops.api.vo.PipelineWebHookVO;
 import io.choerodon.devops.api.vo.PushWebHookVO;
 import io.choerodon.devops.app.service.*;
+import io.choerodon.devops.app.task.GitlabWebhookEventDispatcher;
 import io.choerodon.devops.infra.constant.GitOpsConstants;
+import io.choerodon.devops.infra.dto.AppServiceDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
+import io.choerodon.devops.infra.dto.DevopsWebhookEventDTO;
 import io.choerodon.devops.infra.dto.iam.IamUserDTO;
 import io.choerodon.devops.infra.enums.PipelineStatus;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.util.CustomContextUtil;
 import io.choerodon.devops.infra.util.FastjsonParserConfigProvider;
+import io.choerodon.devops.infra.util.TypeUtil;
 
 @Service
 public class GitlabWebHookServiceImpl implements GitlabWebHookService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GitlabWebHookServiceImpl.class);
 
+    private static final String OBJECT_KIND = "object_kind";
+    private static final String HOOK_TYPE_PORTAL = "portal";
+    private static final String HOOK_TYPE_GIT_OPS = "git_ops";
+    private static final String SEPARATOR = "|";
+    /**
+     * 需要处理的应用服务的webhook事件类型, 其它的事件不保存
+     */
+    private static final Set<String> PORTAL_EVENT_KINDS = new HashSet<>(Arrays.asList("merge_request", "push", "pipeline", "build", "tag_push"));
+
     private DevopsMergeRequestService devopsMergeRequestService;
     private DevopsGitService devopsGitService;
     private DevopsGitlabCommitService devopsGitlabCommitService;
@@ -32,6 +53,9 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
     private DevopsCiJobRecordService devopsCiJobRecordService;
     private BaseServiceClientOperator baseServiceClientOperator;
     private DevopsCdPipelineService devopsCdPipelineService;
+    private AppServiceService appServiceService;
+    private DevopsEnvironmentService devopsEnvironmentService;
+    private GitlabWebhookEventDispatcher gitlabWebhookEventDispatcher;
 
     public GitlabWebHookServiceImpl(DevopsMergeRequestService devopsMergeRequestService,
                                     DevopsGitService devopsGitService,
@@ -40,7 +64,10 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
                                     DevopsCiPipelineRecordService devopsCiPipelineRecordService,
                                     DevopsCiJobRecordService devopsCiJobRecordService,
                                     BaseServiceClientOperator baseServiceClientOperator,
-                                    DevopsCdPipelineService devopsCdPipelineService) {
+                                    DevopsCdPipelineService devopsCdPipelineService,
+                                    AppServiceService appServiceService,
+                                    DevopsEnvironmentService devopsEnvironmentService,
+                                    GitlabWebhookEventDispatcher gitlabWebhookEventDispatcher) {
         this.devopsMergeRequestService = devopsMergeRequestService;
         this.devopsGitService = devopsGitService;
         this.devopsGitlabCommitService = devopsGitlabCommitService;
@@ -49,12 +76,102 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
         this.devopsCiJobRecordService = devopsCiJobRecordService;
         this.baseServiceClientOperator = baseServiceClientOperator;
         this.devopsCdPipelineService = devopsCdPipelineService;
+        this.appServiceService = appServiceService;
+        this.devopsEnvironmentService = devopsEnvironmentService;
+        this.gitlabWebhookEventDispatcher = gitlabWebhookEventDispatcher;
+    }
+
+    @Override
+    public void forwardingEventToPortal(String body, String token, @Nullable String eventUuid) {
+        JSONObject returnData = JSONObject.parseObject(body);
+        String kind = returnData.getString(OBJECT_KIND);
+        if (!PORTAL_EVENT_KINDS.contains(kind)) {
+            return;
+        }
+        AppServiceDTO appServiceDTO = token == null ? null : appServiceService.baseQueryByToken(token);
+        if (appServiceDTO == null || appServiceDTO.getGitlabProjectId() == null) {
+            LOGGER.info("The {} webhook is ignored because no app service matches the token", kind);
+            return;
+        }
+        enqueue(HOOK_TYPE_PORTAL, kind, TypeUtil.objToLong(appServiceDTO.getGitlabProjectId()), appServiceDTO.getId(), body, eventUuid);
+    }
+
+    @Override
+    public void gitOpsWebHook(String body, String token, @Nullable String eventUuid) {
+        JSONObject returnData = JSONObject.parseObject(body);
+        String kind = returnData.getString(OBJECT_KIND);
+        if (!"push".equals(kind)) {
+            return;
+        }
+        // 不处理删除环境库的分支的情况
+        if (GitOpsConstants.NO_COMMIT_SHA.equals(returnData.getString("after"))) {
+            LOGGER.debug("GitOps PushWebHook is ignored due to branch deleting. Ref: {}", returnData.getString("ref"));
+            return;
+        }
+        // 只处理master分支的commit, 不处理其他分支的commit
+        if (!GitOpsConstants.MASTER_REF.equals(returnData.getString("ref"))) {
+            LOGGER.debug("GitOps PushWebHook of ref {} is ignored because the ref is not master.", returnData.getString("ref"));
+            return;
+        }
+        DevopsEnvironmentDTO devopsEnvironmentDTO = token == null ? null : devopsEnvironmentService.baseQueryByToken(token);
+        if (devopsEnvironmentDTO == null || devopsEnvironmentDTO.getGitlabEnvProjectId() == null) {
+            LOGGER.info("The GitOps webhook is ignored because no environment matches the token");
+            return;
+        }
+        enqueue(HOOK_TYPE_GIT_OPS, kind, devopsEnvironmentDTO.getGitlabEnvProjectId(), devopsEnvironmentDTO.getId(), body, eventUuid);
     }
 
     @Override
-    public void forwardingEventToPortal(String body, String token) {
-        JsonObject returnData = new JsonParser().parse(body).getAsJsonObject();
-        String kind = returnData.get("object_kind").getAsString();
+    public void processEvent(DevopsWebhookEventDTO event) {
+        try {
+            // 事件中只保存了资源id, 处理时再查询资源当前的token
+            if (HOOK_TYPE_GIT_OPS.equals(event.getHookType())) {
+                DevopsEnvironmentDTO devopsEnvironmentDTO = event.getResourceId() == null ? null : devopsEnvironmentService.baseQueryById(event.getResourceId());
+                if (devopsEnvironmentDTO == null) {
+                    LOGGER.warn("The GitOps webhook event {} is skipped because the environment {} doesn't exist", event.getId(), event.getResourceId());
+                    return;
+                }
+                handleGitOpsEvent(event.getBody(), devopsEnvironmentDTO.getToken());
+            } else {
+                AppServiceDTO appServiceDTO = event.getResourceId() == null ? null : appServiceService.baseQuery(event.getResourceId());
+                if (appServiceDTO == null) {
+                    LOGGER.warn("The {} webhook event {} is skipped because the app service {} doesn't exist", event.getObjectKind(), event.getId(), event.getResourceId());
+                    return;
+                }
+                handlePortalEvent(event.getObjectKind(), event.getBody(), appServiceDTO.getToken());
+            }
+        } finally {
+            // 处理事件的线程会被复用, 不能保留上一个事件的用户
+            CustomContextUtil.clearContext();
+        }
+    }
+
+    /**
+     * 保存事件, 由队列异步处理, 相同的事件只保存一次
+     * <p>
+     * gitlab重发的请求的 X-Gitlab-Event-UUID 相同, 作为事件的标识.
+     * 没有这个请求头时使用请求内容的摘要去重, 但是内容相同的事件也可能是正常的重复操作(比如重试同一个job),
+     * 所以只在接收之后很短的时间窗口内去重
+     *
+     * @param resourceId 应用服务id或者环境id, 事件中不保存webhook的token
+     */
+    private void enqueue(String hookType, String kind, Long gitlabProjectId, Long resourceId, String body, @Nullable String eventUuid) {
+        DevopsWebhookEventDTO event = new DevopsWebhookEventDTO();
+        if (!StringUtils.isEmpty(eventUuid)) {
+            event.setEventKey(DigestUtils.sha256Hex(hookType + SEPARATOR + eventUuid));
+        } else {
+            event.setEventKey(UUIDUtils.generateUUID());
+            event.setContentHash(DigestUtils.sha256Hex(hookType + SEPARATOR + resourceId + SEPARATOR + body));
+        }
+        event.setHookType(hookType);
+        event.setObjectKind(kind);
+        event.setGitlabProjectId(gitlabProjectId);
+        event.setResourceId(resourceId);
+        event.setBody(body);
+        gitlabWebhookEventDispatcher.enqueue(event);
+    }
+
+    private void handlePortalEvent(String kind, String body, String token) {
         switch (kind) {
             case "merge_request":
                 DevopsMergeRequestVO devopsMergeRequestVO = JSONArray.parseObject(body, DevopsMergeRequestVO.class, FastjsonParserConfigProvider.getParserConfig());
@@ -95,27 +212,12 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
         }
     }
 
-    @Override
-    public void gitOpsWebHook(String body, String token) {
-        JsonObject returnData = new JsonParser().parse(body).getAsJsonObject();
-        String kind = returnData.get("object_kind").getAsString();
-        if ("push".equals(kind)) {
-            PushWebHookVO pushWebHookVO = JSONArray.parseObject(body, PushWebHookVO.class, FastjsonParserConfigProvider.getParserConfig());
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug(pushWebHookVO.toString());
-            }
-            // 不处理删除环境库的分支的情况
-            if (GitOpsConstants.NO_COMMIT_SHA.equals(pushWebHookVO.getAfter())) {
-                LOGGER.debug("GitOps PushWebHook is ignored due to branch deleting. Ref: {}", pushWebHookVO.getRef());
-                return;
-            }
-            // 只处理master分支的commit, 不处理其他分支的commit
-            if (!GitOpsConstants.MASTER_REF.equals(pushWebHookVO.getRef())) {
-                LOGGER.debug("GitOps PushWebHook of ref {} is ignored because the ref is not master.", pushWebHookVO.getRef());
-                return;
-            }
-            devopsGitService.fileResourceSyncSaga(pushWebHookVO, token);
+    private void handleGitOpsEvent(String body, String token) {
+        PushWebHookVO pushWebHookVO = JSONArray.parseObject(body, PushWebHookVO.class, FastjsonParserConfigProvider.getParserConfig());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(pushWebHookVO.toString());
         }
+        devopsGitService.fileResourceSyncSaga(pushWebHookVO, token);
     }
 
     private void setUserContext(String loginName) {
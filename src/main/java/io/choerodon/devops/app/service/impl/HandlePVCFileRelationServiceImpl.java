@@ -14,7 +14,6 @@ import org.springframework.stereotype.Component;
 import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.vo.DevopsPvcReqVO;
 import io.choerodon.devops.app.service.DevopsEnvCommandService;
-import io.choerodon.devops.app.service.DevopsEnvFileResourceService;
 import io.choerodon.devops.app.service.DevopsPvcService;
 import io.choerodon.devops.app.service.HandlerObjectFileRelationsService;
 import io.choerodon.devops.infra.constant.KubernetesConstants;
@@ -24,6 +23,7 @@ import io.choerodon.devops.infra.dto.DevopsPvcDTO;
 import io.choerodon.devops.infra.enums.GitOpsObjectError;
 import io.choerodon.devops.infra.enums.ResourceType;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.mapper.DevopsPvcMapper;
 import io.choerodon.devops.infra.util.GitOpsUtil;
 import io.choerodon.devops.infra.util.GitUtil;
@@ -43,11 +43,9 @@ public class HandlePVCFileRelationServiceImpl implements HandlerObjectFileRelati
     private DevopsPvcService devopsPvcService;
     @Autowired
     private DevopsPvcMapper devopsPvcMapper;
-    @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
 
 
-    private void updatePersistentVolumeClaims(Map<String, String> objectPath, Long envId, List<V1PersistentVolumeClaim> updatePvcs, String path, Long userId) {
+    private void updatePersistentVolumeClaims(Map<String, String> objectPath, Long envId, List<V1PersistentVolumeClaim> updatePvcs, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updatePvcs.forEach(pvc -> {
             String filePath = "";
             try {
@@ -68,9 +66,9 @@ public class HandlePVCFileRelationServiceImpl implements HandlerObjectFileRelati
                 }
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                        .baseQueryByEnvIdAndResourceId(envId, devopsPvcDTO.getId(), pvc.getKind());
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath,
+                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                        .queryByEnvIdAndResourceId(envId, devopsPvcDTO.getId(), pvc.getKind());
+                fileResourceBatch.updateOrCreate(objectPath,
                         envId,
                         devopsEnvFileResourceDTO,
                         pvc.hashCode(), devopsPvcDTO.getId(), pvc.getKind());
@@ -89,7 +87,7 @@ public class HandlePVCFileRelationServiceImpl implements HandlerObjectFileRelati
                 && Objects.equals(dbRecord.getPvName(), update.getPvName());
     }
 
-    private void addPersistentVolumeClaims(Map<String, String> objectPath, Long envId, List<V1PersistentVolumeClaim> pvcs, String path, Long userId) {
+    private void addPersistentVolumeClaims(Map<String, String> objectPath, Long envId, List<V1PersistentVolumeClaim> pvcs, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         pvcs.forEach(pvc -> {
             String filePath = "";
             try {
@@ -114,7 +112,7 @@ public class HandlePVCFileRelationServiceImpl implements HandlerObjectFileRelati
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, pvc.hashCode(), newDevopsPvcDTO.getId(),
+                fileResourceBatch.updateOrCreate(objectPath, envId, null, pvc.hashCode(), newDevopsPvcDTO.getId(),
                         pvc.getKind());
             } catch (GitOpsExplainException ex) {
                 throw ex;
@@ -140,15 +138,15 @@ public class HandlePVCFileRelationServiceImpl implements HandlerObjectFileRelati
     }
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1PersistentVolumeClaim> claims, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1PersistentVolumeClaim> claims, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforePvcs = beforeSync.stream()
                 .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(ResourceType.PERSISTENT_VOLUME_CLAIM.getType()))
                 .map(devopsEnvFileResourceE -> {
                     DevopsPvcDTO devopsPvcDTO = devopsPvcMapper
                             .selectByPrimaryKey(devopsEnvFileResourceE.getResourceId());
                     if (devopsPvcDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceE.getResourceId(), ResourceType.PERSISTENT_VOLUME_CLAIM.getType());
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceE.getResourceId(), ResourceType.PERSISTENT_VOLUME_CLAIM.getType());
                         return null;
                     }
                     return devopsPvcDTO.getName();
@@ -163,16 +161,16 @@ public class HandlePVCFileRelationServiceImpl implements HandlerObjectFileRelati
         GitOpsUtil.pickCUDResource(beforePvcs, claims, pvcToAdd, pvcToUpdate, pvc -> pvc.getMetadata().getName());
 
         //新增pvc
-        addPersistentVolumeClaims(objectPath, envId, pvcToAdd, path, userId);
+        addPersistentVolumeClaims(objectPath, envId, pvcToAdd, path, userId, fileResourceBatch);
         //更新pvc
-        updatePersistentVolumeClaims(objectPath, envId, pvcToUpdate, path, userId);
+        updatePersistentVolumeClaims(objectPath, envId, pvcToUpdate, path, userId, fileResourceBatch);
         //删除pvc,和文件对象关联关系
         beforePvcs.forEach(pvcName -> {
             DevopsPvcDTO devopsPvcDTO = devopsPvcService.queryByEnvIdAndName(envId, pvcName);
             if (devopsPvcDTO != null) {
                 devopsPvcService.deleteByGitOps(devopsPvcDTO.getId());
-                devopsEnvFileResourceService
-                        .baseDeleteByEnvIdAndResourceId(envId, devopsPvcDTO.getId(), ResourceType.PERSISTENT_VOLUME_CLAIM.getType());
+                fileResourceBatch
+                        .delete(envId, devopsPvcDTO.getId(), ResourceType.PERSISTENT_VOLUME_CLAIM.getType());
             }
         });
     }
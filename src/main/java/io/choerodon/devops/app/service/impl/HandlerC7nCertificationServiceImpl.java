@@ -16,6 +16,7 @@ import io.choerodon.devops.app.service.*;
 import io.choerodon.devops.infra.dto.*;
 import io.choerodon.devops.infra.enums.*;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.util.GitUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
 
@@ -34,15 +35,13 @@ public class HandlerC7nCertificationServiceImpl implements HandlerObjectFileRela
     @Autowired
     private DevopsEnvironmentService devopsEnvironmentService;
     @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
-    @Autowired
     private DevopsEnvCommandService devopsEnvCommandService;
     private Gson gson = new Gson();
 
     @Override
     public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync,
 
-                                 List<C7nCertification> c7nCertifications, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+                                 List<C7nCertification> c7nCertifications, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<C7nCertification> updateC7nCertification = new ArrayList<>();
         List<String> beforeC7nCertification = beforeSync.stream()
                 .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(CERTIFICATE))
@@ -50,8 +49,8 @@ public class HandlerC7nCertificationServiceImpl implements HandlerObjectFileRela
                     CertificationDTO certificationDTO = certificationService
                             .baseQueryById(devopsEnvFileResourceE.getResourceId());
                     if (certificationDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceE.getResourceId(), ObjectType.CERTIFICATE.getType());
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceE.getResourceId(), ObjectType.CERTIFICATE.getType());
                         return null;
                     }
                     return certificationDTO.getName();
@@ -71,14 +70,14 @@ public class HandlerC7nCertificationServiceImpl implements HandlerObjectFileRela
         });
 
         updateC7nCertification.forEach(c7nCertification1 ->
-                updateC7nCertificationPath(c7nCertification1, envId, objectPath, path));
+                updateC7nCertificationPath(c7nCertification1, envId, objectPath, path, fileResourceBatch));
         beforeC7nCertification
                 .forEach(certName -> {
                     CertificationDTO certificationDTO = certificationService.baseQueryByEnvAndName(envId, certName);
                     if (certificationDTO != null) {
                         certificationService.certDeleteByGitOps(certificationDTO.getId());
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, certificationDTO.getId(), ObjectType.CERTIFICATE.getType());
+                        fileResourceBatch
+                                .delete(envId, certificationDTO.getId(), ObjectType.CERTIFICATE.getType());
                     }
 
                 });
@@ -95,7 +94,7 @@ public class HandlerC7nCertificationServiceImpl implements HandlerObjectFileRela
                         createCertificationAndGetId(
                                 envId, c7nCertification, c7nCertification.getMetadata().getName(), filePath, path, userId));
                 devopsEnvFileResourceDTO.setResourceType(c7nCertification.getKind());
-                devopsEnvFileResourceService.baseCreate(devopsEnvFileResourceDTO);
+                fileResourceBatch.create(devopsEnvFileResourceDTO);
             } catch (Exception e) {
                 throw new GitOpsExplainException(e.getMessage(), filePath, e);
             }
@@ -108,13 +107,13 @@ public class HandlerC7nCertificationServiceImpl implements HandlerObjectFileRela
     }
 
     private void updateC7nCertificationPath(C7nCertification c7nCertification,
-                                            Long envId, Map<String, String> objectPath, String path) {
+                                            Long envId, Map<String, String> objectPath, String path, DevopsEnvFileResourceBatch fileResourceBatch) {
         Long certId = checkC7nCertificationChanges(c7nCertification, envId, objectPath, path);
 
         String kind = c7nCertification.getKind();
-        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                .baseQueryByEnvIdAndResourceId(envId, certId, kind);
-        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId,
+        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                .queryByEnvIdAndResourceId(envId, certId, kind);
+        fileResourceBatch.updateOrCreate(objectPath, envId,
                 devopsEnvFileResourceDTO, c7nCertification.hashCode(), certId, kind);
 
     }
@@ -13,6 +13,7 @@ import io.choerodon.devops.infra.enums.GitOpsObjectError;
 import io.choerodon.devops.infra.enums.ObjectType;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.util.ComponentVersionUtil;
 import io.choerodon.devops.infra.util.GitOpsUtil;
 import io.choerodon.devops.infra.util.GitUtil;
@@ -47,8 +48,6 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
     @Autowired
     private AppServiceVersionService appServiceVersionService;
     @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
-    @Autowired
     private DevopsServiceInstanceService devopsServiceInstanceService;
     @Autowired
     private DevopsEnvironmentService devopsEnvironmentService;
@@ -56,15 +55,15 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
     private AppServiceService appServiceService;
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<C7nHelmRelease> c7nHelmReleases, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<C7nHelmRelease> c7nHelmReleases, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforeC7nRelease = beforeSync.stream()
                 .filter(devopsEnvFileResourceDTO -> devopsEnvFileResourceDTO.getResourceType().equals(C7N_HELM_RELEASE))
                 .map(devopsEnvFileResourceDTO -> {
                     AppServiceInstanceDTO appServiceInstanceDTO = appServiceInstanceService
                             .baseQuery(devopsEnvFileResourceDTO.getResourceId());
                     if (appServiceInstanceDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceDTO.getResourceId(), C7N_HELM_RELEASE);
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceDTO.getResourceId(), C7N_HELM_RELEASE);
                         return null;
                     }
                     return appServiceInstanceDTO.getCode();
@@ -85,16 +84,16 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
         });
 
         //新增instance
-        addC7nHelmRelease(objectPath, envId, projectId, addC7nHelmRelease, path, userId);
+        addC7nHelmRelease(objectPath, envId, projectId, addC7nHelmRelease, path, userId, fileResourceBatch);
         //更新instance
-        updateC7nHelmRelease(objectPath, envId, projectId, updateC7nHelmRelease, path, userId);
+        updateC7nHelmRelease(objectPath, envId, projectId, updateC7nHelmRelease, path, userId, fileResourceBatch);
         //删除instance,和文件对象关联关系
         beforeC7nRelease.forEach(releaseName -> {
             AppServiceInstanceDTO appServiceInstanceDTO = appServiceInstanceService.baseQueryByCodeAndEnv(releaseName, envId);
             if (appServiceInstanceDTO != null) {
                 appServiceInstanceService.instanceDeleteByGitOps(appServiceInstanceDTO.getId());
-                devopsEnvFileResourceService
-                        .baseDeleteByEnvIdAndResourceId(envId, appServiceInstanceDTO.getId(), C7N_HELM_RELEASE);
+                fileResourceBatch
+                        .delete(envId, appServiceInstanceDTO.getId(), C7N_HELM_RELEASE);
             }
         });
     }
@@ -105,7 +104,7 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
     }
 
 
-    private void updateC7nHelmRelease(Map<String, String> objectPath, Long envId, Long projectId, List<C7nHelmRelease> updateC7nHelmRelease, String path, Long userId) {
+    private void updateC7nHelmRelease(Map<String, String> objectPath, Long envId, Long projectId, List<C7nHelmRelease> updateC7nHelmRelease, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updateC7nHelmRelease.forEach(c7nHelmRelease -> {
                     String filePath = "";
                     try {
@@ -129,9 +128,9 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
 
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                                .baseQueryByEnvIdAndResourceId(envId, appServiceDeployVO.getInstanceId(), c7nHelmRelease.getKind());
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId,
+                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                                .queryByEnvIdAndResourceId(envId, appServiceDeployVO.getInstanceId(), c7nHelmRelease.getKind());
+                        fileResourceBatch.updateOrCreate(objectPath, envId,
                                 devopsEnvFileResourceDTO,
                                 c7nHelmRelease.hashCode(), appServiceDeployVO.getInstanceId(),
                                 c7nHelmRelease.getKind());
@@ -144,7 +143,7 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
         );
     }
 
-    private void addC7nHelmRelease(Map<String, String> objectPath, Long envId, Long projectId, List<C7nHelmRelease> addC7nHelmRelease, String path, Long userId) {
+    private void addC7nHelmRelease(Map<String, String> objectPath, Long envId, Long projectId, List<C7nHelmRelease> addC7nHelmRelease, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         addC7nHelmRelease.forEach(c7nHelmRelease -> {
             String filePath = "";
             try {
@@ -181,7 +180,7 @@ public class HandlerC7nReleaseRelationsServiceImpl implements HandlerObjectFileR
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, c7nHelmRelease.hashCode(), instanceId,
+                fileResourceBatch.updateOrCreate(objectPath, envId, null, c7nHelmRelease.hashCode(), instanceId,
                         c7nHelmRelease.getKind());
 
             } catch (GitOpsExplainException ex) {
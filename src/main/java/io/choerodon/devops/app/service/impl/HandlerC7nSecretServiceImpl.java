@@ -14,13 +14,13 @@ import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.validator.DevopsSecretValidator;
 import io.choerodon.devops.api.vo.SecretReqVO;
 import io.choerodon.devops.app.service.DevopsEnvCommandService;
-import io.choerodon.devops.app.service.DevopsEnvFileResourceService;
 import io.choerodon.devops.app.service.DevopsSecretService;
 import io.choerodon.devops.app.service.HandlerObjectFileRelationsService;
 import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
 import io.choerodon.devops.infra.dto.DevopsSecretDTO;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.util.Base64Util;
 import io.choerodon.devops.infra.util.GitUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -48,21 +48,19 @@ public class HandlerC7nSecretServiceImpl implements HandlerObjectFileRelationsSe
     private DevopsEnvCommandService devopsEnvCommandService;
     @Autowired
     private DevopsSecretService devopsSecretService;
-    @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
 
 
     @Override
     public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync,
-                                 List<V1Secret> v1Secrets, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+                                 List<V1Secret> v1Secrets, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforSecret = beforeSync.stream()
                 .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(SECRET))
                 .map(devopsEnvFileResourceE -> {
                     DevopsSecretDTO devopsSecretDTO = devopsSecretService
                             .baseQuery(devopsEnvFileResourceE.getResourceId());
                     if (devopsSecretDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceE.getResourceId(), SECRET);
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceE.getResourceId(), SECRET);
                         return null;
                     }
                     return devopsSecretDTO.getName();
@@ -85,14 +83,14 @@ public class HandlerC7nSecretServiceImpl implements HandlerObjectFileRelationsSe
             DevopsSecretDTO devopsSecretDTO = devopsSecretService.baseQueryByEnvIdAndName(envId, secretName);
             if (devopsSecretDTO != null) {
                 devopsSecretService.deleteSecretByGitOps(devopsSecretDTO.getId());
-                devopsEnvFileResourceService.baseDeleteByEnvIdAndResourceId(envId, devopsSecretDTO.getId(), SECRET);
+                fileResourceBatch.delete(envId, devopsSecretDTO.getId(), SECRET);
             }
         });
 
         //新增secret
-        addSecret(objectPath, envId, addC7nSecret, path, userId);
+        addSecret(objectPath, envId, addC7nSecret, path, userId, fileResourceBatch);
         //更新secret
-        updateSecret(objectPath, envId, projectId, updateC7nSecret, path, userId);
+        updateSecret(objectPath, envId, projectId, updateC7nSecret, path, userId, fileResourceBatch);
     }
 
     @Override
@@ -101,7 +99,7 @@ public class HandlerC7nSecretServiceImpl implements HandlerObjectFileRelationsSe
     }
 
     private void addSecret(Map<String, String> objectPath, Long envId,
-                           List<V1Secret> addSecret, String path, Long userId) {
+                           List<V1Secret> addSecret, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         addSecret.forEach(c7nSecret -> {
             String filePath = "";
             try {
@@ -123,7 +121,7 @@ public class HandlerC7nSecretServiceImpl implements HandlerObjectFileRelationsSe
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, c7nSecret.hashCode(), devopsSecretDTO.getId(),
+                fileResourceBatch.updateOrCreate(objectPath, envId, null, c7nSecret.hashCode(), devopsSecretDTO.getId(),
                         c7nSecret.getKind());
             } catch (CommonException e) {
                 String errorCode = "";
@@ -137,7 +135,7 @@ public class HandlerC7nSecretServiceImpl implements HandlerObjectFileRelationsSe
     }
 
     private void updateSecret(Map<String, String> objectPath, Long envId, Long projectId,
-                              List<V1Secret> updateSecret, String path, Long userId) {
+                              List<V1Secret> updateSecret, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updateSecret.forEach(c7nSecret -> {
             String filePath = "";
             try {
@@ -164,9 +162,9 @@ public class HandlerC7nSecretServiceImpl implements HandlerObjectFileRelationsSe
 
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                        .baseQueryByEnvIdAndResourceId(envId, devopsSecretDTO.getId(), c7nSecret.getKind());
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, devopsEnvFileResourceDTO,
+                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                        .queryByEnvIdAndResourceId(envId, devopsSecretDTO.getId(), c7nSecret.getKind());
+                fileResourceBatch.updateOrCreate(objectPath, envId, devopsEnvFileResourceDTO,
                         c7nSecret.hashCode(), devopsSecretDTO.getId(), c7nSecret.getKind());
             } catch (CommonException e) {
                 String errorCode = "";
@@ -17,12 +17,12 @@ import io.choerodon.devops.api.vo.DevopsConfigMapRespVO;
 import io.choerodon.devops.api.vo.DevopsConfigMapVO;
 import io.choerodon.devops.app.service.DevopsConfigMapService;
 import io.choerodon.devops.app.service.DevopsEnvCommandService;
-import io.choerodon.devops.app.service.DevopsEnvFileResourceService;
 import io.choerodon.devops.app.service.HandlerObjectFileRelationsService;
 import io.choerodon.devops.infra.dto.DevopsConfigMapDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.util.GitOpsUtil;
 import io.choerodon.devops.infra.util.GitUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -38,20 +38,18 @@ public class HandlerConfigMapRelationsServiceImpl implements HandlerObjectFileRe
     private DevopsEnvCommandService devopsEnvCommandService;
     @Autowired
     private DevopsConfigMapService devopsConfigMapService;
-    @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
 
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1ConfigMap> v1ConfigMaps, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1ConfigMap> v1ConfigMaps, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforeConfigMaps = beforeSync.stream()
                 .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(CONFIG_MAP))
                 .map(devopsEnvFileResourceE -> {
                     DevopsConfigMapDTO devopsConfigMapDTO = devopsConfigMapService
                             .baseQueryById(devopsEnvFileResourceE.getResourceId());
                     if (devopsConfigMapDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceE.getResourceId(), CONFIG_MAP);
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceE.getResourceId(), CONFIG_MAP);
                         return null;
                     }
                     return devopsConfigMapDTO.getName();
@@ -65,16 +63,16 @@ public class HandlerConfigMapRelationsServiceImpl implements HandlerObjectFileRe
         GitOpsUtil.pickCUDResource(beforeConfigMaps, v1ConfigMaps, addConfigMaps, updateConfigMaps, configMap -> configMap.getMetadata().getName());
 
         //新增configMap
-        addConfigMap(objectPath, envId, addConfigMaps, path, userId);
+        addConfigMap(objectPath, envId, addConfigMaps, path, userId, fileResourceBatch);
         //更新configMap
-        updateConfigMap(objectPath, envId, updateConfigMaps, path, userId);
+        updateConfigMap(objectPath, envId, updateConfigMaps, path, userId, fileResourceBatch);
         //删除configMap,和文件对象关联关系
         beforeConfigMaps.forEach(configMapName -> {
             DevopsConfigMapDTO devopsConfigMapDTO = devopsConfigMapService.baseQueryByEnvIdAndName(envId, configMapName);
             if (devopsConfigMapDTO != null) {
                 devopsConfigMapService.deleteByGitOps(devopsConfigMapDTO.getId());
-                devopsEnvFileResourceService
-                        .baseDeleteByEnvIdAndResourceId(envId, devopsConfigMapDTO.getId(), CONFIG_MAP);
+                fileResourceBatch
+                        .delete(envId, devopsConfigMapDTO.getId(), CONFIG_MAP);
             }
         });
     }
@@ -85,7 +83,7 @@ public class HandlerConfigMapRelationsServiceImpl implements HandlerObjectFileRe
     }
 
 
-    private void updateConfigMap(Map<String, String> objectPath, Long envId, List<V1ConfigMap> updateConfigMap, String path, Long userId) {
+    private void updateConfigMap(Map<String, String> objectPath, Long envId, List<V1ConfigMap> updateConfigMap, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updateConfigMap
                 .forEach(configMap -> {
                     String filePath = "";
@@ -108,9 +106,9 @@ public class HandlerConfigMapRelationsServiceImpl implements HandlerObjectFileRe
                         }
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                                .baseQueryByEnvIdAndResourceId(envId, devopsConfigMapDTO.getId(), configMap.getKind());
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath,
+                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                                .queryByEnvIdAndResourceId(envId, devopsConfigMapDTO.getId(), configMap.getKind());
+                        fileResourceBatch.updateOrCreate(objectPath,
                                 envId,
                                 devopsEnvFileResourceDTO,
                                 configMap.hashCode(), devopsConfigMapDTO.getId(), configMap.getKind());
@@ -125,7 +123,7 @@ public class HandlerConfigMapRelationsServiceImpl implements HandlerObjectFileRe
                 });
     }
 
-    private void addConfigMap(Map<String, String> objectPath, Long envId, List<V1ConfigMap> addConfigMap, String path, Long userId) {
+    private void addConfigMap(Map<String, String> objectPath, Long envId, List<V1ConfigMap> addConfigMap, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         addConfigMap
                 .forEach(configMap -> {
                     String filePath = "";
@@ -151,7 +149,7 @@ public class HandlerConfigMapRelationsServiceImpl implements HandlerObjectFileRe
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, configMap.hashCode(), devopsConfigMapRespVO.getId(),
+                        fileResourceBatch.updateOrCreate(objectPath, envId, null, configMap.hashCode(), devopsConfigMapRespVO.getId(),
                                 configMap.getKind());
                     } catch (CommonException e) {
                         String errorCode = "";
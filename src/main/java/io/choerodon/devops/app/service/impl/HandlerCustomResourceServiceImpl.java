@@ -18,6 +18,7 @@ import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
 import io.choerodon.devops.infra.enums.ResourceType;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.mapper.DevopsCustomizeResourceMapper;
 import io.choerodon.devops.infra.util.ConvertUtils;
 import io.choerodon.devops.infra.util.GitUtil;
@@ -36,8 +37,6 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
     @Autowired
     private DevopsCustomizeResourceService devopsCustomizeResourceService;
     @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
-    @Autowired
     private DevopsCustomizeResourceContentService devopsCustomizeResourceContentService;
     @Autowired
     private DevopsEnvCommandService devopsEnvCommandService;
@@ -45,14 +44,14 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
     private DevopsCustomizeResourceMapper devopsCustomizeResourceMapper;
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<DevopsCustomizeResourceDTO> devopsCustomizeResources, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<DevopsCustomizeResourceDTO> devopsCustomizeResources, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<DevopsCustomizeResourceDTO> beforeDevopsCustomResource = beforeSync.stream()
                 .filter(devopsEnvFileResourceVO -> devopsEnvFileResourceVO.getResourceType().equals(ResourceType.CUSTOM.getType()))
                 .map(devopsEnvFileResourceVO -> {
                     DevopsCustomizeResourceDTO devopsCustomizeResourceDTO = devopsCustomizeResourceMapper.selectByPrimaryKey(devopsEnvFileResourceVO.getResourceId());
                     if (devopsCustomizeResourceDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceVO.getResourceId(), ResourceType.CUSTOM.getType());
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceVO.getResourceId(), ResourceType.CUSTOM.getType());
                         return null;
                     }
                     return devopsCustomizeResourceDTO;
@@ -72,15 +71,15 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
         });
 
         //新增自定义资源
-        addDevopsCustomResource(objectPath, projectId, envId, addCustomizeResourceDTOS, path, userId);
+        addDevopsCustomResource(objectPath, projectId, envId, addCustomizeResourceDTOS, path, userId, fileResourceBatch);
         //更新自定义资源
-        updateDevopsCustomResource(objectPath, projectId, envId, updateCustomizeResourceDTOS, path, userId);
+        updateDevopsCustomResource(objectPath, projectId, envId, updateCustomizeResourceDTOS, path, userId, fileResourceBatch);
         //删除自定义资源
         beforeDevopsCustomResource.forEach(devopsCustomizeResourceDTO -> {
             DevopsCustomizeResourceDTO oldDevopsCustomizeResourceDTO = devopsCustomizeResourceService.queryByEnvIdAndKindAndName(envId, devopsCustomizeResourceDTO.getK8sKind(), devopsCustomizeResourceDTO.getName());
             if (oldDevopsCustomizeResourceDTO != null) {
                 devopsCustomizeResourceService.deleteResourceByGitOps(oldDevopsCustomizeResourceDTO.getId());
-                devopsEnvFileResourceService.baseDeleteByEnvIdAndResourceId(envId, devopsCustomizeResourceDTO.getId(), ResourceType.CUSTOM.getType());
+                fileResourceBatch.delete(envId, devopsCustomizeResourceDTO.getId(), ResourceType.CUSTOM.getType());
             }
         });
     }
@@ -92,7 +91,7 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
 
 
     private void updateDevopsCustomResource(Map<String, String> objectPath, Long projectId, Long
-            envId, List<DevopsCustomizeResourceDTO> devopsCustomizeResourceDTOS, String path, Long userId) {
+            envId, List<DevopsCustomizeResourceDTO> devopsCustomizeResourceDTOS, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         devopsCustomizeResourceDTOS.forEach(customResource -> {
             String filePath = "";
             try {
@@ -118,9 +117,9 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
                 //没发生改变,更新commit记录，更新文件对应关系记录
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                        .baseQueryByEnvIdAndResourceId(envId, devopsCustomizeResourceDTO.getId(), ResourceType.CUSTOM.getType());
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath,
+                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                        .queryByEnvIdAndResourceId(envId, devopsCustomizeResourceDTO.getId(), ResourceType.CUSTOM.getType());
+                fileResourceBatch.updateOrCreate(objectPath,
                         envId,
                         devopsEnvFileResourceDTO,
                         customResource.hashCode(), devopsCustomizeResourceDTO.getId(), ResourceType.CUSTOM.getType());
@@ -136,7 +135,7 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
     }
 
     private void addDevopsCustomResource(Map<String, String> objectPath, Long projectId, Long
-            envId, List<DevopsCustomizeResourceDTO> devopsCustomizeResourceDTOS, String path, Long userId) {
+            envId, List<DevopsCustomizeResourceDTO> devopsCustomizeResourceDTOS, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         devopsCustomizeResourceDTOS.forEach(customResource -> {
             String filePath = "";
             try {
@@ -154,7 +153,7 @@ public class HandlerCustomResourceServiceImpl implements HandlerObjectFileRelati
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, customResource.hashCode(), oldDevopsCustomizeResourceDTO.getId(),
+                fileResourceBatch.updateOrCreate(objectPath, envId, null, customResource.hashCode(), oldDevopsCustomizeResourceDTO.getId(),
                         ResourceType.CUSTOM.getType());
 
             } catch (CommonException e) {
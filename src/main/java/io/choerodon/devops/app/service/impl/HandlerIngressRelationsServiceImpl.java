@@ -25,6 +25,7 @@ import io.choerodon.devops.app.service.*;
 import io.choerodon.devops.infra.dto.*;
 import io.choerodon.devops.infra.enums.GitOpsObjectError;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.util.GitOpsUtil;
 import io.choerodon.devops.infra.util.GitUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -38,23 +39,21 @@ public class HandlerIngressRelationsServiceImpl implements HandlerObjectFileRela
     @Autowired
     private DevopsIngressService devopsIngressService;
     @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
-    @Autowired
     private DevopsServiceService devopsServiceService;
     @Autowired
     private DevopsEnvCommandService devopsEnvCommandService;
 
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1beta1Ingress> v1beta1Ingresses, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1beta1Ingress> v1beta1Ingresses, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforeIngress = beforeSync.stream()
                 .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(INGRESS))
                 .map(devopsEnvFileResourceE -> {
                     DevopsIngressDTO devopsIngressDTO = devopsIngressService
                             .baseQuery(devopsEnvFileResourceE.getResourceId());
                     if (devopsIngressDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceE.getResourceId(), INGRESS);
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceE.getResourceId(), INGRESS);
                         return null;
                     }
                     return devopsIngressDTO.getName();
@@ -71,13 +70,13 @@ public class HandlerIngressRelationsServiceImpl implements HandlerObjectFileRela
             DevopsIngressDTO devopsIngressDTO = devopsIngressService.baseCheckByEnvAndName(envId, ingressName);
             if (devopsIngressDTO != null) {
                 devopsIngressService.deleteIngressByGitOps(devopsIngressDTO.getId());
-                devopsEnvFileResourceService.baseDeleteByEnvIdAndResourceId(envId, devopsIngressDTO.getId(), INGRESS);
+                fileResourceBatch.delete(envId, devopsIngressDTO.getId(), INGRESS);
             }
         });
         //新增ingress
-        addIngress(objectPath, envId, projectId, addV1beta1Ingress, path, userId);
+        addIngress(objectPath, envId, projectId, addV1beta1Ingress, path, userId, fileResourceBatch);
         //更新ingress
-        updateIngress(objectPath, envId, projectId, updateV1beta1Ingress, path, userId);
+        updateIngress(objectPath, envId, projectId, updateV1beta1Ingress, path, userId, fileResourceBatch);
     }
 
     @Override
@@ -85,7 +84,7 @@ public class HandlerIngressRelationsServiceImpl implements HandlerObjectFileRela
         return V1beta1Ingress.class;
     }
 
-    private void addIngress(Map<String, String> objectPath, Long envId, Long projectId, List<V1beta1Ingress> addV1beta1Ingress, String path, Long userId) {
+    private void addIngress(Map<String, String> objectPath, Long envId, Long projectId, List<V1beta1Ingress> addV1beta1Ingress, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         addV1beta1Ingress
                 .forEach(v1beta1Ingress -> {
                     String filePath = "";
@@ -115,7 +114,7 @@ public class HandlerIngressRelationsServiceImpl implements HandlerObjectFileRela
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, v1beta1Ingress.hashCode(), devopsIngressDTO.getId(),
+                        fileResourceBatch.updateOrCreate(objectPath, envId, null, v1beta1Ingress.hashCode(), devopsIngressDTO.getId(),
                                 v1beta1Ingress.getKind());
                     } catch (CommonException e) {
                         String errorCode = "";
@@ -127,7 +126,7 @@ public class HandlerIngressRelationsServiceImpl implements HandlerObjectFileRela
                 });
     }
 
-    private void updateIngress(Map<String, String> objectPath, Long envId, Long projectId, List<V1beta1Ingress> updateV1beta1Ingress, String path, Long userId) {
+    private void updateIngress(Map<String, String> objectPath, Long envId, Long projectId, List<V1beta1Ingress> updateV1beta1Ingress, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updateV1beta1Ingress
                 .forEach(v1beta1Ingress -> {
                     String filePath = "";
@@ -160,9 +159,9 @@ public class HandlerIngressRelationsServiceImpl implements HandlerObjectFileRela
 
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                                .baseQueryByEnvIdAndResourceId(envId, devopsIngressDTO.getId(), v1beta1Ingress.getKind());
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath,
+                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                                .queryByEnvIdAndResourceId(envId, devopsIngressDTO.getId(), v1beta1Ingress.getKind());
+                        fileResourceBatch.updateOrCreate(objectPath,
                                 envId,
                                 devopsEnvFileResourceDTO,
                                 v1beta1Ingress.hashCode(), devopsIngressDTO.getId(), v1beta1Ingress.getKind());
@@ -4,7 +4,6 @@ import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.vo.DevopsPvReqVO;
 import io.choerodon.devops.api.vo.kubernetes.LocalPvResource;
 import io.choerodon.devops.app.service.DevopsEnvCommandService;
-import io.choerodon.devops.app.service.DevopsEnvFileResourceService;
 import io.choerodon.devops.app.service.DevopsPvService;
 import io.choerodon.devops.app.service.HandlerObjectFileRelationsService;
 import io.choerodon.devops.infra.constant.KubernetesConstants;
@@ -15,6 +14,7 @@ import io.choerodon.devops.infra.enums.GitOpsObjectError;
 import io.choerodon.devops.infra.enums.PersistentVolumeType;
 import io.choerodon.devops.infra.enums.ResourceType;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.mapper.DevopsPvMapper;
 import io.choerodon.devops.infra.util.GitOpsUtil;
 import io.choerodon.devops.infra.util.GitUtil;
@@ -45,19 +45,17 @@ public class HandlerPersistentVolumeServiceImpl implements HandlerObjectFileRela
     private DevopsPvService devopsPvService;
     @Autowired
     private DevopsPvMapper devopsPvMapper;
-    @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1PersistentVolume> pvs, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1PersistentVolume> pvs, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforePvs = beforeSync.stream()
                 .filter(devopsEnvFileResourceDTO -> devopsEnvFileResourceDTO.getResourceType().equals(ResourceType.PERSISTENT_VOLUME.getType()))
                 .map(devopsEnvFileResourceDTO -> {
                     DevopsPvDTO devopsPvDTO = devopsPvMapper
                             .selectByPrimaryKey(devopsEnvFileResourceDTO.getResourceId());
                     if (devopsPvDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceDTO.getResourceId(), ResourceType.PERSISTENT_VOLUME.getType());
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceDTO.getResourceId(), ResourceType.PERSISTENT_VOLUME.getType());
                         return null;
                     }
                     return devopsPvDTO.getName();
@@ -72,21 +70,21 @@ public class HandlerPersistentVolumeServiceImpl implements HandlerObjectFileRela
         GitOpsUtil.pickCUDResource(beforePvs, pvs, pvToAdd, pvToUpdate, pv -> pv.getMetadata().getName());
 
         //新增pv
-        addPersistentVolumes(objectPath, envId, pvToAdd, path, userId);
+        addPersistentVolumes(objectPath, envId, pvToAdd, path, userId, fileResourceBatch);
         //更新pv
-        updatePersistentVolumes(objectPath, envId, pvToUpdate, path, userId);
+        updatePersistentVolumes(objectPath, envId, pvToUpdate, path, userId, fileResourceBatch);
         //删除pv,和文件对象关联关系
         beforePvs.forEach(pvName -> {
             DevopsPvDTO devopsPvDTO = devopsPvService.queryByEnvIdAndName(envId, pvName);
             if (devopsPvDTO != null) {
                 devopsPvService.deleteByGitOps(devopsPvDTO.getId());
-                devopsEnvFileResourceService
-                        .baseDeleteByEnvIdAndResourceId(envId, devopsPvDTO.getId(), ResourceType.PERSISTENT_VOLUME.getType());
+                fileResourceBatch
+                        .delete(envId, devopsPvDTO.getId(), ResourceType.PERSISTENT_VOLUME.getType());
             }
         });
     }
 
-    private void updatePersistentVolumes(Map<String, String> objectPath, Long envId, List<V1PersistentVolume> updatePvs, String path, Long userId) {
+    private void updatePersistentVolumes(Map<String, String> objectPath, Long envId, List<V1PersistentVolume> updatePvs, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updatePvs.forEach(pv -> {
             String filePath = "";
             try {
@@ -107,9 +105,9 @@ public class HandlerPersistentVolumeServiceImpl implements HandlerObjectFileRela
                 }
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
-                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                        .baseQueryByEnvIdAndResourceId(envId, devopsPvDTO.getId(), pv.getKind());
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath,
+                DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                        .queryByEnvIdAndResourceId(envId, devopsPvDTO.getId(), pv.getKind());
+                fileResourceBatch.updateOrCreate(objectPath,
                         envId,
                         devopsEnvFileResourceDTO,
                         pv.hashCode(), devopsPvDTO.getId(), pv.getKind());
@@ -129,7 +127,7 @@ public class HandlerPersistentVolumeServiceImpl implements HandlerObjectFileRela
                 && Objects.equals(dbRecord.getValueConfig(), update.getValueConfig());
     }
 
-    private void addPersistentVolumes(Map<String, String> objectPath, Long envId, List<V1PersistentVolume> pvs, String path, Long userId) {
+    private void addPersistentVolumes(Map<String, String> objectPath, Long envId, List<V1PersistentVolume> pvs, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         pvs.forEach(pv -> {
             String filePath = "";
             try {
@@ -155,7 +153,7 @@ public class HandlerPersistentVolumeServiceImpl implements HandlerObjectFileRela
                 devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                 devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, pv.hashCode(), newDevopsPvDTO.getId(),
+                fileResourceBatch.updateOrCreate(objectPath, envId, null, pv.hashCode(), newDevopsPvDTO.getId(),
                         pv.getKind());
             } catch (GitOpsExplainException ex) {
                 throw ex;
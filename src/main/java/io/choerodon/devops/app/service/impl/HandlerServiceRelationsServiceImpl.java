@@ -11,6 +11,7 @@ import io.choerodon.devops.api.validator.DevopsServiceValidator;
 import io.choerodon.devops.app.service.*;
 import io.choerodon.devops.infra.dto.*;
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
+import io.choerodon.devops.infra.gitops.DevopsEnvFileResourceBatch;
 import io.choerodon.devops.infra.util.GitUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
 import io.choerodon.devops.infra.enums.CommandStatus;
@@ -35,8 +36,6 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
     @Autowired
     private DevopsServiceService devopsServiceService;
     @Autowired
-    private DevopsEnvFileResourceService devopsEnvFileResourceService;
-    @Autowired
     private AppServiceInstanceService appServiceInstanceService;
     @Autowired
     private AppServiceService appServiceService;
@@ -46,15 +45,15 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
     private DevopsServiceInstanceService devopsServiceInstanceService;
 
     @Override
-    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1Service> v1Services, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId) {
+    public void handlerRelations(Map<String, String> objectPath, List<DevopsEnvFileResourceDTO> beforeSync, List<V1Service> v1Services, List<V1Endpoints> v1Endpoints, Long envId, Long projectId, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         List<String> beforeService = beforeSync.stream()
                 .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(SERVICE))
                 .map(devopsEnvFileResourceE -> {
                     DevopsServiceDTO devopsServiceDTO = devopsServiceService
                             .baseQuery(devopsEnvFileResourceE.getResourceId());
                     if (devopsServiceDTO == null) {
-                        devopsEnvFileResourceService
-                                .baseDeleteByEnvIdAndResourceId(envId, devopsEnvFileResourceE.getResourceId(), SERVICE);
+                        fileResourceBatch
+                                .delete(envId, devopsEnvFileResourceE.getResourceId(), SERVICE);
                         return null;
                     }
                     return devopsServiceDTO.getName();
@@ -73,15 +72,15 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
             }
         });
         //新增service
-        addService(objectPath, envId, projectId, addV1Service, v1Endpoints, path, userId);
+        addService(objectPath, envId, projectId, addV1Service, v1Endpoints, path, userId, fileResourceBatch);
         //更新service
-        updateService(objectPath, envId, projectId, updateV1Service, v1Endpoints, path, userId);
+        updateService(objectPath, envId, projectId, updateV1Service, v1Endpoints, path, userId, fileResourceBatch);
         //删除service,和文件对象关联关系
         beforeService.forEach(serviceName -> {
             DevopsServiceDTO devopsServiceDTO = devopsServiceService.baseQueryByNameAndEnvId(serviceName, envId);
             if (devopsServiceDTO != null) {
                 devopsServiceService.deleteDevopsServiceByGitOps(devopsServiceDTO.getId());
-                devopsEnvFileResourceService.baseDeleteByEnvIdAndResourceId(envId, devopsServiceDTO.getId(), SERVICE);
+                fileResourceBatch.delete(envId, devopsServiceDTO.getId(), SERVICE);
             }
         });
     }
@@ -92,7 +91,7 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
     }
 
 
-    private void updateService(Map<String, String> objectPath, Long envId, Long projectId, List<V1Service> updateV1Service, List<V1Endpoints> v1Endpoints, String path, Long userId) {
+    private void updateService(Map<String, String> objectPath, Long envId, Long projectId, List<V1Service> updateV1Service, List<V1Endpoints> v1Endpoints, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         updateV1Service.stream()
                 .forEach(v1Service -> {
                     String filePath = "";
@@ -113,9 +112,9 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = devopsEnvFileResourceService
-                                .baseQueryByEnvIdAndResourceId(envId, devopsServiceDTO.getId(), v1Service.getKind());
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath,
+                        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = fileResourceBatch
+                                .queryByEnvIdAndResourceId(envId, devopsServiceDTO.getId(), v1Service.getKind());
+                        fileResourceBatch.updateOrCreate(objectPath,
                                 envId,
                                 devopsEnvFileResourceDTO,
                                 v1Service.hashCode(), devopsServiceDTO.getId(), v1Service.getKind());
@@ -129,7 +128,7 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
                 });
     }
 
-    private void addService(Map<String, String> objectPath, Long envId, Long projectId, List<V1Service> addV1Service, List<V1Endpoints> v1Endpoints, String path, Long userId) {
+    private void addService(Map<String, String> objectPath, Long envId, Long projectId, List<V1Service> addV1Service, List<V1Endpoints> v1Endpoints, String path, Long userId, DevopsEnvFileResourceBatch fileResourceBatch) {
         addV1Service.stream()
                 .forEach(v1Service -> {
                     String filePath = "";
@@ -155,7 +154,7 @@ public class HandlerServiceRelationsServiceImpl implements HandlerObjectFileRela
                         devopsEnvCommandDTO.setSha(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
                         devopsEnvCommandService.baseUpdateSha(devopsEnvCommandDTO.getId(), devopsEnvCommandDTO.getSha());
 
-                        devopsEnvFileResourceService.updateOrCreateFileResource(objectPath, envId, null, v1Service.hashCode(), devopsServiceDTO.getId(),
+                        fileResourceBatch.updateOrCreate(objectPath, envId, null, v1Service.hashCode(), devopsServiceDTO.getId(),
                                 v1Service.getKind());
                     } catch (CommonException e) {
                         String errorCode = "";
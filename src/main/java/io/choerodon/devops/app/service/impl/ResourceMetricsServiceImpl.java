@@ -0,0 +1,184 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.api.vo.AgentNodeInfoVO;
+import io.choerodon.devops.api.vo.MetricsPointVO;
+import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO;
+import io.choerodon.devops.app.service.*;
+import io.choerodon.devops.infra.constant.MiscConstants;
+import io.choerodon.devops.infra.dto.DevopsClusterDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvPodDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
+import io.choerodon.devops.infra.enums.MetricsResolution;
+import io.choerodon.devops.infra.metrics.MetricsTimeSeriesStore;
+import io.choerodon.devops.infra.util.CommonExAssertUtil;
+import io.choerodon.devops.infra.util.K8sUtil;
+
+/**
+ * @author zmf
+ * @since 2020/11/12
+ */
+@Service
+public class ResourceMetricsServiceImpl implements ResourceMetricsService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceMetricsServiceImpl.class);
+
+    /**
+     * pod:${clusterCode}:${namespace}:${podName}:${metric}
+     */
+    private static final String POD_SERIES_TEMPLATE = "pod:%s:%s:%s:%s";
+    /**
+     * node:${clusterCode}:${nodeName}:${metric}
+     */
+    private static final String NODE_SERIES_TEMPLATE = "node:%s:%s:%s";
+
+    private static final String CPU = "cpu";
+    private static final String MEMORY = "memory";
+    private static final String CPU_REQUEST = "cpuRequest";
+    private static final String CPU_LIMIT = "cpuLimit";
+    private static final String MEMORY_REQUEST = "memoryRequest";
+    private static final String MEMORY_LIMIT = "memoryLimit";
+    private static final String POD_COUNT = "podCount";
+    private static final String[] POD_METRICS = {CPU, MEMORY};
+    private static final String[] NODE_METRICS = {CPU_REQUEST, CPU_LIMIT, MEMORY_REQUEST, MEMORY_LIMIT, POD_COUNT};
+
+    private static final long DEFAULT_RANGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired
+    private MetricsTimeSeriesStore metricsTimeSeriesStore;
+    @Autowired
+    private DevopsClusterService devopsClusterService;
+    @Autowired
+    private DevopsClusterProPermissionService devopsClusterProPermissionService;
+    @Autowired
+    private DevopsEnvPodService devopsEnvPodService;
+    @Autowired
+    private PermissionHelper permissionHelper;
+
+    @Override
+    public void recordPodMetrics(List<PodMetricsRedisInfoVO> pods) {
+        long timestamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        pods.forEach(pod -> {
+            String clusterCode = pod.getClusterCode();
+            // cpu单位为m, 内存单位为Mi, 与实时数据保持一致
+            metricsTimeSeriesStore.record(clusterCode, podSeries(clusterCode, pod.getNamespace(), pod.getName(), CPU),
+                    timestamp, K8sUtil.getNormalValueFromCpuString(pod.getCpu()) * 1000);
+            metricsTimeSeriesStore.record(clusterCode, podSeries(clusterCode, pod.getNamespace(), pod.getName(), MEMORY),
+                    timestamp, K8sUtil.getByteFromMemoryString(pod.getMemory()) / (double) (1 << 20));
+        });
+    }
+
+    @Override
+    public void recordNodeMetrics(Long clusterId, List<AgentNodeInfoVO> nodes) {
+        DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(clusterId);
+        if (devopsClusterDTO == null) {
+            LOGGER.warn("Cluster with id {} is null when recording node metrics", clusterId);
+            return;
+        }
+        String clusterCode = devopsClusterDTO.getCode();
+        long timestamp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        nodes.forEach(node -> {
+            recordNodeMetric(clusterCode, node.getNodeName(), CPU_REQUEST, timestamp, cpu(node.getCpuRequest()));
+            recordNodeMetric(clusterCode, node.getNodeName(), CPU_LIMIT, timestamp, cpu(node.getCpuLimit()));
+            recordNodeMetric(clusterCode, node.getNodeName(), MEMORY_REQUEST, timestamp, memory(node.getMemoryRequest()));
+            recordNodeMetric(clusterCode, node.getNodeName(), MEMORY_LIMIT, timestamp, memory(node.getMemoryLimit()));
+            recordNodeMetric(clusterCode, node.getNodeName(), POD_COUNT, timestamp, node.getPodCount() == null ? 0 : node.getPodCount());
+        });
+    }
+
+    @Override
+    public Map<String, List<MetricsPointVO>> queryPodMetrics(Long projectId, Long envId, Long podId, @Nullable String resolution,
+                                                             @Nullable Long startTime, @Nullable Long endTime) {
+        DevopsEnvironmentDTO devopsEnvironmentDTO = permissionHelper.checkEnvBelongToProject(projectId, envId);
+        DevopsEnvPodDTO devopsEnvPodDTO = devopsEnvPodService.baseQueryById(podId);
+        if (devopsEnvPodDTO == null) {
+            throw new CommonException("error.pod.notExist");
+        }
+        CommonExAssertUtil.assertTrue(envId.equals(devopsEnvPodDTO.getEnvId()), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
+        DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(devopsEnvironmentDTO.getClusterId());
+        if (devopsClusterDTO == null) {
+            throw new CommonException("error.cluster.get");
+        }
+        String clusterCode = devopsClusterDTO.getCode();
+
+        Map<String, List<MetricsPointVO>> result = new LinkedHashMap<>();
+        for (String metric : POD_METRICS) {
+            result.put(metric, range(clusterCode, podSeries(clusterCode, devopsEnvPodDTO.getNamespace(), devopsEnvPodDTO.getName(), metric),
+                    resolution, startTime, endTime));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, List<MetricsPointVO>> queryNodeMetrics(Long projectId, Long clusterId, String nodeName, @Nullable String resolution,
+                                                              @Nullable Long startTime, @Nullable Long endTime) {
+        DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(clusterId);
+        if (devopsClusterDTO == null) {
+            throw new CommonException("error.cluster.get");
+        }
+        // 集群属于本项目或者分配给了本项目才能查看
+        CommonExAssertUtil.assertTrue(projectId.equals(devopsClusterDTO.getProjectId())
+                        || devopsClusterProPermissionService.projectHasClusterPermission(projectId, clusterId),
+                MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
+        String clusterCode = devopsClusterDTO.getCode();
+
+        Map<String, List<MetricsPointVO>> result = new LinkedHashMap<>();
+        for (String metric : NODE_METRICS) {
+            result.put(metric, range(clusterCode, nodeSeries(clusterCode, nodeName, metric), resolution, startTime, endTime));
+        }
+        return result;
+    }
+
+    private List<MetricsPointVO> range(String clusterCode, String series, @Nullable String resolution,
+                                       @Nullable Long startTime, @Nullable Long endTime) {
+        long end = endTime == null ? System.currentTimeMillis() : endTime;
+        long start = startTime == null ? end - DEFAULT_RANGE_MILLIS : startTime;
+        if (start > end) {
+            throw new CommonException("error.metrics.time.range.invalid");
+        }
+        long from = TimeUnit.MILLISECONDS.toSeconds(start);
+        long to = TimeUnit.MILLISECONDS.toSeconds(end);
+
+        MetricsResolution metricsResolution;
+        if (StringUtils.isEmpty(resolution)) {
+            metricsResolution = MetricsResolution.suitableFor(to - from);
+        } else {
+            metricsResolution = MetricsResolution.forValue(resolution);
+            if (metricsResolution == null) {
+                throw new CommonException("error.metrics.resolution.invalid", resolution);
+            }
+        }
+        return metricsTimeSeriesStore.range(clusterCode, series, metricsResolution, from, to);
+    }
+
+    private void recordNodeMetric(String clusterCode, String nodeName, String metric, long timestamp, double value) {
+        metricsTimeSeriesStore.record(clusterCode, nodeSeries(clusterCode, nodeName, metric), timestamp, value);
+    }
+
+    private static double cpu(String cpu) {
+        return StringUtils.isEmpty(cpu) ? 0 : K8sUtil.getNormalValueFromCpuString(cpu);
+    }
+
+    private static double memory(String memory) {
+        return StringUtils.isEmpty(memory) ? 0 : K8sUtil.getByteFromMemoryString(memory);
+    }
+
+    private static String podSeries(String clusterCode, String namespace, String podName, String metric) {
+        return String.format(POD_SERIES_TEMPLATE, clusterCode, namespace, podName, metric);
+    }
+
+    private static String nodeSeries(String clusterCode, String nodeName, String metric) {
+        return String.format(NODE_SERIES_TEMPLATE, clusterCode, nodeName, metric);
+    }
+}
@@ -76,4 +76,15 @@ public class DevopsTask {
         logger.info("begin to fix projectId ");
         devopsCheckLogService.checkLog("0.23.3");
     }
+
+    /**
+     * 0.24.0根据已有的数据生成项目概览的按天统计数据
+     */
+    @JobTask(maxRetryCount = 3, code = "upgradeVersionTo24.0", description = "生成项目概览的按天统计数据")
+    @TimedTask(name = "upgradeVersionTo24.0", description = "生成项目概览的按天统计数据", oneExecution = true,
+            repeatCount = 0, repeatInterval = 1, repeatIntervalUnit = QuartzDefinition.SimpleRepeatIntervalUnit.HOURS, params = {})
+    public void rebuildProjectDailyCount(Map<String, Object> map) {
+        logger.info("begin to rebuild project daily count");
+        devopsCheckLogService.checkLog("0.24.0");
+    }
 }
@@ -0,0 +1,278 @@
+package io.choerodon.devops.app.task;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.hzero.core.util.UUIDUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.oauth.DetailsHelper;
+import io.choerodon.devops.app.service.GitlabWebHookService;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+import io.choerodon.devops.infra.dto.DevopsWebhookEventDTO;
+import io.choerodon.devops.infra.enums.WebhookEventStatusEnum;
+import io.choerodon.devops.infra.mapper.DevopsWebhookEventMapper;
+
+/**
+ * gitlab webhook事件队列
+ * <p>
+ * webhook请求中只把事件写入 devops_webhook_event 表, 由这里异步处理:
+ * 1. 事件按照gitlab项目分区, 同一个项目的事件按照接收的顺序逐个处理, 不同项目并发处理
+ * 2. 一个分区同时只由一个实例的一个线程处理, 通过redis锁保证, 处理期间由看门狗定期续期, 单个事件处理较慢时锁也不会过期
+ * 3. 处理失败的事件延迟重试, 重试期间同一个项目后面的事件也等待, 重试次数用完之后标记为失败, 继续处理后面的事件
+ * 4. 相同的事件(gitlab超时重发的请求)只保存一次, 优先使用 X-Gitlab-Event-UUID 作为事件的标识,
+ * 没有这个请求头时, 接收之前的时间窗口内有内容相同的事件就不再保存
+ * <p>
+ * 写入之后会立即唤醒分区, 定时轮询只是兜底, 处理其它实例写入或者需要重试的事件.
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Component
+@EnableScheduling
+public class GitlabWebhookEventDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitlabWebhookEventDispatcher.class);
+
+    private static final String PARTITION_LOCK_PREFIX = "devops:webhook-event:partition:";
+    private static final String METRIC_EVENTS = "devops.webhook.events";
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 4000;
+    /**
+     * 值等于自己持有的锁的值时才续期
+     */
+    private static final RedisScript<Long> RENEW_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+    /**
+     * 值等于自己持有的锁的值时才删除
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    @Value("${devops.webhook.queue.batchSize:50}")
+    private Integer batchSize;
+    @Value("${devops.webhook.queue.maxRetries:5}")
+    private Integer maxRetries;
+    @Value("${devops.webhook.queue.retryDelaySeconds:10}")
+    private Long retryDelaySeconds;
+    @Value("${devops.webhook.queue.lockSeconds:60}")
+    private Long lockSeconds;
+    @Value("${devops.webhook.queue.retentionDays:3}")
+    private Integer retentionDays;
+    @Value("${devops.webhook.queue.dedupWindowSeconds:60}")
+    private Long dedupWindowSeconds;
+
+    @Autowired
+    private DevopsWebhookEventMapper devopsWebhookEventMapper;
+    @Autowired
+    @Lazy
+    private GitlabWebHookService gitlabWebHookService;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    @Qualifier(GitOpsConstants.WEBHOOK_EVENT_EXECUTOR)
+    private AsyncTaskExecutor webhookEventExecutor;
+    @Autowired
+    @Qualifier(GitOpsConstants.SCHEDULED_TASK_SCHEDULER)
+    private TaskScheduler lockWatchdogScheduler;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 当前实例正在处理的分区(gitlab项目id)
+     */
+    private final Set<Long> runningPartitions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 保存事件并唤醒所在的分区
+     *
+     * @param event 事件, 需要设置事件标识, 类型, gitlab项目id, 资源id和内容, 没有X-Gitlab-Event-UUID时还需要设置内容摘要
+     * @return false表示相同的事件已经接收过
+     */
+    public boolean enqueue(DevopsWebhookEventDTO event) {
+        event.setStatus(WebhookEventStatusEnum.PENDING.value());
+        event.setRetryCount(0);
+        event.setNextProcessTime(new Date());
+        boolean inserted;
+        try {
+            inserted = insert(event);
+        } catch (DuplicateKeyException e) {
+            inserted = false;
+        }
+        if (!inserted) {
+            LOGGER.info("Duplicate webhook event {} of gitlab project {} is ignored", event.getObjectKind(), event.getGitlabProjectId());
+            record("duplicate");
+            return false;
+        }
+        record("received");
+        dispatch(event.getGitlabProjectId());
+        return true;
+    }
+
+    /**
+     * 有事件标识时由唯一索引去重, 只有内容摘要时在时间窗口内去重
+     *
+     * @return false表示时间窗口内已经有相同的事件
+     */
+    private boolean insert(DevopsWebhookEventDTO event) {
+        if (event.getContentHash() == null) {
+            devopsWebhookEventMapper.insertSelective(event);
+            return true;
+        }
+        Long userId = DetailsHelper.getUserDetails() == null ? 0L : DetailsHelper.getUserDetails().getUserId();
+        return devopsWebhookEventMapper.insertIfNoRecentDuplicate(event, dedupWindowSeconds, userId) > 0;
+    }
+
+    /**
+     * 兜底轮询有待处理事件的分区
+     */
+    @Scheduled(fixedDelayString = "${devops.webhook.queue.pollIntervalMillis:1000}")
+    public void poll() {
+        List<Long> gitlabProjectIds = devopsWebhookEventMapper.listPendingProjectIds(new Date(), batchSize);
+        gitlabProjectIds.forEach(this::dispatch);
+    }
+
+    /**
+     * 清理已经处理完成(成功或者重试用完之后失败)的事件
+     */
+    @Scheduled(fixedDelay = 1000 * 60 * 60)
+    public void cleanFinishedEvents() {
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+        int deleted = devopsWebhookEventMapper.deleteFinishedBefore(before);
+        if (deleted > 0) {
+            LOGGER.info("Deleted {} processed webhook events", deleted);
+        }
+    }
+
+    private void dispatch(Long gitlabProjectId) {
+        if (!runningPartitions.add(gitlabProjectId)) {
+            // 正在处理的分区会一直处理到没有待处理的事件
+            return;
+        }
+        try {
+            webhookEventExecutor.execute(() -> {
+                try {
+                    drain(gitlabProjectId);
+                } catch (Exception ex) {
+                    LOGGER.warn("Failed to process webhook events of gitlab project {}", gitlabProjectId, ex);
+                } finally {
+                    runningPartitions.remove(gitlabProjectId);
+                }
+            });
+        } catch (Exception ex) {
+            runningPartitions.remove(gitlabProjectId);
+            LOGGER.warn("Failed to submit webhook events of gitlab project {}, they will be processed by next poll", gitlabProjectId, ex);
+        }
+    }
+
+    /**
+     * 按顺序处理分区中的事件, 直到没有待处理的事件或者遇到需要等待重试的事件
+     */
+    private void drain(Long gitlabProjectId) {
+        String lockKey = PARTITION_LOCK_PREFIX + gitlabProjectId;
+        String lockValue = UUIDUtils.generateUUID();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, lockValue, lockSeconds, TimeUnit.SECONDS))) {
+            // 其它实例正在处理
+            return;
+        }
+        // 看门狗在处理期间定期续期, 续期失败说明锁已经被其它实例获取, 处理完当前的事件之后停止
+        AtomicBoolean lockLost = new AtomicBoolean(false);
+        long renewIntervalMillis = Math.max(TimeUnit.SECONDS.toMillis(lockSeconds) / 3, 1);
+        ScheduledFuture<?> watchdog = lockWatchdogScheduler.scheduleAtFixedRate(() -> {
+            try {
+                if (!renewLock(lockKey, lockValue)) {
+                    lockLost.set(true);
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to renew the lock of webhook events of gitlab project {}", gitlabProjectId, ex);
+            }
+        }, new Date(System.currentTimeMillis() + renewIntervalMillis), renewIntervalMillis);
+        try {
+            while (true) {
+                List<DevopsWebhookEventDTO> events = devopsWebhookEventMapper.listPendingByProjectId(gitlabProjectId, batchSize);
+                if (events.isEmpty()) {
+                    return;
+                }
+                for (DevopsWebhookEventDTO event : events) {
+                    if (event.getNextProcessTime() != null && event.getNextProcessTime().after(new Date())) {
+                        // 等待重试, 保证同一个项目的事件的顺序
+                        return;
+                    }
+                    if (!process(event)) {
+                        return;
+                    }
+                    if (lockLost.get()) {
+                        LOGGER.warn("Lost the lock of webhook events of gitlab project {}", gitlabProjectId);
+                        return;
+                    }
+                }
+            }
+        } finally {
+            watchdog.cancel(false);
+            stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), lockValue);
+        }
+    }
+
+    /**
+     * 处理一个事件
+     *
+     * @return false表示事件需要等待重试, 分区需要停止处理
+     */
+    private boolean process(DevopsWebhookEventDTO event) {
+        try {
+            gitlabWebHookService.processEvent(event);
+            devopsWebhookEventMapper.updateResult(event.getId(), WebhookEventStatusEnum.SUCCESS.value(), event.getRetryCount(), event.getNextProcessTime(), null);
+            record("success");
+            return true;
+        } catch (Exception ex) {
+            int retryCount = event.getRetryCount() == null ? 1 : event.getRetryCount() + 1;
+            String errorMessage = StringUtils.abbreviate(ExceptionUtils.getStackTrace(ex), MAX_ERROR_MESSAGE_LENGTH);
+            if (retryCount > maxRetries) {
+                LOGGER.warn("Failed to process webhook event {} after {} retries, give up", event.getId(), maxRetries, ex);
+                devopsWebhookEventMapper.updateResult(event.getId(), WebhookEventStatusEnum.FAILED.value(), retryCount, event.getNextProcessTime(), errorMessage);
+                record("failed");
+                return true;
+            }
+            // 重试的间隔按照次数翻倍
+            long delayMillis = TimeUnit.SECONDS.toMillis(retryDelaySeconds) << Math.min(retryCount - 1, 10);
+            LOGGER.info("Failed to process webhook event {}, retry it after {} ms", event.getId(), delayMillis, ex);
+            devopsWebhookEventMapper.updateResult(event.getId(), WebhookEventStatusEnum.PENDING.value(), retryCount,
+                    new Date(System.currentTimeMillis() + delayMillis), errorMessage);
+            record("retry");
+            return false;
+        }
+    }
+
+    private boolean renewLock(String lockKey, String lockValue) {
+        Long renewed = stringRedisTemplate.execute(RENEW_LOCK_SCRIPT, Collections.singletonList(lockKey),
+                lockValue, String.valueOf(TimeUnit.SECONDS.toMillis(lockSeconds)));
+        return renewed != null && renewed > 0;
+    }
+
+    private void record(String result) {
+        meterRegistry.counter(METRIC_EVENTS, "result", result).increment();
+    }
+}
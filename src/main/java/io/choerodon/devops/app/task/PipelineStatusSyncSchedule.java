@@ -1,21 +1,44 @@
 package io.choerodon.devops.app.task;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import io.choerodon.devops.app.service.AppServiceService;
 import io.choerodon.devops.app.service.DevopsCiPipelineRecordService;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+import io.choerodon.devops.infra.dto.AppServiceDTO;
 import io.choerodon.devops.infra.dto.DevopsCiPipelineRecordDTO;
+import io.choerodon.devops.infra.dto.gitlab.GitlabPipelineDTO;
+import io.choerodon.devops.infra.dto.gitlab.JobDTO;
+import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
+import io.choerodon.devops.infra.util.GitUserNameUtil;
+import io.choerodon.devops.infra.util.TokenBucket;
+import io.choerodon.devops.infra.util.TypeUtil;
 
 /**
  * 〈功能简述〉
  * 〈流水线状态同步定时任务〉
+ * <p>
+ * 待同步的纪录按照gitlab项目分组处理, 同一个项目的应用服务只查询一次,
+ * 调用gitlab接口前从令牌桶获取令牌, 避免积压的纪录较多时短时间内大量请求gitlab
  *
  * @author wanghao
  * @since 2020/7/14 16:14
@@ -25,23 +48,149 @@ import io.choerodon.devops.infra.dto.DevopsCiPipelineRecordDTO;
 public class PipelineStatusSyncSchedule {
     private static final Logger LOGGER = LoggerFactory.getLogger(PipelineStatusSyncSchedule.class);
 
+    private static final String METRIC_RECORDS = "devops.ci.pipeline.sync.records";
+    private static final String METRIC_PENDING = "devops.ci.pipeline.sync.pending";
+
     // 多久没有更新状态的则进行同步操作 1000 * 60 * 10  默认10分钟
     @Value("${devops.ci.pipeline.sync.statusUpdatePeriodMilliSeconds:600000}")
     private Long statusUpdatePeriodMilliSeconds;
 
+    @Value("${devops.ci.pipeline.sync.gitlabRequestsPerSecond:5}")
+    private Double gitlabRequestsPerSecond;
+
+    @Value("${devops.ci.pipeline.sync.gitlabRequestBurst:10}")
+    private Integer gitlabRequestBurst;
+
     @Autowired
     private DevopsCiPipelineRecordService devopsCiPipelineRecordService;
+    @Autowired
+    private AppServiceService appServiceService;
+    @Autowired
+    private GitlabServiceClientOperator gitlabServiceClientOperator;
+    @Autowired
+    @Qualifier(GitOpsConstants.PIPELINE_EXECUTOR)
+    private AsyncTaskExecutor pipelineExecutor;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    /**
+     * 本轮同步中还未处理的纪录数
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private TokenBucket tokenBucket;
+    private Counter syncedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        tokenBucket = new TokenBucket(gitlabRequestsPerSecond, gitlabRequestBurst);
+        syncedCounter = Counter.builder(METRIC_RECORDS)
+                .tag("result", "synced")
+                .description("Pipeline records reconciled with gitlab by the schedule")
+                .register(meterRegistry);
+        failedCounter = Counter.builder(METRIC_RECORDS)
+                .tag("result", "failed")
+                .description("Pipeline records failed to reconcile with gitlab by the schedule")
+                .register(meterRegistry);
+        meterRegistry.gauge(METRIC_PENDING, pending);
+    }
 
     // 10分钟执行一次数据修复
     @Scheduled(fixedRate = 1000 * 60 * 10)
     public void syncPipelineStatus() {
+        // 同步受限于gitlab的调用速率, 在流水线线程池中执行, 避免占用定时任务线程
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.info("The last pipeline status sync is still running, remaining {} records. Skip this time", pending.get());
+            return;
+        }
+        try {
+            pipelineExecutor.execute(() -> {
+                try {
+                    doSyncPipelineStatus();
+                } finally {
+                    pending.set(0);
+                    running.set(false);
+                }
+            });
+        } catch (Exception ex) {
+            running.set(false);
+            LOGGER.warn("Failed to submit pipeline status sync task", ex);
+        }
+    }
+
+    private void doSyncPipelineStatus() {
         LOGGER.info(">>>>>>>>>>>>>>>>>>>>>>>>>>> Start sync pipeline status <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+        long start = System.currentTimeMillis();
         // 查询要修复的流水线记录
         List<DevopsCiPipelineRecordDTO> devopsCiPipelineRecordDTOS = devopsCiPipelineRecordService.queryNotSynchronizedRecord(statusUpdatePeriodMilliSeconds);
+        pending.set(devopsCiPipelineRecordDTOS.size());
+
+        // 按照gitlab项目分组, 没有gitlab项目id的历史纪录单独处理
+        Map<Long, List<DevopsCiPipelineRecordDTO>> groups = new LinkedHashMap<>();
+        List<DevopsCiPipelineRecordDTO> ungrouped = new ArrayList<>();
         devopsCiPipelineRecordDTOS.forEach(v -> {
-            devopsCiPipelineRecordService.asyncPipelineUpdate(v.getId(), v.getGitlabPipelineId().intValue());
+            if (v.getGitlabProjectId() == null) {
+                ungrouped.add(v);
+            } else {
+                groups.computeIfAbsent(v.getGitlabProjectId(), k -> new ArrayList<>()).add(v);
+            }
         });
+
         // 执行修复逻辑
-        LOGGER.info(">>>>>>>>>>>>>>>>>>>>>>>>>>> End sync pipeline status <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+        int synced = 0;
+        try {
+            for (Map.Entry<Long, List<DevopsCiPipelineRecordDTO>> entry : groups.entrySet()) {
+                synced += syncProjectRecords(entry.getKey(), entry.getValue());
+            }
+            for (DevopsCiPipelineRecordDTO record : ungrouped) {
+                synced += syncProjectRecords(null, Collections.singletonList(record));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Pipeline status sync is interrupted");
+        }
+        LOGGER.info(">>>>>>>>>>>>>>>>>>>>>>>>>>> End sync pipeline status, {}/{} records synced in {} ms <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<",
+                synced, devopsCiPipelineRecordDTOS.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 同步同一个gitlab项目下的流水线纪录
+     *
+     * @param gitlabProjectId 纪录所属的gitlab项目id, 为空时根据纪录查询应用服务
+     * @param records         纪录
+     * @return 同步成功的纪录数
+     */
+    private int syncProjectRecords(Long gitlabProjectId, List<DevopsCiPipelineRecordDTO> records) throws InterruptedException {
+        int synced = 0;
+        AppServiceDTO appServiceDTO = null;
+        for (DevopsCiPipelineRecordDTO record : records) {
+            try {
+                // 查询应用服务失败只影响当前纪录, 下一条纪录会重新查询
+                if (appServiceDTO == null) {
+                    appServiceDTO = gitlabProjectId == null
+                            ? devopsCiPipelineRecordService.queryAppServiceByRecordId(record.getId())
+                            : appServiceService.queryByGitlabProjectId(gitlabProjectId);
+                }
+                Integer appGitlabProjectId = appServiceDTO.getGitlabProjectId();
+                Integer gitlabPipelineId = TypeUtil.objToInteger(record.getGitlabPipelineId());
+                tokenBucket.acquire();
+                GitlabPipelineDTO pipelineDTO = gitlabServiceClientOperator.queryPipeline(appGitlabProjectId, gitlabPipelineId, GitUserNameUtil.getAdminId());
+                tokenBucket.acquire();
+                List<JobDTO> jobDTOList = gitlabServiceClientOperator.listJobs(appGitlabProjectId, gitlabPipelineId, GitUserNameUtil.getAdminId());
+                devopsCiPipelineRecordService.syncPipelineRecord(appServiceDTO, record.getId(), record.getGitlabPipelineId(), pipelineDTO, jobDTOList);
+                syncedCounter.increment();
+                synced++;
+            } catch (InterruptedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                failedCounter.increment();
+                LOGGER.warn("Failed to sync pipeline record with id {} and gitlab pipeline id {}", record.getId(), record.getGitlabPipelineId(), ex);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+        return synced;
     }
 }
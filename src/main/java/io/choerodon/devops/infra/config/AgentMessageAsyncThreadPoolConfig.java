@@ -0,0 +1,41 @@
+package io.choerodon.devops.infra.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 处理Agent的GitOps消息的线程池
+ * 队列是有界的, 队列满了之后由提交任务的线程(也就是WebSocket的线程)执行, 以此对Agent形成背压
+ *
+ * @author zmf
+ * @since 2020/11/2
+ */
+@Configuration
+public class AgentMessageAsyncThreadPoolConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentMessageAsyncThreadPoolConfig.class);
+
+    @Bean(name = GitOpsConstants.AGENT_MESSAGE_EXECUTOR)
+    @Qualifier(GitOpsConstants.AGENT_MESSAGE_EXECUTOR)
+    public ThreadPoolTaskExecutor agentMessage(@Value("${devops.agent.message.executor.corePoolSize:8}") Integer corePoolSize,
+                                               @Value("${devops.agent.message.executor.maxPoolSize:16}") Integer maxPoolSize,
+                                               @Value("${devops.agent.message.executor.queueCapacity:1000}") Integer queueCapacity) {
+        LOGGER.info("Create AsyncTaskExecutor for agent message. The coreSize is {}, the maxSize is {} and the queueCapacity is {}", corePoolSize, maxPoolSize, queueCapacity);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(GitOpsConstants.AGENT_MESSAGE_EXECUTOR);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setCorePoolSize(corePoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+}
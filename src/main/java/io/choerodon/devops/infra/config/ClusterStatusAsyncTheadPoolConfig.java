@@ -0,0 +1,35 @@
+package io.choerodon.devops.infra.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 同步集群安装状态的异步任务线程池
+ *
+ * @author zmf
+ * @since 2020/11/19
+ */
+@Configuration
+public class ClusterStatusAsyncTheadPoolConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterStatusAsyncTheadPoolConfig.class);
+
+    @Bean(name = GitOpsConstants.CLUSTER_STATUS_EXECUTOR)
+    @Qualifier(GitOpsConstants.CLUSTER_STATUS_EXECUTOR)
+    public AsyncTaskExecutor clusterStatus(@Value("${devops.cluster.status.executor.corePoolSize:5}") Integer corePoolSize,
+                                           @Value("${devops.cluster.status.executor.maxPoolSize:8}") Integer maxPoolSize) {
+        LOGGER.info("Create AsyncTaskExecutor for cluster status. The coreSize is {} and the maxSize is {}", corePoolSize, maxPoolSize);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(GitOpsConstants.CLUSTER_STATUS_EXECUTOR);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setCorePoolSize(corePoolSize);
+        return executor;
+    }
+}
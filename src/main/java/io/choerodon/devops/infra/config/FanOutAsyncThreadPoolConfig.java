@@ -0,0 +1,56 @@
+package io.choerodon.devops.infra.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 并发查询远程服务的线程池
+ * 队列是有界的, 队列满了之后由发起查询的线程执行, 退化为串行查询.
+ * 任务执行时使用提交任务的线程的用户上下文, 使得feign调用以及根据当前用户的查询与串行时一致
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Configuration
+public class FanOutAsyncThreadPoolConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FanOutAsyncThreadPoolConfig.class);
+
+    @Bean(name = GitOpsConstants.FAN_OUT_EXECUTOR)
+    @Qualifier(GitOpsConstants.FAN_OUT_EXECUTOR)
+    public ThreadPoolTaskExecutor fanOut(@Value("${devops.fan-out.executor.corePoolSize:16}") Integer corePoolSize,
+                                         @Value("${devops.fan-out.executor.maxPoolSize:32}") Integer maxPoolSize,
+                                         @Value("${devops.fan-out.executor.queueCapacity:200}") Integer queueCapacity) {
+        LOGGER.info("Create AsyncTaskExecutor for fan-out calls. The coreSize is {}, the maxSize is {} and the queueCapacity is {}", corePoolSize, maxPoolSize, queueCapacity);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(GitOpsConstants.FAN_OUT_EXECUTOR);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setCorePoolSize(corePoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(runnable -> {
+            SecurityContext securityContext = SecurityContextHolder.getContext();
+            return () -> {
+                // 队列满时任务在提交的线程中执行, 执行完之后需要恢复原来的上下文
+                SecurityContext previous = SecurityContextHolder.getContext();
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    runnable.run();
+                } finally {
+                    SecurityContextHolder.setContext(previous);
+                }
+            };
+        });
+        return executor;
+    }
+}
@@ -0,0 +1,35 @@
+package io.choerodon.devops.infra.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 定时推送主机批量校准进度的线程池, 只读取redis, 一个线程足够
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Configuration
+public class HostCheckingProgressAsyncTheadPoolConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostCheckingProgressAsyncTheadPoolConfig.class);
+
+    @Bean(name = GitOpsConstants.HOST_CHECKING_PROGRESS_SCHEDULER)
+    @Qualifier(GitOpsConstants.HOST_CHECKING_PROGRESS_SCHEDULER)
+    public ThreadPoolTaskScheduler hostCheckingProgress(@Value("${devops.host.checking-progress.scheduler.poolSize:1}") Integer poolSize) {
+        LOGGER.info("Create TaskScheduler for host checking progress. The poolSize is {}", poolSize);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix(GitOpsConstants.HOST_CHECKING_PROGRESS_SCHEDULER);
+        scheduler.setPoolSize(poolSize);
+        scheduler.setDaemon(true);
+        // 客户端断开之后取消的推送任务立即从队列中移除
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
@@ -0,0 +1,27 @@
+package io.choerodon.devops.infra.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 订阅redis通知的监听容器
+ * 各个本地缓存通过这个容器添加失效通知的监听, 所有频道共用一个订阅连接
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Configuration
+public class RedisListenerConfig {
+    @Bean(name = GitOpsConstants.REDIS_LISTENER_CONTAINER)
+    @Qualifier(GitOpsConstants.REDIS_LISTENER_CONTAINER)
+    public RedisMessageListenerContainer redisListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+}
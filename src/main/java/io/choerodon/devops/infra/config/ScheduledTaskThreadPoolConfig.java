@@ -0,0 +1,44 @@
+package io.choerodon.devops.infra.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 执行@Scheduled定时任务的线程池
+ * 显式指定定时任务使用的线程池, 避免容器中其它的TaskScheduler(如推送主机校准进度的线程池)被当作默认的线程池,
+ * 多个线程也使得一个耗时的定时任务不会阻塞其它的定时任务
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Configuration
+public class ScheduledTaskThreadPoolConfig implements SchedulingConfigurer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledTaskThreadPoolConfig.class);
+
+    @Value("${devops.scheduled-task.scheduler.poolSize:8}")
+    private Integer poolSize;
+
+    @Bean(name = GitOpsConstants.SCHEDULED_TASK_SCHEDULER)
+    @Qualifier(GitOpsConstants.SCHEDULED_TASK_SCHEDULER)
+    public ThreadPoolTaskScheduler scheduledTask() {
+        LOGGER.info("Create TaskScheduler for scheduled tasks. The poolSize is {}", poolSize);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix(GitOpsConstants.SCHEDULED_TASK_SCHEDULER);
+        scheduler.setPoolSize(poolSize);
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.setTaskScheduler(scheduledTask());
+    }
+}
@@ -0,0 +1,35 @@
+package io.choerodon.devops.infra.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 处理gitlab webhook事件的线程池, 一个gitlab项目同时只占用一个线程
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Configuration
+public class WebhookEventAsyncTheadPoolConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebhookEventAsyncTheadPoolConfig.class);
+
+    @Bean(name = GitOpsConstants.WEBHOOK_EVENT_EXECUTOR)
+    @Qualifier(GitOpsConstants.WEBHOOK_EVENT_EXECUTOR)
+    public AsyncTaskExecutor webhookEvent(@Value("${devops.webhook.queue.executor.corePoolSize:8}") Integer corePoolSize,
+                                          @Value("${devops.webhook.queue.executor.maxPoolSize:8}") Integer maxPoolSize) {
+        LOGGER.info("Create AsyncTaskExecutor for webhook events. The coreSize is {} and the maxSize is {}", corePoolSize, maxPoolSize);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(GitOpsConstants.WEBHOOK_EVENT_EXECUTOR);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setCorePoolSize(corePoolSize);
+        return executor;
+    }
+}
@@ -246,4 +246,39 @@ public class GitOpsConstants {
      * 主机状态校准的线程池名称
      */
     public static final String HOST_STATUS_EXECUTOR = "host-status-executor";
+
+    /**
+     * 推送主机批量校准进度的线程池名称
+     */
+    public static final String HOST_CHECKING_PROGRESS_SCHEDULER = "host-progress-scheduler";
+
+    /**
+     * 执行@Scheduled定时任务的线程池名称
+     */
+    public static final String SCHEDULED_TASK_SCHEDULER = "scheduled-task-scheduler";
+
+    /**
+     * 同步集群安装状态的线程池名称
+     */
+    public static final String CLUSTER_STATUS_EXECUTOR = "cluster-status-executor";
+
+    /**
+     * 处理Agent的GitOps消息的线程池名称
+     */
+    public static final String AGENT_MESSAGE_EXECUTOR = "agent-msg-executor";
+
+    /**
+     * 处理gitlab webhook事件的线程池名称
+     */
+    public static final String WEBHOOK_EVENT_EXECUTOR = "webhook-event-executor";
+
+    /**
+     * 并发查询远程服务的线程池名称
+     */
+    public static final String FAN_OUT_EXECUTOR = "fan-out-executor";
+
+    /**
+     * 订阅redis通知的监听容器名称, 各个本地缓存共用
+     */
+    public static final String REDIS_LISTENER_CONTAINER = "redis-listener-container";
 }
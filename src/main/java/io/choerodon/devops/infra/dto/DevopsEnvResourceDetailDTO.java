@@ -20,6 +20,14 @@ public class DevopsEnvResourceDetailDTO extends AuditDomain {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
     private String message;
+    /**
+     * 资源的摘要信息, 是只包含这个资源的{@link io.choerodon.devops.api.vo.DevopsEnvResourceVO}的json
+     */
+    private String summary;
+    /**
+     * 摘要信息的格式版本
+     */
+    private Integer summaryVersion;
 
     public Long getId() {
         return id;
@@ -36,4 +44,20 @@ public class DevopsEnvResourceDetailDTO extends AuditDomain {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public Integer getSummaryVersion() {
+        return summaryVersion;
+    }
+
+    public void setSummaryVersion(Integer summaryVersion) {
+        this.summaryVersion = summaryVersion;
+    }
 }
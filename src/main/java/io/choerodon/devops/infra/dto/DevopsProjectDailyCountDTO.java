@@ -0,0 +1,76 @@
+package io.choerodon.devops.infra.dto;
+
+import java.util.Date;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import io.choerodon.mybatis.annotation.ModifyAudit;
+import io.choerodon.mybatis.annotation.VersionAudit;
+import io.choerodon.mybatis.domain.AuditDomain;
+
+/**
+ * 项目每天的统计数据, 在写入提交, 部署命令和流水线记录时累加, 项目概览的图表直接读取
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@ModifyAudit
+@VersionAudit
+@Table(name = "devops_project_daily_count")
+public class DevopsProjectDailyCountDTO extends AuditDomain {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+    @ApiModelProperty("项目id")
+    private Long projectId;
+    @ApiModelProperty("统计的日期")
+    private Date statDate;
+    @ApiModelProperty("统计项: commit/deploy/ci")
+    private String metric;
+    @ApiModelProperty("次数")
+    private Long total;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+
+    public Date getStatDate() {
+        return statDate;
+    }
+
+    public void setStatDate(Date statDate) {
+        this.statDate = statDate;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public void setMetric(String metric) {
+        this.metric = metric;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,146 @@
+package io.choerodon.devops.infra.dto;
+
+import java.util.Date;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import io.choerodon.mybatis.annotation.ModifyAudit;
+import io.choerodon.mybatis.annotation.VersionAudit;
+import io.choerodon.mybatis.domain.AuditDomain;
+
+/**
+ * 接收到的gitlab webhook事件, 先持久化再异步处理
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@ModifyAudit
+@VersionAudit
+@Table(name = "devops_webhook_event")
+public class DevopsWebhookEventDTO extends AuditDomain {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+    @ApiModelProperty("事件的标识, 用于去重")
+    private String eventKey;
+    @ApiModelProperty("没有X-Gitlab-Event-UUID时事件内容的摘要, 用于在时间窗口内去重")
+    private String contentHash;
+    @ApiModelProperty("webhook类型: portal/git_ops")
+    private String hookType;
+    @ApiModelProperty("gitlab事件类型")
+    private String objectKind;
+    @ApiModelProperty("gitlab项目id")
+    private Long gitlabProjectId;
+    @ApiModelProperty("事件所属的资源id: portal为应用服务id, git_ops为环境id")
+    private Long resourceId;
+    @ApiModelProperty("事件内容")
+    private String body;
+    @ApiModelProperty("状态: pending/success/failed")
+    private String status;
+    @ApiModelProperty("已经重试的次数")
+    private Integer retryCount;
+    @ApiModelProperty("下次可以处理的时间")
+    private Date nextProcessTime;
+    @ApiModelProperty("最后一次处理失败的错误信息")
+    private String errorMessage;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    public void setEventKey(String eventKey) {
+        this.eventKey = eventKey;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getHookType() {
+        return hookType;
+    }
+
+    public void setHookType(String hookType) {
+        this.hookType = hookType;
+    }
+
+    public String getObjectKind() {
+        return objectKind;
+    }
+
+    public void setObjectKind(String objectKind) {
+        this.objectKind = objectKind;
+    }
+
+    public Long getGitlabProjectId() {
+        return gitlabProjectId;
+    }
+
+    public void setGitlabProjectId(Long gitlabProjectId) {
+        this.gitlabProjectId = gitlabProjectId;
+    }
+
+    public Long getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(Long resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(Integer retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public Date getNextProcessTime() {
+        return nextProcessTime;
+    }
+
+    public void setNextProcessTime(Date nextProcessTime) {
+        this.nextProcessTime = nextProcessTime;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
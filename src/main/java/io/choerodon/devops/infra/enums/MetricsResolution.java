@@ -0,0 +1,97 @@
+package io.choerodon.devops.infra.enums;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间序列数据的精度
+ *
+ * @author zmf
+ * @since 2020/11/12
+ */
+public enum MetricsResolution {
+    /**
+     * 原始数据
+     */
+    RAW("raw", 0, TimeUnit.MINUTES.toSeconds(30), TimeUnit.HOURS.toSeconds(6)),
+    /**
+     * 1分钟的平均值
+     */
+    MINUTE("1m", 60, TimeUnit.HOURS.toSeconds(6), TimeUnit.DAYS.toSeconds(2)),
+    /**
+     * 5分钟的平均值
+     */
+    FIVE_MINUTES("5m", 300, TimeUnit.DAYS.toSeconds(1), TimeUnit.DAYS.toSeconds(14)),
+    /**
+     * 1小时的平均值
+     */
+    HOUR("1h", 3600, TimeUnit.DAYS.toSeconds(7), TimeUnit.DAYS.toSeconds(90));
+
+    private final String value;
+    /**
+     * 聚合的时间间隔, 单位: 秒, 原始数据为0
+     */
+    private final long intervalSeconds;
+    /**
+     * 一个数据块最多覆盖的时间跨度, 单位: 秒, 超过之后写入redis
+     */
+    private final long chunkSeconds;
+    /**
+     * 数据保留的时间, 单位: 秒
+     */
+    private final long retentionSeconds;
+
+    MetricsResolution(String value, long intervalSeconds, long chunkSeconds, long retentionSeconds) {
+        this.value = value;
+        this.intervalSeconds = intervalSeconds;
+        this.chunkSeconds = chunkSeconds;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public long getChunkSeconds() {
+        return chunkSeconds;
+    }
+
+    public long getRetentionSeconds() {
+        return retentionSeconds;
+    }
+
+    /**
+     * 根据字符串查找精度
+     *
+     * @param value 精度的值, 如 "5m"
+     * @return 精度, 没有对应的值时为null
+     */
+    public static MetricsResolution forValue(String value) {
+        for (MetricsResolution resolution : values()) {
+            if (resolution.value.equals(value)) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 选择能覆盖时间范围的最高精度, 避免一次返回过多的点
+     *
+     * @param rangeSeconds 查询的时间范围, 单位: 秒
+     * @return 精度
+     */
+    public static MetricsResolution suitableFor(long rangeSeconds) {
+        if (rangeSeconds <= TimeUnit.HOURS.toSeconds(2)) {
+            return RAW;
+        } else if (rangeSeconds <= TimeUnit.DAYS.toSeconds(1)) {
+            return MINUTE;
+        } else if (rangeSeconds <= TimeUnit.DAYS.toSeconds(7)) {
+            return FIVE_MINUTES;
+        }
+        return HOUR;
+    }
+}
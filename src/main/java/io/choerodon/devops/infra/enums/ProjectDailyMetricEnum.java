@@ -0,0 +1,31 @@
+package io.choerodon.devops.infra.enums;
+
+/**
+ * 项目概览中按天统计的指标
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+public enum ProjectDailyMetricEnum {
+    /**
+     * 代码提交次数, 按照commit的提交日期统计
+     */
+    COMMIT("commit"),
+    /**
+     * 实例的部署次数, 包括创建和更新, 按照部署命令的创建日期统计
+     */
+    DEPLOY("deploy"),
+    /**
+     * 流水线的触发次数, 按照流水线记录的创建日期统计
+     */
+    CI("ci");
+    private final String metric;
+
+    ProjectDailyMetricEnum(String metric) {
+        this.metric = metric;
+    }
+
+    public String value() {
+        return this.metric;
+    }
+}
@@ -0,0 +1,31 @@
+package io.choerodon.devops.infra.enums;
+
+/**
+ * gitlab webhook事件的处理状态
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+public enum WebhookEventStatusEnum {
+    /**
+     * 等待处理, 包括等待重试
+     */
+    PENDING("pending"),
+    /**
+     * 处理成功
+     */
+    SUCCESS("success"),
+    /**
+     * 重试次数用完之后仍然失败
+     */
+    FAILED("failed");
+    private final String status;
+
+    WebhookEventStatusEnum(String status) {
+        this.status = status;
+    }
+
+    public String value() {
+        return this.status;
+    }
+}
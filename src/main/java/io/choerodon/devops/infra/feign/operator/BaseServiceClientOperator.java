@@ -23,6 +23,7 @@ import io.choerodon.devops.api.vo.RoleAssignmentSearchVO;
 import io.choerodon.devops.infra.dto.iam.*;
 import io.choerodon.devops.infra.enums.LabelType;
 import io.choerodon.devops.infra.feign.BaseServiceClient;
+import io.choerodon.devops.infra.handler.IamEntityCache;
 import io.choerodon.devops.infra.util.FeignParamUtils;
 import io.choerodon.devops.infra.util.TypeUtil;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -44,6 +45,8 @@ public class BaseServiceClientOperator {
 
     @Autowired
     private BaseServiceClient baseServiceClient;
+    @Autowired
+    private IamEntityCache iamEntityCache;
 
     /**
      * @param organizationId 组织id
@@ -65,6 +68,11 @@ public class BaseServiceClientOperator {
     }
 
     public ProjectDTO queryIamProjectById(Long projectId, Boolean withCategory, Boolean withUserInfo, Boolean withAgileInfo) {
+        return iamEntityCache.get(IamEntityCache.PROJECT, projectId, withCategory + ":" + withUserInfo + ":" + withAgileInfo, ProjectDTO.class,
+                () -> doQueryIamProjectById(projectId, withCategory, withUserInfo, withAgileInfo));
+    }
+
+    private ProjectDTO doQueryIamProjectById(Long projectId, Boolean withCategory, Boolean withUserInfo, Boolean withAgileInfo) {
         ResponseEntity<ProjectDTO> projectDTOResponseEntity = baseServiceClient.queryIamProject(Objects.requireNonNull(projectId), withCategory, withUserInfo, withAgileInfo);
         ProjectDTO projectDTO = projectDTOResponseEntity.getBody();
         // 判断id是否为空是因为可能会返回 CommonException 但是也会被反序列化为  ProjectDTO
@@ -79,6 +87,11 @@ public class BaseServiceClientOperator {
     }
 
     public Tenant queryOrganizationById(Long organizationId, Boolean withMoreInfo) {
+        return iamEntityCache.get(IamEntityCache.ORGANIZATION, organizationId, String.valueOf(withMoreInfo), Tenant.class,
+                () -> doQueryOrganizationById(organizationId, withMoreInfo));
+    }
+
+    private Tenant doQueryOrganizationById(Long organizationId, Boolean withMoreInfo) {
         ResponseEntity<Tenant> organizationDTOResponseEntity = baseServiceClient.queryOrganizationById(organizationId, withMoreInfo);
         if (organizationDTOResponseEntity.getStatusCode().is2xxSuccessful()) {
             Tenant tenant = organizationDTOResponseEntity.getBody();
@@ -131,7 +144,28 @@ public class BaseServiceClientOperator {
         }
     }
 
+    /**
+     * 根据id批量查询用户, 按照id缓存, 只查询缓存中不存在的用户
+     *
+     * @param ids 用户id
+     * @return 用户, 按照id的顺序, 不存在的用户被忽略
+     */
     public List<IamUserDTO> listUsersByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, IamUserDTO> users = iamEntityCache.getAll(IamEntityCache.USER, ids, IamUserDTO.class,
+                missingIds -> doListUsersByIds(missingIds).stream()
+                        .filter(u -> u.getId() != null)
+                        .collect(Collectors.toMap(IamUserDTO::getId, u -> u, (u1, u2) -> u1)));
+        return ids.stream()
+                .distinct()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<IamUserDTO> doListUsersByIds(List<Long> ids) {
         List<IamUserDTO> userDTOS = new ArrayList<>();
         if (ids != null && !ids.isEmpty()) {
             Long[] newIds = new Long[ids.size()];
@@ -176,6 +210,27 @@ public class BaseServiceClientOperator {
         }
     }
 
+    /**
+     * 根据邮箱批量查询项目下的用户, 相同的邮箱只查询一次, 查询结果按照项目和邮箱缓存
+     *
+     * @param projectId 项目id
+     * @param emails    邮箱
+     * @return key为邮箱, 查询不到用户的邮箱没有对应的值
+     */
+    public Map<String, IamUserDTO> queryUsersByEmails(Long projectId, Collection<String> emails) {
+        Map<String, IamUserDTO> users = new HashMap<>();
+        new LinkedHashSet<>(emails).stream()
+                .filter(Objects::nonNull)
+                .forEach(email -> {
+                    IamUserDTO iamUserDTO = iamEntityCache.get(IamEntityCache.USER_EMAIL, projectId, email, IamUserDTO.class,
+                            () -> queryByEmail(projectId, email));
+                    if (iamUserDTO != null) {
+                        users.put(email, iamUserDTO);
+                    }
+                });
+        return users;
+    }
+
     public IamUserDTO queryByEmail(Long projectId, String email) {
         try {
             ResponseEntity<Page<IamUserDTO>> userDOResponseEntity = baseServiceClient
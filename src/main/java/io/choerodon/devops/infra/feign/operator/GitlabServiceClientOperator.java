@@ -1076,9 +1076,22 @@ public class GitlabServiceClientOperator {
      * @param commitMessage   提交信息
      */
     public void createGitlabFiles(Integer gitlabProjectId, Integer gitlabUserId, String branch, Map<String, String> pathContent, String commitMessage) {
+        List<CommitActionDTO> actions = new ArrayList<>();
+        pathContent.forEach((filePath, fileContent) -> actions.add(new CommitActionDTO(CommitActionDTO.Action.CREATE, filePath, fileContent)));
+        commitGitlabFiles(gitlabProjectId, gitlabUserId, branch, actions, commitMessage);
+    }
+
+    /**
+     * 在一个提交中批量操作gitlab文件
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param gitlabUserId    用户id
+     * @param branch          分支名
+     * @param actions         文件操作，不能为空
+     * @param commitMessage   提交信息
+     */
+    public void commitGitlabFiles(Integer gitlabProjectId, Integer gitlabUserId, String branch, List<CommitActionDTO> actions, String commitMessage) {
         try {
-            List<CommitActionDTO> actions = new ArrayList<>();
-            pathContent.forEach((filePath, fileContent) -> actions.add(new CommitActionDTO(CommitActionDTO.Action.CREATE, filePath, fileContent)));
             CommitPayloadDTO commitPayloadDTO = new CommitPayloadDTO(Objects.requireNonNull(branch), Objects.requireNonNull(commitMessage), actions);
             gitlabServiceClient.createCommit(Objects.requireNonNull(gitlabProjectId), Objects.requireNonNull(gitlabUserId), commitPayloadDTO);
         } catch (Exception ex) {
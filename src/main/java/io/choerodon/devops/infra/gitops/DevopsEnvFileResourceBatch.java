@@ -0,0 +1,187 @@
+package io.choerodon.devops.infra.gitops;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DataAccessException;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
+import io.choerodon.devops.infra.mapper.DevopsEnvFileResourceMapper;
+import io.choerodon.devops.infra.util.TypeUtil;
+
+/**
+ * GitOps解析时对象文件关系的批量写入
+ * 由解析的调用方创建并传给各个处理器, 写入操作先缓存, 调用{@link #flush()}时按原来的顺序合并为批量语句执行
+ * 只有通过这个对象进行的查询会看到缓存的写入, 所以调用方需要在每个处理器处理完后调用{@link #flush()}
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+public class DevopsEnvFileResourceBatch {
+    /**
+     * 批量写入时每条语句的最大纪录数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private final DevopsEnvFileResourceMapper devopsEnvFileResourceMapper;
+    /**
+     * 写入纪录的审计用户id
+     */
+    private final Long userId;
+    private final List<PendingWrite> pendingWrites = new ArrayList<>();
+
+    public DevopsEnvFileResourceBatch(DevopsEnvFileResourceMapper devopsEnvFileResourceMapper, Long userId) {
+        this.devopsEnvFileResourceMapper = Objects.requireNonNull(devopsEnvFileResourceMapper);
+        this.userId = Objects.requireNonNull(userId);
+    }
+
+    /**
+     * 更新或创建对象文件关系, 文件路径没有变化时不写入
+     *
+     * @param objectPath               对象的hashcode和路径的映射
+     * @param envId                    环境id
+     * @param devopsEnvFileResourceDTO 已有的关系纪录, 为null时创建
+     * @param i                        对象的hashcode
+     * @param id                       资源id
+     * @param kind                     资源类型
+     */
+    public void updateOrCreate(Map<String, String> objectPath,
+                               Long envId,
+                               DevopsEnvFileResourceDTO devopsEnvFileResourceDTO,
+                               Integer i, Long id, String kind) {
+        String filePath = objectPath.get(TypeUtil.objToString(i));
+        if (devopsEnvFileResourceDTO != null) {
+            if (Objects.equals(filePath, devopsEnvFileResourceDTO.getFilePath())) {
+                return;
+            }
+            devopsEnvFileResourceDTO.setFilePath(filePath);
+            pendingWrites.add(new PendingWrite(WriteType.UPDATE, devopsEnvFileResourceDTO));
+        } else {
+            devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
+            devopsEnvFileResourceDTO.setEnvId(envId);
+            devopsEnvFileResourceDTO.setFilePath(filePath);
+            devopsEnvFileResourceDTO.setResourceId(id);
+            devopsEnvFileResourceDTO.setResourceType(kind);
+            create(devopsEnvFileResourceDTO);
+        }
+    }
+
+    /**
+     * 创建对象文件关系, 纪录的id在{@link #flush()}之后才会回写到传入的对象中
+     *
+     * @param devopsEnvFileResourceDTO 关系纪录
+     */
+    public void create(DevopsEnvFileResourceDTO devopsEnvFileResourceDTO) {
+        pendingWrites.add(new PendingWrite(WriteType.INSERT, devopsEnvFileResourceDTO));
+    }
+
+    /**
+     * 删除资源的对象文件关系
+     *
+     * @param envId        环境id
+     * @param resourceId   资源id
+     * @param resourceType 资源类型
+     */
+    public void delete(Long envId, Long resourceId, String resourceType) {
+        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
+        devopsEnvFileResourceDTO.setEnvId(envId);
+        devopsEnvFileResourceDTO.setResourceId(resourceId);
+        devopsEnvFileResourceDTO.setResourceType(resourceType);
+        pendingWrites.add(new PendingWrite(WriteType.DELETE, devopsEnvFileResourceDTO));
+    }
+
+    /**
+     * 查询资源的对象文件关系, 有这个资源的缓存写入时先执行缓存的写入
+     *
+     * @param envId        环境id
+     * @param resourceId   资源id
+     * @param resourceType 资源类型
+     * @return 关系纪录
+     */
+    public DevopsEnvFileResourceDTO queryByEnvIdAndResourceId(Long envId, Long resourceId, String resourceType) {
+        boolean pending = pendingWrites.stream()
+                .anyMatch(write -> Objects.equals(envId, write.item.getEnvId())
+                        && Objects.equals(resourceId, write.item.getResourceId())
+                        && Objects.equals(resourceType, write.item.getResourceType()));
+        if (pending) {
+            flush();
+        }
+        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
+        devopsEnvFileResourceDTO.setEnvId(envId);
+        devopsEnvFileResourceDTO.setResourceId(resourceId);
+        devopsEnvFileResourceDTO.setResourceType(resourceType);
+        return devopsEnvFileResourceMapper.selectOne(devopsEnvFileResourceDTO);
+    }
+
+    /**
+     * 按照原来的顺序执行缓存的写入操作, 连续的同类操作合并为一条语句
+     */
+    public void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        List<PendingWrite> writes = new ArrayList<>(pendingWrites);
+        pendingWrites.clear();
+        try {
+            int from = 0;
+            while (from < writes.size()) {
+                WriteType type = writes.get(from).type;
+                int to = from;
+                List<DevopsEnvFileResourceDTO> items = new ArrayList<>();
+                while (to < writes.size() && writes.get(to).type == type && items.size() < BATCH_SIZE) {
+                    items.add(writes.get(to).item);
+                    to++;
+                }
+                execute(type, items);
+                from = to;
+            }
+        } catch (DataAccessException e) {
+            throw new CommonException("error.insert.env.file.resource", e);
+        }
+    }
+
+    private void execute(WriteType type, List<DevopsEnvFileResourceDTO> items) {
+        switch (type) {
+            case INSERT:
+                Date now = new Date();
+                items.forEach(item -> {
+                    item.setCreatedBy(userId);
+                    item.setCreationDate(now);
+                    item.setLastUpdatedBy(userId);
+                    item.setLastUpdateDate(now);
+                    item.setObjectVersionNumber(1L);
+                });
+                devopsEnvFileResourceMapper.batchInsert(items);
+                break;
+            case UPDATE:
+                devopsEnvFileResourceMapper.batchUpdateFilePath(items, userId);
+                break;
+            case DELETE:
+                items.stream()
+                        .collect(Collectors.groupingBy(DevopsEnvFileResourceDTO::getEnvId))
+                        .forEach((envId, resources) -> devopsEnvFileResourceMapper.batchDeleteByResources(envId, resources));
+                break;
+            default:
+                throw new IllegalArgumentException(type.name());
+        }
+    }
+
+    private enum WriteType {
+        INSERT, UPDATE, DELETE
+    }
+
+    private static final class PendingWrite {
+        private final WriteType type;
+        private final DevopsEnvFileResourceDTO item;
+
+        private PendingWrite(WriteType type, DevopsEnvFileResourceDTO item) {
+            this.type = type;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package io.choerodon.devops.infra.gitops;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+import io.choerodon.devops.infra.dto.RepositoryFileDTO;
+import io.choerodon.devops.infra.dto.gitlab.CommitActionDTO;
+import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
+
+/**
+ * 合并环境库的文件提交
+ * <p>
+ * 同一个环境库, 同一个用户的并发的文件操作合并为一个gitlab提交, 减少提交数量,
+ * 从而减少webhook以及GitOps的解析次数. 调用方会等待所在的提交完成, 失败时抛出异常, 与单独提交时一致.
+ * <p>
+ * 1. 同一个环境库的提交按照加入的顺序串行执行, 前一个提交进行中时到达的操作合并到下一个提交中,
+ *    所以同一个文件的操作总是按照调用的顺序提交
+ * 2. 每个提交的第一个调用方负责提交, 轮到它时如果没有其它操作加入就立即提交,
+ *    有其它操作加入时, 只要还有操作在陆续加入就继续等待, 最多等待 windowMillis
+ * 3. 更新文件的内容在轮到所在的提交时才计算: 从gitlab读取文件当前的内容和最后的提交, 在此基础上修改,
+ *    并带上最后的提交id, 文件在读取之后被其它实例修改时gitlab会拒绝这次更新, 不会覆盖其它的修改.
+ *    同一个文件在一个提交中只操作一次, 再次操作时加入下一个提交, 基于前一个提交之后的内容计算
+ * 4. 合并的提交失败时逐个单独提交(更新的内容重新计算), 只有失败的操作的调用方收到异常
+ *
+ * @author zmf
+ * @since 2020/11/18
+ */
+@Component
+public class GitOpsFileGroupCommitter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitOpsFileGroupCommitter.class);
+
+    /**
+     * 等待后续操作加入时, 超过这个时间没有新的操作加入就提交, 单位: 毫秒
+     */
+    private static final long QUIET_MILLIS = 20;
+
+    /**
+     * 有操作陆续加入时最多等待的时间, 单位: 毫秒, 0表示不合并
+     */
+    @Value("${devops.gitops.group-commit.windowMillis:200}")
+    private Long windowMillis;
+    /**
+     * 一个提交中最多的文件操作数
+     */
+    @Value("${devops.gitops.group-commit.maxActions:50}")
+    private Integer maxActions;
+
+    @Autowired
+    private GitlabServiceClientOperator gitlabServiceClientOperator;
+
+    /**
+     * key为gitlab项目id, value为这个环境库还未完成的提交, 按照顺序执行, 第一个是正在进行的提交.
+     * 同时作为等待后续操作加入时的锁
+     */
+    private final Map<Integer, LinkedList<PendingCommit>> projectCommits = new HashMap<>();
+
+    /**
+     * 在环境库master分支创建文件, 直到所在的提交完成才返回
+     *
+     * @param gitlabProjectId 环境库的gitlab项目id
+     * @param gitlabUserId    gitlab用户id
+     * @param filePath        文件路径
+     * @param content         文件内容
+     * @param commitMessage   单独提交时的提交信息
+     */
+    public void commitCreate(Integer gitlabProjectId, Integer gitlabUserId, String filePath, String content, String commitMessage) {
+        commit(gitlabProjectId, gitlabUserId, new PendingAction(new CommitActionDTO(CommitActionDTO.Action.CREATE, filePath, content), null), commitMessage);
+    }
+
+    /**
+     * 更新环境库master分支的文件, 直到所在的提交完成才返回
+     *
+     * @param gitlabProjectId 环境库的gitlab项目id
+     * @param gitlabUserId    gitlab用户id
+     * @param filePath        文件路径
+     * @param updater         根据文件当前的内容计算更新后的内容, 轮到所在的提交时才调用, 重试时可能调用多次
+     * @param commitMessage   单独提交时的提交信息
+     */
+    public void commitUpdate(Integer gitlabProjectId, Integer gitlabUserId, String filePath, UnaryOperator<String> updater, String commitMessage) {
+        commit(gitlabProjectId, gitlabUserId, new PendingAction(new CommitActionDTO(CommitActionDTO.Action.UPDATE, filePath, null), updater), commitMessage);
+    }
+
+    private void commit(Integer gitlabProjectId, Integer gitlabUserId, PendingAction action, String commitMessage) {
+        if (windowMillis <= 0) {
+            commitSingly(gitlabProjectId, gitlabUserId, action, commitMessage);
+            return;
+        }
+
+        PendingCommit pendingCommit;
+        boolean leader = false;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (projectCommits) {
+            LinkedList<PendingCommit> commits = projectCommits.computeIfAbsent(gitlabProjectId, k -> new LinkedList<>());
+            // 只能加入最后一个提交, 否则同一个文件的操作可能先于之前的提交执行
+            pendingCommit = commits.peekLast();
+            if (pendingCommit == null || !pendingCommit.accepts(gitlabUserId, action, maxActions)) {
+                pendingCommit = new PendingCommit(gitlabProjectId, gitlabUserId);
+                commits.addLast(pendingCommit);
+                leader = true;
+                if (commits.size() == 1) {
+                    // 没有正在进行的提交
+                    pendingCommit.turn.complete(null);
+                }
+            }
+            pendingCommit.add(action, commitMessage, future);
+            projectCommits.notifyAll();
+        }
+
+        if (leader) {
+            try {
+                awaitTurn(pendingCommit);
+                lingerWhileArriving(pendingCommit);
+                flush(pendingCommit);
+            } finally {
+                // 避免意外的错误导致其它调用方一直等待, 已经完成的不受影响
+                pendingCommit.futures.forEach(f -> f.completeExceptionally(new CommonException("error.manipulate.gitlab.files")));
+                finish(pendingCommit);
+            }
+        }
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException("error.manipulate.gitlab.files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommonException) {
+                throw (CommonException) e.getCause();
+            }
+            throw new CommonException("error.manipulate.gitlab.files", e.getCause());
+        }
+    }
+
+    /**
+     * 等待同一个环境库之前的提交完成
+     */
+    private void awaitTurn(PendingCommit pendingCommit) {
+        try {
+            pendingCommit.turn.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException("error.manipulate.gitlab.files", e);
+        } catch (ExecutionException e) {
+            throw new CommonException("error.manipulate.gitlab.files", e.getCause());
+        }
+    }
+
+    /**
+     * 只有其它操作已经加入时才等待, 在 QUIET_MILLIS 内没有新的操作加入或者总共等待了 windowMillis 之后停止接受新的操作
+     */
+    private void lingerWhileArriving(PendingCommit pendingCommit) {
+        long deadline = System.currentTimeMillis() + windowMillis;
+        synchronized (projectCommits) {
+            try {
+                int seen = pendingCommit.actions.size();
+                long remaining = deadline - System.currentTimeMillis();
+                while (seen > 1 && seen < maxActions && remaining > 0) {
+                    projectCommits.wait(Math.min(QUIET_MILLIS, remaining));
+                    if (pendingCommit.actions.size() == seen) {
+                        break;
+                    }
+                    seen = pendingCommit.actions.size();
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pendingCommit.started = true;
+            }
+        }
+    }
+
+    /**
+     * 提交完成之后移除, 并通知下一个提交的发起者
+     */
+    private void finish(PendingCommit pendingCommit) {
+        synchronized (projectCommits) {
+            pendingCommit.started = true;
+            LinkedList<PendingCommit> commits = projectCommits.get(pendingCommit.gitlabProjectId);
+            if (commits == null) {
+                return;
+            }
+            commits.remove(pendingCommit);
+            PendingCommit next = commits.peekFirst();
+            if (next == null) {
+                projectCommits.remove(pendingCommit.gitlabProjectId);
+            } else {
+                next.turn.complete(null);
+            }
+        }
+    }
+
+    private void flush(PendingCommit pendingCommit) {
+        int size = pendingCommit.actions.size();
+        if (size > 1) {
+            List<CommitActionDTO> actions = new ArrayList<>();
+            List<String> messages = new ArrayList<>();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                try {
+                    actions.add(resolve(pendingCommit.gitlabProjectId, pendingCommit.actions.get(i)));
+                    messages.add(pendingCommit.messages.get(i));
+                    futures.add(pendingCommit.futures.get(i));
+                } catch (Exception e) {
+                    pendingCommit.futures.get(i).completeExceptionally(e);
+                }
+            }
+            try {
+                if (!actions.isEmpty()) {
+                    gitlabServiceClientOperator.commitGitlabFiles(pendingCommit.gitlabProjectId, pendingCommit.gitlabUserId,
+                            GitOpsConstants.MASTER, actions, String.join(", ", new LinkedHashSet<>(messages)));
+                    LOGGER.debug("Committed {} files to gitlab project {} in one commit", actions.size(), pendingCommit.gitlabProjectId);
+                }
+                futures.forEach(f -> f.complete(null));
+                return;
+            } catch (Exception e) {
+                LOGGER.warn("Failed to commit {} files to gitlab project {} in one commit, commit them one by one", actions.size(), pendingCommit.gitlabProjectId, e);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (pendingCommit.futures.get(i).isDone()) {
+                continue;
+            }
+            try {
+                commitSingly(pendingCommit.gitlabProjectId, pendingCommit.gitlabUserId, pendingCommit.actions.get(i), pendingCommit.messages.get(i));
+                pendingCommit.futures.get(i).complete(null);
+            } catch (Exception e) {
+                pendingCommit.futures.get(i).completeExceptionally(e);
+            }
+        }
+    }
+
+    private void commitSingly(Integer gitlabProjectId, Integer gitlabUserId, PendingAction action, String commitMessage) {
+        if (action.updater == null) {
+            CommitActionDTO commitActionDTO = action.commitAction;
+            gitlabServiceClientOperator.createFile(gitlabProjectId, commitActionDTO.getFilePath(), commitActionDTO.getContent(), commitMessage, gitlabUserId);
+        } else {
+            gitlabServiceClientOperator.commitGitlabFiles(gitlabProjectId, gitlabUserId, GitOpsConstants.MASTER,
+                    Collections.singletonList(resolve(gitlabProjectId, action)), commitMessage);
+        }
+    }
+
+    /**
+     * 计算文件操作的内容, 更新操作读取文件当前的内容和最后的提交id之后计算更新后的内容
+     */
+    private CommitActionDTO resolve(Integer gitlabProjectId, PendingAction action) {
+        CommitActionDTO commitActionDTO = action.commitAction;
+        if (action.updater == null) {
+            return commitActionDTO;
+        }
+        RepositoryFileDTO repositoryFileDTO = gitlabServiceClientOperator.getWholeFile(gitlabProjectId, GitOpsConstants.MASTER, commitActionDTO.getFilePath());
+        if (repositoryFileDTO == null || repositoryFileDTO.getContent() == null) {
+            throw new CommonException("error.fileResource.not.exist");
+        }
+        String currentContent = new String(Base64.getDecoder().decode(repositoryFileDTO.getContent().getBytes()), StandardCharsets.UTF_8);
+        commitActionDTO.setContent(action.updater.apply(currentContent));
+        commitActionDTO.setLastCommitId(repositoryFileDTO.getLastCommitId());
+        return commitActionDTO;
+    }
+
+    private static class PendingAction {
+        private final CommitActionDTO commitAction;
+        /**
+         * 更新操作计算更新后的内容, 创建操作为null
+         */
+        private final UnaryOperator<String> updater;
+
+        private PendingAction(CommitActionDTO commitAction, UnaryOperator<String> updater) {
+            this.commitAction = commitAction;
+            this.updater = updater;
+        }
+    }
+
+    private static class PendingCommit {
+        private final Integer gitlabProjectId;
+        private final Integer gitlabUserId;
+        private final List<PendingAction> actions = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private final Set<String> paths = new HashSet<>();
+        /**
+         * 之前的提交完成之后完成
+         */
+        private final CompletableFuture<Void> turn = new CompletableFuture<>();
+        /**
+         * 开始提交之后不再接受新的操作
+         */
+        private boolean started;
+
+        private PendingCommit(Integer gitlabProjectId, Integer gitlabUserId) {
+            this.gitlabProjectId = gitlabProjectId;
+            this.gitlabUserId = gitlabUserId;
+        }
+
+        private boolean accepts(Integer gitlabUserId, PendingAction action, int maxActions) {
+            return !started
+                    && Objects.equals(this.gitlabUserId, gitlabUserId)
+                    && !paths.contains(action.commitAction.getFilePath())
+                    && actions.size() < maxActions;
+        }
+
+        private void add(PendingAction action, String message, CompletableFuture<Void> future) {
+            actions.add(action);
+            messages.add(message);
+            futures.add(future);
+            paths.add(action.commitAction.getFilePath());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.choerodon.devops.infra.gitops;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.enums.GitOpsObjectError;
+import io.choerodon.devops.infra.exception.GitOpsExplainException;
+
+/**
+ * GitOps解析文件时, 按照git blob id缓存yaml文件解析的结果
+ * blob id由文件内容决定, 内容没有变化的文件不需要重复解析, 不同环境库中内容相同的文件也可以共用
+ * <p>
+ * 缓存的对象是解析出的原始数据(Map), 使用方不能修改
+ *
+ * @author zmf
+ * @since 2020/11/9
+ */
+@Component
+public class GitOpsObjectCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitOpsObjectCache.class);
+
+    private final Map<String, List<Object>> cache;
+
+    public GitOpsObjectCache(@Value("${devops.gitops.object-cache.maxSize:5000}") Integer maxSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, List<Object>>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Object>> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * 读取并解析文件中所有的yaml对象
+     *
+     * @param repository 已经打开的本地仓库, 由调用方关闭, 一次解析中的所有文件共用
+     * @param blobId     文件的blob id
+     * @param filePath   文件路径, 用于报错
+     * @return 解析出的对象, 只有"---"没有内容的部分为null
+     */
+    public List<Object> loadAll(Repository repository, String blobId, String filePath) {
+        List<Object> objects = cache.get(blobId);
+        if (objects != null) {
+            LOGGER.debug("GitOps object cache hit: file {} blob {}", filePath, blobId);
+            return objects;
+        }
+        objects = Collections.unmodifiableList(parse(readBlob(repository, blobId), filePath));
+        cache.put(blobId, objects);
+        return objects;
+    }
+
+    private static byte[] readBlob(Repository repository, String blobId) {
+        try {
+            ObjectLoader loader = repository.open(ObjectId.fromString(blobId));
+            return loader.getBytes();
+        } catch (IOException e) {
+            throw new CommonException(e.getMessage(), e);
+        }
+    }
+
+    private static List<Object> parse(byte[] content, String filePath) {
+        List<Object> objects = new ArrayList<>();
+        try {
+            // 真正对数据进行解析是在迭代的时候
+            for (Object data : new Yaml().loadAll(new String(content, StandardCharsets.UTF_8))) {
+                objects.add(data);
+            }
+        } catch (Exception e) {
+            // 捕获Yaml解析出错，如： "---{}\n---"
+            // 返回友好的方式
+            throw new GitOpsExplainException(GitOpsObjectError.FILE_NOT_YAML.getError(), filePath);
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,248 @@
+package io.choerodon.devops.infra.gitops;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PreDestroy;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.SshTransport;
+import org.eclipse.jgit.transport.TransportConfigCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.util.FileUtil;
+import io.choerodon.devops.infra.util.GitUtil;
+
+/**
+ * 环境GitOps库的本地仓库池
+ * <p>
+ * 之前每次同步都重新打开本地仓库, 并且根据私钥重新创建ssh的SessionFactory, 这里按照本地路径缓存:
+ * 1. 打开的 {@link Repository} 和根据环境私钥创建的 {@link SshSessionFactory}, 私钥变化时重新创建
+ * 2. 每个仓库一把可重入锁, 同一个环境库的更新和解析串行执行, 避免并发操作损坏工作区
+ * 3. 更新时只fetch远程的master分支, 然后将工作区强制重置到远程的提交, 不在本地合并
+ * 4. 缓存的仓库数超过 maxSize 时按照最近最少使用关闭空闲的仓库, 限制打开的文件数
+ *
+ * @author zmf
+ * @since 2020/11/10
+ */
+@Component
+public class GitOpsRepositoryPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitOpsRepositoryPool.class);
+
+    private static final String GIT_SUFFIX = "/.git";
+    private static final String ORIGIN = "origin";
+    private static final String MASTER = "master";
+    private static final String REMOTE_MASTER = Constants.R_REMOTES + ORIGIN + "/" + MASTER;
+
+    /**
+     * 按照访问顺序排列, 使用this作为锁
+     */
+    private final LinkedHashMap<String, PooledRepository> repositories = new LinkedHashMap<>(64, 0.75f, true);
+
+    @Value("${devops.gitops.repository-pool.maxSize:200}")
+    private Integer maxSize;
+
+    /**
+     * 被淘汰时是否同时删除本地目录, 用于限制磁盘占用, 下次使用时会重新克隆
+     */
+    @Value("${devops.gitops.repository-pool.deleteOnEvict:false}")
+    private Boolean deleteOnEvict;
+
+    /**
+     * 将本地仓库更新到远程master分支的最新提交, 本地仓库不存在时克隆
+     *
+     * @param path      本地仓库的工作区目录
+     * @param url       远程仓库的ssh地址
+     * @param sshKeyRsa 环境的私钥
+     * @return 本地仓库, 由仓库池管理, 使用方不能关闭
+     */
+    public Git update(String path, String url, String sshKeyRsa) {
+        while (true) {
+            PooledRepository pooled = get(path);
+            pooled.lock.lock();
+            try {
+                if (pooled.closed) {
+                    // 加锁之前被淘汰了, 重新获取
+                    continue;
+                }
+                return pooled.update(url, sshKeyRsa);
+            } finally {
+                pooled.lock.unlock();
+                evictIfNecessary();
+            }
+        }
+    }
+
+    /**
+     * 锁住本地仓库, 在 {@link #unlock(String)} 之前其他线程不能更新这个仓库
+     * 用于在解析过程中保持工作区不变, 可重入
+     *
+     * @param path 本地仓库的工作区目录
+     */
+    public void lock(String path) {
+        while (true) {
+            PooledRepository pooled = get(path);
+            pooled.lock.lock();
+            if (!pooled.closed) {
+                return;
+            }
+            pooled.lock.unlock();
+        }
+    }
+
+    /**
+     * 释放 {@link #lock(String)} 获取的锁
+     *
+     * @param path 本地仓库的工作区目录
+     */
+    public void unlock(String path) {
+        PooledRepository pooled;
+        synchronized (this) {
+            pooled = repositories.get(path);
+        }
+        // 加锁的仓库不会被淘汰, 取不到说明没有调用过lock或者已经释放过了
+        if (pooled == null || !pooled.lock.isHeldByCurrentThread()) {
+            LOGGER.warn("The local repository {} is not locked by current thread", path);
+            return;
+        }
+        pooled.lock.unlock();
+    }
+
+    private synchronized PooledRepository get(String path) {
+        return repositories.computeIfAbsent(path, PooledRepository::new);
+    }
+
+    private void evictIfNecessary() {
+        List<PooledRepository> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PooledRepository> iterator = repositories.values().iterator();
+            int overflow = repositories.size() - maxSize;
+            while (overflow > 0 && iterator.hasNext()) {
+                PooledRepository pooled = iterator.next();
+                // 正在使用的仓库跳过, 可重入锁对当前线程持有的锁tryLock也会成功, 需要单独判断
+                if (!pooled.lock.isHeldByCurrentThread() && pooled.lock.tryLock()) {
+                    try {
+                        pooled.closed = true;
+                        iterator.remove();
+                        evicted.add(pooled);
+                        overflow--;
+                    } finally {
+                        pooled.lock.unlock();
+                    }
+                }
+            }
+        }
+        evicted.forEach(pooled -> pooled.close(deleteOnEvict));
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        repositories.values().forEach(pooled -> pooled.close(false));
+        repositories.clear();
+    }
+
+    private static final class PooledRepository {
+        private final String path;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean closed;
+        private Repository repository;
+        private String sshKeyRsa;
+        private TransportConfigCallback transportConfigCallback;
+
+        private PooledRepository(String path) {
+            this.path = path;
+        }
+
+        private Git update(String url, String sshKeyRsa) {
+            if (transportConfigCallback == null || !sshKeyRsa.equals(this.sshKeyRsa)) {
+                SshSessionFactory sshSessionFactory = GitUtil.createSshSessionFactory(sshKeyRsa);
+                this.transportConfigCallback = transport -> ((SshTransport) transport).setSshSessionFactory(sshSessionFactory);
+                this.sshKeyRsa = sshKeyRsa;
+            }
+
+            if (repository == null) {
+                File gitDir = new File(path + GIT_SUFFIX);
+                if (!gitDir.isDirectory()) {
+                    return cloneRepository(url);
+                }
+                try {
+                    repository = new FileRepository(gitDir.getAbsolutePath());
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to open local repository {}, clone it again", path, e);
+                    return cloneRepository(url);
+                }
+            }
+
+            Git git = new Git(repository);
+            try {
+                git.fetch()
+                        .setRemote(ORIGIN)
+                        .setTransportConfigCallback(transportConfigCallback)
+                        .call();
+                git.reset()
+                        .setMode(ResetCommand.ResetType.HARD)
+                        .setRef(REMOTE_MASTER)
+                        .call();
+            } catch (GitAPIException e) {
+                throw new CommonException("error.git.pull", e);
+            }
+            return git;
+        }
+
+        private Git cloneRepository(String url) {
+            closeRepository();
+            File directory = new File(path);
+            if (directory.exists()) {
+                // 目录中残留的不完整的仓库
+                FileUtil.deleteDirectory(directory);
+            }
+            try {
+                Git git = Git.cloneRepository()
+                        .setURI(url)
+                        .setBranch(MASTER)
+                        .setDirectory(directory)
+                        .setTransportConfigCallback(transportConfigCallback)
+                        .call();
+                repository = git.getRepository();
+                return git;
+            } catch (GitAPIException e) {
+                LOGGER.debug("Failed to clone by ssh: path: {}, url: {}", path, url);
+                throw new CommonException(e.getMessage(), e);
+            }
+        }
+
+        private void closeRepository() {
+            if (repository != null) {
+                repository.close();
+                repository = null;
+            }
+        }
+
+        private void close(boolean deleteLocal) {
+            lock.lock();
+            try {
+                closeRepository();
+                if (deleteLocal) {
+                    FileUtil.deleteDirectory(new File(path));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -25,7 +25,6 @@ import io.choerodon.devops.app.service.DevopsEnvFileResourceService;
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
 import io.choerodon.devops.infra.enums.GitOpsObjectError;
 import io.choerodon.devops.infra.enums.ResourceType;
-import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
 import io.choerodon.devops.infra.util.JsonYamlConversionUtil;
 import io.choerodon.devops.infra.util.SkipNullRepresenterUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -67,11 +66,11 @@ public class ResourceConvertToYamlHandler<T> {
      * @param gitlabEnvProjectId Environment corresponding GitLab project ID
      * @param operationType      operation type
      * @param userId             GitLab user ID
-     * @param filePath           环境库在本地的目录
+     * @param filePath           环境库在本地的目录, 更新的内容改为基于gitlab中的文件计算, 不再读取本地的文件
      */
     public void operationEnvGitlabFile(String fileCode, Integer gitlabEnvProjectId, String operationType,
                                        Long userId, Long objectId, String objectType, V1Endpoints v1Endpoints, Boolean deleteCert, Long envId, String filePath) {
-        GitlabServiceClientOperator gitlabServiceClientOperator = ApplicationContextHelper.getSpringFactory().getBean(GitlabServiceClientOperator.class);
+        GitOpsFileGroupCommitter gitOpsFileGroupCommitter = ApplicationContextHelper.getSpringFactory().getBean(GitOpsFileGroupCommitter.class);
         Tag tag = new Tag(type.getClass().toString());
         Yaml yaml = getYamlObject(tag, true);
         String endpointContent = null;
@@ -94,10 +93,10 @@ public class ResourceConvertToYamlHandler<T> {
                 content = content + "\n" + endpointContent;
             }
         }
+        // 同一个环境库短时间内的文件操作会合并为一个提交
         if (operationType.equals("create")) {
             String path = fileCode + ".yaml";
-            gitlabServiceClientOperator.createFile(gitlabEnvProjectId, path, content,
-                    "ADD FILE", TypeUtil.objToInteger(userId));
+            gitOpsFileGroupCommitter.commitCreate(gitlabEnvProjectId, TypeUtil.objToInteger(userId), path, content, "ADD FILE");
 
         } else {
             DevopsEnvFileResourceService devopsEnvFileResourceService = ApplicationContextHelper.getSpringFactory().getBean(DevopsEnvFileResourceService.class);
@@ -105,9 +104,11 @@ public class ResourceConvertToYamlHandler<T> {
             if (devopsEnvFileResourceDTO == null) {
                 throw new CommonException("error.fileResource.not.exist");
             }
-            gitlabServiceClientOperator.updateFile(gitlabEnvProjectId, devopsEnvFileResourceDTO.getFilePath(), getUpdateContent(type, deleteCert,
-                    endpointContent, devopsEnvFileResourceDTO.getFilePath(), objectType, filePath, operationType),
-                    "UPDATE FILE", TypeUtil.objToInteger(userId));
+            // 更新的内容在提交时基于文件在gitlab中的最新内容计算, 避免基于本地环境库中旧的内容覆盖其它的修改
+            String finalEndpointContent = endpointContent;
+            gitOpsFileGroupCommitter.commitUpdate(gitlabEnvProjectId, TypeUtil.objToInteger(userId), devopsEnvFileResourceDTO.getFilePath(),
+                    fileContent -> getUpdateContentOfFile(type, deleteCert, finalEndpointContent, fileContent, objectType, operationType),
+                    "UPDATE FILE");
         }
     }
 
@@ -137,55 +138,75 @@ public class ResourceConvertToYamlHandler<T> {
      */
     public String getUpdateContent(T t, Boolean deleteCert, String content, String filePath, String
             objectType, String path, String operationType) {
-        Yaml yaml = new Yaml();
-        StringBuilder resultBuilder = new StringBuilder();
         // 获取要更新的资源所在的文件
         File file = new File(String.format("%s/%s", path, filePath));
         try {
-            // 读取文件内的所有资源对象，没有更新的资源对象进行保留，更新的进行代替
-            for (Object data : yaml.loadAll(new FileInputStream(file))) {
-                // TODO 加上Yaml文件校验
-                JSONObject jsonObject = new JSONObject((Map<String, Object>) data);
-                switch (jsonObject.get("kind").toString()) {
-                    case "C7NHelmRelease":
-                        handleC7nHelmRelease(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "Ingress":
-                        handleIngress(t, deleteCert, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "Service":
-                        handleService(t, content, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "C7nCertification":
-                        handleC7nCertification(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "ConfigMap":
-                        handleConfigMap(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "Secret":
-                        handleSecret(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "PersistentVolume":
-                        handlePV(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "PersistentVolumeClaim":
-                        // 这里不需要对遗留在自定义资源中的PVC做兼容判断，因为自定义资源中PVC的objectType是'custom'
-                        handlePVC(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                    case "Endpoints":
-                        // 忽视掉Endpoints
-                        break;
-                    default:
-                        handleCustom(t, objectType, operationType, resultBuilder, jsonObject);
-                        break;
-                }
-            }
-            return resultBuilder.toString();
+            return updateContent(t, deleteCert, content, new Yaml().loadAll(new FileInputStream(file)), objectType, operationType);
         } catch (FileNotFoundException e) {
             throw new CommonException(e.getMessage(), e);
         }
     }
 
+    /**
+     * 根据文件的内容获取文件内的更新内容
+     *
+     * @param t             资源对象
+     * @param deleteCert    是否删除证书
+     * @param content       更新的资源的content
+     * @param fileContent   资源文件当前的内容
+     * @param objectType    对象类型
+     * @param operationType 操作类型 create/update
+     * @return 指定文件操作之后的内容
+     */
+    public String getUpdateContentOfFile(T t, Boolean deleteCert, String content, String fileContent, String
+            objectType, String operationType) {
+        return updateContent(t, deleteCert, content, new Yaml().loadAll(fileContent), objectType, operationType);
+    }
+
+    private String updateContent(T t, Boolean deleteCert, String content, Iterable<Object> documents, String
+            objectType, String operationType) {
+        StringBuilder resultBuilder = new StringBuilder();
+        // 读取文件内的所有资源对象，没有更新的资源对象进行保留，更新的进行代替
+        for (Object data : documents) {
+            // TODO 加上Yaml文件校验
+            JSONObject jsonObject = new JSONObject((Map<String, Object>) data);
+            switch (jsonObject.get("kind").toString()) {
+                case "C7NHelmRelease":
+                    handleC7nHelmRelease(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "Ingress":
+                    handleIngress(t, deleteCert, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "Service":
+                    handleService(t, content, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "C7nCertification":
+                    handleC7nCertification(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "ConfigMap":
+                    handleConfigMap(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "Secret":
+                    handleSecret(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "PersistentVolume":
+                    handlePV(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "PersistentVolumeClaim":
+                    // 这里不需要对遗留在自定义资源中的PVC做兼容判断，因为自定义资源中PVC的objectType是'custom'
+                    handlePVC(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+                case "Endpoints":
+                    // 忽视掉Endpoints
+                    break;
+                default:
+                    handleCustom(t, objectType, operationType, resultBuilder, jsonObject);
+                    break;
+            }
+        }
+        return resultBuilder.toString();
+    }
+
     private void handleService(T t, String content, String objectType, String operationType, StringBuilder
             resultBuilder, JSONObject jsonObject) {
         Yaml yaml3 = new Yaml();
@@ -0,0 +1,166 @@
+package io.choerodon.devops.infra.handler;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.choerodon.devops.api.vo.DevopsCiContentVO;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 按照流水线token缓存最新的gitlab-ci配置文件, 供gitlab runner拉取
+ * <p>
+ * 流水线保存新的配置文件, 启用, 停用或者删除时调用 {@link #evict(Long)},
+ * 并通过redis的发布订阅通知所有实例删除该流水线的缓存. 在事务中调用时, 事务提交之后才删除,
+ * 避免其它请求在提交之前重新缓存旧的内容. 有效期只是兜底.
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Component
+public class CiContentCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CiContentCache.class);
+
+    /**
+     * 缓存失效的通知频道, 消息内容为流水线id
+     */
+    public static final String EVICT_CHANNEL = "devops-ci-content-cache-evict";
+    private static final String METRIC_REQUESTS = "devops.ci.content.cache.requests";
+
+    @Value("${devops.ci.content-cache.enabled:true}")
+    private Boolean enabled;
+    @Value("${devops.ci.content-cache.ttlSeconds:300}")
+    private Long ttlSeconds;
+    @Value("${devops.ci.content-cache.maxSize:10000}")
+    private Integer maxSize;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    @Qualifier(GitOpsConstants.REDIS_LISTENER_CONTAINER)
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * key为流水线token
+     */
+    private Map<String, Entry> cache;
+    /**
+     * 每次删除缓存时递增, 加载期间有删除的结果不放入缓存
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        });
+        meterRegistry.gaugeMapSize("devops.ci.content.cache.size", Collections.emptyList(), cache);
+
+        listenerContainer.addMessageListener((message, pattern) -> evictLocal(Long.valueOf(new String(message.getBody()))), new ChannelTopic(EVICT_CHANNEL));
+    }
+
+    /**
+     * 查询流水线最新的配置文件, 不存在时加载并缓存
+     *
+     * @param token  流水线token
+     * @param loader 从数据库加载, 流水线不存在时抛出异常, 不缓存
+     * @return 配置文件, 缓存的对象是共享的, 调用方不能修改
+     */
+    public DevopsCiContentVO get(String token, Supplier<DevopsCiContentVO> loader) {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return loader.get();
+        }
+        Entry entry = cache.get(token);
+        if (entry != null && entry.expireAt >= System.currentTimeMillis()) {
+            record("hit");
+            return entry.content;
+        }
+        record("miss");
+        long loadingGeneration = generation.get();
+        DevopsCiContentVO content = loader.get();
+        synchronized (cache) {
+            if (generation.get() == loadingGeneration) {
+                cache.put(token, new Entry(content, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds)));
+            }
+        }
+        return content;
+    }
+
+    /**
+     * 使流水线的缓存失效, 包括所有实例的缓存
+     *
+     * @param ciPipelineId 流水线id
+     */
+    public void evict(Long ciPipelineId) {
+        if (ciPipelineId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                        doEvict(ciPipelineId);
+                    }
+                }
+            });
+        } else {
+            doEvict(ciPipelineId);
+        }
+    }
+
+    private void doEvict(Long ciPipelineId) {
+        evictLocal(ciPipelineId);
+        try {
+            stringRedisTemplate.convertAndSend(EVICT_CHANNEL, String.valueOf(ciPipelineId));
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to notify other instances to evict ci content of pipeline {}", ciPipelineId, ex);
+        }
+    }
+
+    private void evictLocal(Long ciPipelineId) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.values().removeIf(entry -> ciPipelineId.equals(entry.content.getCiPipelineId()));
+        }
+    }
+
+    private void record(String result) {
+        meterRegistry.counter(METRIC_REQUESTS, "result", result).increment();
+    }
+
+    private static final class Entry {
+        private final DevopsCiContentVO content;
+        private final long expireAt;
+
+        private Entry(DevopsCiContentVO content, long expireAt) {
+            this.content = content;
+            this.expireAt = expireAt;
+        }
+    }
+}
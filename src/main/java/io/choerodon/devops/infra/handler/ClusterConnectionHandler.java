@@ -2,29 +2,24 @@ package io.choerodon.devops.infra.handler;
 
 import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.*;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.core.exception.CommonException;
-import io.choerodon.devops.api.vo.ClusterSessionVO;
 import io.choerodon.devops.app.service.DevopsClusterService;
 import io.choerodon.devops.infra.dto.DevopsClusterDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.dto.iam.Tenant;
 import io.choerodon.devops.infra.enums.EnvironmentType;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+import io.choerodon.devops.infra.gitops.GitOpsRepositoryPool;
 import io.choerodon.devops.infra.util.*;
 
 /**
@@ -41,18 +36,16 @@ public class ClusterConnectionHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ClusterConnectionHandler.class);
 
     private Pattern pattern = Pattern.compile("^[-+]?[\\d]*$");
-    @Value("${agent.version}")
-    private String agentExpectVersion;
     @Value("${services.gitlab.sshUrl}")
     private String gitlabSshUrl;
     @Autowired
     private BaseServiceClientOperator baseServiceClientOperator;
     @Autowired
-    private GitUtil gitUtil;
-    @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private GitOpsRepositoryPool gitOpsRepositoryPool;
     @Autowired
     private DevopsClusterService devopsClusterService;
+    @Autowired
+    private ClusterSessionCache clusterSessionCache;
 
     /**
      * 检查集群的环境是否链接
@@ -72,10 +65,7 @@ public class ClusterConnectionHandler {
      * @return true 表示已连接
      */
     private boolean getEnvConnectionStatus(Long clusterId) {
-        Map<String, ClusterSessionVO> clusterSessions = (Map<String, ClusterSessionVO>) (Map) redisTemplate.opsForHash().entries(CLUSTER_SESSION);
-        return clusterSessions.values().stream()
-                .anyMatch(t -> clusterId.equals(t.getClusterId())
-                        && agentExpectVersion.equals(t.getVersion()));
+        return clusterSessionCache.isUpToDate(clusterId);
     }
 
 //
@@ -96,14 +86,10 @@ public class ClusterConnectionHandler {
      * 不需要进行升级的已连接的集群 up-to-date
      * 版本相等就认为不需要升级
      *
-     * @return 环境更新列表
+     * @return 集群id的不可修改的集合, 判断是否包含的复杂度为O(1)
      */
-    public List<Long> getUpdatedClusterList() {
-        Map<String, ClusterSessionVO> clusterSessions = (Map<String, ClusterSessionVO>) (Map) redisTemplate.opsForHash().entries(CLUSTER_SESSION);
-        return clusterSessions.values().stream()
-                .filter(clusterSessionVO -> agentExpectVersion.equals(clusterSessionVO.getVersion()))
-                .map(ClusterSessionVO::getClusterId)
-                .collect(Collectors.toCollection(ArrayList::new));
+    public Set<Long> getUpdatedClusterList() {
+        return clusterSessionCache.upToDateClusterIds();
     }
 
 
@@ -116,19 +102,8 @@ public class ClusterConnectionHandler {
         String url = GitUtil.getGitlabSshUrl(pattern, gitlabSshUrl, organizationDTO.getTenantNum(),
                 projectDTO.getCode(), envCode, EnvironmentType.forValue(envType), clusterCode);
 
-        File file = new File(path);
-        if (!file.exists()) {
-            gitUtil.cloneBySsh(path, url, envRsa);
-        } else {
-            String localPath = String.format("%s%s", path, "/.git");
-            // 如果文件夾存在并且文件夹不为空,去拉取新的配置
-            // 反之克隆远程的仓库的文件
-            if (file.isDirectory() && file.listFiles().length > 0) {
-                GitUtil.pullBySsh(localPath, envRsa);
-            } else {
-                gitUtil.cloneBySsh(path, url, envRsa);
-            }
-        }
+        // 本地仓库存在时更新到最新的提交, 反之克隆远程的仓库
+        gitOpsRepositoryPool.update(path, url, envRsa);
         return path;
     }
 
@@ -0,0 +1,172 @@
+package io.choerodon.devops.infra.handler;
+
+import static io.choerodon.devops.infra.handler.ClusterConnectionHandler.CLUSTER_SESSION;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.api.vo.ClusterSessionVO;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 集群连接状态的本地缓存
+ * <p>
+ * 集群连接信息保存在redis的 {@link ClusterConnectionHandler#CLUSTER_SESSION} 中, 之前每次判断都要读取整个hash,
+ * 这里在本地缓存一份快照:
+ * 1. Agent连接和断开时通过redis的发布订阅通知所有devops-service实例使本地快照失效
+ * 2. 快照超过 ttlMillis 之后也会重新加载, 避免通知丢失时状态一直不正确
+ * 3. 快照失效时同时到达的请求只有一个读取redis, 其它请求等待同一次加载的结果
+ *
+ * @author zmf
+ * @since 2020/11/6
+ */
+@Component
+public class ClusterSessionCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterSessionCache.class);
+
+    /**
+     * 集群连接信息变更的通知频道
+     */
+    public static final String CLUSTER_SESSION_CHANGED_CHANNEL = "devops-cluster-session-changed";
+
+    @Value("${agent.version}")
+    private String agentExpectVersion;
+
+    @Value("${devops.cluster.session.cache.ttlMillis:10000}")
+    private Long ttlMillis;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    @Qualifier(GitOpsConstants.REDIS_LISTENER_CONTAINER)
+    private RedisMessageListenerContainer listenerContainer;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 每次失效加一, 用于避免失效之前开始加载的旧数据覆盖失效操作
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * key为开始加载时的失效次数, value为正在进行的加载, 同一次失效之后的并发加载共用一个结果
+     */
+    private final ConcurrentMap<Long, CompletableFuture<Snapshot>> loadings = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener((message, pattern) -> invalidate(), new ChannelTopic(CLUSTER_SESSION_CHANGED_CHANNEL));
+    }
+
+    /**
+     * 集群是否连接并且版本和预期一致
+     *
+     * @param clusterId 集群id
+     * @return true表示不需要升级
+     */
+    public boolean isUpToDate(Long clusterId) {
+        return getSnapshot().upToDate.contains(clusterId);
+    }
+
+    /**
+     * 已连接并且不需要升级的集群id
+     *
+     * @return 不可修改的集合
+     */
+    public Set<Long> upToDateClusterIds() {
+        return getSnapshot().upToDate;
+    }
+
+    /**
+     * 在本实例修改了集群连接信息之后调用, 通知所有实例重新加载
+     *
+     * @param clusterId 集群id
+     */
+    public void publishChange(Long clusterId) {
+        invalidate();
+        try {
+            redisTemplate.convertAndSend(CLUSTER_SESSION_CHANGED_CHANNEL, String.valueOf(clusterId));
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to publish cluster session change of cluster {}", clusterId, ex);
+        }
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || System.currentTimeMillis() - current.loadedAt > ttlMillis) {
+            long loadingGeneration = generation.get();
+            CompletableFuture<Snapshot> loading = new CompletableFuture<>();
+            CompletableFuture<Snapshot> existing = loadings.putIfAbsent(loadingGeneration, loading);
+            if (existing != null) {
+                return join(existing);
+            }
+            try {
+                current = load();
+                if (loadingGeneration == generation.get()) {
+                    snapshot = current;
+                }
+                loading.complete(current);
+            } catch (RuntimeException ex) {
+                loading.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                loadings.remove(loadingGeneration, loading);
+            }
+        }
+        return current;
+    }
+
+    private Snapshot join(CompletableFuture<Snapshot> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private Snapshot load() {
+        Map<String, ClusterSessionVO> clusterSessions = (Map<String, ClusterSessionVO>) (Map) redisTemplate.opsForHash().entries(CLUSTER_SESSION);
+        Set<Long> upToDate = new HashSet<>();
+        clusterSessions.values().forEach(clusterSessionVO -> {
+            if (agentExpectVersion.equals(clusterSessionVO.getVersion())) {
+                upToDate.add(clusterSessionVO.getClusterId());
+            }
+        });
+        return new Snapshot(Collections.unmodifiableSet(upToDate));
+    }
+
+    private static final class Snapshot {
+        private final Set<Long> upToDate;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Snapshot(Set<Long> upToDate) {
+            this.upToDate = upToDate;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package io.choerodon.devops.infra.handler;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+
+/**
+ * 并发执行互相独立的远程查询, 再汇总结果
+ * <p>
+ * 1. 先提交所有的查询, 再通过 {@link Call#get()} 获取结果, 总耗时是最慢的查询的耗时而不是所有查询耗时的和
+ * 2. 必需的查询失败时抛出原来的异常, 与串行查询时一致, 等待超过必需查询的超时时间时取消查询并抛出异常
+ * 3. 带有降级值的查询在超时或者失败时返回降级值, 页面上只缺少这部分数据
+ * 4. 当前线程在事务中时查询在当前线程中执行, 保证查询可以读取到事务中未提交的数据
+ * <p>
+ * 查询中不要再通过这里提交查询, 避免线程池中的线程都在等待其它任务.
+ *
+ * @author zmf
+ * @since 2020/11/20
+ */
+@Component
+public class FanOutAggregator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FanOutAggregator.class);
+
+    private static final String METRIC_CALLS = "devops.fan-out.calls";
+
+    @Value("${devops.fan-out.timeoutMillis:3000}")
+    private Long defaultTimeoutMillis;
+    @Value("${devops.fan-out.requiredTimeoutMillis:30000}")
+    private Long requiredTimeoutMillis;
+
+    @Autowired
+    @Qualifier(GitOpsConstants.FAN_OUT_EXECUTOR)
+    private ThreadPoolTaskExecutor fanOutExecutor;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 按照查询名称和结果缓存的Timer, 避免每次查询都到MeterRegistry中查找
+     */
+    private final Map<String, Timer> callTimers = new ConcurrentHashMap<>();
+
+    /**
+     * 提交必需的查询
+     *
+     * @param name     查询的名称, 用于日志和监控数据
+     * @param supplier 查询
+     * @return 查询的结果, 失败或者超时时 {@link Call#get()} 抛出异常
+     */
+    public <T> Call<T> submit(String name, Supplier<T> supplier) {
+        return submit(name, supplier, null, requiredTimeoutMillis);
+    }
+
+    /**
+     * 提交可以降级的查询, 使用默认的超时时间
+     *
+     * @param name     查询的名称, 用于日志和监控数据
+     * @param supplier 查询
+     * @param fallback 超时或者失败时的降级值
+     * @return 查询的结果
+     */
+    public <T> Call<T> submit(String name, Supplier<T> supplier, Supplier<T> fallback) {
+        return submit(name, supplier, fallback, defaultTimeoutMillis);
+    }
+
+    /**
+     * 提交可以降级的查询
+     *
+     * @param name          查询的名称, 用于日志和监控数据
+     * @param supplier      查询
+     * @param fallback      超时或者失败时的降级值, 为null表示查询是必需的
+     * @param timeoutMillis 从提交开始计算的超时时间, 单位: 毫秒, 不能为空
+     * @return 查询的结果
+     */
+    public <T> Call<T> submit(String name, Supplier<T> supplier, Supplier<T> fallback, Long timeoutMillis) {
+        long start = System.nanoTime();
+        FutureTask<T> task = new FutureTask<>(supplier::get);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            task.run();
+        } else {
+            fanOutExecutor.execute(task);
+        }
+        return new Call<>(name, task, fallback, timeoutMillis, start);
+    }
+
+    private void record(String name, String result, long start) {
+        callTimers.computeIfAbsent(name + "|" + result, key -> Timer.builder(METRIC_CALLS)
+                .tag("name", name)
+                .tag("result", result)
+                .description("Remote calls executed concurrently by the fan-out aggregator")
+                .register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 已经提交的查询
+     */
+    public final class Call<T> {
+        private final String name;
+        private final Future<T> future;
+        private final Supplier<T> fallback;
+        private final Long timeoutMillis;
+        private final long start;
+
+        private Call(String name, Future<T> future, Supplier<T> fallback, Long timeoutMillis, long start) {
+            this.name = name;
+            this.future = future;
+            this.fallback = fallback;
+            this.timeoutMillis = timeoutMillis;
+            this.start = start;
+        }
+
+        /**
+         * 等待查询的结果
+         *
+         * @return 查询的结果, 可以降级的查询超时或者失败时返回降级值
+         */
+        public T get() {
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - (System.nanoTime() - start);
+                T result = future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                record(name, "success", start);
+                return result;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                record(name, "timeout", start);
+                if (fallback == null) {
+                    LOGGER.warn("The required fan-out call {} timed out after {} ms", name, timeoutMillis);
+                    throw new CommonException("error.fan.out.call.timeout", name);
+                }
+                LOGGER.warn("The fan-out call {} timed out after {} ms, use the fallback", name, timeoutMillis);
+                return fallback.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                throw new CommonException(e.getMessage(), e);
+            } catch (ExecutionException | CancellationException e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                record(name, "error", start);
+                if (fallback != null) {
+                    LOGGER.warn("The fan-out call {} failed, use the fallback", name, cause);
+                    return fallback.get();
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new CommonException(cause.getMessage(), cause);
+            }
+        }
+    }
+}
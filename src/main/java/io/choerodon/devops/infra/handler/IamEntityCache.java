@@ -0,0 +1,343 @@
+package io.choerodon.devops.infra.handler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+
+import com.alibaba.fastjson.JSONObject;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+import io.choerodon.devops.infra.dto.iam.IamUserDTO;
+
+/**
+ * 缓存从base-service查询的项目, 组织和用户信息
+ * <p>
+ * 分为两级:
+ * 1. 本地缓存, 有效期 nearTtlSeconds, 按照最近最少使用限制条数
+ * 2. redis缓存, 有效期 redisTtlSeconds, 所有devops-service实例共享
+ * <p>
+ * 缓存的是json, 每次返回新的对象, 调用方可以修改返回的对象.
+ * 收到项目或用户的更新事件时调用 {@link #evict(String, Long)} 删除redis中的数据,
+ * 并通过redis的发布订阅通知所有实例删除本地缓存. 没有更新事件的数据(如组织)只依赖有效期.
+ * 按照邮箱查询的用户按项目缓存, 同时在redis中纪录用户出现在哪些项目的缓存中,
+ * 用户或成员角色变化时通过 {@link #evictUserEmails(Long)} 删除这些项目的缓存.
+ *
+ * @author zmf
+ * @since 2020/11/18
+ */
+@Component
+public class IamEntityCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IamEntityCache.class);
+
+    public static final String PROJECT = "project";
+    public static final String ORGANIZATION = "organization";
+    public static final String USER = "user";
+    /**
+     * 按照邮箱查询的项目下的用户, id为项目id, 查询参数为邮箱
+     */
+    public static final String USER_EMAIL = "user-email";
+
+    /**
+     * 缓存失效的通知频道, 消息内容为 类型:id
+     */
+    public static final String EVICT_CHANNEL = "devops-iam-cache-evict";
+    private static final String REDIS_KEY_PREFIX = "devops:iam-cache:";
+    /**
+     * 用户出现在哪些项目的邮箱查询缓存中, 值为项目id的集合
+     */
+    private static final String USER_EMAIL_INDEX_PREFIX = "devops:iam-cache-index:user-email:";
+    private static final String DEFAULT_VARIANT = "default";
+    private static final String METRIC_REQUESTS = "devops.iam.cache.requests";
+
+    @Value("${devops.iam-cache.enabled:true}")
+    private Boolean enabled;
+    @Value("${devops.iam-cache.nearTtlSeconds:60}")
+    private Long nearTtlSeconds;
+    @Value("${devops.iam-cache.nearMaxSize:10000}")
+    private Integer nearMaxSize;
+    @Value("${devops.iam-cache.redisTtlSeconds:600}")
+    private Long redisTtlSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    @Qualifier(GitOpsConstants.REDIS_LISTENER_CONTAINER)
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * key为 类型:id, value为不同查询参数下的数据
+     */
+    private Map<String, NearEntry> nearCache;
+
+    @PostConstruct
+    public void init() {
+        nearCache = Collections.synchronizedMap(new LinkedHashMap<String, NearEntry>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NearEntry> eldest) {
+                return size() > nearMaxSize;
+            }
+        });
+        meterRegistry.gaugeMapSize("devops.iam.cache.near.size", Collections.emptyList(), nearCache);
+
+        listenerContainer.addMessageListener((message, pattern) -> nearCache.remove(new String(message.getBody())), new ChannelTopic(EVICT_CHANNEL));
+    }
+
+    /**
+     * 查询数据, 不存在时加载并缓存
+     *
+     * @param type    数据类型
+     * @param id      id
+     * @param variant 查询参数, 不同查询参数的数据分开缓存
+     * @param clazz   数据的类型
+     * @param loader  从base-service加载数据, 返回null时不缓存
+     * @return 数据
+     */
+    public <T> T get(String type, Long id, String variant, Class<T> clazz, Supplier<T> loader) {
+        if (!Boolean.TRUE.equals(enabled) || id == null) {
+            return loader.get();
+        }
+        String key = type + ":" + id;
+        String json = getNear(key, variant);
+        if (json != null) {
+            record(type, "near");
+            return JSONObject.parseObject(json, clazz);
+        }
+        json = getRedis(key, variant);
+        if (json != null) {
+            record(type, "redis");
+            putNear(key, variant, json);
+            return JSONObject.parseObject(json, clazz);
+        }
+        record(type, "miss");
+        T value = loader.get();
+        if (value != null) {
+            put(key, variant, JSONObject.toJSONString(value));
+            if (USER_EMAIL.equals(type) && value instanceof IamUserDTO) {
+                indexUserEmail(((IamUserDTO) value).getId(), id);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 批量查询数据, 只加载缓存中不存在的数据, 加载的数据按照id缓存
+     *
+     * @param type   数据类型
+     * @param ids    id
+     * @param clazz  数据的类型
+     * @param loader 从base-service批量加载数据, 返回id和数据的映射
+     * @return id和数据的映射, 不存在的id没有对应的值
+     */
+    public <T> Map<Long, T> getAll(String type, Collection<Long> ids, Class<T> clazz, Function<List<Long>, Map<Long, T>> loader) {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return loader.apply(new ArrayList<>(ids));
+        }
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        Map<Long, T> result = new HashMap<>();
+        List<Long> redisIds = new ArrayList<>();
+        for (Long id : distinctIds) {
+            String json = getNear(type + ":" + id, DEFAULT_VARIANT);
+            if (json == null) {
+                redisIds.add(id);
+            } else {
+                result.put(id, JSONObject.parseObject(json, clazz));
+            }
+        }
+        record(type, "near", distinctIds.size() - redisIds.size());
+        if (redisIds.isEmpty()) {
+            return result;
+        }
+
+        List<Long> missingIds = new ArrayList<>();
+        List<Object> jsons = getRedis(type, redisIds);
+        for (int i = 0; i < redisIds.size(); i++) {
+            Object json = jsons == null ? null : jsons.get(i);
+            if (json instanceof String) {
+                putNear(type + ":" + redisIds.get(i), DEFAULT_VARIANT, (String) json);
+                result.put(redisIds.get(i), JSONObject.parseObject((String) json, clazz));
+            } else {
+                missingIds.add(redisIds.get(i));
+            }
+        }
+        record(type, "redis", redisIds.size() - missingIds.size());
+        record(type, "miss", missingIds.size());
+        if (missingIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, T> loaded = loader.apply(missingIds);
+        putAll(type, loaded);
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 使数据的所有查询参数的缓存失效, 包括所有实例的本地缓存
+     *
+     * @param type 数据类型
+     * @param id   id
+     */
+    public void evict(String type, Long id) {
+        if (id == null) {
+            return;
+        }
+        String key = type + ":" + id;
+        nearCache.remove(key);
+        try {
+            stringRedisTemplate.delete(REDIS_KEY_PREFIX + key);
+            stringRedisTemplate.convertAndSend(EVICT_CHANNEL, key);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to evict iam cache of {}", key, ex);
+        }
+    }
+
+    /**
+     * 使用户所在的所有项目的邮箱查询缓存失效, 用户信息或者成员角色变化时调用
+     *
+     * @param userId 用户id
+     */
+    public void evictUserEmails(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        Set<String> projectIds;
+        try {
+            projectIds = stringRedisTemplate.opsForSet().members(USER_EMAIL_INDEX_PREFIX + userId);
+            stringRedisTemplate.delete(USER_EMAIL_INDEX_PREFIX + userId);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to read the projects of user {} cached by email", userId, ex);
+            return;
+        }
+        if (projectIds != null) {
+            projectIds.forEach(projectId -> evict(USER_EMAIL, Long.valueOf(projectId)));
+        }
+    }
+
+    private void indexUserEmail(Long userId, Long projectId) {
+        if (userId == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForSet().add(USER_EMAIL_INDEX_PREFIX + userId, String.valueOf(projectId));
+            stringRedisTemplate.expire(USER_EMAIL_INDEX_PREFIX + userId, redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to index the email cache of user {} in project {}", userId, projectId, ex);
+        }
+    }
+
+    private String getNear(String key, String variant) {
+        NearEntry entry = nearCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            nearCache.remove(key, entry);
+            return null;
+        }
+        return entry.values.get(variant);
+    }
+
+    private void putNear(String key, String variant, String json) {
+        NearEntry entry = nearCache.get(key);
+        if (entry == null || entry.expireAt < System.currentTimeMillis()) {
+            entry = new NearEntry(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(nearTtlSeconds));
+            nearCache.put(key, entry);
+        }
+        entry.values.put(variant, json);
+    }
+
+    private String getRedis(String key, String variant) {
+        try {
+            Object json = stringRedisTemplate.opsForHash().get(REDIS_KEY_PREFIX + key, variant);
+            return json == null ? null : json.toString();
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to read iam cache of {} from redis", key, ex);
+            return null;
+        }
+    }
+
+    private List<Object> getRedis(String type, List<Long> ids) {
+        try {
+            return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                ids.forEach(id -> stringRedisConnection.hGet(REDIS_KEY_PREFIX + type + ":" + id, DEFAULT_VARIANT));
+                return null;
+            });
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to read iam cache of {} from redis", type, ex);
+            return null;
+        }
+    }
+
+    private void put(String key, String variant, String json) {
+        putNear(key, variant, json);
+        try {
+            stringRedisTemplate.opsForHash().put(REDIS_KEY_PREFIX + key, variant, json);
+            stringRedisTemplate.expire(REDIS_KEY_PREFIX + key, redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to write iam cache of {} to redis", key, ex);
+        }
+    }
+
+    private <T> void putAll(String type, Map<Long, T> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Map<String, String> jsons = new HashMap<>();
+        values.forEach((id, value) -> {
+            String json = JSONObject.toJSONString(value);
+            putNear(type + ":" + id, DEFAULT_VARIANT, json);
+            jsons.put(REDIS_KEY_PREFIX + type + ":" + id, json);
+        });
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                jsons.forEach((redisKey, json) -> {
+                    stringRedisConnection.hSet(redisKey, DEFAULT_VARIANT, json);
+                    stringRedisConnection.expire(redisKey, redisTtlSeconds);
+                });
+                return null;
+            });
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to write iam cache of {} to redis", type, ex);
+        }
+    }
+
+    private void record(String type, String result) {
+        record(type, result, 1);
+    }
+
+    private void record(String type, String result, int count) {
+        if (count > 0) {
+            meterRegistry.counter(METRIC_REQUESTS, "type", type, "result", result).increment(count);
+        }
+    }
+
+    private static final class NearEntry {
+        private final long expireAt;
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+
+        private NearEntry(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
+}
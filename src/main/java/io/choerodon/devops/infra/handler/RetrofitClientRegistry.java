@@ -0,0 +1,274 @@
+package io.choerodon.devops.infra.handler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyManagementException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import io.choerodon.core.exception.CommonException;
+
+/**
+ * 共享的Retrofit客户端, 按照(类型, 地址, 认证信息)缓存
+ * 所有的客户端共用一个连接池和调度器, 同一个目标的请求可以复用连接, 避免每次请求都重新进行TLS握手
+ * 长时间没有使用的客户端会被移除, 空闲的连接由连接池按照keepAlive时间关闭
+ *
+ * @author zmf
+ * @since 2020/11/17
+ */
+@Component
+@EnableScheduling
+public class RetrofitClientRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetrofitClientRegistry.class);
+
+    private static final String CHART = "chart";
+    private static final String METRIC_REQUESTS = "devops.http.client.requests";
+    private static final String METRIC_CLIENTS = "devops.http.client.registry.size";
+    private static final String METRIC_CONNECTIONS = "devops.http.client.connections";
+    private static final String METRIC_IDLE_CONNECTIONS = "devops.http.client.connections.idle";
+
+    @Value("${devops.http-client.connectTimeoutSeconds:10}")
+    private Integer connectTimeoutSeconds;
+    @Value("${devops.http-client.readTimeoutSeconds:60}")
+    private Integer readTimeoutSeconds;
+    @Value("${devops.http-client.writeTimeoutSeconds:60}")
+    private Integer writeTimeoutSeconds;
+    @Value("${devops.http-client.maxIdleConnections:20}")
+    private Integer maxIdleConnections;
+    @Value("${devops.http-client.keepAliveSeconds:300}")
+    private Integer keepAliveSeconds;
+    @Value("${devops.http-client.maxRequestsPerHost:10}")
+    private Integer maxRequestsPerHost;
+    @Value("${devops.http-client.maxClients:200}")
+    private Integer maxClients;
+    @Value("${devops.http-client.clientIdleMinutes:30}")
+    private Integer clientIdleMinutes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, CachedClient> clients = new ConcurrentHashMap<>();
+    /**
+     * 按照目标主机, 类型和状态缓存的请求耗时的Timer, 避免每个请求都到MeterRegistry中查找
+     */
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+
+    private OkHttpClient baseClient;
+    private ConnectionPool connectionPool;
+
+    @PostConstruct
+    public void init() {
+        connectionPool = new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        // 支持ALPN时协商使用HTTP/2, 否则使用HTTP/1.1
+        baseClient = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(writeTimeoutSeconds, TimeUnit.SECONDS)
+                .followRedirects(true)
+                .build();
+        meterRegistry.gaugeMapSize(METRIC_CLIENTS, Collections.emptyList(), clients);
+        meterRegistry.gauge(METRIC_CONNECTIONS, connectionPool, ConnectionPool::connectionCount);
+        meterRegistry.gauge(METRIC_IDLE_CONNECTIONS, connectionPool, ConnectionPool::idleConnectionCount);
+    }
+
+    /**
+     * 查询共享的Retrofit, 不存在时创建
+     *
+     * @param baseUrl  地址
+     * @param type     类型, chart类型会校验证书, 其它类型跳过证书校验
+     * @param username 用户名
+     * @param password 密码
+     * @return retrofit
+     */
+    public Retrofit getRetrofit(String baseUrl, String type, String username, String password) {
+        String token = RetrofitHandler.basicToken(username, password);
+        String key = type + "|" + baseUrl + "|" + sha256(token);
+        CachedClient cachedClient = clients.computeIfAbsent(key, k -> {
+            LOGGER.debug("Create shared http client for {} with type {}", baseUrl, type);
+            OkHttpClient okHttpClient = newClient(type, token, !CHART.equals(type));
+            return new CachedClient(new Retrofit.Builder()
+                    .baseUrl(baseUrl)
+                    .client(okHttpClient)
+                    .addConverterFactory(GsonConverterFactory.create())
+                    .build());
+        });
+        cachedClient.lastAccessTime = System.currentTimeMillis();
+        if (clients.size() > maxClients) {
+            evictEldest();
+        }
+        return cachedClient.retrofit;
+    }
+
+    /**
+     * 基于共享的连接池创建带有认证头的客户端
+     *
+     * @param type                  类型, 用于监控数据的标签
+     * @param token                 认证头的值
+     * @param insecureSkipTlsVerify 是否跳过证书校验
+     * @return client
+     */
+    public OkHttpClient newClient(String type, String token, boolean insecureSkipTlsVerify) {
+        OkHttpClient.Builder okHttpClientBuilder = baseClient.newBuilder();
+        okHttpClientBuilder.interceptors().add((Interceptor.Chain chain) -> {
+            Request original = chain.request();
+            Request request = original.newBuilder()
+                    .header("Authorization", token)
+                    .build();
+            return chain.proceed(request);
+        });
+        okHttpClientBuilder.interceptors().add(new MetricsInterceptor(type == null ? "unknown" : type));
+        if (insecureSkipTlsVerify) {
+            okHttpClientBuilder.sslSocketFactory(InsecureTls.SSL_SOCKET_FACTORY, InsecureTls.TRUST_MANAGER);
+            okHttpClientBuilder.hostnameVerifier((requestedHost, remoteServerSession) -> requestedHost.equalsIgnoreCase(remoteServerSession.getPeerHost()));
+        }
+        return okHttpClientBuilder.build();
+    }
+
+    /**
+     * 移除长时间没有使用的客户端
+     */
+    @Scheduled(fixedDelay = 1000 * 60 * 5)
+    public void evictIdleClients() {
+        long threshold = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(clientIdleMinutes);
+        int before = clients.size();
+        clients.values().removeIf(c -> c.lastAccessTime < threshold);
+        if (before != clients.size()) {
+            LOGGER.info("Evicted {} idle http clients, {} remaining", before - clients.size(), clients.size());
+        }
+    }
+
+    private void evictEldest() {
+        clients.entrySet().stream()
+                .min(Comparator.comparingLong(e -> e.getValue().lastAccessTime))
+                .ifPresent(e -> clients.remove(e.getKey(), e.getValue()));
+    }
+
+    private static String sha256(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new CommonException(e.getMessage(), e);
+        }
+    }
+
+    private static class CachedClient {
+        private final Retrofit retrofit;
+        private volatile long lastAccessTime;
+
+        private CachedClient(Retrofit retrofit) {
+            this.retrofit = retrofit;
+            this.lastAccessTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 按照目标主机和类型记录请求耗时
+     */
+    private class MetricsInterceptor implements Interceptor {
+        private final String type;
+
+        private MetricsInterceptor(String type) {
+            this.type = type;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            long start = System.nanoTime();
+            String status = "IO_ERROR";
+            try {
+                Response response = chain.proceed(request);
+                status = String.valueOf(response.code());
+                return response;
+            } finally {
+                requestTimer(request.url().host(), status).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private Timer requestTimer(String target, String status) {
+            return requestTimers.computeIfAbsent(target + "|" + type + "|" + status, key -> Timer.builder(METRIC_REQUESTS)
+                    .tag("target", target)
+                    .tag("type", type)
+                    .tag("status", status)
+                    .description("Requests sent by the shared retrofit clients")
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 不校验证书, 避免有些harbor仓库没使用https安全证书导致harbor api失败
+     */
+    private static final class InsecureTls {
+        private static final X509TrustManager TRUST_MANAGER = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                // 不校验
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                // 不校验
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[]{};
+            }
+        };
+        private static final SSLSocketFactory SSL_SOCKET_FACTORY;
+
+        static {
+            try {
+                SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+                sslContext.init(null, new TrustManager[]{TRUST_MANAGER}, new java.security.SecureRandom());
+                SSL_SOCKET_FACTORY = sslContext.getSocketFactory();
+            } catch (NoSuchAlgorithmException | KeyManagementException e) {
+                throw new CommonException(e);
+            }
+        }
+
+        private InsecureTls() {
+        }
+    }
+}
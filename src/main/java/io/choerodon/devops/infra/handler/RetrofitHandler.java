@@ -1,26 +1,19 @@
 package io.choerodon.devops.infra.handler;
 
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
 import java.util.Base64;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 
-import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 
-import io.choerodon.core.exception.CommonException;
+import io.choerodon.core.convertor.ApplicationContextHelper;
 import io.choerodon.devops.infra.config.ConfigurationProperties;
 import io.choerodon.devops.infra.feign.SonarClient;
 
+/**
+ * Retrofit客户端的入口, 客户端由{@link RetrofitClientRegistry}按照地址和认证信息共享
+ */
 public class RetrofitHandler {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(RetrofitHandler.class);
@@ -35,90 +28,11 @@ public class RetrofitHandler {
      * @return retrofit
      */
     public static Retrofit initRetrofit(ConfigurationProperties configurationProperties) {
-
-        String credentials = configurationProperties.getUsername() + ":"
-                + configurationProperties.getPassword();
-        String token = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
-
-        // 跳过tls校验
-        OkHttpClient okHttpClient = getOkHttpClient(true, configurationProperties.getType(), token);
-
-        return new Retrofit.Builder()
-                .baseUrl(configurationProperties.getBaseUrl())
-                .client(okHttpClient)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-    }
-
-    private static OkHttpClient getOkHttpClient(Boolean insecureSkipTlsVerify, String type, String token) {
-        if (!type.equals("chart")) {
-            if (insecureSkipTlsVerify) {
-                X509TrustManager x509TrustManager = new X509TrustManager() {
-
-                    @Override
-                    public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) {
-                        //此处是不检验安全证书，避免有些harbor仓库没使用https安全证书导致harbor api失败，如果不抛出异常会出现sonar的问题
-                        if (type == null) {
-                            try {
-                                throw new CertificateException("the type is null");
-                            } catch (CertificateException e) {
-                                throw new CommonException(e);
-                            }
-                        }
-                    }
-
-                    @Override
-                    public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) {
-                        //此处是不检验安全证书，避免有些harbor仓库没使用https安全证书导致harbor api失败，如果不抛出异常会出现sonar的问题
-                        if (type == null) {
-                            try {
-                                throw new CertificateException("the type is null");
-                            } catch (CertificateException e) {
-                                throw new CommonException(e);
-                            }
-                        }
-                    }
-
-                    @Override
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                        return new java.security.cert.X509Certificate[]{};
-                    }
-                };
-                final TrustManager[] trustAllCerts = new TrustManager[]{x509TrustManager};
-
-                // Install the all-trusting trust manager
-                SSLContext sslContext = null;
-                try {
-                    sslContext = SSLContext.getInstance("TLSv1.2");
-                    sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-                } catch (NoSuchAlgorithmException | KeyManagementException e) {
-                    throw new CommonException(e);
-                }
-
-                // Create an ssl socket factory with our all-trusting manager
-                SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-                OkHttpClient.Builder okHttpClientBuilder = new OkHttpClient.Builder();
-                okHttpClientBuilder.interceptors().add((Interceptor.Chain chain) -> {
-                    Request original = chain.request();
-
-                    Request.Builder requestBuilder = original.newBuilder()
-                            .header("Authorization", token);
-
-                    Request request = requestBuilder.build();
-                    return chain.proceed(request);
-                });
-                okHttpClientBuilder.sslSocketFactory(sslSocketFactory, x509TrustManager);
-                okHttpClientBuilder.hostnameVerifier((requestedHost, remoteServerSession) -> {
-                    return requestedHost.equalsIgnoreCase(remoteServerSession.getPeerHost()); // Compliant
-                });
-                okHttpClientBuilder.followRedirects(true);
-                return okHttpClientBuilder.build();
-            } else {
-                return RetrofitHandler.buildWithToken(token);
-            }
-        } else {
-            return RetrofitHandler.buildWithToken(token);
-        }
+        // 非chart类型跳过tls校验
+        return getRegistry().getRetrofit(configurationProperties.getBaseUrl(),
+                configurationProperties.getType(),
+                configurationProperties.getUsername(),
+                configurationProperties.getPassword());
     }
 
     /**
@@ -128,16 +42,19 @@ public class RetrofitHandler {
      * @return client
      */
     public static OkHttpClient buildWithToken(String token) {
-        OkHttpClient.Builder okHttpClientBuilder = new OkHttpClient.Builder();
-        okHttpClientBuilder.interceptors().add((Interceptor.Chain chain) -> {
-            Request original = chain.request();
-            Request.Builder requestBuilder = original.newBuilder()
-                    .header("Authorization", token);
-            Request request = requestBuilder.build();
-            return chain.proceed(request);
-        });
-        okHttpClientBuilder.followRedirects(true);
-        return okHttpClientBuilder.build();
+        return getRegistry().newClient(null, token, false);
+    }
+
+    /**
+     * 根据用户名和密码创建basic的token
+     *
+     * @param username 用户名
+     * @param password 密码
+     * @return token
+     */
+    public static String basicToken(String username, String password) {
+        String credentials = username + ":" + password;
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
     }
 
     public static SonarClient getSonarClient(String sonarqubeUrl, String sonar, String userName, String password) {
@@ -150,4 +67,8 @@ public class RetrofitHandler {
         Retrofit retrofit = RetrofitHandler.initRetrofit(configurationProperties);
         return retrofit.create(SonarClient.class);
     }
+
+    private static RetrofitClientRegistry getRegistry() {
+        return ApplicationContextHelper.getContext().getBean(RetrofitClientRegistry.class);
+    }
 }
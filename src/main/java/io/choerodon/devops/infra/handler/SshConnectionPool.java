@@ -0,0 +1,337 @@
+package io.choerodon.devops.infra.handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.common.IOUtils;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+
+/**
+ * ssh连接池, 按照(主机, 端口, 用户, 认证信息)缓存已经认证的连接
+ * <p>
+ * 1. 一个连接上可以同时打开多个执行命令的会话(channel), 最多 maxChannelsPerConnection 个,
+ * 超过之后再建立新的连接, 一个主机最多 maxConnectionsPerHost 个连接, 都被占满时等待
+ * 2. 借出空闲超过 validateAfterIdleSeconds 的连接之前执行一次命令检查连接是否可用, 不可用的连接不再借出,
+ * 没有其它借用者时立即关闭, 否则等最后一个借用者归还时关闭
+ * 3. 空闲超过 idleSeconds 的连接被定时关闭
+ * <p>
+ * 借出的连接必须通过 {@link #release(SSHClient)} 归还, 不能直接断开.
+ *
+ * @author zmf
+ * @since 2020/11/19
+ */
+@Component
+@EnableScheduling
+public class SshConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshConnectionPool.class);
+
+    private static final String METRIC_CONNECTIONS = "devops.ssh.pool.connections";
+    private static final String METRIC_REQUESTS = "devops.ssh.pool.requests";
+    private static final String HEALTH_CHECK_COMMAND = "true";
+
+    @Value("${devops.ssh-pool.connectTimeoutSeconds:10}")
+    private Integer connectTimeoutSeconds;
+    @Value("${devops.ssh-pool.maxConnectionsPerHost:4}")
+    private Integer maxConnectionsPerHost;
+    @Value("${devops.ssh-pool.maxChannelsPerConnection:5}")
+    private Integer maxChannelsPerConnection;
+    @Value("${devops.ssh-pool.borrowTimeoutSeconds:30}")
+    private Integer borrowTimeoutSeconds;
+    @Value("${devops.ssh-pool.validateAfterIdleSeconds:30}")
+    private Integer validateAfterIdleSeconds;
+    @Value("${devops.ssh-pool.idleSeconds:300}")
+    private Integer idleSeconds;
+    @Value("${devops.ssh-pool.keepAliveSeconds:30}")
+    private Integer keepAliveSeconds;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * key为连接的标识, 由调用方根据主机, 端口, 用户和认证信息生成
+     */
+    private final Map<String, HostPool> hostPools = new ConcurrentHashMap<>();
+    /**
+     * 借出的连接和所在的池
+     */
+    private final Map<SSHClient, PooledConnection> leasedConnections = new ConcurrentHashMap<>();
+
+    /**
+     * 建立并认证一个ssh连接
+     */
+    @FunctionalInterface
+    public interface Connector {
+        /**
+         * 建立连接并完成认证
+         *
+         * @param ssh 未连接的客户端, 已经设置了连接超时时间
+         * @throws IOException 连接或者认证失败
+         */
+        void connect(SSHClient ssh) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge(METRIC_CONNECTIONS, hostPools, pools -> pools.values().stream().mapToInt(HostPool::size).sum());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        hostPools.values().forEach(HostPool::closeAll);
+        hostPools.clear();
+    }
+
+    /**
+     * 借出连接, 没有可用的连接时新建
+     *
+     * @param key       连接的标识, 相同标识的连接可以共享
+     * @param connector 新建连接的方式
+     * @return 已经认证的连接
+     * @throws IOException 新建连接失败
+     */
+    public SSHClient acquire(String key, Connector connector) throws IOException {
+        HostPool hostPool = hostPools.computeIfAbsent(key, k -> new HostPool());
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(borrowTimeoutSeconds);
+        while (true) {
+            PooledConnection connection = hostPool.lease(deadline);
+            if (connection == null) {
+                // 没有可以共享的连接并且没有达到连接数量上限, 由当前线程新建连接
+                connection = hostPool.open(connector);
+                record("created");
+            } else if (!validate(connection)) {
+                hostPool.discard(connection);
+                record("invalid");
+                continue;
+            } else {
+                record("reused");
+            }
+            leasedConnections.put(connection.client, connection);
+            return connection.client;
+        }
+    }
+
+    /**
+     * 归还连接, 已经断开的连接会被移除
+     *
+     * @param ssh 借出的连接, 为null时忽略
+     */
+    public void release(SSHClient ssh) {
+        if (ssh == null) {
+            return;
+        }
+        PooledConnection connection = leasedConnections.get(ssh);
+        if (connection == null) {
+            // 不是从连接池借出的连接
+            IOUtils.closeQuietly(ssh);
+            return;
+        }
+        connection.hostPool.release(connection);
+        synchronized (connection.hostPool) {
+            if (connection.active == 0) {
+                leasedConnections.remove(ssh, connection);
+            }
+        }
+    }
+
+    /**
+     * 关闭长时间空闲的连接
+     */
+    @Scheduled(fixedDelay = 1000 * 60)
+    public void evictIdleConnections() {
+        long threshold = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        int evicted = hostPools.values().stream().mapToInt(hostPool -> hostPool.evictIdle(threshold)).sum();
+        if (evicted > 0) {
+            LOGGER.debug("Closed {} idle ssh connections", evicted);
+        }
+    }
+
+    private boolean validate(PooledConnection connection) {
+        SSHClient ssh = connection.client;
+        if (!ssh.isConnected() || !ssh.isAuthenticated()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - connection.lastUsedTime < TimeUnit.SECONDS.toMillis(validateAfterIdleSeconds)) {
+            return true;
+        }
+        try (Session session = ssh.startSession()) {
+            Session.Command cmd = session.exec(HEALTH_CHECK_COMMAND);
+            cmd.join(5, TimeUnit.SECONDS);
+            return cmd.getExitStatus() != null && cmd.getExitStatus() == 0;
+        } catch (Exception ex) {
+            LOGGER.debug("The pooled ssh connection to {} is broken", ssh.getRemoteHostname(), ex);
+            return false;
+        }
+    }
+
+    private void record(String result) {
+        meterRegistry.counter(METRIC_REQUESTS, "result", result).increment();
+    }
+
+    /**
+     * 同一个主机上的连接
+     */
+    private class HostPool {
+        private final List<PooledConnection> connections = new ArrayList<>();
+        /**
+         * 正在建立的连接数
+         */
+        private int opening;
+
+        /**
+         * 选择会话最少的可用连接, 增加它的会话数
+         *
+         * @return 连接, 返回null表示调用方需要新建连接
+         */
+        private synchronized PooledConnection lease(long deadline) {
+            while (true) {
+                connections.removeIf(c -> c.active == 0 && !c.client.isConnected());
+                PooledConnection candidate = null;
+                for (PooledConnection connection : connections) {
+                    if (!connection.broken && connection.active < maxChannelsPerConnection
+                            && (candidate == null || connection.active < candidate.active)) {
+                        candidate = connection;
+                    }
+                }
+                if (candidate != null && (candidate.active == 0 || connections.size() + opening >= maxConnectionsPerHost)) {
+                    candidate.active++;
+                    return candidate;
+                }
+                if (connections.size() + opening < maxConnectionsPerHost) {
+                    opening++;
+                    return null;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new CommonException("error.ssh.pool.exhausted");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CommonException("error.ssh.pool.exhausted", e);
+                }
+            }
+        }
+
+        /**
+         * 新建连接, 在锁外进行, 避免阻塞其它线程借出已有的连接
+         */
+        private PooledConnection open(Connector connector) throws IOException {
+            SSHClient ssh = new SSHClient();
+            ssh.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeoutSeconds));
+            // 不设置socket的读取超时, 否则空闲的连接和长时间没有输出的命令会被断开, 由各个命令的join等待时间限制执行时长
+            // 定时发送心跳, 及时发现断开的连接, 也避免空闲的连接被防火墙断开
+            ssh.getConnection().getKeepAlive().setKeepAliveInterval(keepAliveSeconds);
+            try {
+                connector.connect(ssh);
+            } catch (IOException | RuntimeException e) {
+                IOUtils.closeQuietly(ssh);
+                synchronized (this) {
+                    opening--;
+                    notifyAll();
+                }
+                throw e;
+            }
+            PooledConnection connection = new PooledConnection(this, ssh);
+            synchronized (this) {
+                opening--;
+                connection.active = 1;
+                connections.add(connection);
+            }
+            return connection;
+        }
+
+        private void release(PooledConnection connection) {
+            release(connection, false);
+        }
+
+        /**
+         * 归还当前借用者借出的不可用的连接, 连接不再借出, 其它借用者还在使用时由最后一个借用者归还时关闭
+         */
+        private void discard(PooledConnection connection) {
+            release(connection, true);
+        }
+
+        private void release(PooledConnection connection, boolean broken) {
+            boolean close;
+            synchronized (this) {
+                connection.broken |= broken;
+                connection.active--;
+                connection.lastUsedTime = System.currentTimeMillis();
+                close = connection.active == 0 && (connection.broken || !connection.client.isConnected());
+                if (close) {
+                    connections.remove(connection);
+                }
+                notifyAll();
+            }
+            if (close) {
+                IOUtils.closeQuietly(connection.client);
+            }
+        }
+
+        private int evictIdle(long threshold) {
+            List<PooledConnection> evicted = new ArrayList<>();
+            synchronized (this) {
+                connections.removeIf(c -> {
+                    boolean idle = c.active == 0 && (c.lastUsedTime < threshold || !c.client.isConnected());
+                    if (idle) {
+                        evicted.add(c);
+                    }
+                    return idle;
+                });
+            }
+            evicted.forEach(c -> IOUtils.closeQuietly(c.client));
+            return evicted.size();
+        }
+
+        private synchronized int size() {
+            return connections.size();
+        }
+
+        private void closeAll() {
+            List<PooledConnection> all;
+            synchronized (this) {
+                all = new ArrayList<>(connections);
+                connections.clear();
+            }
+            all.forEach(c -> IOUtils.closeQuietly(c.client));
+        }
+    }
+
+    private static class PooledConnection {
+        private final HostPool hostPool;
+        private final SSHClient client;
+        /**
+         * 借出的次数, 由所在的HostPool加锁修改
+         */
+        private int active;
+        /**
+         * 检查不可用的连接不再借出, 由所在的HostPool加锁修改
+         */
+        private boolean broken;
+        private volatile long lastUsedTime;
+
+        private PooledConnection(HostPool hostPool, SSHClient client) {
+            this.hostPool = hostPool;
+            this.client = client;
+            this.lastUsedTime = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.choerodon.devops.infra.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.api.vo.kubernetes.InstanceValueVO;
+
+/**
+ * 缓存values合并的结果, key为版本values和部署values各自的SHA-256
+ * 同一个版本批量部署到多个环境时, 只需要合并一次
+ * <p>
+ * 缓存的对象不会返回给使用方, 每次返回的都是副本
+ *
+ * @author zmf
+ * @since 2020/11/16
+ */
+@Component
+public class ValuesDiffCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValuesDiffCache.class);
+
+    private static final String METRIC_REQUESTS = "devops.values.diff.cache.requests";
+    private static final String METRIC_SIZE = "devops.values.diff.cache.size";
+
+    private final Map<String, InstanceValueVO> cache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    public ValuesDiffCache(@Value("${devops.values.diff-cache.maxSize:1000}") Integer maxSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, InstanceValueVO>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, InstanceValueVO> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder(METRIC_REQUESTS)
+                .tag("result", "hit")
+                .description("Values diff results served from the cache")
+                .register(meterRegistry);
+        missCounter = Counter.builder(METRIC_REQUESTS)
+                .tag("result", "miss")
+                .description("Values diff results computed because they were not cached")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize(METRIC_SIZE, Collections.emptyList(), cache);
+    }
+
+    /**
+     * 查询合并结果, 不存在时计算并缓存
+     *
+     * @param versionValue 版本的默认values
+     * @param deployValue  部署的values
+     * @param loader       计算合并结果
+     * @return 合并结果的副本
+     */
+    public InstanceValueVO get(String versionValue, String deployValue, Supplier<InstanceValueVO> loader) {
+        String key = sha256(versionValue) + ":" + sha256(deployValue);
+        InstanceValueVO instanceValueVO = cache.get(key);
+        if (instanceValueVO != null) {
+            hitCounter.increment();
+            LOGGER.debug("Values diff cache hit: {}", key);
+            return copy(instanceValueVO);
+        }
+        missCounter.increment();
+        // 并发计算相同的key时结果一致, 不需要加锁
+        instanceValueVO = loader.get();
+        cache.put(key, copy(instanceValueVO));
+        return instanceValueVO;
+    }
+
+    private static InstanceValueVO copy(InstanceValueVO source) {
+        InstanceValueVO target = new InstanceValueVO();
+        target.setYaml(source.getYaml());
+        target.setDeltaYaml(source.getDeltaYaml());
+        target.setTotalLine(source.getTotalLine());
+        target.setNewLines(source.getNewLines() == null ? null : new ArrayList<>(source.getNewLines()));
+        target.setHighlightMarkers(source.getHighlightMarkers() == null ? null : new ArrayList<>(source.getHighlightMarkers()));
+        return target;
+    }
+
+    private static String sha256(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new CommonException(e.getMessage(), e);
+        }
+    }
+}
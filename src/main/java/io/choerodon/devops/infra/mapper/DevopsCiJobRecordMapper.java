@@ -1,5 +1,10 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dto.DevopsCiJobRecordDTO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -12,4 +17,27 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface DevopsCiJobRecordMapper extends BaseMapper<DevopsCiJobRecordDTO> {
 
+    /**
+     * 根据gitlab job id批量查询job记录
+     *
+     * @param gitlabJobIds gitlab job id, 不能为空
+     * @return job记录
+     */
+    List<DevopsCiJobRecordDTO> listByGitlabJobIds(@Param("gitlabJobIds") Collection<Long> gitlabJobIds);
+
+    /**
+     * 批量插入, 不回写主键
+     *
+     * @param items 纪录, 不能为空
+     */
+    void batchInsert(@Param("items") List<DevopsCiJobRecordDTO> items);
+
+    /**
+     * 根据主键批量更新job的状态相关字段(ci_pipeline_record_id, status, started_date, finished_date, trigger_user_id)和last_updated_by
+     * 版本号和查询时不一致的纪录(已经被其它线程更新)不会被更新
+     *
+     * @param items 纪录, 不能为空, 需要包含查询时的版本号
+     * @return 更新的纪录数
+     */
+    int batchUpdateStatus(@Param("items") List<DevopsCiJobRecordDTO> items);
 }
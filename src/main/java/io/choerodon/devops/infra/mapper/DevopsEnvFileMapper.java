@@ -1,5 +1,8 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.ibatis.annotations.Param;
 
 import io.choerodon.devops.infra.dto.DevopsEnvFileDTO;
@@ -8,4 +11,25 @@ import io.choerodon.mybatis.common.BaseMapper;
 public interface DevopsEnvFileMapper extends BaseMapper<DevopsEnvFileDTO> {
 
     DevopsEnvFileDTO queryLatestByEnvAndPath(@Param("envId") Long envId, @Param("filePath") String filePath);
+
+    /**
+     * 批量插入, 不回写主键
+     *
+     * @param items 纪录, 不能为空
+     */
+    void batchInsert(@Param("items") List<DevopsEnvFileDTO> items);
+
+    /**
+     * 根据主键批量更新devops_commit字段
+     *
+     * @param items 纪录, 不能为空
+     */
+    void batchUpdateDevopsCommit(@Param("items") List<DevopsEnvFileDTO> items);
+
+    /**
+     * 根据主键批量删除
+     *
+     * @param ids 主键, 不能为空
+     */
+    void batchDeleteByIds(@Param("ids") Collection<Long> ids);
 }
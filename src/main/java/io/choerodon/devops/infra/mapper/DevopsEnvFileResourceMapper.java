@@ -1,5 +1,8 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.ibatis.annotations.Param;
 
 import io.choerodon.devops.infra.dto.DevopsEnvFileResourceDTO;
@@ -23,4 +26,39 @@ public interface DevopsEnvFileResourceMapper extends BaseMapper<DevopsEnvFileRes
     int countRecords(@Param("envId") Long envId,
                      @Param("resourceType") String resourceType,
                      @Param("resourceId") Long resourceId);
+
+    /**
+     * 查询环境下指定文件的解析纪录
+     *
+     * @param envId     环境id
+     * @param filePaths 文件路径, 不能为空
+     * @return 纪录
+     */
+    List<DevopsEnvFileResourceDTO> listByEnvIdAndFilePaths(@Param("envId") Long envId,
+                                                           @Param("filePaths") Collection<String> filePaths);
+
+    /**
+     * 批量插入解析纪录, 插入后纪录的id会回写到传入的对象中
+     *
+     * @param items 纪录, 需要设置审计字段, 不能为空
+     */
+    void batchInsert(List<DevopsEnvFileResourceDTO> items);
+
+    /**
+     * 根据id批量更新解析纪录的文件路径
+     *
+     * @param items  纪录, 不能为空
+     * @param userId 更新的用户id
+     */
+    void batchUpdateFilePath(@Param("items") List<DevopsEnvFileResourceDTO> items,
+                             @Param("userId") Long userId);
+
+    /**
+     * 批量删除环境下资源的解析纪录
+     *
+     * @param envId 环境id
+     * @param items 资源id和资源类型, 不能为空
+     */
+    void batchDeleteByResources(@Param("envId") Long envId,
+                                @Param("items") List<DevopsEnvFileResourceDTO> items);
 }
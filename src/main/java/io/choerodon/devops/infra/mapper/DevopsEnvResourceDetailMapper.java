@@ -13,4 +13,10 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface DevopsEnvResourceDetailMapper extends BaseMapper<DevopsEnvResourceDetailDTO> {
     List<DevopsEnvResourceDetailDTO> listByMessageIds(@Param("resourceDetailIds") Set<Long> resourceDetailIds);
+
+    /**
+     * 批量查询资源的摘要信息, 只有摘要信息的版本不是summaryVersion时才查询完整的资源信息
+     */
+    List<DevopsEnvResourceDetailDTO> listSummariesByMessageIds(@Param("resourceDetailIds") Set<Long> resourceDetailIds,
+                                                               @Param("summaryVersion") Integer summaryVersion);
 }
@@ -23,6 +23,11 @@ public interface DevopsGitlabCommitMapper extends BaseMapper<DevopsGitlabCommitD
 
     void deleteByAppServiceId(@Param("appServiceId") Long appServiceId);
 
+    List<String> listExistingShas(@Param("ref") String ref,
+                                  @Param("commitShas") List<String> commitShas);
+
+    void batchInsert(@Param("items") List<DevopsGitlabCommitDTO> items);
+
     List<LatestAppServiceVO> listLatestUseAppServiceIdAndDate(@Param("projectIds") List<Long> projectIds,
                                                               @Param("userId") Long userId,
                                                               @Param("time") java.util.Date time);
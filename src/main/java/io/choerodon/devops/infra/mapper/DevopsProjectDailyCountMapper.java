@@ -0,0 +1,91 @@
+package io.choerodon.devops.infra.mapper;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+import io.choerodon.devops.infra.dto.DevopsProjectDailyCountDTO;
+import io.choerodon.mybatis.common.BaseMapper;
+
+/**
+ * @author zmf
+ * @since 2020/11/20
+ */
+public interface DevopsProjectDailyCountMapper extends BaseMapper<DevopsProjectDailyCountDTO> {
+    /**
+     * 累加项目的次数, 每个时间计一次, 按照数据库的DATE()归到对应的日期, 没有记录时新建
+     *
+     * @param projectId 项目id
+     * @param metric    统计项
+     * @param dates     发生的时间, 不能为空
+     */
+    void increase(@Param("projectId") Long projectId,
+                  @Param("metric") String metric,
+                  @Param("dates") List<Date> dates);
+
+    /**
+     * 减去应用服务的提交次数, 需要在删除提交之前调用
+     *
+     * @param appServiceId 应用服务id
+     */
+    void decreaseCommitCountByAppServiceId(@Param("appServiceId") Long appServiceId);
+
+    /**
+     * 减去实例或者环境下所有实例的部署次数, 需要在删除实例之前调用
+     *
+     * @param instanceId 实例id, 为null时按照环境id
+     * @param envId      环境id
+     */
+    void decreaseDeployCount(@Param("instanceId") Long instanceId,
+                             @Param("envId") Long envId);
+
+    /**
+     * 按照日期升序查询项目在时间范围内的统计数据
+     *
+     * @param projectId 项目id
+     * @param metric    统计项
+     * @param startDate 开始日期(包含)
+     * @param endDate   结束日期(包含)
+     * @return 统计数据, 没有数据的日期不返回
+     */
+    List<DevopsProjectDailyCountDTO> listByProjectIdAndDate(@Param("projectId") Long projectId,
+                                                            @Param("metric") String metric,
+                                                            @Param("startDate") Date startDate,
+                                                            @Param("endDate") Date endDate);
+
+    /**
+     * 查询有提交, 环境或者流水线的项目, 用于重新统计
+     *
+     * @return 项目id
+     */
+    List<Long> listProjectIds();
+
+    /**
+     * 删除项目所有的统计数据
+     *
+     * @param projectId 项目id
+     */
+    void deleteByProjectId(@Param("projectId") Long projectId);
+
+    /**
+     * 根据已有的提交重新统计项目的提交次数
+     *
+     * @param projectId 项目id
+     */
+    void rebuildCommitCount(@Param("projectId") Long projectId);
+
+    /**
+     * 根据已有的实例部署命令重新统计项目的部署次数
+     *
+     * @param projectId 项目id
+     */
+    void rebuildDeployCount(@Param("projectId") Long projectId);
+
+    /**
+     * 根据已有的流水线记录重新统计项目的流水线触发次数
+     *
+     * @param projectId 项目id
+     */
+    void rebuildCiCount(@Param("projectId") Long projectId);
+}
@@ -0,0 +1,64 @@
+package io.choerodon.devops.infra.mapper;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+import io.choerodon.devops.infra.dto.DevopsWebhookEventDTO;
+import io.choerodon.mybatis.common.BaseMapper;
+
+/**
+ * @author zmf
+ * @since 2020/11/20
+ */
+public interface DevopsWebhookEventMapper extends BaseMapper<DevopsWebhookEventDTO> {
+    /**
+     * 时间窗口内没有内容摘要相同的事件时插入事件
+     *
+     * @param event         事件, 需要设置内容摘要
+     * @param windowSeconds 去重的时间窗口, 单位: 秒
+     * @param userId        审计字段的用户id
+     * @return 插入的条数, 0表示时间窗口内已经有相同的事件
+     */
+    int insertIfNoRecentDuplicate(@Param("event") DevopsWebhookEventDTO event,
+                                  @Param("windowSeconds") Long windowSeconds,
+                                  @Param("userId") Long userId);
+
+    /**
+     * 查询有待处理事件的gitlab项目
+     *
+     * @param now   当前时间
+     * @param limit 最多的条数
+     * @return gitlab项目id
+     */
+    List<Long> listPendingProjectIds(@Param("now") Date now,
+                                     @Param("limit") Integer limit);
+
+    /**
+     * 按照接收的顺序查询gitlab项目的待处理事件
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param limit           最多的条数
+     * @return 待处理的事件
+     */
+    List<DevopsWebhookEventDTO> listPendingByProjectId(@Param("gitlabProjectId") Long gitlabProjectId,
+                                                       @Param("limit") Integer limit);
+
+    /**
+     * 更新事件的处理结果
+     */
+    void updateResult(@Param("id") Long id,
+                      @Param("status") String status,
+                      @Param("retryCount") Integer retryCount,
+                      @Param("nextProcessTime") Date nextProcessTime,
+                      @Param("errorMessage") String errorMessage);
+
+    /**
+     * 删除指定时间之前处理完成(成功或者失败)的事件, 删除后相同的事件可以再次被接收
+     *
+     * @param before 时间
+     * @return 删除的条数
+     */
+    int deleteFinishedBefore(@Param("before") Date before);
+}
@@ -0,0 +1,252 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 使用Gorilla的方式压缩的时间序列数据块
+ * <p>
+ * 1. 时间戳(秒)存储第一个值, 之后存储二阶差分(delta-of-delta), 采集间隔固定时每个点只需要1位
+ * 2. 数值存储和前一个值的异或, 只记录有效位, 变化不大时每个点只需要几位
+ * <p>
+ * 数据只能按照时间顺序追加, 非线程安全
+ *
+ * @author zmf
+ * @since 2020/11/12
+ */
+public class GorillaChunk {
+    private static final int COUNT_BYTES = Integer.BYTES;
+
+    private byte[] buffer;
+    private int bitLength;
+    private int count;
+
+    private long firstTimestamp;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousValueBits;
+    private int previousLeading = Integer.MAX_VALUE;
+    private int previousTrailing;
+
+    public GorillaChunk() {
+        this.buffer = new byte[64];
+    }
+
+    /**
+     * 追加一个点
+     *
+     * @param timestamp 时间戳, 单位: 秒, 不能小于上一个点的时间戳
+     * @param value     值
+     */
+    public void append(long timestamp, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            writeBits(timestamp, 64);
+            writeBits(valueBits, 64);
+        } else {
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(delta - previousDelta);
+            writeValue(valueBits);
+            previousDelta = delta;
+        }
+        previousTimestamp = timestamp;
+        previousValueBits = valueBits;
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return previousTimestamp;
+    }
+
+    /**
+     * 压缩之后占用的字节数
+     */
+    public int sizeInBytes() {
+        return (bitLength + 7) / 8;
+    }
+
+    /**
+     * 序列化, 格式为: 4字节的点数 + 压缩的数据
+     *
+     * @return 字节数组
+     */
+    public byte[] toBytes() {
+        int size = sizeInBytes();
+        return ByteBuffer.allocate(COUNT_BYTES + size)
+                .putInt(count)
+                .put(buffer, 0, size)
+                .array();
+    }
+
+    /**
+     * 解码所有的点
+     *
+     * @return 按时间排序的点, 每个元素为 [时间戳(秒), 值]
+     */
+    public List<double[]> decode() {
+        return decode(buffer, 0, count);
+    }
+
+    /**
+     * 解码 {@link #toBytes()} 得到的字节数组
+     *
+     * @param bytes 字节数组
+     * @return 按时间排序的点, 每个元素为 [时间戳(秒), 值]
+     */
+    public static List<double[]> decode(byte[] bytes) {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        int count = byteBuffer.getInt();
+        return decode(bytes, COUNT_BYTES, count);
+    }
+
+    private static List<double[]> decode(byte[] bytes, int offset, int count) {
+        List<double[]> points = new ArrayList<>(count);
+        if (count == 0) {
+            return points;
+        }
+        BitReader reader = new BitReader(bytes, offset);
+        long timestamp = reader.readBits(64);
+        long valueBits = reader.readBits(64);
+        points.add(new double[]{timestamp, Double.longBitsToDouble(valueBits)});
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(reader);
+            timestamp += delta;
+
+            if (reader.readBit()) {
+                if (reader.readBit()) {
+                    leading = (int) reader.readBits(5);
+                    int meaningful = (int) reader.readBits(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                int meaningful = 64 - leading - trailing;
+                valueBits ^= reader.readBits(meaningful) << trailing;
+            }
+            points.add(new double[]{timestamp, Double.longBitsToDouble(valueBits)});
+        }
+        return points;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        if (!reader.readBit()) {
+            return 0;
+        }
+        if (!reader.readBit()) {
+            return reader.readSignedBits(7);
+        }
+        if (!reader.readBit()) {
+            return reader.readSignedBits(9);
+        }
+        if (!reader.readBit()) {
+            return reader.readSignedBits(12);
+        }
+        return reader.readBits(64);
+    }
+
+    private void writeValue(long valueBits) {
+        long xor = valueBits ^ previousValueBits;
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        writeBits(1, 1);
+        // 前导0的个数用5位存储, 最大为31
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading != Integer.MAX_VALUE && leading >= previousLeading && trailing >= previousTrailing) {
+            // 有效位落在上一个值的有效位范围内, 复用上一个值的前导和后缀0的个数
+            writeBits(0, 1);
+            writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            writeBits(1, 1);
+            writeBits(leading, 5);
+            writeBits(meaningful - 1L, 6);
+            writeBits(xor >>> trailing, meaningful);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    /**
+     * 按照从高位到低位的顺序写入value的低nbits位
+     */
+    private void writeBits(long value, int nbits) {
+        ensureCapacity(bitLength + nbits);
+        for (int i = nbits - 1; i >= 0; i--) {
+            if (((value >>> i) & 1L) != 0) {
+                buffer[bitLength >>> 3] |= (byte) (0x80 >>> (bitLength & 7));
+            }
+            bitLength++;
+        }
+    }
+
+    private void ensureCapacity(int bits) {
+        int bytes = (bits + 7) / 8;
+        if (bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(bytes, buffer.length * 2));
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private int position;
+
+        private BitReader(byte[] bytes, int byteOffset) {
+            this.bytes = bytes;
+            this.position = byteOffset * 8;
+        }
+
+        private boolean readBit() {
+            boolean bit = (bytes[position >>> 3] & (0x80 >>> (position & 7))) != 0;
+            position++;
+            return bit;
+        }
+
+        private long readBits(int nbits) {
+            long value = 0;
+            for (int i = 0; i < nbits; i++) {
+                value = (value << 1) | (readBit() ? 1L : 0L);
+            }
+            return value;
+        }
+
+        private long readSignedBits(int nbits) {
+            long value = readBits(nbits);
+            // 符号扩展
+            return (value << (64 - nbits)) >> (64 - nbits);
+        }
+    }
+}
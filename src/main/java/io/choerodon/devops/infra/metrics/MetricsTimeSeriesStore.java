@@ -0,0 +1,306 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.api.vo.MetricsPointVO;
+import io.choerodon.devops.infra.enums.MetricsResolution;
+
+/**
+ * pod和节点监控数据的时间序列存储
+ * <p>
+ * 1. 每个序列在内存中保留各个精度当前正在写入的数据块, 使用 {@link GorillaChunk} 压缩
+ * 2. 原始数据写入时同时聚合为1分钟/5分钟/1小时的平均值
+ * 3. 数据块的时间跨度达到上限时写入redis并设置过期时间, 正在写入的数据块也会定时写入redis, 使其它实例可以查询到
+ * 4. 每个集群在内存中最多保留 maxSeriesPerCluster 个序列, 超过之后按照最近最少使用写入redis并移出内存
+ *
+ * @author zmf
+ * @since 2020/11/12
+ */
+@Component
+public class MetricsTimeSeriesStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsTimeSeriesStore.class);
+
+    /**
+     * devops:metrics:chunk:${series}:${resolution}:${数据块第一个点的时间戳}
+     */
+    private static final String CHUNK_KEY_TEMPLATE = "devops:metrics:chunk:%s:%s:%s";
+    /**
+     * 序列的数据块索引, 是一个zset, score和member都是数据块第一个点的时间戳
+     * devops:metrics:index:${series}:${resolution}
+     */
+    private static final String INDEX_KEY_TEMPLATE = "devops:metrics:index:%s:%s";
+
+    private final Map<String, ClusterSeries> clusters = new ConcurrentHashMap<>();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${devops.metrics.maxSeriesPerCluster:20000}")
+    private Integer maxSeriesPerCluster;
+
+    /**
+     * 记录一个点
+     *
+     * @param cluster   集群标识, 内存占用按照集群限制
+     * @param series    序列的标识, 在所有集群中唯一
+     * @param timestamp 时间戳, 单位: 秒
+     * @param value     值
+     */
+    public void record(String cluster, String series, long timestamp, double value) {
+        List<ChunkSnapshot> sealed = new ArrayList<>();
+        ClusterSeries clusterSeries = clusters.computeIfAbsent(cluster, k -> new ClusterSeries());
+        synchronized (clusterSeries) {
+            clusterSeries.series.computeIfAbsent(series, SeriesState::new).append(timestamp, value, sealed);
+            Iterator<SeriesState> iterator = clusterSeries.series.values().iterator();
+            while (clusterSeries.series.size() > maxSeriesPerCluster && iterator.hasNext()) {
+                iterator.next().sealAll(sealed);
+                iterator.remove();
+            }
+        }
+        write(sealed);
+    }
+
+    /**
+     * 查询时间范围内的点
+     *
+     * @param cluster    集群标识
+     * @param series     序列的标识
+     * @param resolution 精度
+     * @param from       开始时间, 单位: 秒, 包含
+     * @param to         结束时间, 单位: 秒, 包含
+     * @return 按时间排序的点
+     */
+    public List<MetricsPointVO> range(String cluster, String series, MetricsResolution resolution, long from, long to) {
+        TreeMap<Long, Double> points = new TreeMap<>();
+
+        // 已经写入redis的数据块, 开始时间早于from的数据块也可能包含范围内的点
+        String indexKey = String.format(INDEX_KEY_TEMPLATE, series, resolution.value());
+        Set<String> chunkStarts = stringRedisTemplate.opsForZSet().rangeByScore(indexKey, from - resolution.getChunkSeconds(), to);
+        if (chunkStarts != null && !chunkStarts.isEmpty()) {
+            List<String> chunkKeys = chunkStarts.stream()
+                    .map(start -> String.format(CHUNK_KEY_TEMPLATE, series, resolution.value(), start))
+                    .collect(Collectors.toList());
+            List<String> chunks = stringRedisTemplate.opsForValue().multiGet(chunkKeys);
+            if (chunks != null) {
+                chunks.stream()
+                        .filter(Objects::nonNull)
+                        .forEach(chunk -> addPoints(points, GorillaChunk.decode(Base64.getDecoder().decode(chunk)), from, to));
+            }
+        }
+
+        // 本实例内存中正在写入的数据块
+        ClusterSeries clusterSeries = clusters.get(cluster);
+        if (clusterSeries != null) {
+            List<double[]> localPoints = null;
+            synchronized (clusterSeries) {
+                SeriesState state = clusterSeries.series.get(series);
+                if (state != null) {
+                    localPoints = state.resolutions.get(resolution).decode();
+                }
+            }
+            if (localPoints != null) {
+                addPoints(points, localPoints, from, to);
+            }
+        }
+
+        return points.entrySet().stream()
+                .map(entry -> new MetricsPointVO(entry.getKey() * 1000, entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 定时将正在写入的数据块写入redis, 已经写入之后没有变化的不再写入
+     */
+    @Scheduled(fixedDelayString = "${devops.metrics.flushIntervalMillis:60000}")
+    public void flush() {
+        clusters.values().forEach(clusterSeries -> {
+            List<ChunkSnapshot> snapshots = new ArrayList<>();
+            synchronized (clusterSeries) {
+                clusterSeries.series.values().forEach(state -> state.snapshotDirty(snapshots));
+            }
+            write(snapshots);
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    private static void addPoints(Map<Long, Double> points, List<double[]> decoded, long from, long to) {
+        decoded.forEach(point -> {
+            long timestamp = (long) point[0];
+            if (timestamp >= from && timestamp <= to) {
+                points.put(timestamp, point[1]);
+            }
+        });
+    }
+
+    private void write(List<ChunkSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+                snapshots.forEach(snapshot -> {
+                    MetricsResolution resolution = snapshot.resolution;
+                    // 保证数据块中最后的点也能保留 retention 的时间
+                    long expireSeconds = resolution.getRetentionSeconds() + resolution.getChunkSeconds();
+                    String start = String.valueOf(snapshot.start);
+                    String indexKey = String.format(INDEX_KEY_TEMPLATE, snapshot.series, resolution.value());
+                    stringRedisConnection.setEx(String.format(CHUNK_KEY_TEMPLATE, snapshot.series, resolution.value(), start),
+                            expireSeconds, Base64.getEncoder().encodeToString(snapshot.bytes));
+                    stringRedisConnection.zAdd(indexKey, snapshot.start, start);
+                    stringRedisConnection.zRemRangeByScore(indexKey, 0, (double) (now - expireSeconds));
+                    stringRedisConnection.expire(indexKey, expireSeconds);
+                });
+                return null;
+            });
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to write {} metrics chunks to redis", snapshots.size(), ex);
+        }
+    }
+
+    private static final class ClusterSeries {
+        /**
+         * 按照访问顺序排列, 使用对象本身作为锁
+         */
+        private final LinkedHashMap<String, SeriesState> series = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    /**
+     * 一个序列在各个精度下的状态
+     */
+    private static final class SeriesState {
+        private final Map<MetricsResolution, ResolutionState> resolutions = new EnumMap<>(MetricsResolution.class);
+
+        private SeriesState(String series) {
+            for (MetricsResolution resolution : MetricsResolution.values()) {
+                resolutions.put(resolution, new ResolutionState(series, resolution));
+            }
+        }
+
+        private void append(long timestamp, double value, List<ChunkSnapshot> sealed) {
+            resolutions.values().forEach(state -> state.accept(timestamp, value, sealed));
+        }
+
+        private void sealAll(List<ChunkSnapshot> sealed) {
+            resolutions.values().forEach(state -> state.seal(sealed));
+        }
+
+        private void snapshotDirty(List<ChunkSnapshot> snapshots) {
+            resolutions.values().forEach(state -> state.snapshotIfDirty(snapshots));
+        }
+    }
+
+    /**
+     * 一个序列在某个精度下正在写入的数据块和正在聚合的时间段
+     */
+    private static final class ResolutionState {
+        private final String series;
+        private final MetricsResolution resolution;
+        private GorillaChunk chunk;
+        private boolean dirty;
+        private long bucketStart = -1;
+        private double bucketSum;
+        private int bucketCount;
+
+        private ResolutionState(String series, MetricsResolution resolution) {
+            this.series = series;
+            this.resolution = resolution;
+        }
+
+        private void accept(long timestamp, double value, List<ChunkSnapshot> sealed) {
+            if (resolution == MetricsResolution.RAW) {
+                appendToChunk(timestamp, value, sealed);
+                return;
+            }
+            long bucket = timestamp - timestamp % resolution.getIntervalSeconds();
+            if (bucket < bucketStart) {
+                // 乱序的点直接丢弃
+                return;
+            }
+            if (bucket != bucketStart) {
+                flushBucket(sealed);
+                bucketStart = bucket;
+            }
+            bucketSum += value;
+            bucketCount++;
+        }
+
+        private void flushBucket(List<ChunkSnapshot> sealed) {
+            if (bucketCount > 0) {
+                appendToChunk(bucketStart, bucketSum / bucketCount, sealed);
+            }
+            bucketSum = 0;
+            bucketCount = 0;
+        }
+
+        private void appendToChunk(long timestamp, double value, List<ChunkSnapshot> sealed) {
+            if (chunk != null && timestamp < chunk.getLastTimestamp()) {
+                return;
+            }
+            if (chunk != null && timestamp - chunk.getFirstTimestamp() >= resolution.getChunkSeconds()) {
+                sealed.add(new ChunkSnapshot(series, resolution, chunk));
+                chunk = null;
+            }
+            if (chunk == null) {
+                chunk = new GorillaChunk();
+            }
+            chunk.append(timestamp, value);
+            dirty = true;
+        }
+
+        private void seal(List<ChunkSnapshot> sealed) {
+            flushBucket(sealed);
+            if (chunk != null && chunk.getCount() > 0) {
+                sealed.add(new ChunkSnapshot(series, resolution, chunk));
+            }
+            chunk = null;
+            dirty = false;
+        }
+
+        private void snapshotIfDirty(List<ChunkSnapshot> snapshots) {
+            if (dirty && chunk != null) {
+                snapshots.add(new ChunkSnapshot(series, resolution, chunk));
+                dirty = false;
+            }
+        }
+
+        private List<double[]> decode() {
+            return chunk == null ? Collections.emptyList() : chunk.decode();
+        }
+    }
+
+    /**
+     * 待写入redis的数据块
+     */
+    private static final class ChunkSnapshot {
+        private final String series;
+        private final MetricsResolution resolution;
+        private final long start;
+        private final byte[] bytes;
+
+        private ChunkSnapshot(String series, MetricsResolution resolution, GorillaChunk chunk) {
+            this.series = series;
+            this.resolution = resolution;
+            this.start = chunk.getFirstTimestamp();
+            this.bytes = chunk.toBytes();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.choerodon.devops.infra.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import io.choerodon.core.exception.CommonException;
+
+/**
+ * 流式读取chart包(tgz), 不解压到磁盘
+ * 只在内存中保留层级最浅(即chart根目录下, 而不是子chart中)的values.yaml和README.md的内容
+ *
+ * @author zmf
+ * @since 2020/11/17
+ */
+public class ChartArchiveReader {
+    private static final String VALUES_FILE = "values.yaml";
+    private static final String README_FILE = "README.md";
+    /**
+     * 单个文件在内存中的最大字节数
+     */
+    private static final int MAX_ENTRY_BYTES = 5 * 1024 * 1024;
+
+    private boolean read;
+    private String values;
+    private int valuesDepth;
+    private String readme;
+    private int readmeDepth;
+
+    /**
+     * 读取chart包, 读取完成后会将输入流剩余的数据读完, 便于同时将读到的数据写到其它地方
+     * 可以重复调用, 每次调用会清除之前的结果
+     *
+     * @param inputStream chart包的输入流, 不会被关闭
+     * @throws IOException 读取失败或者不是合法的tgz文件
+     */
+    public void read(InputStream inputStream) throws IOException {
+        read = false;
+        values = null;
+        valuesDepth = Integer.MAX_VALUE;
+        readme = null;
+        readmeDepth = Integer.MAX_VALUE;
+
+        // 不关闭gzip和tar的流, 避免关闭传入的流
+        GzipCompressorInputStream gzipInputStream = new GzipCompressorInputStream(inputStream);
+        TarArchiveInputStream tarInputStream = new TarArchiveInputStream(gzipInputStream);
+        TarArchiveEntry entry;
+        while ((entry = tarInputStream.getNextTarEntry()) != null) {
+            if (!entry.isFile()) {
+                continue;
+            }
+            String[] segments = entry.getName().replaceFirst("^\\./", "").split("/");
+            String fileName = segments[segments.length - 1];
+            int depth = segments.length;
+            if (VALUES_FILE.equals(fileName) && depth < valuesDepth) {
+                values = readEntry(tarInputStream, entry);
+                valuesDepth = depth;
+            } else if (README_FILE.equals(fileName) && depth < readmeDepth) {
+                readme = readEntry(tarInputStream, entry);
+                readmeDepth = depth;
+            }
+        }
+        // tar的结束标记之后可能还有填充的数据
+        byte[] buffer = new byte[8192];
+        while (inputStream.read(buffer) != -1) {
+            // 丢弃
+        }
+        read = true;
+    }
+
+    public boolean isRead() {
+        return read;
+    }
+
+    /**
+     * @return chart根目录下的values.yaml的内容, 不存在时为null
+     */
+    public String getValues() {
+        return values;
+    }
+
+    /**
+     * @return chart根目录下的README.md的内容, 不存在时为null
+     */
+    public String getReadme() {
+        return readme;
+    }
+
+    private static String readEntry(InputStream inputStream, TarArchiveEntry entry) throws IOException {
+        if (entry.getSize() > MAX_ENTRY_BYTES) {
+            throw new CommonException("error.chart.file.too.large", entry.getName(), MAX_ENTRY_BYTES);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) entry.getSize());
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, n);
+        }
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
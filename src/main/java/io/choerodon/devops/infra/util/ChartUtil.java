@@ -13,11 +13,14 @@ import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
 import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
 import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.Retrofit;
@@ -54,6 +57,50 @@ public class ChartUtil {
     DevopsConfigService devopsConfigService;
 
     public void uploadChart(String repository, String organizationCode, String projectCode, File file, @Nullable String username, @Nullable String password) {
+        file = new File(file.getAbsolutePath());
+        RequestBody requestFile = RequestBody.create(MediaType.parse("multipart/form-data"), file);
+        doUploadChart(repository, organizationCode, projectCode, file.getName(), requestFile, username, password);
+    }
+
+    /**
+     * 上传chart包到chart museum, 上传的同时读取chart包中的values.yaml和README.md, chart包不写入磁盘
+     *
+     * @return 读取的chart包内容
+     */
+    public ChartArchiveReader uploadChart(String repository, String organizationCode, String projectCode, MultipartFile file, @Nullable String username, @Nullable String password) {
+        ChartArchiveReader chartArchiveReader = new ChartArchiveReader();
+        RequestBody requestFile = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return MediaType.parse("multipart/form-data");
+            }
+
+            @Override
+            public long contentLength() {
+                return file.getSize();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                // 发送的数据同时交给chart包的读取, 重试时会重新读取
+                try (InputStream inputStream = new TeeInputStream(file.getInputStream(), sink.outputStream(), false)) {
+                    chartArchiveReader.read(inputStream);
+                }
+            }
+        };
+        doUploadChart(repository, organizationCode, projectCode, file.getOriginalFilename(), requestFile, username, password);
+        if (!chartArchiveReader.isRead()) {
+            // 请求体没有发送时单独读取
+            try (InputStream inputStream = file.getInputStream()) {
+                chartArchiveReader.read(inputStream);
+            } catch (IOException e) {
+                throw new CommonException(e);
+            }
+        }
+        return chartArchiveReader;
+    }
+
+    private void doUploadChart(String repository, String organizationCode, String projectCode, String fileName, RequestBody requestFile, @Nullable String username, @Nullable String password) {
         ConfigurationProperties configurationProperties = new ConfigurationProperties();
         configurationProperties.setType(CHART);
         repository = repository.endsWith("/") ? repository.substring(0, repository.length() - 1) : repository;
@@ -61,9 +108,7 @@ public class ChartUtil {
         configurationProperties.setUsername(username);
         configurationProperties.setPassword(password);
         Retrofit retrofit = RetrofitHandler.initRetrofit(configurationProperties);
-        file = new File(file.getAbsolutePath());
-        RequestBody requestFile = RequestBody.create(MediaType.parse("multipart/form-data"), file);
-        MultipartBody.Part body = MultipartBody.Part.createFormData(CHART, file.getName(), requestFile);
+        MultipartBody.Part body = MultipartBody.Part.createFormData(CHART, fileName, requestFile);
         ChartClient chartClient = retrofit.create(ChartClient.class);
         Call<Object> uploadTaz = chartClient.uploadTaz(organizationCode, projectCode, body);
         try {
@@ -34,17 +34,11 @@ import org.springframework.web.multipart.MultipartFile;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.composer.Composer;
-import org.yaml.snakeyaml.nodes.MappingNode;
-import org.yaml.snakeyaml.nodes.Node;
-import org.yaml.snakeyaml.nodes.NodeTuple;
-import org.yaml.snakeyaml.nodes.ScalarNode;
 import org.yaml.snakeyaml.parser.ParserImpl;
 import org.yaml.snakeyaml.reader.StreamReader;
 import org.yaml.snakeyaml.resolver.Resolver;
 
 import io.choerodon.core.exception.CommonException;
-import io.choerodon.devops.api.vo.kubernetes.HighlightMarker;
-import io.choerodon.devops.api.vo.kubernetes.InstanceValueVO;
 
 /**
  * Created by younger on 2018/4/13.
@@ -53,7 +47,6 @@ public class FileUtil {
 
     private static final int BUFFER_SIZE = 2048;
     private static final Logger logger = LoggerFactory.getLogger(FileUtil.class);
-    private static final String EXEC_PATH = "/usr/lib/yaml/values_yaml";
 
 
     private FileUtil() {
@@ -458,132 +451,6 @@ public class FileUtil {
     }
 
 
-    /**
-     * 指定values文件路径
-     *
-     * @param path 路径
-     * @return 返回替换结果
-     */
-    public static InstanceValueVO replaceNew(String path) {
-        BufferedReader stdInput = null;
-        BufferedReader stdError = null;
-        InstanceValueVO instanceValueVO = null;
-        try {
-
-            String command = EXEC_PATH + " " + path;
-            // TODO 这里每次执行都是开启了一个新进程，可能开销不小
-            Process p = Runtime.getRuntime().exec(command);
-
-            stdInput = new BufferedReader(new
-                    InputStreamReader(p.getInputStream()));
-
-            stdError = new BufferedReader(new
-                    InputStreamReader(p.getErrorStream()));
-
-            StringBuilder stringBuilder = new StringBuilder();
-            String s = null;
-            while ((s = stdInput.readLine()) != null) {
-                stringBuilder.append(s).append("\n");
-            }
-            String result = stringBuilder.toString();
-            String err = null;
-            instanceValueVO = loadResult(result);
-            while ((err = stdError.readLine()) != null) {
-                err += err;
-            }
-        } catch (IOException e) {
-            throw new CommonException(e);
-        } finally {
-            try {
-                if (stdError != null) {
-                    stdError.close();
-                }
-                if (stdInput != null) {
-                    stdInput.close();
-                }
-            } catch (IOException e) {
-                logger.info(e.getMessage(), e);
-            }
-        }
-        return instanceValueVO;
-    }
-
-    private static InstanceValueVO loadResult(String yml) {
-        String[] strings = yml.split("------love----you------choerodon----");
-        if (strings.length < 2) {
-            throw new CommonException("error.value.illegal");
-        }
-        Yaml yaml = new Yaml();
-        Object map = yaml.load(strings[2]);
-        InstanceValueVO instanceValueVO = replaceNew(strings[0], (Map) map);
-        instanceValueVO.setDeltaYaml(strings[1]);
-        return instanceValueVO;
-    }
-
-    private static InstanceValueVO replaceNew(String yaml, Map map) {
-        Composer composer = new Composer(new ParserImpl(new StreamReader(yaml)), new Resolver());
-        MappingNode mappingNode = (MappingNode) composer.getSingleNode();
-        List<Integer> addLines = new ArrayList<>();
-
-        //处理新增
-        ArrayList addLists = (ArrayList) map.get("add");
-        for (Object add : addLists) {
-            ArrayList<String> addList = (ArrayList<String>) add;
-            Node node = getKeysNode(addList, mappingNode);
-            if (node != null) {
-                appendLine(node.getStartMark().getLine(), node.getEndMark().getLine(), addLines);
-            }
-        }
-
-        List<HighlightMarker> highlightMarkers = new ArrayList<>();
-
-        //处理修改
-        ArrayList updateList = (ArrayList) map.get("update");
-        for (Object add : updateList) {
-            ArrayList<String> addList = (ArrayList<String>) add;
-            Node node = getKeysNode(addList, mappingNode);
-            HighlightMarker highlightMarker = new HighlightMarker();
-            if (node != null) {
-                highlightMarker.setLine(node.getStartMark().getLine());
-                highlightMarker.setEndLine(node.getEndMark().getLine());
-                highlightMarker.setStartColumn(node.getStartMark().getColumn());
-                highlightMarker.setEndColumn(node.getEndMark().getColumn());
-                highlightMarkers.add(highlightMarker);
-            }
-        }
-
-        InstanceValueVO instanceValueVO = new InstanceValueVO();
-        instanceValueVO.setNewLines(addLines);
-        instanceValueVO.setHighlightMarkers(highlightMarkers);
-        instanceValueVO.setYaml(yaml);
-        return instanceValueVO;
-
-    }
-
-    private static void appendLine(int start, int end, List<Integer> adds) {
-        for (int i = start; i <= end; i++) {
-            adds.add(i);
-        }
-    }
-
-    private static Node getKeysNode(List<String> keys, MappingNode mappingNode) {
-        Node value = null;
-        for (int i = 0; i < keys.size(); i++) {
-            List<NodeTuple> nodeTuples = mappingNode.getValue();
-            for (NodeTuple nodeTuple : nodeTuples) {
-                if (nodeTuple.getKeyNode() instanceof ScalarNode && ((ScalarNode) nodeTuple.getKeyNode()).getValue().equals(keys.get(i))) {
-                    if (i == keys.size() - 1) {
-                        value = nodeTuple.getValueNode();
-                    } else {
-                        mappingNode = (MappingNode) nodeTuple.getValueNode();
-
-                    }
-                }
-            }
-        }
-        return value;
-    }
-
     /**
      * format yaml
      *
@@ -2,9 +2,7 @@ package io.choerodon.devops.infra.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 import java.util.regex.Pattern;
 
 import com.jcraft.jsch.JSch;
@@ -13,6 +11,9 @@ import com.jcraft.jsch.Session;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.*;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
@@ -21,6 +22,10 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.*;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.FS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +42,7 @@ import io.choerodon.devops.api.vo.GitEnvConfigVO;
 import io.choerodon.devops.app.service.DevopsEnvironmentService;
 import io.choerodon.devops.infra.dto.DevopsClusterDTO;
 import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
+import io.choerodon.devops.infra.dto.gitlab.DiffDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.dto.iam.Tenant;
 import io.choerodon.devops.infra.enums.EnvironmentType;
@@ -136,6 +142,153 @@ public class GitUtil {
         return "";
     }
 
+    /**
+     * 在一次提交历史遍历中查出每个文件最近一次修改的提交
+     * 用于替代对每个文件调用 {@link #getFileLatestCommit(String, String)}
+     * <p>
+     * 只沿着第一个父提交遍历, 并且只和第一个父提交比较, 结果和 git log --first-parent -1 -- filePath 一致:
+     * 通过合并引入的文件修改记录为合并提交, 而不是分支上原来修改文件的提交
+     *
+     * @param repoPath  本地仓库的.git目录
+     * @param filePaths 文件相对于仓库根目录的路径
+     * @return 文件路径 -> commit sha, 找不到的文件对应的值为空字符串
+     */
+    public static Map<String, String> getFilesLatestCommit(String repoPath, Collection<String> filePaths) {
+        Map<String, String> latestCommits = new HashMap<>();
+        Set<String> remaining = new HashSet<>();
+        filePaths.stream().filter(Objects::nonNull).forEach(filePath -> {
+            latestCommits.put(filePath, "");
+            remaining.add(filePath);
+        });
+        if (remaining.isEmpty()) {
+            return latestCommits;
+        }
+        File file = new File(repoPath);
+        try (Repository repository = new FileRepository(file.getAbsolutePath());
+             RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                return latestCommits;
+            }
+            RevCommit commit = revWalk.parseCommit(head);
+            while (commit != null) {
+                RevCommit firstParent = commit.getParentCount() == 0 ? null : revWalk.parseCommit(commit.getParent(0));
+                try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                    treeWalk.setRecursive(true);
+                    treeWalk.addTree(commit.getTree());
+                    if (firstParent != null) {
+                        treeWalk.addTree(firstParent.getTree());
+                    }
+                    // 没有父提交时, 树中存在的文件都是在这个提交中新增的
+                    treeWalk.setFilter(commit.getParentCount() == 0
+                            ? PathFilterGroup.createFromStrings(remaining)
+                            : AndTreeFilter.create(PathFilterGroup.createFromStrings(remaining), TreeFilter.ANY_DIFF));
+                    List<String> changed = new ArrayList<>();
+                    while (treeWalk.next()) {
+                        changed.add(treeWalk.getPathString());
+                    }
+                    for (String filePath : changed) {
+                        if (remaining.remove(filePath)) {
+                            latestCommits.put(filePath, commit.getName());
+                        }
+                    }
+                }
+                if (remaining.isEmpty()) {
+                    break;
+                }
+                commit = firstParent;
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to query the latest commits of files in {}", repoPath, e);
+        }
+        return latestCommits;
+    }
+
+    /**
+     * 列出某个提交中所有的yaml文件及其blob id
+     *
+     * @param repoPath 本地仓库的.git目录
+     * @param revision 提交, 比如 HEAD 或者 commit sha
+     * @return 文件路径 -> blob id, 按照路径排序
+     */
+    public static Map<String, String> listYamlFileBlobs(String repoPath, String revision) {
+        Map<String, String> blobs = new LinkedHashMap<>();
+        File file = new File(repoPath);
+        try (Repository repository = new FileRepository(file.getAbsolutePath());
+             RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            ObjectId commitId = repository.resolve(revision);
+            if (commitId == null) {
+                return blobs;
+            }
+            treeWalk.setRecursive(true);
+            treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+            while (treeWalk.next()) {
+                String filePath = treeWalk.getPathString();
+                if (isYamlFile(filePath)) {
+                    blobs.put(filePath, treeWalk.getObjectId(0).getName());
+                }
+            }
+        } catch (IOException e) {
+            throw new CommonException("error.git.tree.walk", e);
+        }
+        return blobs;
+    }
+
+    /**
+     * 在本地仓库中比较两个提交的差异, 结果和GitLab的compare接口的diffs一致(不包含diff的内容)
+     *
+     * @param repoPath  本地仓库的.git目录
+     * @param oldCommit 旧的提交
+     * @param newCommit 新的提交
+     * @return 差异, 本地仓库中不存在某个提交时返回null
+     */
+    public static List<DiffDTO> diffCommits(String repoPath, String oldCommit, String newCommit) {
+        File file = new File(repoPath);
+        try (Repository repository = new FileRepository(file.getAbsolutePath());
+             RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            ObjectId oldId = repository.resolve(oldCommit);
+            ObjectId newId = repository.resolve(newCommit);
+            if (oldId == null || newId == null) {
+                return null;
+            }
+            treeWalk.setRecursive(true);
+            treeWalk.addTree(revWalk.parseCommit(oldId).getTree());
+            treeWalk.addTree(revWalk.parseCommit(newId).getTree());
+            RenameDetector renameDetector = new RenameDetector(repository);
+            renameDetector.addAll(DiffEntry.scan(treeWalk));
+
+            List<DiffDTO> diffs = new ArrayList<>();
+            for (DiffEntry entry : renameDetector.compute()) {
+                DiffDTO diffDTO = new DiffDTO();
+                // 和GitLab一致, 新增的文件oldPath和newPath相同, 删除的文件也是
+                diffDTO.setNewPath(entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath());
+                diffDTO.setOldPath(entry.getChangeType() == DiffEntry.ChangeType.ADD ? entry.getNewPath() : entry.getOldPath());
+                diffDTO.setNewFile(entry.getChangeType() == DiffEntry.ChangeType.ADD);
+                diffDTO.setDeletedFile(entry.getChangeType() == DiffEntry.ChangeType.DELETE);
+                diffDTO.setRenamedFile(entry.getChangeType() == DiffEntry.ChangeType.RENAME);
+                diffs.add(diffDTO);
+            }
+            return diffs;
+        } catch (MissingObjectException e) {
+            LOGGER.info("Commit is missing in local repository {}: {}", repoPath, e.getMessage());
+            return null;
+        } catch (IOException e) {
+            throw new CommonException("error.git.diff", e);
+        }
+    }
+
+    /**
+     * 是否是GitOps需要解析的yaml文件
+     *
+     * @param filePath 文件路径
+     * @return true表示以.yaml或者.yml结尾
+     */
+    public static boolean isYamlFile(String filePath) {
+        return filePath.endsWith(".yaml") || filePath.endsWith(".yml");
+    }
+
     public static String getGitlabSshUrl(Pattern pattern, String url, String orgCode, String proCode, String envCode, EnvironmentType environmentType, String clusterCode) {
         final String groupSuffix = GitOpsUtil.getGroupSuffixByEnvType(environmentType);
         String result = "";
@@ -210,26 +363,6 @@ public class GitUtil {
     }
 
 
-    /**
-     * clone by ssh
-     *
-     * @param path target path
-     * @param url  git repo url
-     */
-    public Git cloneBySsh(String path, String url, String sshKeyRsa) {
-        CloneCommand cloneCommand = Git.cloneRepository();
-        cloneCommand.setURI(url);
-        cloneCommand.setBranch(MASTER);
-        cloneCommand.setTransportConfigCallback(getTransportConfigCallback(sshKeyRsa));
-        try {
-            cloneCommand.setDirectory(new File(path));
-            return cloneCommand.call();
-        } catch (GitAPIException e) {
-            LOGGER.debug("Failed to clone by ssh: path: {}, url: {}", path, url);
-            throw new CommonException(e.getMessage(), e);
-        }
-    }
-
     /**
      * check git repo to commit
      *
@@ -255,39 +388,20 @@ public class GitUtil {
     }
 
 
-    /**
-     * pull git repo using ssh
-     *
-     * @param path git repo
-     */
-    public static Git pullBySsh(String path, String envRas) {
-        File repoGitDir = new File(path);
-        try (Repository repository = new FileRepository(repoGitDir.getAbsolutePath())) {
-            return pullBySsh(repository, envRas);
-        } catch (IOException e) {
-            throw new CommonException("error.git.pull", e);
-        }
-    }
-
-    private static Git pullBySsh(Repository repository, String sshKeyRsa) {
-        try (Git git = new Git(repository)) {
-            git.pull()
-                    .setTransportConfigCallback(getTransportConfigCallback(sshKeyRsa))
-                    .call();
-            return git;
-        } catch (GitAPIException e) {
-            throw new CommonException("error.git.pull", e);
-        }
-    }
-
     private static TransportConfigCallback getTransportConfigCallback(String sshKeyRsa) {
         return transport -> {
             SshTransport sshTransport = (SshTransport) transport;
-            sshTransport.setSshSessionFactory(sshSessionFactor(sshKeyRsa));
+            sshTransport.setSshSessionFactory(createSshSessionFactory(sshKeyRsa));
         };
     }
 
-    private static SshSessionFactory sshSessionFactor(String sshKeyRsa) {
+    /**
+     * 根据私钥创建ssh连接的工厂, 可以缓存之后重复使用
+     *
+     * @param sshKeyRsa ssh私钥
+     * @return 工厂
+     */
+    public static SshSessionFactory createSshSessionFactory(String sshKeyRsa) {
         return new JschConfigSessionFactory() {
             @Override
             protected void configure(OpenSshConfig.Host host, Session session) {
@@ -4,15 +4,14 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.common.IOUtils;
-import net.schmizz.sshj.connection.ConnectionException;
 import net.schmizz.sshj.connection.channel.direct.Session;
 import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
 import net.schmizz.sshj.userauth.keyprovider.KeyProvider;
 import net.schmizz.sshj.xfer.FileSystemFile;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +26,7 @@ import io.choerodon.devops.infra.dto.repo.C7nImageDeployDTO;
 import io.choerodon.devops.infra.dto.repo.C7nNexusDeployDTO;
 import io.choerodon.devops.infra.enums.HostAuthType;
 import io.choerodon.devops.infra.enums.HostSourceEnum;
+import io.choerodon.devops.infra.handler.SshConnectionPool;
 import io.choerodon.devops.infra.mapper.DevopsHostMapper;
 
 /**
@@ -41,6 +41,10 @@ public class SshUtil {
      */
     private static final int DEFAULT_TIMEOUT_MILLISECONDS = 10000;
     private static final Integer WAIT_SECONDS = 6;
+    /**
+     * docker命令的最长执行时间, 连接池中的连接没有设置读取超时, 由命令的等待时间限制执行的时长
+     */
+    private static final long DOCKER_COMMAND_TIMEOUT_MINUTES = 30;
     private static final String ERROR_DOCKER_LOGIN = "error.docker.login";
     private static final String ERROR_DOCKER_PULL = "error.docker.pull";
     private static final String ERROR_DOCKER_RUN = "error.docker.run";
@@ -49,85 +53,83 @@ public class SshUtil {
 
     @Autowired
     private DevopsHostMapper devopsHostMapper;
+    @Autowired
+    private SshConnectionPool sshConnectionPool;
 
     private SshUtil() {
     }
 
     /**
-     * 连接主机
+     * 从连接池借出主机的连接, 使用完成后需要调用 {@link #sshRelease(SSHClient)} 归还
+     *
+     * @param hostConnectionVO 主机连接信息
+     * @return 已经认证的连接
+     * @throws IOException 连接失败
+     */
+    public SSHClient sshConnect(HostConnectionVO hostConnectionVO) throws IOException {
+        // 根据主机来源获取主机连接信息
+        if (HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
+            DevopsHostDTO devopsHostDTO = devopsHostMapper.selectByPrimaryKey(hostConnectionVO.getHostId());
+            dtoToHostConnVo(hostConnectionVO, devopsHostDTO);
+        }
+        String credential;
+        if (HostAuthType.ACCOUNTPASSWORD.value().equals(hostConnectionVO.getAuthType())) {
+            credential = hostConnectionVO.getPassword();
+        } else if (HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
+            credential = StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey();
+        } else {
+            credential = Base64Util.getBase64DecodedString(StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey());
+        }
+        return sshConnectPooled(hostConnectionVO.getHostIp(), TypeUtil.objToInteger(hostConnectionVO.getHostPort()), hostConnectionVO.getAuthType(), hostConnectionVO.getUsername(), credential);
+    }
+
+    /**
+     * 从连接池借出主机的连接, 使用完成后需要调用 {@link #sshRelease(SSHClient)} 归还
      *
      * @param hostIp   主机ip
      * @param sshPort  ssh端口
      * @param authType {@link HostAuthType}
      * @param username 用户名
      * @param password 密码或者秘钥
-     * @return 主机连接句柄
+     * @return 已经认证的连接
+     * @throws IOException 连接失败
      */
-    @Nullable
-    public static SSHClient sshConnect(String hostIp, Integer sshPort, String authType, String username, String password) {
-        SSHClient ssh = new SSHClient();
-        ssh.setConnectTimeout(DEFAULT_TIMEOUT_MILLISECONDS);
-        ssh.setTimeout(DEFAULT_TIMEOUT_MILLISECONDS);
-        Session session = null;
-        try {
-            addAuth(ssh, hostIp, sshPort, authType, username, password);
-
-            session = ssh.startSession();
-            Session.Command cmd = session.exec("echo Hello World");
-            LOGGER.info(IOUtils.readFully(cmd.getInputStream()).toString());
-            cmd.join(5, TimeUnit.SECONDS);
-            LOGGER.info("\n** exit status: " + cmd.getExitStatus());
-            if (cmd.getExitStatus() != 0) {
-                throw new CommonException("error.test.connection");
-            }
-        } catch (Exception ex) {
-            LOGGER.warn("Failed to connect to host by ssh, the host is {}, port is {}, username: {}", hostIp, sshPort, username);
-            LOGGER.warn("The ex is ", ex);
-            return null;
-        }
-        return ssh;
+    public SSHClient sshConnectPooled(String hostIp, Integer sshPort, String authType, String username, String password) throws IOException {
+        String key = String.join("|", hostIp, String.valueOf(sshPort), username, authType, DigestUtils.sha256Hex(String.valueOf(password)));
+        return sshConnectionPool.acquire(key, ssh -> addAuth(ssh, hostIp, sshPort, authType, username, password));
     }
 
     /**
-     * 连接主机进行测试, 如果成功返回true
+     * 使用连接池中的连接测试主机, 如果成功返回true
      *
      * @param hostIp   主机ip
      * @param sshPort  ssh端口
      * @param authType {@link HostAuthType}
      * @param username 用户名
      * @param password 密码或者秘钥
-     * @return true
+     * @return true表示连接成功
      */
-    public static boolean sshConnectForOK(String hostIp, Integer sshPort, String authType, String username, String password) {
-        SSHClient ssh = sshConnect(hostIp, sshPort, authType, username, password);
-        boolean result = ssh != null;
-        if (result) {
-            IOUtils.closeQuietly(ssh);
+    public boolean testConnection(String hostIp, Integer sshPort, String authType, String username, String password) {
+        SSHClient ssh = null;
+        try {
+            ssh = sshConnectPooled(hostIp, sshPort, authType, username, password);
+            return execForOk(ssh, "echo Hello World");
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to connect to host by ssh, the host is {}, port is {}, username: {}", hostIp, sshPort, username);
+            LOGGER.warn("The ex is ", ex);
+            return false;
+        } finally {
+            sshRelease(ssh);
         }
-        return result;
     }
 
-    public void sshConnect(HostConnectionVO hostConnectionVO, SSHClient ssh) throws IOException {
-        // 根据主机来源获取主机连接信息
-        ssh.addHostKeyVerifier(new PromiscuousVerifier());
-        if (HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
-            DevopsHostDTO devopsHostDTO = devopsHostMapper.selectByPrimaryKey(hostConnectionVO.getHostId());
-            dtoToHostConnVo(hostConnectionVO, devopsHostDTO);
-        }
-
-        ssh.connect(hostConnectionVO.getHostIp(), TypeUtil.objToInteger(hostConnectionVO.getHostPort()));
-        if (hostConnectionVO.getAuthType().equals(HostAuthType.ACCOUNTPASSWORD.value())) {
-            ssh.authPassword(hostConnectionVO.getUsername(), hostConnectionVO.getPassword());
-        } else {
-            String str;
-            if(HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
-                str  = StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey();
-            } else {
-                str  = Base64Util.getBase64DecodedString(StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey());
-            }
-            KeyProvider keyProvider = ssh.loadKeys(str, null, null);
-            ssh.authPublickey(hostConnectionVO.getUsername(), keyProvider);
-        }
+    /**
+     * 归还从连接池借出的连接
+     *
+     * @param ssh 连接, 为null时忽略
+     */
+    public void sshRelease(SSHClient ssh) {
+        sshConnectionPool.release(ssh);
     }
 
     public void sshStopJar(SSHClient ssh, String jarName,String workingPath, StringBuilder log) throws IOException {
@@ -228,10 +230,10 @@ public class SshUtil {
             String loginExec = String.format("sudo docker login -u '%s' -p %s %s", imageTagVo.getPullAccount(), imageTagVo.getPullPassword(), imageTagVo.getHarborUrl());
             LOGGER.info(loginExec);
             Session.Command cmd = session.exec(loginExec);
+            cmd.join(DOCKER_COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
 
             String loggerInfo = IOUtils.readFully(cmd.getInputStream()).toString();
             String loggerError = IOUtils.readFully(cmd.getErrorStream()).toString();
-            cmd.join(WAIT_SECONDS, TimeUnit.SECONDS);
             log.append(loggerInfo);
             log.append(loggerError);
             LOGGER.info(loggerInfo);
@@ -254,9 +256,10 @@ public class SshUtil {
             session = ssh.startSession();
             LOGGER.info(imageTagVo.getPullCmd());
             Session.Command cmd = session.exec("sudo " + imageTagVo.getPullCmd());
+            // 拉取镜像的时间较长
+            cmd.join(DOCKER_COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
             String loggerInfo = IOUtils.readFully(cmd.getInputStream()).toString();
             String loggerError = IOUtils.readFully(cmd.getErrorStream()).toString();
-            execPullImage(cmd);
             log.append(System.lineSeparator());
             log.append(loggerInfo);
             log.append(loggerError);
@@ -308,10 +311,24 @@ public class SshUtil {
      * @throws IOException
      */
     public ExecResultInfoVO execCommand(SSHClient sshClient, String command) throws IOException {
+        return execCommand(sshClient, command, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 执行命令并等待命令结束
+     *
+     * @param sshClient ssh连接
+     * @param command   命令
+     * @param timeout   等待命令结束的最长时间
+     * @param unit      时间单位
+     * @return 执行结果
+     * @throws IOException 执行失败, 超时时抛出 {@link net.schmizz.sshj.connection.ConnectionException}
+     */
+    public ExecResultInfoVO execCommand(SSHClient sshClient, String command, long timeout, TimeUnit unit) throws IOException {
         ExecResultInfoVO execResultInfoVO = new ExecResultInfoVO();
         try (Session session = sshClient.startSession()) {
             Session.Command cmd = session.exec(command);
-            cmd.join(60, TimeUnit.MINUTES);
+            cmd.join(timeout, unit);
             execResultInfoVO.setCommand(command);
             execResultInfoVO.setStdErr(IOUtils.readFully(cmd.getErrorStream()).toString());
             execResultInfoVO.setStdOut(IOUtils.readFully(cmd.getInputStream()).toString());
@@ -352,11 +369,11 @@ public class SshUtil {
             dockerRunExec.append(values.replace("${containerName}", containerName).replace("${imageName}", c7nImageDeployDTO.getPullCmd().replace("docker pull", "")));
             LOGGER.info(dockerRunExec.toString());
             Session.Command cmd = session.exec(dockerRunExec.toString());
+            cmd.join(DOCKER_COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
             String loggerInfo = IOUtils.readFully(cmd.getInputStream()).toString();
             String loggerError = IOUtils.readFully(cmd.getErrorStream()).toString();
             LOGGER.info(loggerInfo);
             LOGGER.info(loggerError);
-            cmd.join(WAIT_SECONDS, TimeUnit.SECONDS);
             log.append(System.lineSeparator());
             log.append(loggerInfo);
             log.append(loggerError);
@@ -398,25 +415,6 @@ public class SshUtil {
         }
     }
 
-    public static void closeSsh(SSHClient ssh, Session session) {
-        try {
-            if (session != null) {
-                session.close();
-            }
-            ssh.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    public void sshDisconnect(SSHClient ssh) {
-        try {
-            ssh.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     private void dtoToHostConnVo(HostConnectionVO hostConnectionVO, DevopsHostDTO devopsHostDTO) {
         if (devopsHostDTO != null) {
             hostConnectionVO.setHostIp(devopsHostDTO.getHostIp());
@@ -428,25 +426,6 @@ public class SshUtil {
         }
     }
 
-    /**
-     * 解决pull 镜像时间较长
-     * 等3分钟
-     */
-    private void execPullImage(Session.Command cmd) {
-        for (int i = 0; i < 30; i++) {
-            if (cmd.getExitStatus() == null) {
-                LOGGER.info("Pulling the image!!!");
-                try {
-                    cmd.join(WAIT_SECONDS, TimeUnit.SECONDS);
-                } catch (ConnectionException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                break;
-            }
-        }
-    }
-
     /**
      * 执行指令
      *
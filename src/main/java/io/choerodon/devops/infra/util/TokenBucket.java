@@ -0,0 +1,61 @@
+package io.choerodon.devops.infra.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流, 用于限制调用外部接口(如gitlab)的速率
+ * <p>
+ * 令牌按照固定速率生成, 最多积攒 capacity 个, 允许短时间内的突发请求
+ *
+ * @author zmf
+ * @since 2020/11/16
+ */
+public class TokenBucket {
+    private final double permitsPerNano;
+    private final double capacity;
+
+    private double available;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数, 必须大于0
+     * @param capacity         桶的容量, 即允许突发的请求数, 最小为1
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond should be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, capacity);
+        this.available = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取一个令牌, 没有可用令牌时阻塞等待
+     *
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return 获取成功返回0, 否则返回需要等待的纳秒数
+     */
+    private synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+        if (available >= 1) {
+            available -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - available) / permitsPerNano));
+    }
+}
@@ -0,0 +1,594 @@
+package io.choerodon.devops.infra.util;
+
+import java.io.StringReader;
+import java.util.*;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.composer.Composer;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.nodes.*;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import io.choerodon.devops.api.vo.kubernetes.HighlightMarker;
+import io.choerodon.devops.api.vo.kubernetes.InstanceValueVO;
+
+/**
+ * 将部署的values合并到版本的默认values中, 替代之前调用的外部进程(values_yaml)
+ * <p>
+ * 1. 规则和values_yaml保持一致: 按照部署values的key遍历, 版本values中没有的key或者为空的map/数组记为新增, 值不同的记为修改
+ * 2. 合并结果直接在版本values的文本上修改, 保留原有的注释和格式; 新增和修改的内容取自部署values的原文
+ * 3. 合并之后只解析一次合并结果, 解析时计算新增的行和修改的位置
+ * 4. 使用了锚点(&)或者别名(*)的values, 别名节点的位置是锚点的位置, 无法在原文上修改, 合并结果和差异values都重新生成
+ *
+ * @author zmf
+ * @since 2020/11/16
+ */
+public final class YamlValuesMergeUtil {
+    /**
+     * 没有变化时的差异values, 和values_yaml的输出保持一致
+     */
+    private static final String EMPTY_DELTA = "{}\n";
+    private static final int DELTA_INDENT = 2;
+
+    private YamlValuesMergeUtil() {
+    }
+
+    /**
+     * 合并values
+     *
+     * @param versionValue 版本的默认values
+     * @param deployValue  部署的values
+     * @return 合并后的values(yaml), 差异values(deltaYaml), 新增的行(newLines)和修改的位置(highlightMarkers)
+     */
+    public static InstanceValueVO merge(String versionValue, String deployValue) {
+        String base = normalize(versionValue);
+        String deploy = normalize(deployValue);
+        Node baseRoot = compose(base);
+        Node deployRoot = compose(deploy);
+
+        boolean textual = !hasAnchor(base) && !hasAnchor(deploy);
+        MergeContext context = new MergeContext(base, deploy, textual);
+        MappingNode baseMapping = baseRoot instanceof MappingNode ? (MappingNode) baseRoot : null;
+        boolean editable = textual && baseMapping != null && !baseMapping.getValue().isEmpty() && isBlock(base, baseMapping);
+        if (deployRoot instanceof MappingNode) {
+            traverse(baseMapping, (MappingNode) deployRoot, new ArrayList<>(), context, editable, 0);
+        }
+
+        String merged;
+        if (context.changes.isEmpty()) {
+            merged = base;
+        } else if (editable) {
+            merged = context.applyEdits();
+        } else if (textual && (baseMapping == null || baseMapping.getValue().isEmpty())) {
+            // 版本values为空时合并结果就是部署values
+            merged = deploy;
+        } else {
+            // 版本values的根节点是flow格式或者使用了别名, 无法在原文上修改
+            merged = dump(mergeObjects(new Yaml().load(base), new Yaml().load(deploy)));
+        }
+
+        InstanceValueVO instanceValueVO = new InstanceValueVO();
+        instanceValueVO.setYaml(merged);
+        instanceValueVO.setDeltaYaml(context.renderDelta());
+        // 相邻的新增key可能在同一行结束和开始, 去重并排序
+        Set<Integer> newLines = new TreeSet<>();
+        List<HighlightMarker> highlightMarkers = new ArrayList<>();
+        if (!context.changes.isEmpty()) {
+            Node mergedRoot = compose(merged);
+            if (mergedRoot instanceof MappingNode) {
+                mark(merged, (MappingNode) mergedRoot, new ArrayList<>(), context.changeTypes(), newLines, highlightMarkers);
+            }
+        }
+        instanceValueVO.setNewLines(new ArrayList<>(newLines));
+        instanceValueVO.setHighlightMarkers(highlightMarkers);
+        return instanceValueVO;
+    }
+
+    private static void traverse(MappingNode baseMapping, MappingNode deployMapping, List<NodeTuple> deployPath,
+                                 MergeContext context, boolean editable, int depth) {
+        for (NodeTuple deployTuple : deployMapping.getValue()) {
+            String key = keyOf(deployTuple);
+            if (key == null) {
+                continue;
+            }
+            List<NodeTuple> path = new ArrayList<>(deployPath);
+            path.add(deployTuple);
+            NodeTuple baseTuple = find(baseMapping, key);
+            if (baseTuple == null) {
+                context.record(ChangeType.ADD, path);
+                if (editable) {
+                    context.insert(baseMapping, deployTuple, depth);
+                }
+                continue;
+            }
+
+            Node baseValue = baseTuple.getValueNode();
+            Node deployValue = deployTuple.getValueNode();
+            ChangeType changeType = null;
+            if (deployValue instanceof MappingNode) {
+                if (baseValue instanceof MappingNode && !((MappingNode) baseValue).getValue().isEmpty()) {
+                    MappingNode baseChild = (MappingNode) baseValue;
+                    boolean childEditable = editable && isBlock(context.base, baseChild);
+                    int changed = context.changes.size();
+                    traverse(baseChild, (MappingNode) deployValue, path, context, childEditable, depth + 1);
+                    if (editable && !childEditable && context.changes.size() > changed) {
+                        // flow格式的map无法在原文上修改, 整体替换为合并之后的内容
+                        context.replaceMerged(baseTuple, deployTuple, depth);
+                    }
+                } else if (!isEmptyMapping(baseValue) || !((MappingNode) deployValue).getValue().isEmpty()) {
+                    changeType = ChangeType.ADD;
+                }
+            } else if (deployValue instanceof SequenceNode) {
+                if (baseValue instanceof SequenceNode && ((SequenceNode) baseValue).getValue().isEmpty()) {
+                    changeType = ((SequenceNode) deployValue).getValue().isEmpty() ? null : ChangeType.ADD;
+                } else if (!nodeEquals(baseValue, deployValue)) {
+                    changeType = ChangeType.UPDATE;
+                }
+            } else if (!nodeEquals(baseValue, deployValue)) {
+                changeType = ChangeType.UPDATE;
+            }
+
+            if (changeType != null) {
+                context.record(changeType, path);
+                if (editable) {
+                    context.replace(baseTuple, deployTuple, depth);
+                }
+            }
+        }
+    }
+
+    /**
+     * 遍历合并结果, 计算新增的行和修改的位置
+     */
+    private static void mark(String text, MappingNode mapping, List<String> path, Map<List<String>, ChangeType> changeTypes,
+                             Set<Integer> newLines, List<HighlightMarker> highlightMarkers) {
+        for (NodeTuple tuple : mapping.getValue()) {
+            String key = keyOf(tuple);
+            if (key == null) {
+                continue;
+            }
+            List<String> childPath = new ArrayList<>(path);
+            childPath.add(key);
+            Node value = tuple.getValueNode();
+            ChangeType changeType = changeTypes.get(childPath);
+            if (changeType == ChangeType.ADD) {
+                int endLine = lineOf(text, tupleEnd(text, tuple));
+                for (int line = tuple.getKeyNode().getStartMark().getLine(); line <= endLine; line++) {
+                    newLines.add(line);
+                }
+            } else if (changeType == ChangeType.UPDATE) {
+                int end = contentEnd(text, value);
+                HighlightMarker highlightMarker = new HighlightMarker();
+                highlightMarker.setLine(value.getStartMark().getLine());
+                highlightMarker.setEndLine(lineOf(text, end));
+                highlightMarker.setStartColumn(value.getStartMark().getColumn());
+                highlightMarker.setEndColumn(end - text.lastIndexOf('\n', end - 1) - 1);
+                highlightMarkers.add(highlightMarker);
+            } else if (value instanceof MappingNode) {
+                mark(text, (MappingNode) value, childPath, changeTypes, newLines, highlightMarkers);
+            }
+        }
+    }
+
+    private static Node compose(String yaml) {
+        Composer composer = new Composer(new ParserImpl(new StreamReader(yaml)), new Resolver());
+        return composer.getSingleNode();
+    }
+
+    /**
+     * 是否使用了锚点或者别名
+     */
+    private static boolean hasAnchor(String yaml) {
+        for (Event event : new Yaml().parse(new StringReader(yaml))) {
+            if (event instanceof AliasEvent || (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int lineOf(String text, int index) {
+        int line = 0;
+        for (int i = 0; i < index && i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private static String normalize(String yaml) {
+        return yaml.replace("\r\n", "\n");
+    }
+
+    private static String keyOf(NodeTuple tuple) {
+        return tuple.getKeyNode() instanceof ScalarNode ? ((ScalarNode) tuple.getKeyNode()).getValue() : null;
+    }
+
+    private static NodeTuple find(MappingNode mapping, String key) {
+        if (mapping == null) {
+            return null;
+        }
+        for (NodeTuple tuple : mapping.getValue()) {
+            if (key.equals(keyOf(tuple))) {
+                return tuple;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEmptyMapping(Node node) {
+        return node instanceof MappingNode && ((MappingNode) node).getValue().isEmpty();
+    }
+
+    private static boolean isBlock(String text, Node node) {
+        int index = node.getStartMark().getIndex();
+        return index >= text.length() || (text.charAt(index) != '{' && text.charAt(index) != '[');
+    }
+
+    /**
+     * 比较两个节点的内容, 标量比较类型和值
+     */
+    private static boolean nodeEquals(Node first, Node second) {
+        if (first instanceof ScalarNode && second instanceof ScalarNode) {
+            // null的不同写法(null, ~, 空)视为相同
+            if (Tag.NULL.equals(first.getTag()) && Tag.NULL.equals(second.getTag())) {
+                return true;
+            }
+            return first.getTag().equals(second.getTag())
+                    && ((ScalarNode) first).getValue().equals(((ScalarNode) second).getValue());
+        }
+        if (first instanceof SequenceNode && second instanceof SequenceNode) {
+            List<Node> firstItems = ((SequenceNode) first).getValue();
+            List<Node> secondItems = ((SequenceNode) second).getValue();
+            if (firstItems.size() != secondItems.size()) {
+                return false;
+            }
+            for (int i = 0; i < firstItems.size(); i++) {
+                if (!nodeEquals(firstItems.get(i), secondItems.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (first instanceof MappingNode && second instanceof MappingNode) {
+            List<NodeTuple> firstTuples = ((MappingNode) first).getValue();
+            List<NodeTuple> secondTuples = ((MappingNode) second).getValue();
+            if (firstTuples.size() != secondTuples.size()) {
+                return false;
+            }
+            for (NodeTuple tuple : secondTuples) {
+                String key = keyOf(tuple);
+                NodeTuple other = key == null ? null : find((MappingNode) first, key);
+                if (other == null || !nodeEquals(other.getValueNode(), tuple.getValueNode())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 节点内容在原文中的结束位置(不包含末尾的空白)
+     * block格式的集合的结束位置是下一个节点的开始, 所以取最后一个子节点的结束位置
+     */
+    private static int contentEnd(String text, Node node) {
+        int end;
+        if (node instanceof MappingNode && isBlock(text, node) && !((MappingNode) node).getValue().isEmpty()) {
+            List<NodeTuple> tuples = ((MappingNode) node).getValue();
+            end = tupleEnd(text, tuples.get(tuples.size() - 1));
+        } else if (node instanceof SequenceNode && isBlock(text, node) && !((SequenceNode) node).getValue().isEmpty()) {
+            List<Node> items = ((SequenceNode) node).getValue();
+            end = contentEnd(text, items.get(items.size() - 1));
+        } else {
+            end = node.getEndMark().getIndex();
+        }
+        end = Math.min(end, text.length());
+        while (end > node.getStartMark().getIndex() && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * key和值在原文中的结束位置, 只用于没有别名的文本, 别名节点的位置是锚点的位置
+     */
+    private static int tupleEnd(String text, NodeTuple tuple) {
+        return Math.max(contentEnd(text, tuple.getKeyNode()), contentEnd(text, tuple.getValueNode()));
+    }
+
+    /**
+     * 调整多行文本的缩进, 第一行保持不变
+     */
+    private static String reindent(String text, int fromColumn, int toColumn) {
+        if (fromColumn == toColumn) {
+            return text;
+        }
+        String[] lines = text.split("\n", -1);
+        StringBuilder builder = new StringBuilder(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            builder.append('\n');
+            String line = lines[i];
+            if (toColumn > fromColumn) {
+                if (!line.trim().isEmpty()) {
+                    builder.append(spaces(toColumn - fromColumn));
+                }
+                builder.append(line);
+            } else {
+                int remove = 0;
+                while (remove < fromColumn - toColumn && remove < line.length() && line.charAt(remove) == ' ') {
+                    remove++;
+                }
+                builder.append(line.substring(remove));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String spaces(int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, ' ');
+        return new String(chars);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object mergeObjects(Object base, Object deploy) {
+        if (!(base instanceof Map) || !(deploy instanceof Map) || ((Map<Object, Object>) base).isEmpty()) {
+            return deploy;
+        }
+        Map<Object, Object> merged = new LinkedHashMap<>((Map<Object, Object>) base);
+        ((Map<Object, Object>) deploy).forEach((key, value) -> merged.put(key, mergeObjects(merged.get(key), value)));
+        return merged;
+    }
+
+    private static String dump(Object object) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setIndent(DELTA_INDENT);
+        return new Yaml(options).dump(copy(object));
+    }
+
+    /**
+     * 深拷贝map和数组, 避免别名加载出的同一个对象在输出时又生成别名
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object object) {
+        if (object instanceof Map) {
+            Map<Object, Object> copied = new LinkedHashMap<>();
+            ((Map<Object, Object>) object).forEach((key, value) -> copied.put(key, copy(value)));
+            return copied;
+        }
+        if (object instanceof List) {
+            List<Object> copied = new ArrayList<>();
+            ((List<Object>) object).forEach(item -> copied.add(copy(item)));
+            return copied;
+        }
+        return object;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object valueOf(Object map, String key) {
+        if (!(map instanceof Map)) {
+            return null;
+        }
+        for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) map).entrySet()) {
+            if (key.equals(String.valueOf(entry.getKey()))) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private enum ChangeType {
+        ADD,
+        UPDATE
+    }
+
+    private static final class Change {
+        private final ChangeType type;
+        private final List<NodeTuple> path;
+
+        private Change(ChangeType type, List<NodeTuple> path) {
+            this.type = type;
+            this.path = path;
+        }
+    }
+
+    /**
+     * 对版本values原文的修改, 替换 [start, end) 或者在 start 插入
+     */
+    private static final class Edit {
+        private final int start;
+        private final int end;
+        private final int depth;
+        private final StringBuilder text;
+
+        private Edit(int start, int end, int depth, String text) {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+            this.text = new StringBuilder(text);
+        }
+    }
+
+    /**
+     * 差异values中的一个key
+     */
+    private static final class DeltaEntry {
+        private final String keyText;
+        private final Map<String, DeltaEntry> children = new LinkedHashMap<>();
+        private String leafText;
+        private int leafColumn;
+
+        private DeltaEntry(String keyText) {
+            this.keyText = keyText;
+        }
+    }
+
+    private static final class MergeContext {
+        private final String base;
+        private final String deploy;
+        /**
+         * 为false时原文中有别名, 不能从原文中截取内容
+         */
+        private final boolean textual;
+        private final List<Change> changes = new ArrayList<>();
+        private final List<Edit> edits = new ArrayList<>();
+        /**
+         * 同一个map中新增的key按照顺序追加到同一个插入位置
+         */
+        private final Map<MappingNode, Edit> inserts = new IdentityHashMap<>();
+
+        private MergeContext(String base, String deploy, boolean textual) {
+            this.base = base;
+            this.deploy = deploy;
+            this.textual = textual;
+        }
+
+        private void record(ChangeType type, List<NodeTuple> path) {
+            changes.add(new Change(type, path));
+        }
+
+        private Map<List<String>, ChangeType> changeTypes() {
+            Map<List<String>, ChangeType> changeTypes = new HashMap<>();
+            changes.forEach(change -> {
+                List<String> keys = new ArrayList<>(change.path.size());
+                change.path.forEach(tuple -> keys.add(keyOf(tuple)));
+                changeTypes.put(keys, change.type);
+            });
+            return changeTypes;
+        }
+
+        /**
+         * 在版本values的map的最后一个key之后追加部署values中的key
+         */
+        private void insert(MappingNode baseMapping, NodeTuple deployTuple, int depth) {
+            List<NodeTuple> tuples = baseMapping.getValue();
+            int column = tuples.get(0).getKeyNode().getStartMark().getColumn();
+            String entry = spaces(column) + deployEntry(deployTuple, column) + "\n";
+            Edit edit = inserts.get(baseMapping);
+            if (edit != null) {
+                edit.text.append(entry);
+                return;
+            }
+            int lastEnd = tupleEnd(base, tuples.get(tuples.size() - 1));
+            int lineEnd = base.indexOf('\n', lastEnd);
+            edit = lineEnd < 0
+                    ? new Edit(base.length(), base.length(), depth, "\n" + entry)
+                    : new Edit(lineEnd + 1, lineEnd + 1, depth, entry);
+            inserts.put(baseMapping, edit);
+            edits.add(edit);
+        }
+
+        /**
+         * 使用部署values中的key和值替换版本values中的key和值
+         */
+        private void replace(NodeTuple baseTuple, NodeTuple deployTuple, int depth) {
+            int column = baseTuple.getKeyNode().getStartMark().getColumn();
+            edits.add(new Edit(baseTuple.getKeyNode().getStartMark().getIndex(), tupleEnd(base, baseTuple), depth,
+                    deployEntry(deployTuple, column)));
+        }
+
+        /**
+         * 使用合并之后的值替换版本values中的值, 用于flow格式的map
+         */
+        private void replaceMerged(NodeTuple baseTuple, NodeTuple deployTuple, int depth) {
+            Node baseValue = baseTuple.getValueNode();
+            Node deployValue = deployTuple.getValueNode();
+            Object baseObject = new Yaml().load(base.substring(baseValue.getStartMark().getIndex(), contentEnd(base, baseValue)));
+            Object deployObject = new Yaml().load(reindent(
+                    deploy.substring(deployValue.getStartMark().getIndex(), contentEnd(deploy, deployValue)),
+                    deployValue.getStartMark().getColumn(), 0));
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put(keyOf(baseTuple), mergeObjects(baseObject, deployObject));
+            String text = dump(entry);
+            int column = baseTuple.getKeyNode().getStartMark().getColumn();
+            edits.add(new Edit(baseTuple.getKeyNode().getStartMark().getIndex(), tupleEnd(base, baseTuple), depth,
+                    reindent(text.substring(0, text.length() - 1), 0, column)));
+        }
+
+        /**
+         * 部署values中一个key和值的原文, 缩进调整到指定的列
+         */
+        private String deployEntry(NodeTuple deployTuple, int column) {
+            String text = deploy.substring(deployTuple.getKeyNode().getStartMark().getIndex(), tupleEnd(deploy, deployTuple));
+            return reindent(text, deployTuple.getKeyNode().getStartMark().getColumn(), column);
+        }
+
+        private String applyEdits() {
+            // 从后往前修改, 位置相同时层级浅的先插入, 使得层级深的内容在前面
+            edits.sort(Comparator.comparingInt((Edit edit) -> edit.start).reversed()
+                    .thenComparingInt(edit -> edit.depth));
+            StringBuilder builder = new StringBuilder(base);
+            edits.forEach(edit -> builder.replace(edit.start, edit.end, edit.text.toString()));
+            return builder.toString();
+        }
+
+        /**
+         * 差异values, 只包含新增和修改的key, 值取自部署values的原文
+         */
+        private String renderDelta() {
+            if (changes.isEmpty()) {
+                return EMPTY_DELTA;
+            }
+            if (!textual) {
+                return renderDumpedDelta();
+            }
+            Map<String, DeltaEntry> root = new LinkedHashMap<>();
+            changes.forEach(change -> {
+                Map<String, DeltaEntry> current = root;
+                DeltaEntry entry = null;
+                for (NodeTuple tuple : change.path) {
+                    String keyText = deploy.substring(tuple.getKeyNode().getStartMark().getIndex(), contentEnd(deploy, tuple.getKeyNode()));
+                    entry = current.computeIfAbsent(keyOf(tuple), k -> new DeltaEntry(keyText));
+                    current = entry.children;
+                }
+                NodeTuple leaf = change.path.get(change.path.size() - 1);
+                entry.leafText = deploy.substring(leaf.getKeyNode().getStartMark().getIndex(), tupleEnd(deploy, leaf));
+                entry.leafColumn = leaf.getKeyNode().getStartMark().getColumn();
+            });
+            StringBuilder builder = new StringBuilder();
+            renderDelta(root, 0, builder);
+            return builder.toString();
+        }
+
+        /**
+         * 根据部署values加载的对象生成差异values
+         */
+        @SuppressWarnings("unchecked")
+        private String renderDumpedDelta() {
+            Object deployObject = new Yaml().load(deploy);
+            Map<Object, Object> root = new LinkedHashMap<>();
+            changes.forEach(change -> {
+                Map<Object, Object> current = root;
+                Object source = deployObject;
+                for (int i = 0; i < change.path.size() - 1; i++) {
+                    String key = keyOf(change.path.get(i));
+                    source = valueOf(source, key);
+                    current = (Map<Object, Object>) current.computeIfAbsent(key, k -> new LinkedHashMap<>());
+                }
+                String leafKey = keyOf(change.path.get(change.path.size() - 1));
+                current.put(leafKey, valueOf(source, leafKey));
+            });
+            return dump(root);
+        }
+
+        private static void renderDelta(Map<String, DeltaEntry> entries, int indent, StringBuilder builder) {
+            entries.values().forEach(entry -> {
+                builder.append(spaces(indent));
+                if (entry.leafText != null) {
+                    builder.append(reindent(entry.leafText, entry.leafColumn, indent)).append('\n');
+                } else {
+                    builder.append(entry.keyText).append(":\n");
+                    renderDelta(entry.children, indent + DELTA_INDENT, builder);
+                }
+            });
+        }
+    }
+}
@@ -15,4 +15,11 @@ databaseChangeLog(logicalFilePath: 'dba/devops_env_resource_detail.groovy') {
             column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
         }
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'zmf', id: '2020-11-17-add-column-summary') {
+        addColumn(tableName: 'devops_env_resource_detail') {
+            column(name: 'summary', type: 'TEXT', remarks: '资源的摘要信息(json格式), 用于展示实例下的资源, 避免解析完整的资源信息', afterColumn: 'message')
+            column(name: 'summary_version', type: 'INT', remarks: '摘要信息的格式版本, 与代码中的版本不一致时不使用摘要信息', afterColumn: 'summary')
+        }
+    }
+}
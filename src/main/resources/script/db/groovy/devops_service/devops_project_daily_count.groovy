@@ -0,0 +1,32 @@
+package script.db.groovy.devops_service
+
+databaseChangeLog(logicalFilePath: 'dba/devops_project_daily_count.groovy') {
+    changeSet(author: 'zmf', id: '2020-11-20-create-table') {
+        createTable(tableName: "devops_project_daily_count", remarks: '项目每天的提交, 部署和流水线触发次数') {
+            column(name: 'id', type: 'BIGINT UNSIGNED', remarks: '主键，ID', autoIncrement: true) {
+                constraints(primaryKey: true)
+            }
+            column(name: 'project_id', type: 'BIGINT UNSIGNED', remarks: '项目id') {
+                constraints(nullable: false)
+            }
+            column(name: 'stat_date', type: 'DATE', remarks: '统计的日期') {
+                constraints(nullable: false)
+            }
+            column(name: 'metric', type: 'VARCHAR(16)', remarks: '统计项: commit/deploy/ci') {
+                constraints(nullable: false)
+            }
+            column(name: 'total', type: 'BIGINT UNSIGNED', remarks: '次数', defaultValue: "0") {
+                constraints(nullable: false)
+            }
+
+            column(name: "object_version_number", type: "BIGINT UNSIGNED", defaultValue: "1")
+            column(name: "created_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "creation_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+            column(name: "last_updated_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+        }
+
+        addUniqueConstraint(tableName: 'devops_project_daily_count',
+                constraintName: 'uk_project_metric_date', columnNames: 'project_id,metric,stat_date')
+    }
+}
@@ -0,0 +1,70 @@
+package script.db.groovy.devops_service
+
+databaseChangeLog(logicalFilePath: 'dba/devops_webhook_event.groovy') {
+    changeSet(author: 'zmf', id: '2020-11-20-create-table') {
+        createTable(tableName: "devops_webhook_event", remarks: 'gitlab webhook事件队列') {
+            column(name: 'id', type: 'BIGINT UNSIGNED', remarks: '主键，ID', autoIncrement: true) {
+                constraints(primaryKey: true)
+            }
+            column(name: 'event_key', type: 'VARCHAR(64)', remarks: '事件的标识, 用于去重') {
+                constraints(nullable: false)
+            }
+            column(name: 'hook_type', type: 'VARCHAR(16)', remarks: 'webhook类型: portal/git_ops') {
+                constraints(nullable: false)
+            }
+            column(name: 'object_kind', type: 'VARCHAR(32)', remarks: 'gitlab事件类型') {
+                constraints(nullable: false)
+            }
+            column(name: 'gitlab_project_id', type: 'BIGINT UNSIGNED', remarks: 'gitlab项目id, 同一个项目的事件按顺序处理') {
+                constraints(nullable: false)
+            }
+            column(name: 'token', type: 'VARCHAR(255)', remarks: 'webhook的token')
+            column(name: 'body', type: 'LONGTEXT', remarks: '事件内容')
+            column(name: 'status', type: 'VARCHAR(16)', remarks: '状态: pending/success/failed') {
+                constraints(nullable: false)
+            }
+            column(name: 'retry_count', type: 'INT UNSIGNED', remarks: '已经重试的次数', defaultValue: "0")
+            column(name: 'next_process_time', type: 'DATETIME', remarks: '下次可以处理的时间', defaultValueComputed: "CURRENT_TIMESTAMP")
+            column(name: 'error_message', type: 'TEXT', remarks: '最后一次处理失败的错误信息')
+
+            column(name: "object_version_number", type: "BIGINT UNSIGNED", defaultValue: "1")
+            column(name: "created_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "creation_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+            column(name: "last_updated_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+        }
+
+        addUniqueConstraint(tableName: 'devops_webhook_event',
+                constraintName: 'uk_event_key', columnNames: 'event_key')
+
+        createIndex(indexName: "idx_status_project_id", tableName: "devops_webhook_event") {
+            column(name: "status")
+            column(name: "gitlab_project_id")
+        }
+    }
+
+    changeSet(author: 'zmf', id: '2020-11-20-replace-token-with-resource-id') {
+        addColumn(tableName: 'devops_webhook_event') {
+            column(name: 'content_hash', type: 'VARCHAR(64)', remarks: '没有X-Gitlab-Event-UUID时事件内容的摘要, 用于在时间窗口内去重', afterColumn: 'event_key')
+            column(name: 'resource_id', type: 'BIGINT UNSIGNED', remarks: '事件所属的资源id: portal为应用服务id, git_ops为环境id', afterColumn: 'gitlab_project_id')
+        }
+        sql("""
+            UPDATE devops_webhook_event dwe
+            JOIN devops_app_service das ON das.token = dwe.token
+            SET dwe.resource_id = das.id
+            WHERE dwe.hook_type = 'portal'
+        """)
+        sql("""
+            UPDATE devops_webhook_event dwe
+            JOIN devops_env de ON de.token = dwe.token
+            SET dwe.resource_id = de.id
+            WHERE dwe.hook_type = 'git_ops'
+        """)
+        dropColumn(tableName: 'devops_webhook_event', columnName: 'token')
+
+        createIndex(indexName: "idx_content_hash_creation_date", tableName: "devops_webhook_event") {
+            column(name: "content_hash")
+            column(name: "creation_date")
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package io.choerodon.devops.api.ws.gitops
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+
+import io.choerodon.devops.api.vo.AgentMsgVO
+import io.choerodon.devops.infra.enums.HelmType
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(AgentMessageCoalescer)
+class AgentMessageCoalescerSpec extends Specification {
+    private SimpleMeterRegistry meterRegistry
+    private AgentMessageCoalescer coalescer
+    private List<String> dispatchedKeys
+    /**
+     * 模拟集群队列已满时拒绝的次数
+     */
+    private int rejectOffers
+
+    def setup() {
+        meterRegistry = new SimpleMeterRegistry()
+        dispatchedKeys = Collections.synchronizedList(new ArrayList<>())
+        // 直接在当前线程处理分发的消息
+        AgentMessageDispatcher dispatcher = new AgentMessageDispatcher() {
+            @Override
+            void dispatch(Long clusterId, String key, Runnable task) {
+                dispatchedKeys.add(key)
+                task.run()
+            }
+
+            @Override
+            boolean offer(Long clusterId, String key, Runnable task) {
+                if (rejectOffers > 0) {
+                    rejectOffers--
+                    return false
+                }
+                dispatch(clusterId, key, task)
+                return true
+            }
+
+            @Override
+            void handOff(Long clusterId, String key, Runnable task) {
+                dispatch(clusterId, key, task)
+            }
+        }
+
+        coalescer = new AgentMessageCoalescer()
+        coalescer.agentMessageDispatcher = dispatcher
+        coalescer.meterRegistry = meterRegistry
+        coalescer.windowMillis = 100L
+        coalescer.init()
+    }
+
+    def cleanup() {
+        coalescer.destroy()
+    }
+
+    def "窗口内同一个资源的状态消息只处理resourceVersion最新的一条"() {
+        given:
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        CountDownLatch latch = new CountDownLatch(1)
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg ->
+            handled.add(msg.payload)
+            latch.countDown()
+        }
+
+        when:
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(3)), handler)
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(5)), handler)
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(4)), handler)
+
+        then:
+        latch.await(5, TimeUnit.SECONDS)
+        handled == [payload(5)]
+        meterRegistry.get("devops.agent.message.superseded").tag("type", HelmType.RESOURCE_UPDATE.value).counter().count() == 2
+    }
+
+    def "集群队列已满时消息留在缓冲中继续合并, 稍后再分发"() {
+        given:
+        rejectOffers = 1
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        CountDownLatch latch = new CountDownLatch(1)
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg ->
+            handled.add(msg.payload)
+            latch.countDown()
+        }
+
+        when:
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(1)), handler)
+        // 第一次分发被拒绝之后到达的消息合并到缓冲中
+        Thread.sleep(150)
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(2)), handler)
+
+        then:
+        latch.await(5, TimeUnit.SECONDS)
+        handled == [payload(2)]
+        rejectOffers == 0
+    }
+
+    def "不同资源的状态消息分别处理"() {
+        given:
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        CountDownLatch latch = new CountDownLatch(2)
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg ->
+            handled.add(msg.key)
+            latch.countDown()
+        }
+
+        when:
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(1)), handler)
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-b", payload(1)), handler)
+
+        then:
+        latch.await(5, TimeUnit.SECONDS)
+        handled.sort() == ["pod-a", "pod-b"]
+    }
+
+    def "非合并类型的消息立即处理, 并且先处理同一个key缓冲中的消息"() {
+        given:
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg -> handled.add(msg.type) }
+
+        when:
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(1), HelmType.RESOURCE_UPDATE), handler)
+        coalescer.accept(1L, HelmType.RESOURCE_DELETE, message("pod-a", null, HelmType.RESOURCE_DELETE), handler)
+
+        then: "不需要等待时间窗口"
+        handled == [HelmType.RESOURCE_UPDATE.value, HelmType.RESOURCE_DELETE.value]
+    }
+
+    def "pod事件消息不合并"() {
+        given:
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg -> handled.add(msg.payload) }
+
+        when:
+        coalescer.accept(1L, HelmType.HELM_POD_EVENT, message("pod-a", "event-1", HelmType.HELM_POD_EVENT), handler)
+        coalescer.accept(1L, HelmType.HELM_POD_EVENT, message("pod-a", "event-2", HelmType.HELM_POD_EVENT), handler)
+
+        then:
+        handled == ["event-1", "event-2"]
+    }
+
+    def "时间窗口小于等于0时不合并"() {
+        given:
+        coalescer.windowMillis = 0L
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg -> handled.add(msg.payload) }
+
+        when:
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(1)), handler)
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message("pod-a", payload(2)), handler)
+
+        then:
+        handled == [payload(1), payload(2)]
+    }
+
+    def "没有key的消息按照类型分发"() {
+        given:
+        List<String> handled = Collections.synchronizedList(new ArrayList<>())
+        Consumer<AgentMsgVO> handler = { AgentMsgVO msg -> handled.add(msg.type) }
+
+        when:
+        coalescer.accept(1L, HelmType.RESOURCE_UPDATE, message(null, payload(1), HelmType.RESOURCE_UPDATE), handler)
+
+        then:
+        handled == [HelmType.RESOURCE_UPDATE.value]
+        dispatchedKeys == [HelmType.RESOURCE_UPDATE.value]
+    }
+
+    private static AgentMsgVO message(String key, String payload, HelmType helmType = HelmType.RESOURCE_UPDATE) {
+        return new AgentMsgVO(key, helmType.value, payload)
+    }
+
+    private static String payload(long resourceVersion) {
+        return "{\"kind\":\"Pod\",\"metadata\":{\"name\":\"pod-a\",\"resourceVersion\":\"" + resourceVersion + "\"}}"
+    }
+}
@@ -0,0 +1,168 @@
+package io.choerodon.devops.api.ws.gitops
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(AgentMessageDispatcher)
+class AgentMessageDispatcherSpec extends Specification {
+    private ThreadPoolTaskExecutor executor
+    private SimpleMeterRegistry meterRegistry
+    private AgentMessageDispatcher dispatcher
+
+    def setup() {
+        executor = new ThreadPoolTaskExecutor()
+        executor.setCorePoolSize(8)
+        executor.setMaxPoolSize(8)
+        executor.setQueueCapacity(1000)
+        executor.initialize()
+        meterRegistry = new SimpleMeterRegistry()
+
+        dispatcher = new AgentMessageDispatcher()
+        dispatcher.agentMessageExecutor = executor
+        dispatcher.meterRegistry = meterRegistry
+        dispatcher.lanesPerCluster = 2
+        dispatcher.maxPendingPerCluster = 1000
+        dispatcher.backpressureTimeoutMillis = 50L
+    }
+
+    def cleanup() {
+        executor.shutdown()
+    }
+
+    def "同一个key的消息按照接收顺序处理"() {
+        given:
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>())
+        CountDownLatch latch = new CountDownLatch(200)
+
+        when:
+        200.times { i ->
+            dispatcher.dispatch(1L, "pod-a", {
+                handled.add(i)
+                latch.countDown()
+            })
+        }
+
+        then:
+        latch.await(10, TimeUnit.SECONDS)
+        handled == (0..<200).toList()
+    }
+
+    def "一个集群同时占用的线程数不超过队列数"() {
+        given:
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        CountDownLatch latch = new CountDownLatch(40)
+
+        when:
+        40.times { i ->
+            dispatcher.dispatch(1L, "key-" + i, {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                Thread.sleep(5)
+                running.decrementAndGet()
+                latch.countDown()
+            })
+        }
+
+        then:
+        latch.await(10, TimeUnit.SECONDS)
+        maxRunning.get() <= 2
+    }
+
+    def "处理消息抛出异常不影响后续的消息"() {
+        given:
+        CountDownLatch latch = new CountDownLatch(1)
+
+        when:
+        dispatcher.dispatch(1L, "pod-a", { throw new IllegalStateException("test") })
+        dispatcher.dispatch(1L, "pod-a", { latch.countDown() })
+
+        then:
+        latch.await(10, TimeUnit.SECONDS)
+    }
+
+    def "待处理的消息超过限制时阻塞调用者直到有空闲, 超时之后继续等待"() {
+        given:
+        dispatcher.maxPendingPerCluster = 1
+        CountDownLatch blocker = new CountDownLatch(1)
+        CountDownLatch handled = new CountDownLatch(2)
+        // 超过两次等待超时之后才处理完第一条消息
+        Thread.start {
+            Thread.sleep(150)
+            blocker.countDown()
+        }
+
+        when:
+        dispatcher.dispatch(2L, "pod-a", {
+            blocker.await(10, TimeUnit.SECONDS)
+            handled.countDown()
+        })
+        long start = System.nanoTime()
+        dispatcher.dispatch(2L, "pod-b", { handled.countDown() })
+        long blockedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        blockedMillis >= 100
+        handled.await(10, TimeUnit.SECONDS)
+        meterRegistry.get("devops.agent.message.throttled").tag("clusterId", "2").counter().count() == 1
+    }
+
+    def "队列已满时offer不等待"() {
+        given:
+        dispatcher.maxPendingPerCluster = 1
+        CountDownLatch blocker = new CountDownLatch(1)
+        dispatcher.dispatch(3L, "pod-a", { blocker.await(10, TimeUnit.SECONDS) })
+
+        when:
+        boolean offered = dispatcher.offer(3L, "pod-b", {})
+        blocker.countDown()
+
+        then:
+        !offered
+    }
+
+    def "屏障消息等之前的消息都处理完成之后单独处理, 之后的消息在屏障之后处理"() {
+        given:
+        List<String> events = Collections.synchronizedList(new ArrayList<>())
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger runningDuringBarrier = new AtomicInteger(-1)
+        CountDownLatch latch = new CountDownLatch(9)
+
+        when:
+        4.times { i ->
+            dispatcher.dispatch(1L, "key-" + i, {
+                running.incrementAndGet()
+                Thread.sleep(20)
+                events.add("before")
+                running.decrementAndGet()
+                latch.countDown()
+            })
+        }
+        dispatcher.dispatchBarrier(1L, {
+            runningDuringBarrier.set(running.get())
+            events.add("barrier")
+            latch.countDown()
+        })
+        4.times { i ->
+            dispatcher.dispatch(1L, "key-" + i, {
+                events.add("after")
+                latch.countDown()
+            })
+        }
+
+        then:
+        latch.await(10, TimeUnit.SECONDS)
+        events == ["before"] * 4 + ["barrier"] + ["after"] * 4
+        runningDuringBarrier.get() == 0
+    }
+}
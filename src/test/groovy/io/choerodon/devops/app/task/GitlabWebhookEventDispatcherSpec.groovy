@@ -0,0 +1,262 @@
+package io.choerodon.devops.app.task
+
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.data.redis.core.StringRedisTemplate
+import org.springframework.data.redis.core.ValueOperations
+import org.springframework.data.redis.core.script.RedisScript
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler
+import spock.lang.Specification
+import spock.lang.Subject
+
+import io.choerodon.devops.app.service.GitlabWebHookService
+import io.choerodon.devops.infra.dto.DevopsWebhookEventDTO
+import io.choerodon.devops.infra.enums.WebhookEventStatusEnum
+import io.choerodon.devops.infra.mapper.DevopsWebhookEventMapper
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(GitlabWebhookEventDispatcher)
+class GitlabWebhookEventDispatcherSpec extends Specification {
+    private static final Long GITLAB_PROJECT_ID = 10L
+
+    DevopsWebhookEventMapper devopsWebhookEventMapper = Mock()
+    GitlabWebHookService gitlabWebHookService = Mock()
+    StringRedisTemplate stringRedisTemplate = Mock()
+    ValueOperations<String, String> valueOperations = Mock()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    GitlabWebhookEventDispatcher dispatcher = new GitlabWebhookEventDispatcher()
+
+    /**
+     * 模拟的redis中的锁
+     */
+    String lockValue
+    /**
+     * 锁续期的次数
+     */
+    int renewCount
+
+    def setup() {
+        dispatcher.devopsWebhookEventMapper = devopsWebhookEventMapper
+        dispatcher.gitlabWebHookService = gitlabWebHookService
+        dispatcher.stringRedisTemplate = stringRedisTemplate
+        // 在当前线程处理分区
+        dispatcher.webhookEventExecutor = new ConcurrentTaskExecutor({ Runnable task -> task.run() } as Executor)
+        dispatcher.lockWatchdogScheduler = new ConcurrentTaskScheduler()
+        dispatcher.meterRegistry = meterRegistry
+        dispatcher.batchSize = 50
+        dispatcher.maxRetries = 2
+        dispatcher.retryDelaySeconds = 10L
+        dispatcher.lockSeconds = 60L
+        dispatcher.retentionDays = 3
+        dispatcher.dedupWindowSeconds = 60L
+
+        stringRedisTemplate.opsForValue() >> valueOperations
+        valueOperations.setIfAbsent(_, _, _, _) >> { args ->
+            if (lockValue != null) {
+                return false
+            }
+            lockValue = args[1]
+            return true
+        }
+        // 比较锁的值之后续期或者删除
+        stringRedisTemplate.execute(_ as RedisScript, _ as List, *_) >> { args ->
+            RedisScript script = args[0]
+            Object[] argv = args[2] instanceof Object[] ? args[2] : args[2..-1] as Object[]
+            if (lockValue != argv[0]) {
+                return 0L
+            }
+            if (script.scriptAsString.contains("DEL")) {
+                lockValue = null
+            } else {
+                renewCount++
+            }
+            return 1L
+        }
+    }
+
+    def "相同的事件只保存一次"() {
+        given:
+        devopsWebhookEventMapper.insertSelective(_) >> { throw new DuplicateKeyException("uk_event_key") }
+
+        when:
+        boolean accepted = dispatcher.enqueue(event(null, 0))
+
+        then:
+        !accepted
+        0 * devopsWebhookEventMapper.listPendingByProjectId(_, _)
+        0 * gitlabWebHookService.processEvent(_)
+        meterRegistry.get("devops.webhook.events").tag("result", "duplicate").counter().count() == 1
+    }
+
+    def "没有事件标识时时间窗口内内容相同的事件只保存一次"() {
+        given:
+        DevopsWebhookEventDTO withoutUuid = event(null, 0)
+        withoutUuid.setContentHash("hash")
+
+        when:
+        boolean accepted = dispatcher.enqueue(withoutUuid)
+
+        then:
+        !accepted
+        0 * devopsWebhookEventMapper.insertSelective(_)
+        1 * devopsWebhookEventMapper.insertIfNoRecentDuplicate(withoutUuid, 60L, _) >> 0
+        0 * gitlabWebHookService.processEvent(_)
+        meterRegistry.get("devops.webhook.events").tag("result", "duplicate").counter().count() == 1
+    }
+
+    def "处理较慢的事件时看门狗为锁续期"() {
+        given:
+        dispatcher.lockSeconds = 1L
+        DevopsWebhookEventDTO slow = event(1L, 0)
+
+        when:
+        dispatcher.poll()
+
+        then:
+        1 * devopsWebhookEventMapper.listPendingProjectIds(_, 50) >> [GITLAB_PROJECT_ID]
+        2 * devopsWebhookEventMapper.listPendingByProjectId(GITLAB_PROJECT_ID, 50) >>> [[slow], []]
+        1 * gitlabWebHookService.processEvent(slow) >> { Thread.sleep(1000) }
+        1 * devopsWebhookEventMapper.updateResult(1L, WebhookEventStatusEnum.SUCCESS.value(), 0, _, null)
+        renewCount >= 1
+        lockValue == null
+    }
+
+    def "保存事件之后立即按顺序处理分区中的事件"() {
+        given:
+        DevopsWebhookEventDTO first = event(1L, 0)
+        DevopsWebhookEventDTO second = event(2L, 0)
+        List<Long> processed = []
+
+        when:
+        boolean accepted = dispatcher.enqueue(event(null, 0))
+
+        then:
+        accepted
+        1 * devopsWebhookEventMapper.insertSelective({ DevopsWebhookEventDTO e ->
+            e.status == WebhookEventStatusEnum.PENDING.value() && e.retryCount == 0 && e.nextProcessTime != null
+        })
+        2 * devopsWebhookEventMapper.listPendingByProjectId(GITLAB_PROJECT_ID, 50) >>> [[first, second], []]
+        2 * gitlabWebHookService.processEvent(_) >> { DevopsWebhookEventDTO e -> processed << e.id }
+        1 * devopsWebhookEventMapper.updateResult(1L, WebhookEventStatusEnum.SUCCESS.value(), 0, _, null)
+        1 * devopsWebhookEventMapper.updateResult(2L, WebhookEventStatusEnum.SUCCESS.value(), 0, _, null)
+        processed == [1L, 2L]
+        lockValue == null
+    }
+
+    def "处理失败的事件延迟重试, 同一个项目后面的事件等待"() {
+        given:
+        DevopsWebhookEventDTO first = event(1L, 0)
+        DevopsWebhookEventDTO second = event(2L, 0)
+        long now = System.currentTimeMillis()
+
+        when:
+        dispatcher.poll()
+
+        then:
+        1 * devopsWebhookEventMapper.listPendingProjectIds(_, 50) >> [GITLAB_PROJECT_ID]
+        1 * devopsWebhookEventMapper.listPendingByProjectId(GITLAB_PROJECT_ID, 50) >> [first, second]
+        1 * gitlabWebHookService.processEvent(first) >> { throw new IllegalStateException("test") }
+        0 * gitlabWebHookService.processEvent(second)
+        1 * devopsWebhookEventMapper.updateResult(1L, WebhookEventStatusEnum.PENDING.value(), 1, { Date next ->
+            next.time >= now + TimeUnit.SECONDS.toMillis(10)
+        }, { String error -> error.contains("IllegalStateException") })
+        lockValue == null
+    }
+
+    def "重试的间隔按照次数翻倍"() {
+        given:
+        DevopsWebhookEventDTO retried = event(1L, 1)
+        long now = System.currentTimeMillis()
+
+        when:
+        dispatcher.poll()
+
+        then:
+        1 * devopsWebhookEventMapper.listPendingProjectIds(_, 50) >> [GITLAB_PROJECT_ID]
+        1 * devopsWebhookEventMapper.listPendingByProjectId(GITLAB_PROJECT_ID, 50) >> [retried]
+        1 * gitlabWebHookService.processEvent(retried) >> { throw new IllegalStateException("test") }
+        1 * devopsWebhookEventMapper.updateResult(1L, WebhookEventStatusEnum.PENDING.value(), 2, { Date next ->
+            next.time >= now + TimeUnit.SECONDS.toMillis(20)
+        }, _)
+    }
+
+    def "重试次数用完之后标记为失败, 继续处理后面的事件"() {
+        given:
+        DevopsWebhookEventDTO exhausted = event(1L, 2)
+        DevopsWebhookEventDTO next = event(2L, 0)
+
+        when:
+        dispatcher.poll()
+
+        then:
+        1 * devopsWebhookEventMapper.listPendingProjectIds(_, 50) >> [GITLAB_PROJECT_ID]
+        2 * devopsWebhookEventMapper.listPendingByProjectId(GITLAB_PROJECT_ID, 50) >>> [[exhausted, next], []]
+        1 * gitlabWebHookService.processEvent(exhausted) >> { throw new IllegalStateException("test") }
+        1 * devopsWebhookEventMapper.updateResult(1L, WebhookEventStatusEnum.FAILED.value(), 3, _, _)
+        1 * gitlabWebHookService.processEvent(next)
+        1 * devopsWebhookEventMapper.updateResult(2L, WebhookEventStatusEnum.SUCCESS.value(), 0, _, null)
+        meterRegistry.get("devops.webhook.events").tag("result", "failed").counter().count() == 1
+    }
+
+    def "未到重试时间的事件不处理"() {
+        given:
+        DevopsWebhookEventDTO waiting = event(1L, 1)
+        waiting.setNextProcessTime(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1)))
+
+        when:
+        dispatcher.poll()
+
+        then:
+        1 * devopsWebhookEventMapper.listPendingProjectIds(_, 50) >> [GITLAB_PROJECT_ID]
+        1 * devopsWebhookEventMapper.listPendingByProjectId(GITLAB_PROJECT_ID, 50) >> [waiting]
+        0 * gitlabWebHookService.processEvent(_)
+        0 * devopsWebhookEventMapper.updateResult(*_)
+    }
+
+    def "其它实例正在处理分区时跳过"() {
+        given:
+        lockValue = "other-instance"
+
+        when:
+        dispatcher.poll()
+
+        then:
+        1 * devopsWebhookEventMapper.listPendingProjectIds(_, 50) >> [GITLAB_PROJECT_ID]
+        0 * devopsWebhookEventMapper.listPendingByProjectId(_, _)
+        lockValue == "other-instance"
+    }
+
+    def "清理处理完成的事件"() {
+        when:
+        dispatcher.cleanFinishedEvents()
+
+        then:
+        1 * devopsWebhookEventMapper.deleteFinishedBefore({ Date before ->
+            before.time <= System.currentTimeMillis() - TimeUnit.DAYS.toMillis(3)
+        }) >> 1
+    }
+
+    private static DevopsWebhookEventDTO event(Long id, int retryCount) {
+        DevopsWebhookEventDTO event = new DevopsWebhookEventDTO()
+        event.setId(id)
+        event.setEventKey("key-" + id)
+        event.setHookType("portal")
+        event.setObjectKind("push")
+        event.setGitlabProjectId(GITLAB_PROJECT_ID)
+        event.setResourceId(1L)
+        event.setBody("{}")
+        event.setStatus(WebhookEventStatusEnum.PENDING.value())
+        event.setRetryCount(retryCount)
+        event.setNextProcessTime(new Date(System.currentTimeMillis() - 1000))
+        return event
+    }
+}
@@ -0,0 +1,135 @@
+package io.choerodon.devops.infra.metrics
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(GorillaChunk)
+class GorillaChunkSpec extends Specification {
+    private static final long START = 1600000000L
+
+    def "空的数据块解码为空"() {
+        given:
+        GorillaChunk chunk = new GorillaChunk()
+
+        expect:
+        chunk.decode().isEmpty()
+        GorillaChunk.decode(chunk.toBytes()).isEmpty()
+        chunk.sizeInBytes() == 0
+    }
+
+    def "只有一个点"() {
+        expect:
+        roundTrip([START], [1.5D])
+    }
+
+    def "采集间隔固定并且值相同时每个点只占用2位"() {
+        given:
+        List<Long> timestamps = (0..<100).collect { START + it * 10 }
+        List<Double> values = [0.5D] * 100
+
+        when:
+        GorillaChunk chunk = roundTrip(timestamps, values)
+
+        then: "第一个点128位, 第二个点10位, 之后每个点2位"
+        chunk.sizeInBytes() == (128 + 10 + 98 * 2 + 7).intdiv(8)
+        chunk.toBytes().length == Integer.BYTES + chunk.sizeInBytes()
+    }
+
+    @Unroll
+    def "异或的有效位为64位: #first -> #second"() {
+        expect:
+        roundTrip([START, START + 10, START + 20], [first, second, first])
+
+        where:
+        first                                   | second
+        1.0D                                    | -Double.MAX_VALUE
+        Double.longBitsToDouble(1L)             | -1.0D
+        -Double.MIN_VALUE                       | Double.longBitsToDouble(0x7FFFFFFFFFFFFFFEL)
+        Double.longBitsToDouble(Long.MAX_VALUE) | Double.longBitsToDouble(Long.MIN_VALUE)
+    }
+
+    def "有效位落在上一个值的范围内时复用前导和后缀0的个数"() {
+        expect:
+        roundTrip((0..<6).collect { START + it }, [1.0D, 3.0D, 1.0D, 2.0D, 1.0D, 1.5D])
+    }
+
+    @Unroll
+    def "时间戳的二阶差分为#deltaOfDelta"() {
+        given: "前两个点的间隔为firstDelta, 之后的间隔为secondDelta"
+        List<Long> timestamps = [START, START + firstDelta, START + firstDelta + secondDelta, START + firstDelta + secondDelta * 2]
+
+        expect:
+        roundTrip(timestamps, [1D, 2D, 3D, 4D])
+
+        where:
+        firstDelta | secondDelta
+        100L       | 99L
+        100L       | 36L
+        100L       | 35L
+        300L       | 44L
+        300L       | 43L
+        3000L      | 952L
+        3000L      | 951L
+        1000000L   | 0L
+        0L         | 63L
+        0L         | 64L
+        0L         | 255L
+        0L         | 256L
+        0L         | 2047L
+        0L         | 2048L
+        0L         | 100000000L
+
+        deltaOfDelta = secondDelta - firstDelta
+    }
+
+    def "负数, 正负0, NaN和无穷大"() {
+        given:
+        List<Double> values = [-0.0D, 0.0D, -5.25D, Double.NaN, 1.0D, Double.NaN,
+                               Double.longBitsToDouble(0x7FF8000000000001L), Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -1.0D]
+
+        expect:
+        roundTrip((0..<values.size()).collect { START + it * 15 }, values)
+    }
+
+    def "数据跨越缓冲区扩容和字节边界"() {
+        given:
+        Random random = new Random(20201120L)
+        List<Long> timestamps = []
+        List<Double> values = []
+        long timestamp = START
+        1000.times {
+            timestamp += random.nextInt(3) == 0 ? random.nextInt(100000) : 15
+            timestamps << timestamp
+            values << (random.nextInt(4) == 0 ? Double.longBitsToDouble(random.nextLong()) : (double) random.nextInt(10))
+        }
+
+        expect:
+        roundTrip(timestamps, values)
+    }
+
+    /**
+     * 写入之后分别直接解码和序列化之后解码, 比较时间戳和值的二进制表示
+     */
+    private static GorillaChunk roundTrip(List<Long> timestamps, List<Double> values) {
+        GorillaChunk chunk = new GorillaChunk()
+        timestamps.eachWithIndex { long timestamp, int i -> chunk.append(timestamp, values[i]) }
+
+        assert chunk.count == timestamps.size()
+        assert chunk.firstTimestamp == timestamps.first()
+        assert chunk.lastTimestamp == timestamps.last()
+        [chunk.decode(), GorillaChunk.decode(chunk.toBytes())].each { List<double[]> points ->
+            assert points.size() == timestamps.size()
+            points.eachWithIndex { double[] point, int i ->
+                assert (long) point[0] == timestamps[i]
+                assert Double.doubleToRawLongBits(point[1]) == Double.doubleToRawLongBits(values[i])
+            }
+        }
+        return chunk
+    }
+}
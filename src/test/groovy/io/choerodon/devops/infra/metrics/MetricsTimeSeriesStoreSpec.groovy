@@ -0,0 +1,138 @@
+package io.choerodon.devops.infra.metrics
+
+import org.springframework.data.redis.connection.StringRedisConnection
+import org.springframework.data.redis.core.RedisCallback
+import org.springframework.data.redis.core.StringRedisTemplate
+import org.springframework.data.redis.core.ValueOperations
+import org.springframework.data.redis.core.ZSetOperations
+import spock.lang.Specification
+import spock.lang.Subject
+
+import io.choerodon.devops.api.vo.MetricsPointVO
+import io.choerodon.devops.infra.enums.MetricsResolution
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(MetricsTimeSeriesStore)
+class MetricsTimeSeriesStoreSpec extends Specification {
+    private static final String CLUSTER = "cluster-1"
+    private static final String SERIES = "pod-1:cpu"
+    private static final long START = 1600000000L
+    private static final long RAW_CHUNK_SECONDS = MetricsResolution.RAW.chunkSeconds
+
+    StringRedisTemplate stringRedisTemplate = Mock()
+    StringRedisConnection connection = Mock()
+    ValueOperations<String, String> valueOperations = Mock()
+    ZSetOperations<String, String> zSetOperations = Mock()
+
+    MetricsTimeSeriesStore store = new MetricsTimeSeriesStore()
+
+    /**
+     * 模拟的redis中的数据块, key为数据块的key
+     */
+    Map<String, String> chunks = [:]
+    /**
+     * 模拟的redis中的数据块索引, key为索引的key
+     */
+    Map<String, Set<Double>> indexes = [:]
+
+    def setup() {
+        store.stringRedisTemplate = stringRedisTemplate
+        store.maxSeriesPerCluster = 100
+
+        stringRedisTemplate.executePipelined(_ as RedisCallback) >> { RedisCallback callback ->
+            callback.doInRedis(connection)
+            return []
+        }
+        connection.setEx(_ as String, _ as Long, _ as String) >> { String key, long seconds, String value ->
+            chunks[key] = value
+            return true
+        }
+        connection.zAdd(_ as String, _ as Double, _ as String) >> { String key, double score, String member ->
+            indexes.computeIfAbsent(key, { new TreeSet<Double>() }).add(score)
+            return true
+        }
+
+        stringRedisTemplate.opsForValue() >> valueOperations
+        stringRedisTemplate.opsForZSet() >> zSetOperations
+        zSetOperations.rangeByScore(_ as String, _ as Double, _ as Double) >> { String key, double min, double max ->
+            return indexes.getOrDefault(key, [] as Set).findAll { it >= min && it <= max }
+                    .collect { String.valueOf((long) it) } as LinkedHashSet
+        }
+        valueOperations.multiGet(_ as Collection) >> { Collection<String> keys -> keys.collect { chunks[it] } }
+    }
+
+    def "原始数据的时间跨度达到数据块上限时才写入redis"() {
+        when: "时间跨度未达到上限"
+        record(START, START + RAW_CHUNK_SECONDS - 1)
+
+        then:
+        chunks.isEmpty()
+
+        when: "时间跨度正好达到上限的点属于下一个数据块"
+        store.record(CLUSTER, SERIES, START + RAW_CHUNK_SECONDS, 1D)
+
+        then:
+        chunks.keySet() == ["devops:metrics:chunk:${SERIES}:raw:${START}".toString()] as Set
+        List<double[]> sealed = GorillaChunk.decode(Base64.decoder.decode(chunks.values().first()))
+        (long) sealed.first()[0] == START
+        (long) sealed.last()[0] == START + RAW_CHUNK_SECONDS - 15
+        sealed.every { (long) it[0] < START + RAW_CHUNK_SECONDS }
+    }
+
+    def "查询时合并redis中的数据块和内存中的数据块"() {
+        given: "第一个数据块已经写入redis, 第二个数据块还在内存中"
+        List<Long> timestamps = record(START, START + RAW_CHUNK_SECONDS + 600)
+
+        when:
+        List<MetricsPointVO> points = store.range(CLUSTER, SERIES, MetricsResolution.RAW, START, START + RAW_CHUNK_SECONDS + 600)
+
+        then: "所有的点都能查询到, 没有重复"
+        chunks.size() == 1
+        points*.timestamp == timestamps.collect { it * 1000 }
+        points*.value == timestamps.collect { (double) (it % 100) }
+    }
+
+    def "查询范围从数据块中间开始时也能查询到"() {
+        given:
+        record(START, START + RAW_CHUNK_SECONDS + 600)
+        long from = START + RAW_CHUNK_SECONDS - 60
+        long to = START + RAW_CHUNK_SECONDS + 60
+
+        when:
+        List<MetricsPointVO> points = store.range(CLUSTER, SERIES, MetricsResolution.RAW, from, to)
+
+        then: "边界两侧的点分别来自redis和内存"
+        points*.timestamp == (from..to).step(15).collect { it * 1000 }
+    }
+
+    def "序列数超过上限时写入redis并移出内存"() {
+        given:
+        store.maxSeriesPerCluster = 1
+
+        when:
+        store.record(CLUSTER, "pod-1:cpu", START, 1D)
+        store.record(CLUSTER, "pod-2:cpu", START + 15, 2D)
+
+        then: "最久未访问的序列的所有精度都写入redis"
+        chunks.keySet().every { it.startsWith("devops:metrics:chunk:pod-1:cpu:") }
+        chunks.keySet().any { it.endsWith(":raw:${START}") }
+
+        and: "写入redis的序列仍然可以查询"
+        store.range(CLUSTER, "pod-1:cpu", MetricsResolution.RAW, START, START)*.value == [1D]
+    }
+
+    /**
+     * 每15秒记录一个点, 值为时间戳除以100的余数
+     *
+     * @return 记录的时间戳
+     */
+    private List<Long> record(long from, long to) {
+        List<Long> timestamps = (from..to).step(15)
+        timestamps.each { store.record(CLUSTER, SERIES, it, (double) (it % 100)) }
+        return timestamps
+    }
+}
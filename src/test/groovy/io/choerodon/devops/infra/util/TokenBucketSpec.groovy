@@ -0,0 +1,82 @@
+package io.choerodon.devops.infra.util
+
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(TokenBucket)
+class TokenBucketSpec extends Specification {
+
+    @Unroll
+    def "速率不是正数时抛出异常: #permitsPerSecond"() {
+        when:
+        new TokenBucket(permitsPerSecond, 1)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        permitsPerSecond << [0D, -1D]
+    }
+
+    def "容量以内的请求不需要等待"() {
+        given:
+        TokenBucket tokenBucket = new TokenBucket(1, 5)
+
+        when:
+        long start = System.nanoTime()
+        5.times { tokenBucket.acquire() }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        elapsed < 500
+    }
+
+    def "令牌用完之后按照速率等待"() {
+        given: "每秒10个令牌, 容量为1"
+        TokenBucket tokenBucket = new TokenBucket(10, 1)
+        tokenBucket.acquire()
+
+        when:
+        long start = System.nanoTime()
+        3.times { tokenBucket.acquire() }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then: "3个令牌至少需要等待300毫秒"
+        elapsed >= 250
+    }
+
+    def "容量最小为1"() {
+        given:
+        TokenBucket tokenBucket = new TokenBucket(1000, 0)
+
+        when:
+        tokenBucket.acquire()
+
+        then:
+        noExceptionThrown()
+    }
+
+    def "等待时被中断抛出InterruptedException"() {
+        given:
+        TokenBucket tokenBucket = new TokenBucket(0.1D, 1)
+        tokenBucket.acquire()
+
+        when:
+        Thread.currentThread().interrupt()
+        tokenBucket.acquire()
+
+        then:
+        thrown(InterruptedException)
+
+        cleanup:
+        Thread.interrupted()
+    }
+}
@@ -0,0 +1,116 @@
+package io.choerodon.devops.infra.util
+
+import io.choerodon.devops.api.vo.kubernetes.InstanceValueVO
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2020/11/20
+ *
+ */
+@Subject(YamlValuesMergeUtil)
+class YamlValuesMergeUtilSpec extends Specification {
+
+    def "没有变化时返回版本values"() {
+        given:
+        def versionValue = "a: 1 # 注释\nb:\n  c: x\n"
+
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge(versionValue, "b:\n  c: x\n")
+
+        then:
+        result.yaml == versionValue
+        result.deltaYaml == "{}\n"
+        result.newLines.isEmpty()
+        result.highlightMarkers.isEmpty()
+    }
+
+    def "嵌套的新增和修改保留原有的注释"() {
+        given:
+        def versionValue = "a:\n  b: 1 # c\n  c: 2\nd: 3\n"
+        def deployValue = "a:\n  b: 2\n  e:\n    f: 1\n    g: 2\nh: 4\n"
+
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge(versionValue, deployValue)
+
+        then:
+        result.yaml == "a:\n  b: 2 # c\n  c: 2\n  e:\n    f: 1\n    g: 2\nd: 3\nh: 4\n"
+        result.deltaYaml == "a:\n  b: 2\n  e:\n    f: 1\n    g: 2\nh: 4\n"
+        result.newLines == [3, 4, 5, 7]
+        result.highlightMarkers.size() == 1
+        result.highlightMarkers[0].line == 1
+        result.highlightMarkers[0].endLine == 1
+        result.highlightMarkers[0].startColumn == 5
+        result.highlightMarkers[0].endColumn == 6
+    }
+
+    def "flow格式的map整体替换为合并后的内容"() {
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge("a: {b: 1}\nc: 2\n", "a: {d: 3}\n")
+
+        then:
+        result.yaml == "a:\n  b: 1\n  d: 3\nc: 2\n"
+        result.deltaYaml == "a:\n  d: 3\n"
+        result.newLines == [2]
+    }
+
+    @Unroll
+    def "null的不同写法视为相同: #deployValue"() {
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge("a: null\n", deployValue)
+
+        then:
+        result.yaml == "a: null\n"
+        result.deltaYaml == "{}\n"
+
+        where:
+        deployValue << ["a: ~\n", "a:\n", "a: null\n"]
+    }
+
+    def "使用别名时重新生成合并结果"() {
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge("x: 1\ny: 2\n", "y: &q 5\nz: *q\n")
+
+        then:
+        result.yaml == "x: 1\ny: 5\nz: 5\n"
+        result.deltaYaml == "y: 5\nz: 5\n"
+        result.newLines == [2]
+        result.highlightMarkers.size() == 1
+        result.highlightMarkers[0].line == 1
+    }
+
+    def "别名引用的集合不会再生成别名"() {
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge("", "a:\n  b: &x [1, 2]\nc: *x\n")
+
+        then:
+        result.yaml == "a:\n  b:\n  - 1\n  - 2\nc:\n- 1\n- 2\n"
+        !result.yaml.contains("*")
+        result.newLines == [0, 1, 2, 3, 4, 5, 6]
+    }
+
+    def "版本values为空时合并结果是部署values"() {
+        given:
+        def deployValue = "a:\n  b: 1\n"
+
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge("", deployValue)
+
+        then:
+        result.yaml == deployValue
+        result.deltaYaml == deployValue
+        result.newLines == [0, 1]
+    }
+
+    def "新增的行没有重复"() {
+        when:
+        InstanceValueVO result = YamlValuesMergeUtil.merge("a: 1\n", "b:\n  c: 1\nd:\n  e: 2\n")
+
+        then:
+        result.yaml == "a: 1\nb:\n  c: 1\nd:\n  e: 2\n"
+        result.newLines == [1, 2, 3, 4]
+        result.newLines.unique(false) == result.newLines
+    }
+}